@@ -0,0 +1,88 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification.benchmark;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.elasticsearch.action.classify.ClassifyResult;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of merging the results of the shards on the coordinating node, and of sending them over
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassifyResultBenchmark {
+
+    @Param({"5", "50"})
+    public int numShards;
+
+    @Param({"10", "1000"})
+    public int numClasses;
+
+    private List<ClassifyResult> shardResults;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        shardResults = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            List<ClassificationResult> results = new ArrayList<>(numClasses);
+            for (int c = 0; c < numClasses; c++) {
+                results.add(new ClassificationResult<>("class" + c, random.nextDouble()));
+            }
+            // the classes are not bytes so no field type is needed to convert them
+            shardResults.add(new ClassifyResult(results, null));
+        }
+        serialized = serialize();
+    }
+
+    @Benchmark
+    public ClassifyResult fromAverage() {
+        return ClassifyResult.fromAverage(shardResults);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        shardResults.get(0).writeTo(out);
+        return out.bytes().toBytes();
+    }
+
+    @Benchmark
+    public ClassifyResult deserialize() throws IOException {
+        ClassifyResult result = new ClassifyResult();
+        result.readFrom(StreamInput.wrap(serialized));
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification.benchmark;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.classification.Classifier;
+import org.elasticsearch.classification.AnalyzedText;
+import org.elasticsearch.classification.AnalyzedTextClassifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a trained model takes to classify a text, either analyzed on the shard or beforehand
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationBenchmark {
+
+    private static final int NUM_TEXTS = 1024;
+
+    @Param({"simple_naive_bayes", "caching_naive_bayes", "boolean_perceptron", "averaged_perceptron", "knn"})
+    public String modelType;
+
+    @Param({"10000"})
+    public int numDocs;
+
+    @Param({"10000"})
+    public int vocabulary;
+
+    @Param({"10"})
+    public int numClasses;
+
+    @Param({"100"})
+    public int docLength;
+
+    private SyntheticIndex index;
+    private Classifier<?> classifier;
+    private String[] texts;
+    private AnalyzedText[] analyzedTexts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        index = new SyntheticIndex(numDocs, vocabulary, numClasses, docLength, 42);
+        classifier = Models.newClassifier(modelType, index);
+        Models.train(classifier, modelType, index);
+        texts = index.texts(NUM_TEXTS);
+        analyzedTexts = new AnalyzedText[NUM_TEXTS];
+        for (int i = 0; i < NUM_TEXTS; i++) {
+            analyzedTexts[i] = index.analyze(texts[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public List<? extends ClassificationResult<?>> getClasses() throws IOException {
+        return classifier.getClasses(texts[next++ & (NUM_TEXTS - 1)]);
+    }
+
+    @Benchmark
+    public List<? extends ClassificationResult<?>> getClassesAnalyzed() throws IOException {
+        return ((AnalyzedTextClassifier<?>) classifier).getClasses(analyzedTexts[next++ & (NUM_TEXTS - 1)]);
+    }
+}
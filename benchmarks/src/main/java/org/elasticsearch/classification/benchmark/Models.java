@@ -0,0 +1,68 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification.benchmark;
+
+import org.apache.lucene.classification.Classifier;
+import org.elasticsearch.action.classify.ClassifyRequest.ModelTypes;
+import org.elasticsearch.classification.*;
+
+import java.io.IOException;
+
+import static org.elasticsearch.classification.ShardClassificationService.*;
+
+/**
+ * Creates the models as {@link ShardClassificationService} does, with their default settings
+ */
+final class Models {
+
+    private Models() {
+    }
+
+    static Classifier<?> newClassifier(String modelType, SyntheticIndex index) {
+        switch (modelType) {
+            case ModelTypes.SIMPLE_NAIVE_BAYES:
+                return new SimpleNaiveBayesClassifier();
+            case ModelTypes.CACHING_NAIVE_BAYES:
+                return new CachingNaiveBayesClassifier();
+            case ModelTypes.BOOLEAN_PERCEPTRON:
+                return new BooleanPerceptronClassifier(
+                        new FeatureHashingVectorizer(DEFAULT_BOOLEAN_PERCEPTRON_DIMENSION, FeatureHashingVectorizer.DEFAULT_NGRAMS,
+                                FeatureHashingVectorizer.DEFAULT_NAMESPACES),
+                        DEFAULT_BOOLEAN_PERCEPTRON_THRESHOLD, DEFAULT_BOOLEAN_PERCEPTRON_BATCH_SIZE,
+                        DEFAULT_BOOLEAN_PERCEPTRON_CHECKPOINT_INTERVAL, index.sourceFieldsLoader());
+            case ModelTypes.AVERAGED_PERCEPTRON:
+                return new AveragedPerceptronClassifier(
+                        new FeatureHashingVectorizer(DEFAULT_AVERAGED_PERCEPTRON_DIMENSION, FeatureHashingVectorizer.DEFAULT_NGRAMS,
+                                FeatureHashingVectorizer.DEFAULT_NAMESPACES),
+                        DEFAULT_AVERAGED_PERCEPTRON_EPOCHS, index.sourceFieldsLoader());
+            case ModelTypes.KNN:
+                KNearestNeighborClassifier knnClassifier = new KNearestNeighborClassifier(DEFAULT_KNN_K);
+                knnClassifier.setSourceFieldsLoader(index.sourceFieldsLoader());
+                return knnClassifier;
+        }
+        throw new IllegalArgumentException("unknown model type [" + modelType + "]");
+    }
+
+    static void train(Classifier<?> classifier, String modelType, SyntheticIndex index) throws IOException {
+        String classField = modelType.equals(ModelTypes.BOOLEAN_PERCEPTRON) ? SyntheticIndex.BOOLEAN_CLASS_FIELD : SyntheticIndex.CLASS_FIELD;
+        classifier.train(index.leafReader(), new String[]{SyntheticIndex.TEXT_FIELD}, classField, index.analyzer(), null);
+    }
+}
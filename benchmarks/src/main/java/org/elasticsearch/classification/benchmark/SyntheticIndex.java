@@ -0,0 +1,150 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification.benchmark;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.classification.AnalyzedText;
+import org.elasticsearch.classification.SourceFieldsLoader;
+import org.elasticsearch.index.mapper.ParseContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * An in-memory index of labelled docs. Each class favors its own slice of the vocabulary, so that the models
+ * have something to learn, and everything is derived from a seed so that runs are reproducible.
+ */
+public class SyntheticIndex implements Closeable {
+
+    public static final String TEXT_FIELD = "text";
+    public static final String CLASS_FIELD = "label";
+    public static final String BOOLEAN_CLASS_FIELD = "flag";
+
+    // the probability for a word to be drawn from the slice of its class rather than from the whole vocabulary
+    private static final double CLASS_WORD_PROBABILITY = 0.6;
+
+    private final int vocabulary;
+    private final int numClasses;
+    private final int docLength;
+    private final Random random;
+
+    private final Analyzer analyzer = new WhitespaceAnalyzer();
+    private final Directory directory = new RAMDirectory();
+    private final DirectoryReader reader;
+    private final LeafReader leafReader;
+
+    public SyntheticIndex(int numDocs, int vocabulary, int numClasses, int docLength, long seed) throws IOException {
+        this.vocabulary = vocabulary;
+        this.numClasses = numClasses;
+        this.docLength = docLength;
+        this.random = new Random(seed);
+
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(analyzer))) {
+            for (int i = 0; i < numDocs; i++) {
+                int label = random.nextInt(numClasses);
+                Document doc = new Document();
+                doc.add(new TextField(TEXT_FIELD, text(label), Field.Store.YES));
+                doc.add(new StringField(CLASS_FIELD, "class" + label, Field.Store.YES));
+                doc.add(new StringField(BOOLEAN_CLASS_FIELD, label < numClasses / 2 ? "T" : "F", Field.Store.YES));
+                writer.addDocument(doc);
+            }
+            writer.forceMerge(1);
+        }
+        this.reader = DirectoryReader.open(directory);
+        this.leafReader = SlowCompositeReaderWrapper.wrap(reader);
+    }
+
+    /**
+     * Returns a random text of the given class
+     */
+    public String text(int label) {
+        int sliceSize = Math.max(1, vocabulary / numClasses);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < docLength; i++) {
+            int word;
+            if (random.nextDouble() < CLASS_WORD_PROBABILITY) {
+                word = (label * sliceSize + random.nextInt(sliceSize)) % vocabulary;
+            } else {
+                word = random.nextInt(vocabulary);
+            }
+            text.append('w').append(word).append(' ');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns random texts to classify
+     */
+    public String[] texts(int count) {
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            texts[i] = text(random.nextInt(numClasses));
+        }
+        return texts;
+    }
+
+    public AnalyzedText analyze(String text) throws IOException {
+        return AnalyzedText.analyze(text, Collections.singletonMap(TEXT_FIELD, analyzer));
+    }
+
+    public Analyzer analyzer() {
+        return analyzer;
+    }
+
+    public DirectoryReader reader() {
+        return reader;
+    }
+
+    public LeafReader leafReader() {
+        return leafReader;
+    }
+
+    /**
+     * Returns a loader of the stored fields, as there is no mapping to parse the source with
+     */
+    public SourceFieldsLoader sourceFieldsLoader() {
+        return new SourceFieldsLoader(null, null, null) {
+            @Override
+            public ParseContext.Document load(IndexReader reader, int docId) throws IOException {
+                ParseContext.Document doc = new ParseContext.Document();
+                for (IndexableField field : reader.document(docId)) {
+                    doc.add(field);
+                }
+                return doc;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        directory.close();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification.benchmark;
+
+import org.apache.lucene.classification.Classifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long each model takes to be trained on a shard
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrainingBenchmark {
+
+    @Param({"simple_naive_bayes", "caching_naive_bayes", "boolean_perceptron", "averaged_perceptron", "knn"})
+    public String modelType;
+
+    @Param({"10000"})
+    public int numDocs;
+
+    @Param({"10000"})
+    public int vocabulary;
+
+    @Param({"10"})
+    public int numClasses;
+
+    @Param({"100"})
+    public int docLength;
+
+    private SyntheticIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        index = new SyntheticIndex(numDocs, vocabulary, numClasses, docLength, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        index.close();
+    }
+
+    @Benchmark
+    public Classifier<?> train() throws IOException {
+        Classifier<?> classifier = Models.newClassifier(modelType, index);
+        Models.train(classifier, modelType, index);
+        return classifier;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The time spent in each phase of a classify request, on a shard or on the coordinating node. When the
+ * request is not profiled, nothing is recorded.
+ */
+public class ClassifyProfile implements Streamable, ToXContent {
+
+    private boolean enabled;
+    private Map<String, Long> phases = new LinkedHashMap<>();
+
+    ClassifyProfile() {
+    }
+
+    public ClassifyProfile(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code>, as given by {@link System#nanoTime()}, and returns
+     * the current time so that the next phase can start from it
+     */
+    public long phase(String phase, long startNanos) {
+        long now = System.nanoTime();
+        if (enabled) {
+            Long previous = phases.get(phase);
+            phases.put(phase, (previous == null ? 0 : previous) + now - startNanos);
+        }
+        return now;
+    }
+
+    /**
+     * Returns the time in nanoseconds spent in each phase, in the order they happened
+     */
+    public Map<String, Long> phases() {
+        return phases;
+    }
+
+    public static ClassifyProfile readClassifyProfile(StreamInput in) throws IOException {
+        ClassifyProfile profile = new ClassifyProfile();
+        profile.readFrom(in);
+        return profile;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        enabled = in.readBoolean();
+        int size = in.readVInt();
+        phases = new LinkedHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            phases.put(in.readString(), in.readVLong());
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeBoolean(enabled);
+        out.writeVInt(phases.size());
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            out.writeString(phase.getKey());
+            out.writeVLong(phase.getValue());
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            builder.field(phase.getKey() + "_in_nanos", phase.getValue());
+        }
+        return builder;
+    }
+}
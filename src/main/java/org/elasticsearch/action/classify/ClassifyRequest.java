@@ -22,12 +22,15 @@ package org.elasticsearch.action.classify;
 import org.elasticsearch.ElasticsearchGenerationException;
 import org.elasticsearch.action.ActionRequestValidationException;
 import org.elasticsearch.action.support.broadcast.BroadcastRequest;
+import org.elasticsearch.classification.AnalyzedText;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.*;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
 
 import java.io.IOException;
 import java.util.List;
@@ -47,6 +50,7 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
         public static final String SIMPLE_NAIVE_BAYES = "simple_naive_bayes";
         public static final String CACHING_NAIVE_BAYES = "caching_naive_bayes";
         public static final String BOOLEAN_PERCEPTRON = "boolean_perceptron";
+        public static final String AVERAGED_PERCEPTRON = "averaged_perceptron";
         public static final String KNN = "knn";
     }
 
@@ -62,6 +66,10 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
     
     private String evalOn;
 
+    private DocRef doc;
+
+    private AnalyzedText analyzedText;
+
     private BytesReference trainQuery;
 
     private String analyzer;
@@ -72,9 +80,18 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
 
     private String routing;
 
+    private String preference;
+
     private int topN = DEFAULT_TOP_N;
 
+    private boolean profile = false;
+
+    private TimeValue timeout;
+
     long nowInMillis;
+
+    // the phases on the coordinating node, not sent to the shards
+    ClassifyProfile coordinatorProfile;
     
     ClassifyRequest() {
         super();
@@ -189,6 +206,49 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
         return this;
     }
 
+    /**
+     * Returns the existing doc whose text fields are evaluated instead of a text, or null if a text is given
+     *
+     * @return the doc on which the classifier will be evaluated
+     */
+    public DocRef doc() {
+        return doc;
+    }
+
+    /**
+     * Sets an existing doc to evaluate the classifier on instead of a text. Its text fields are read from
+     * its term vectors on its shard, so that they do not need to be sent with the request.
+     *
+     * @param index the index of the doc, the train index if null
+     * @param type  the type of the doc, the train type if null
+     * @param id    the id of the doc
+     * @return this request
+     */
+    public ClassifyRequest doc(String index, String type, String id) {
+        this.doc = new DocRef(index == null ? trainIndex : index, type == null ? trainType : type, id);
+        return this;
+    }
+
+    /**
+     * Returns the text to evaluate already analyzed, or null if it was not analyzed yet
+     *
+     * @return the analyzed text on which the classifier will be evaluated
+     */
+    public AnalyzedText analyzedText() {
+        return analyzedText;
+    }
+
+    /**
+     * Sets the text to evaluate already analyzed, so that shards do not need to analyze it again
+     *
+     * @param analyzedText the analyzed text on which the classifier will be evaluated
+     * @return this request
+     */
+    public ClassifyRequest analyzedText(AnalyzedText analyzedText) {
+        this.analyzedText = analyzedText;
+        return this;
+    }
+
     /**
      * Returns the query to filter which documents used for training
      *
@@ -282,7 +342,8 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
      */
     public ClassifyRequest modelType(String modelType) {
         if (!modelType.equals(ModelTypes.SIMPLE_NAIVE_BAYES) && !modelType.equals(ModelTypes.CACHING_NAIVE_BAYES) && 
-                !modelType.equals(ModelTypes.BOOLEAN_PERCEPTRON) && !modelType.equals(ModelTypes.KNN)) {
+                !modelType.equals(ModelTypes.BOOLEAN_PERCEPTRON) && !modelType.equals(ModelTypes.AVERAGED_PERCEPTRON) &&
+                !modelType.equals(ModelTypes.KNN)) {
             throw new IllegalArgumentException("unknown model type [" + modelType + "]");
         }
         this.modelType = modelType;
@@ -361,6 +422,19 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
         return this;
     }
 
+    public String preference() {
+        return this.preference;
+    }
+
+    /**
+     * Sets the preference to execute the request on, as for a search. Defaults to the same copy of each shard for
+     * the same model, so that it is only trained and cached once, unless that copy is relocating.
+     */
+    public ClassifyRequest preference(String preference) {
+        this.preference = preference;
+        return this;
+    }
+
     public int topN() {
         return this.topN;
     }
@@ -370,6 +444,47 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
         return this;
     }
 
+    /**
+     * Returns whether the time spent in each phase of the request should be returned
+     */
+    public boolean profile() {
+        return this.profile;
+    }
+
+    /**
+     * Sets whether the time spent in each phase of the request should be returned
+     *
+     * @param profile true to profile the request
+     * @return this request
+     */
+    public ClassifyRequest profile(boolean profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Returns how long the shards may train and evaluate before they give up, null if there is no timeout
+     */
+    public TimeValue timeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Sets how long the shards may train and evaluate before they give up. The shards which completed in time
+     * still return their results.
+     *
+     * @param timeout the timeout, or null for none
+     * @return this request
+     */
+    public ClassifyRequest timeout(TimeValue timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public ClassifyRequest timeout(String timeout) {
+        return timeout(timeout == null ? null : TimeValue.parseTimeValue(timeout, null, getClass().getSimpleName() + ".timeout"));
+    }
+
     /**
      * Parses model definition.
      *
@@ -390,6 +505,17 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
                 classField(entry.getValue().toString());
             } else if (name.equals("text")) {
                 evalOn(entry.getValue().toString());
+            } else if (name.equals("doc")) {
+                if (!(entry.getValue() instanceof Map)) {
+                    throw new IllegalArgumentException("malformed doc, should include an inner object with its _index, _type and _id");
+                }
+                Map<String, Object> docRef = (Map<String, Object>) entry.getValue();
+                if (docRef.get("_id") == null) {
+                    throw new IllegalArgumentException("malformed doc, the _id is missing");
+                }
+                doc(XContentMapValues.nodeStringValue(docRef.get("_index"), null), XContentMapValues.nodeStringValue(docRef.get("_type"), null),
+                        docRef.get("_id").toString());
+                doc.routing(XContentMapValues.nodeStringValue(docRef.get("_routing"), null));
             } else if (name.equals("query")) {
                 if (!(entry.getValue() instanceof Map)) {
                     throw new IllegalArgumentException("malformed query, should include an inner object");
@@ -406,6 +532,10 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
                 modelSettings((Map<String, Object>) entry.getValue());
             } else if (name.equals("top_n")) {
                 topN((int) entry.getValue());
+            } else if (name.equals("profile")) {
+                profile(XContentMapValues.nodeBooleanValue(entry.getValue()));
+            } else if (name.equals("timeout")) {
+                timeout(entry.getValue().toString());
             } else {
                 throw new IllegalArgumentException("unknown parameter [" + name + "]");
             }
@@ -451,8 +581,11 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
         if (trainType == null) {
             validationException = addValidationError("type on which to train the classifier is missing", validationException);
         }
-        if (evalOn == null) {
-            validationException = addValidationError("text to be evaluated is missing", validationException);
+        if (evalOn == null && doc == null) {
+            validationException = addValidationError("text or doc to be evaluated is missing", validationException);
+        }
+        if (evalOn != null && doc != null) {
+            validationException = addValidationError("either a text or a doc can be evaluated, not both", validationException);
         }
         return validationException;
     }
@@ -464,11 +597,24 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
         classField = in.readString();
         trainIndex = in.readString();
         trainType = in.readString();
+        evalOn = in.readOptionalString();
+        if (in.readBoolean()) {
+            doc = DocRef.readDocRef(in);
+        }
+        if (in.readBoolean()) {
+            analyzedText = AnalyzedText.readAnalyzedText(in);
+        }
         trainQuery = in.readBytesReference();
         analyzer = in.readOptionalString();
         modelType = in.readOptionalString();
         modelSettings = readSettingsFromStream(in);
+        routing = in.readOptionalString();
+        preference = in.readOptionalString();
         topN = in.readVInt();
+        profile = in.readBoolean();
+        if (in.readBoolean()) {
+            timeout = TimeValue.readTimeValue(in);
+        }
     }
 
     @Override
@@ -478,10 +624,88 @@ public class ClassifyRequest extends BroadcastRequest<ClassifyRequest> {
         out.writeString(classField);
         out.writeString(trainIndex);
         out.writeString(trainType);
+        out.writeOptionalString(evalOn);
+        if (doc == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            doc.writeTo(out);
+        }
+        if (analyzedText == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            analyzedText.writeTo(out);
+        }
         out.writeBytesReference(trainQuery);
         out.writeOptionalString(analyzer);
         out.writeOptionalString(modelType);
         writeSettingsToStream(modelSettings, out);
+        out.writeOptionalString(routing);
+        out.writeOptionalString(preference);
         out.writeVInt(topN);
+        out.writeBoolean(profile);
+        if (timeout == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            timeout.writeTo(out);
+        }
+    }
+
+    /**
+     * A reference to an existing doc to classify
+     */
+    public static class DocRef {
+
+        private String index;
+        private String type;
+        private String id;
+        private String routing;
+
+        DocRef(String index, String type, String id) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+        }
+
+        public String index() {
+            return index;
+        }
+
+        public String type() {
+            return type;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String routing() {
+            return routing;
+        }
+
+        public DocRef routing(String routing) {
+            this.routing = routing;
+            return this;
+        }
+
+        static DocRef readDocRef(StreamInput in) throws IOException {
+            DocRef doc = new DocRef(in.readString(), in.readString(), in.readString());
+            doc.routing = in.readOptionalString();
+            return doc;
+        }
+
+        void writeTo(StreamOutput out) throws IOException {
+            out.writeString(index);
+            out.writeString(type);
+            out.writeString(id);
+            out.writeOptionalString(routing);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + index + "][" + type + "][" + id + "]";
+        }
     }
 }
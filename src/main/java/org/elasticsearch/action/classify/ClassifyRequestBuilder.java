@@ -23,6 +23,7 @@ import org.elasticsearch.action.support.broadcast.BroadcastOperationRequestBuild
 import org.elasticsearch.client.ElasticsearchClient;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.util.Map;
@@ -101,6 +102,19 @@ public class ClassifyRequestBuilder extends BroadcastOperationRequestBuilder<Cla
         return this;
     }
 
+    /**
+     * Sets an existing doc to evaluate the classifier on instead of a text
+     *
+     * @param index the index of the doc, the train index if null
+     * @param type  the type of the doc, the train type if null
+     * @param id    the id of the doc
+     * @return this request
+     */
+    public ClassifyRequestBuilder setDoc(String index, String type, String id) {
+        request.doc(index, type, id);
+        return this;
+    }
+
     /**
      * Sets the query to filter which documents use for training
      *
@@ -217,8 +231,41 @@ public class ClassifyRequestBuilder extends BroadcastOperationRequestBuilder<Cla
         return this;
     }
 
+    /**
+     * Sets the preference to execute the request on, such as <tt>_local</tt> or <tt>_primary</tt>. Defaults to the
+     * same copy of each shard for the same model.
+     */
+    public ClassifyRequestBuilder setPreference(String preference) {
+        request.preference(preference);
+        return this;
+    }
+
     public ClassifyRequestBuilder setTopN(int topN) {
         request.topN(topN);
         return this;
     }
+
+    /**
+     * Sets whether the time spent in each phase of the request should be returned
+     */
+    public ClassifyRequestBuilder setProfile(boolean profile) {
+        request.profile(profile);
+        return this;
+    }
+
+    /**
+     * Sets how long the shards may train and evaluate before they give up
+     */
+    public ClassifyRequestBuilder setTimeout(TimeValue timeout) {
+        request.timeout(timeout);
+        return this;
+    }
+
+    /**
+     * Sets how long the shards may train and evaluate before they give up
+     */
+    public ClassifyRequestBuilder setTimeout(String timeout) {
+        request.timeout(timeout);
+        return this;
+    }
 }
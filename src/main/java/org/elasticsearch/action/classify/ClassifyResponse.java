@@ -26,9 +26,13 @@ import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.index.shard.ShardId;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 
@@ -37,10 +41,20 @@ public class ClassifyResponse extends BroadcastResponse implements ToXContent {
 
     static final class Fields {
         static final XContentBuilderString TOOK = new XContentBuilderString("took");
+        static final XContentBuilderString TIMED_OUT = new XContentBuilderString("timed_out");
         static final XContentBuilderString TEXT = new XContentBuilderString("text");
         static final XContentBuilderString CLASS = new XContentBuilderString("class");
         static final XContentBuilderString SCORES = new XContentBuilderString("scores");
         static final XContentBuilderString FAILURES = new XContentBuilderString("failures");
+        static final XContentBuilderString PROFILE = new XContentBuilderString("profile");
+        static final XContentBuilderString COORDINATOR = new XContentBuilderString("coordinator");
+        static final XContentBuilderString PHASES = new XContentBuilderString("phases");
+        static final XContentBuilderString TOTAL_IN_NANOS = new XContentBuilderString("total_in_nanos");
+        static final XContentBuilderString MAX_IN_NANOS = new XContentBuilderString("max_in_nanos");
+        static final XContentBuilderString MAX_SHARD = new XContentBuilderString("max_shard");
+        static final XContentBuilderString SHARDS = new XContentBuilderString("shards");
+        static final XContentBuilderString INDEX = new XContentBuilderString("index");
+        static final XContentBuilderString SHARD = new XContentBuilderString("shard");
     }
     
     private String evalOn;
@@ -48,6 +62,9 @@ public class ClassifyResponse extends BroadcastResponse implements ToXContent {
     private ClassifyResult classifyResult;
     private int topN;
     private long tookInMillis;
+    private boolean timedOut;
+    private ClassifyProfile coordinatorProfile;
+    private Map<ShardId, ClassifyProfile> shardProfiles;
 
     public ClassifyResponse() {
     }
@@ -75,34 +92,94 @@ public class ClassifyResponse extends BroadcastResponse implements ToXContent {
         return this.classifyResult;
     }
 
+    /**
+     * Returns true if some shards timed out, in which case the result is only made of the shards which did not
+     */
+    public boolean isTimedOut() {
+        return this.timedOut;
+    }
+
+    void timedOut(boolean timedOut) {
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Returns the time spent in each phase on the coordinating node, or null if the request was not profiled
+     */
+    public ClassifyProfile getCoordinatorProfile() {
+        return this.coordinatorProfile;
+    }
+
+    /**
+     * Returns the time spent in each phase on each shard, or null if the request was not profiled
+     */
+    public Map<ShardId, ClassifyProfile> getShardProfiles() {
+        return this.shardProfiles;
+    }
+
+    void profile(ClassifyProfile coordinatorProfile, Map<ShardId, ClassifyProfile> shardProfiles) {
+        this.coordinatorProfile = coordinatorProfile;
+        this.shardProfiles = shardProfiles;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
-        evalOn = in.readString();
+        evalOn = in.readOptionalString();
         classField = in.readString();
+        classifyResult = new ClassifyResult();
         classifyResult.readFrom(in);
+        topN = in.readVInt();
         tookInMillis = in.readVLong();
+        timedOut = in.readBoolean();
+        if (in.readBoolean()) {
+            coordinatorProfile = ClassifyProfile.readClassifyProfile(in);
+            int size = in.readVInt();
+            shardProfiles = new LinkedHashMap<>(size);
+            for (int i = 0; i < size; i++) {
+                shardProfiles.put(ShardId.readShardId(in), ClassifyProfile.readClassifyProfile(in));
+            }
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
-        out.writeString(evalOn);
+        out.writeOptionalString(evalOn);
         out.writeString(classField);
         classifyResult.writeTo(out);
+        out.writeVInt(topN);
         out.writeVLong(tookInMillis);
+        out.writeBoolean(timedOut);
+        if (coordinatorProfile == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            coordinatorProfile.writeTo(out);
+            out.writeVInt(shardProfiles.size());
+            for (Map.Entry<ShardId, ClassifyProfile> entry : shardProfiles.entrySet()) {
+                entry.getKey().writeTo(out);
+                entry.getValue().writeTo(out);
+            }
+        }
     }
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.field(Fields.TOOK, tookInMillis);
-        builder.field(Fields.TEXT, evalOn);
+        builder.field(Fields.TIMED_OUT, timedOut);
+        if (evalOn != null) {
+            builder.field(Fields.TEXT, evalOn);
+        }
         builder.field(Fields.CLASS, classField);
         buildScores(builder, params);
 
         if (this.getShardFailures() != null && this.getShardFailures().length != 0) {
             buildShardFailures(builder, params);
         }
+        if (coordinatorProfile != null) {
+            buildProfile(builder, params);
+        }
         
         return builder;
     }
@@ -114,6 +191,51 @@ public class ClassifyResponse extends BroadcastResponse implements ToXContent {
         builder.endArray();
     }
 
+    private void buildProfile(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(Fields.PROFILE);
+        builder.startObject(Fields.COORDINATOR);
+        coordinatorProfile.toXContent(builder, params);
+        builder.endObject();
+
+        // the total and the slowest shard of each phase
+        Map<String, long[]> totalAndMax = new LinkedHashMap<>();
+        Map<String, ShardId> maxShard = new HashMap<>();
+        for (Map.Entry<ShardId, ClassifyProfile> entry : shardProfiles.entrySet()) {
+            for (Map.Entry<String, Long> phase : entry.getValue().phases().entrySet()) {
+                long[] stats = totalAndMax.get(phase.getKey());
+                if (stats == null) {
+                    stats = new long[2];
+                    totalAndMax.put(phase.getKey(), stats);
+                }
+                stats[0] += phase.getValue();
+                if (phase.getValue() >= stats[1]) {
+                    stats[1] = phase.getValue();
+                    maxShard.put(phase.getKey(), entry.getKey());
+                }
+            }
+        }
+        builder.startObject(Fields.PHASES);
+        for (Map.Entry<String, long[]> phase : totalAndMax.entrySet()) {
+            builder.startObject(phase.getKey());
+            builder.field(Fields.TOTAL_IN_NANOS, phase.getValue()[0]);
+            builder.field(Fields.MAX_IN_NANOS, phase.getValue()[1]);
+            builder.field(Fields.MAX_SHARD, maxShard.get(phase.getKey()).toString());
+            builder.endObject();
+        }
+        builder.endObject();
+
+        builder.startArray(Fields.SHARDS);
+        for (Map.Entry<ShardId, ClassifyProfile> entry : shardProfiles.entrySet()) {
+            builder.startObject();
+            builder.field(Fields.INDEX, entry.getKey().getIndex());
+            builder.field(Fields.SHARD, entry.getKey().id());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+        builder.endObject();
+    }
+
     private void buildShardFailures(XContentBuilder builder, Params params) throws IOException {
         builder.startArray(Fields.FAILURES);
         for (ShardOperationFailedException shardFailure : this.getShardFailures()) {
@@ -72,6 +72,19 @@ public class ClassifyResult implements Streamable, Iterable<ClassificationResult
         }
     }
 
+    /**
+     * Returns the class with the highest score, or null if there is none
+     */
+    public ClassificationResult best() {
+        ClassificationResult best = null;
+        for (ClassificationResult result : this) {
+            if (best == null || result.getScore() > best.getScore()) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
     @Override
     public Iterator<ClassificationResult> iterator() {
         if (results == null) {
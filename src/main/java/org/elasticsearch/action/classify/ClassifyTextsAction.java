@@ -0,0 +1,46 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Classifies several texts with the same model, which each shard looks up and trains once for all of them
+ */
+public class ClassifyTextsAction extends Action<ClassifyTextsRequest, ClassifyTextsResponse, ClassifyTextsRequestBuilder> {
+
+    public static final ClassifyTextsAction INSTANCE = new ClassifyTextsAction();
+    public static final String NAME = "indices:data/read/classify/texts";
+
+    private ClassifyTextsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public ClassifyTextsResponse newResponse() {
+        return new ClassifyTextsResponse();
+    }
+
+    @Override
+    public ClassifyTextsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new ClassifyTextsRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.broadcast.BroadcastRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * A request to classify several texts with the model of a classify request, whose own text is ignored. Its indices,
+ * routing, preference and timeout are those of the classify request.
+ */
+public class ClassifyTextsRequest extends BroadcastRequest<ClassifyTextsRequest> {
+
+    private ClassifyRequest classify = new ClassifyRequest();
+
+    private List<String> texts = new ArrayList<>();
+
+    long nowInMillis;
+
+    ClassifyTextsRequest() {
+    }
+
+    public ClassifyTextsRequest(ClassifyRequest classify) {
+        super(classify.indices());
+        indicesOptions(classify.indicesOptions());
+        this.classify = classify;
+    }
+
+    /**
+     * Returns the classify request defining the model the texts are classified with
+     */
+    public ClassifyRequest classify() {
+        return classify;
+    }
+
+    /**
+     * Returns the texts to classify, in the order of the results
+     */
+    public List<String> texts() {
+        return texts;
+    }
+
+    public ClassifyTextsRequest add(String text) {
+        texts.add(text);
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = super.validate();
+        if (classify.textFields() == null || classify.textFields().length == 0) {
+            validationException = addValidationError("name of the field used to compare documents is either missing or empty", validationException);
+        }
+        if (classify.classField() == null) {
+            validationException = addValidationError("name of the field containing the class assigned to documents is missing", validationException);
+        }
+        if (classify.trainIndex() == null) {
+            validationException = addValidationError("index on which to train the classifier is missing", validationException);
+        }
+        if (classify.trainType() == null) {
+            validationException = addValidationError("type on which to train the classifier is missing", validationException);
+        }
+        if (texts.isEmpty()) {
+            validationException = addValidationError("no texts to classify", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        classify.readFrom(in);
+        int size = in.readVInt();
+        texts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            texts.add(in.readString());
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        classify.writeTo(out);
+        out.writeVInt(texts.size());
+        for (String text : texts) {
+            out.writeString(text);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of each text averaged over the shards, in the order of the texts
+ */
+public class ClassifyTextsResponse extends BroadcastResponse {
+
+    private List<ClassifyResult> classifyResults;
+    private boolean timedOut;
+    private long tookInMillis;
+
+    ClassifyTextsResponse() {
+    }
+
+    ClassifyTextsResponse(List<ClassifyResult> classifyResults, boolean timedOut, int totalShards, int successfulShards, int failedShards,
+                          List<ShardOperationFailedException> shardFailures, long tookInMillis) {
+        super(totalShards, successfulShards, failedShards, shardFailures);
+        this.classifyResults = classifyResults;
+        this.timedOut = timedOut;
+        this.tookInMillis = tookInMillis;
+    }
+
+    /**
+     * Returns the result of each text, in the order of the texts of the request
+     */
+    public List<ClassifyResult> getClassifyResults() {
+        return classifyResults;
+    }
+
+    /**
+     * Returns true if some shards gave up training or evaluating once the timeout expired
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        classifyResults = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ClassifyResult classifyResult = new ClassifyResult();
+            classifyResult.readFrom(in);
+            classifyResults.add(classifyResult);
+        }
+        timedOut = in.readBoolean();
+        tookInMillis = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(classifyResults.size());
+        for (ClassifyResult classifyResult : classifyResults) {
+            classifyResult.writeTo(out);
+        }
+        out.writeBoolean(timedOut);
+        out.writeVLong(tookInMillis);
+    }
+}
@@ -30,27 +30,40 @@ public class ShardClassifyRequest extends BroadcastShardRequest {
 
     private ClassifyRequest request = new ClassifyRequest();
 
+    // what is left of the timeout of the request when it is sent to the shard, -1 if there is none
+    private long timeoutInMillis = -1;
+
     ShardClassifyRequest() {
     }
 
-    ShardClassifyRequest(ShardRouting shardRouting, ClassifyRequest request) {
+    ShardClassifyRequest(ShardRouting shardRouting, ClassifyRequest request, long timeoutInMillis) {
         super(shardRouting.shardId(), request);
         this.request = request;
+        this.timeoutInMillis = timeoutInMillis;
     }
     
     public ClassifyRequest getEvaluateClassifierRequest() {
         return request;
     }
 
+    /**
+     * Returns how long the shard may take to train and evaluate, -1 if there is no timeout
+     */
+    public long timeoutInMillis() {
+        return timeoutInMillis;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         request.readFrom(in);
+        timeoutInMillis = in.readLong();
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         request.writeTo(out);
+        out.writeLong(timeoutInMillis);
     }
 }
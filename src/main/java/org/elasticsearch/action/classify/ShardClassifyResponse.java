@@ -32,28 +32,66 @@ import java.io.IOException;
 class ShardClassifyResponse extends BroadcastShardResponse {
 
     private ClassifyResult classifyResult;
+    private ClassifyProfile profile;
+    private boolean skipped;
 
     ShardClassifyResponse() {
     }
 
-    ShardClassifyResponse(ShardId shardId, ClassifyResult classifyResult) {
+    ShardClassifyResponse(ShardId shardId, ClassifyResult classifyResult, ClassifyProfile profile) {
         super(shardId);
         this.classifyResult = classifyResult;
+        this.profile = profile;
+    }
+
+    /**
+     * Returns the response of a shard without any doc to train on, which is left out of the average scores
+     */
+    static ShardClassifyResponse skipped(ShardId shardId, ClassifyProfile profile) {
+        ShardClassifyResponse response = new ShardClassifyResponse(shardId, new ClassifyResult(), profile);
+        response.skipped = true;
+        return response;
     }
 
     public ClassifyResult getClassifyResult() {
         return this.classifyResult;
     }
 
+    /**
+     * Returns the time spent in each phase on the shard, or null if the request was not profiled
+     */
+    public ClassifyProfile getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Returns true if the shard had no doc to train on, so that it was not evaluated
+     */
+    public boolean isSkipped() {
+        return this.skipped;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
-        this.classifyResult.readFrom(in);
+        classifyResult = new ClassifyResult();
+        classifyResult.readFrom(in);
+        if (in.readBoolean()) {
+            profile = ClassifyProfile.readClassifyProfile(in);
+        }
+        skipped = in.readBoolean();
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         classifyResult.writeTo(out);
+        if (profile == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            profile.writeTo(out);
+        }
+        out.writeBoolean(skipped);
     }
 }
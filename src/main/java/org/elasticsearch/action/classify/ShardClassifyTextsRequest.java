@@ -0,0 +1,69 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardRequest;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+class ShardClassifyTextsRequest extends BroadcastShardRequest {
+
+    private ClassifyTextsRequest request = new ClassifyTextsRequest();
+
+    // what is left of the timeout of the request when it is sent to the shard, -1 if there is none
+    private long timeoutInMillis = -1;
+
+    ShardClassifyTextsRequest() {
+    }
+
+    ShardClassifyTextsRequest(ShardRouting shardRouting, ClassifyTextsRequest request, long timeoutInMillis) {
+        super(shardRouting.shardId(), request);
+        this.request = request;
+        this.timeoutInMillis = timeoutInMillis;
+    }
+
+    public ClassifyTextsRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns how long the shard may take to train and evaluate all the texts, -1 if there is no timeout
+     */
+    public long timeoutInMillis() {
+        return timeoutInMillis;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        request.readFrom(in);
+        timeoutInMillis = in.readLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        request.writeTo(out);
+        out.writeLong(timeoutInMillis);
+    }
+}
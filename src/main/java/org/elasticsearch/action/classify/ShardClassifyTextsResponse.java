@@ -0,0 +1,90 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of each text on a shard, in the order of the texts
+ */
+class ShardClassifyTextsResponse extends BroadcastShardResponse {
+
+    private List<ClassifyResult> classifyResults;
+    private boolean skipped;
+
+    ShardClassifyTextsResponse() {
+    }
+
+    ShardClassifyTextsResponse(ShardId shardId, List<ClassifyResult> classifyResults) {
+        super(shardId);
+        this.classifyResults = classifyResults;
+    }
+
+    /**
+     * Returns the response of a shard without any doc to train on, which is left out of the average scores
+     */
+    static ShardClassifyTextsResponse skipped(ShardId shardId) {
+        ShardClassifyTextsResponse response = new ShardClassifyTextsResponse(shardId, Collections.<ClassifyResult>emptyList());
+        response.skipped = true;
+        return response;
+    }
+
+    public List<ClassifyResult> getClassifyResults() {
+        return classifyResults;
+    }
+
+    /**
+     * Returns true if the shard had no doc to train on, so that it was not evaluated
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        classifyResults = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ClassifyResult classifyResult = new ClassifyResult();
+            classifyResult.readFrom(in);
+            classifyResults.add(classifyResult);
+        }
+        skipped = in.readBoolean();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(classifyResults.size());
+        for (ClassifyResult classifyResult : classifyResults) {
+            classifyResult.writeTo(out);
+        }
+        out.writeBoolean(skipped);
+    }
+}
@@ -19,13 +19,25 @@
 
 package org.elasticsearch.action.classify;
 
+import org.apache.lucene.analysis.Analyzer;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ResourceNotFoundException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ShardOperationFailedException;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.DefaultShardOperationFailedException;
 import org.elasticsearch.action.support.broadcast.BroadcastShardOperationFailedException;
 import org.elasticsearch.action.support.broadcast.TransportBroadcastAction;
+import org.elasticsearch.action.termvectors.TermVectorsRequest;
+import org.elasticsearch.action.termvectors.TermVectorsResponse;
+import org.elasticsearch.action.termvectors.TransportTermVectorsAction;
+import org.elasticsearch.classification.AnalyzedText;
+import org.elasticsearch.classification.ClassificationService;
+import org.elasticsearch.classification.ClassificationTimeout;
+import org.elasticsearch.classification.FeatureHashingVectorizer;
+import org.elasticsearch.classification.ModelKey;
 import org.elasticsearch.classification.ShardClassificationService;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.cluster.ClusterState;
@@ -33,11 +45,14 @@ import org.elasticsearch.cluster.block.ClusterBlockException;
 import org.elasticsearch.cluster.block.ClusterBlockLevel;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.PlainShardIterator;
+import org.elasticsearch.cluster.routing.ShardIterator;
 import org.elasticsearch.cluster.routing.ShardRouting;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.math.MathUtils;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.IndexService;
-import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.search.controller.SearchPhaseController;
@@ -46,6 +61,10 @@ import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -57,24 +76,138 @@ import java.util.concurrent.atomic.AtomicReferenceArray;
 public class TransportClassifyAction extends TransportBroadcastAction<ClassifyRequest, ClassifyResponse, ShardClassifyRequest, ShardClassifyResponse> {
 
     private final IndicesService indicesService;
+    private final ClassificationService classificationService;
+    private final TransportTermVectorsAction termVectorsAction;
 
     @Inject
     public TransportClassifyAction(Settings settings, ThreadPool threadPool, ClusterService clusterService, TransportService transportService,
-                                   ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver, IndicesService indicesService, SearchPhaseController searchPhaseController) {
+                                   ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver, IndicesService indicesService,
+                                   ClassificationService classificationService, SearchPhaseController searchPhaseController,
+                                   TransportTermVectorsAction termVectorsAction) {
         super(settings, ClassifyAction.NAME, threadPool, clusterService, transportService, actionFilters, indexNameExpressionResolver,
                 ClassifyRequest.class, ShardClassifyRequest.class, ThreadPool.Names.SEARCH);
         this.indicesService = indicesService;
+        this.classificationService = classificationService;
+        this.termVectorsAction = termVectorsAction;
     }
 
     @Override
-    protected void doExecute(ClassifyRequest request, ActionListener<ClassifyResponse> listener) {
+    protected void doExecute(ClassifyRequest request, final ActionListener<ClassifyResponse> listener) {
+        final String index = request.trainIndex();
+        final long startNanos = System.nanoTime();
+        doExecuteAndRecord(request, new ActionListener<ClassifyResponse>() {
+            @Override
+            public void onResponse(ClassifyResponse response) {
+                classificationService.onRequest(index, System.nanoTime() - startNanos);
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                classificationService.onFailure(index);
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    private void doExecuteAndRecord(ClassifyRequest request, ActionListener<ClassifyResponse> listener) {
         request.nowInMillis = System.currentTimeMillis();
+        request.coordinatorProfile = new ClassifyProfile(request.profile());
+        if (request.doc() != null && request.analyzedText() == null) {
+            readDoc(request, listener);
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            analyzeText(request);
+            request.coordinatorProfile.phase("analyze", start);
+        } catch (Throwable t) {
+            listener.onFailure(t);
+            return;
+        }
         super.doExecute(request, listener);
     }
 
+    /**
+     * Reads the text fields of the doc to classify from its term vectors, which are read or generated on the shard
+     * holding the doc, so that neither the client nor the shards have to send or analyze its text.
+     */
+    private void readDoc(final ClassifyRequest request, final ActionListener<ClassifyResponse> listener) {
+        final ClassifyRequest.DocRef doc = request.doc();
+        TermVectorsRequest termVectors = new TermVectorsRequest(doc.index(), doc.type(), doc.id())
+                .routing(doc.routing())
+                .selectedFields(request.textFields())
+                .positions(true)
+                .offsets(false)
+                .payloads(false)
+                .fieldStatistics(false)
+                .termStatistics(false);
+        if (request.analyzer() != null) {
+            // the term vectors are then generated with the analyzer of the request rather than read
+            Map<String, String> perFieldAnalyzer = new HashMap<>();
+            for (String field : request.textFields()) {
+                perFieldAnalyzer.put(field, request.analyzer());
+            }
+            termVectors.perFieldAnalyzer(perFieldAnalyzer);
+        }
+        final long start = System.nanoTime();
+        termVectorsAction.execute(termVectors, new ActionListener<TermVectorsResponse>() {
+            @Override
+            public void onResponse(TermVectorsResponse response) {
+                try {
+                    if (!response.isExists()) {
+                        throw new ResourceNotFoundException("doc {} to classify does not exist", doc);
+                    }
+                    // tokens read from term vectors without positions are grouped by term, which makes wrong n-grams
+                    int ngrams = request.modelSettings().getAsInt("ngrams", FeatureHashingVectorizer.DEFAULT_NGRAMS);
+                    if (ngrams > 1 && !AnalyzedText.hasPositions(response.getFields(), request.textFields())) {
+                        throw new IllegalArgumentException("ngrams [" + ngrams + "] require the term vectors of doc " + doc
+                                + " to have positions");
+                    }
+                    request.analyzedText(AnalyzedText.fromTermVectors(response.getFields(), request.textFields()));
+                    request.coordinatorProfile.phase("term_vectors", start);
+                } catch (Throwable t) {
+                    listener.onFailure(t);
+                    return;
+                }
+                TransportClassifyAction.super.doExecute(request, listener);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    /**
+     * Analyzes the text once on the coordinating node so that each shard does not have to. This is only
+     * possible if this node holds the index, otherwise the text is analyzed on the shards.
+     */
+    private void analyzeText(ClassifyRequest request) throws IOException {
+        if (request.analyzedText() != null) {
+            return;
+        }
+        String[] concreteIndices = indexNameExpressionResolver.concreteIndices(clusterService.state(), request);
+        if (concreteIndices.length != 1) {
+            return;
+        }
+        IndexService indexService = indicesService.indexService(concreteIndices[0]);
+        if (indexService == null) {
+            return;
+        }
+        Map<String, Analyzer> analyzers = classificationService.resolveAnalyzers(indexService, request).perField();
+        request.analyzedText(AnalyzedText.analyze(request.evalOn(), analyzers));
+    }
+
     @Override
     protected ShardClassifyRequest newShardRequest(int numShards, ShardRouting shard, ClassifyRequest request) {
-        return new ShardClassifyRequest(shard, request);
+        // the shard only gets what is left of the timeout, so that a copy retried after a timeout gives up quickly
+        long timeoutInMillis = -1;
+        if (request.timeout() != null) {
+            timeoutInMillis = Math.max(0, request.timeout().millis() - (System.currentTimeMillis() - request.nowInMillis));
+        }
+        return new ShardClassifyRequest(shard, request, timeoutInMillis);
     }
 
     @Override
@@ -85,7 +218,63 @@ public class TransportClassifyAction extends TransportBroadcastAction<ClassifyRe
     @Override
     protected GroupShardsIterator shards(ClusterState clusterState, ClassifyRequest request, String[] concreteIndices) {
         Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, request.routing(), request.indices());
-        return clusterService.operationRouting().searchShards(clusterState, concreteIndices, routingMap, null);
+        return shards(clusterService, clusterState, concreteIndices, routingMap, request);
+    }
+
+    /**
+     * Returns the copies of each shard the request is sent to, in the order they are tried. Without a preference,
+     * the requests for a model which is kept on the shards go first to the same copy of each shard, which already
+     * trained it, and the other copies are only tried if it fails or rejects the request. This trades spreading
+     * the requests of a model over all the copies for training and caching it only once: a pinned copy serves all
+     * the requests for its model, so replicas do not add throughput for it. While the pinned copy is relocating, or
+     * no copy is started, the shard is routed as a search would be. The other models are trained for each request,
+     * so their requests are always routed as searches.
+     */
+    public static GroupShardsIterator shards(ClusterService clusterService, ClusterState clusterState, String[] concreteIndices,
+                                             Map<String, Set<String>> routingMap, ClassifyRequest request) {
+        GroupShardsIterator shards = clusterService.operationRouting().searchShards(clusterState, concreteIndices, routingMap,
+                request.preference());
+        String modelType = request.modelType() == null ? ShardClassificationService.DEFAULT_MODEL_TYPE : request.modelType();
+        if (request.preference() != null || !ShardClassificationService.isCachedModel(modelType)) {
+            return shards;
+        }
+        int modelHash = new ModelKey(modelType, request).preference().hashCode();
+        List<ShardIterator> pinned = new ArrayList<>(shards.size());
+        for (ShardIterator shardIt : shards) {
+            pinned.add(pin(shardIt, modelHash));
+        }
+        return new GroupShardsIterator(pinned);
+    }
+
+    /**
+     * Moves the copy the model is pinned to first, picked among the started copies by their node so that every
+     * coordinating node picks the same one. The copies are left in the order of a search if it is relocating.
+     */
+    private static ShardIterator pin(ShardIterator shardIt, int modelHash) {
+        List<ShardRouting> copies = new ArrayList<>();
+        List<ShardRouting> started = new ArrayList<>();
+        for (ShardRouting copy : shardIt.asUnordered()) {
+            copies.add(copy);
+            if (copy.started()) {
+                started.add(copy);
+            }
+        }
+        if (started.isEmpty()) {
+            return shardIt;
+        }
+        Collections.sort(started, new Comparator<ShardRouting>() {
+            @Override
+            public int compare(ShardRouting o1, ShardRouting o2) {
+                return o1.currentNodeId().compareTo(o2.currentNodeId());
+            }
+        });
+        ShardRouting pinned = started.get(MathUtils.mod(31 * modelHash + shardIt.shardId().id(), started.size()));
+        if (pinned.relocating()) {
+            return shardIt;
+        }
+        copies.remove(pinned);
+        copies.add(0, pinned);
+        return new PlainShardIterator(shardIt.shardId(), copies);
     }
 
     @Override
@@ -101,8 +290,12 @@ public class TransportClassifyAction extends TransportBroadcastAction<ClassifyRe
     @Override
     protected ClassifyResponse newResponse(ClassifyRequest request, AtomicReferenceArray shardsResponses, ClusterState clusterState) {
         int successfulShards = 0;
+        int rejectedShards = 0;
+        boolean timedOut = false;
         List<ShardOperationFailedException> shardFailures = new ArrayList<>();
         List<ClassifyResult> classifyResults = new ArrayList<>();
+        Map<ShardId, ClassifyProfile> shardProfiles = new LinkedHashMap<>();
+        long start = System.nanoTime();
 
         // collect the classify results of each shard
         for (int i = 0; i < shardsResponses.length(); i++) {
@@ -111,35 +304,59 @@ public class TransportClassifyAction extends TransportBroadcastAction<ClassifyRe
                 // simply ignore non active shards
             } else if (shardResponse instanceof BroadcastShardOperationFailedException) {
                 shardFailures.add(new DefaultShardOperationFailedException((BroadcastShardOperationFailedException) shardResponse));
+                Throwable cause = ExceptionsHelper.unwrapCause((Throwable) shardResponse);
+                if (cause instanceof EsRejectedExecutionException) {
+                    rejectedShards++;
+                } else if (cause instanceof ElasticsearchTimeoutException) {
+                    timedOut = true;
+                }
             } else {
                 ShardClassifyResponse resp = (ShardClassifyResponse) shardResponse;
-                classifyResults.add(resp.getClassifyResult());
+                if (!resp.isSkipped()) {
+                    // shards without any doc to train on would only lower the average scores
+                    classifyResults.add(resp.getClassifyResult());
+                }
+                if (resp.getProfile() != null) {
+                    shardProfiles.put(resp.getShardId(), resp.getProfile());
+                }
                 successfulShards++;
             }
         }
         
+        if (rejectedShards > 0) {
+            classificationService.onRejections(request.trainIndex(), rejectedShards);
+        }
+
         // and take the average of all scores accross shards
         ClassifyResult classifyResult = ClassifyResult.fromAverage(classifyResults);
 
-        return new ClassifyResponse(request.evalOn(), request.classField(), classifyResult, request.topN(), shardsResponses.length(),
-                successfulShards, shardFailures.size(), shardFailures, buildTookInMillis(request));
+        ClassifyResponse response = new ClassifyResponse(request.evalOn(), request.classField(), classifyResult, request.topN(),
+                shardsResponses.length(), successfulShards, shardFailures.size(), shardFailures, buildTookInMillis(request));
+        response.timedOut(timedOut);
+        if (request.profile()) {
+            ClassifyProfile coordinatorProfile = request.coordinatorProfile == null ? new ClassifyProfile(true) : request.coordinatorProfile;
+            coordinatorProfile.phase("merge", start);
+            response.profile(coordinatorProfile, shardProfiles);
+        }
+        return response;
     }
 
     @Override
     protected ShardClassifyResponse shardOperation(ShardClassifyRequest request) {
-        ShardId shardId = request.shardId();
-        IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
-        IndexShard indexShard = indexService.shardSafe(shardId.id());
-        
-        ShardClassificationService classificationService = new ShardClassificationService(indexShard);
+        ShardClassificationService shardService = classificationService.shardService(request.shardId());
 
+        ClassifyRequest classifyRequest = request.getEvaluateClassifierRequest();
+        ClassifyProfile profile = new ClassifyProfile(classifyRequest.profile());
         ClassifyResult classifyResult = null;
         try {
-            classifyResult = classificationService.evaluate(request.getEvaluateClassifierRequest());
+            classifyResult = shardService.evaluate(classifyRequest, profile, ClassificationTimeout.of(request.timeoutInMillis()));
+            if (classifyResult == null) {
+                return ShardClassifyResponse.skipped(request.shardId(), profile.enabled() ? profile : null);
+            }
         } catch (IOException e) {
             throw new ElasticsearchException("Unable to evaluate the model at the shard!", e);
         }
-        return new ShardClassifyResponse(request.shardId(), classifyResult);
+        return new ShardClassifyResponse(request.shardId(), classifyResult, profile.enabled() ? profile : null);
     }
 
     /**
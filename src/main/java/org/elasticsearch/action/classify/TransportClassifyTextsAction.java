@@ -0,0 +1,172 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.TransportBroadcastAction;
+import org.elasticsearch.classification.ClassificationService;
+import org.elasticsearch.classification.ClassificationTimeout;
+import org.elasticsearch.classification.ShardClassificationService;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Classifies several texts with one shard request per shard rather than one per text, so that each shard looks up,
+ * trains and checks the model once for all of them. The shards are picked as for a classify request, so that the
+ * texts of a model which is kept on the shards go to the copies which already trained it.
+ */
+public class TransportClassifyTextsAction extends TransportBroadcastAction<ClassifyTextsRequest, ClassifyTextsResponse, ShardClassifyTextsRequest, ShardClassifyTextsResponse> {
+
+    private final ClassificationService classificationService;
+
+    @Inject
+    public TransportClassifyTextsAction(Settings settings, ThreadPool threadPool, ClusterService clusterService, TransportService transportService,
+                                        ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
+                                        ClassificationService classificationService) {
+        super(settings, ClassifyTextsAction.NAME, threadPool, clusterService, transportService, actionFilters, indexNameExpressionResolver,
+                ClassifyTextsRequest.class, ShardClassifyTextsRequest.class, ThreadPool.Names.SEARCH);
+        this.classificationService = classificationService;
+    }
+
+    @Override
+    protected void doExecute(ClassifyTextsRequest request, ActionListener<ClassifyTextsResponse> listener) {
+        request.nowInMillis = System.currentTimeMillis();
+        super.doExecute(request, listener);
+    }
+
+    @Override
+    protected ShardClassifyTextsRequest newShardRequest(int numShards, ShardRouting shard, ClassifyTextsRequest request) {
+        // the shard only gets what is left of the timeout, so that a copy retried after a timeout gives up quickly
+        long timeoutInMillis = -1;
+        if (request.classify().timeout() != null) {
+            timeoutInMillis = Math.max(0, request.classify().timeout().millis() - (System.currentTimeMillis() - request.nowInMillis));
+        }
+        return new ShardClassifyTextsRequest(shard, request, timeoutInMillis);
+    }
+
+    @Override
+    protected ShardClassifyTextsResponse newShardResponse() {
+        return new ShardClassifyTextsResponse();
+    }
+
+    @Override
+    protected GroupShardsIterator shards(ClusterState clusterState, ClassifyTextsRequest request, String[] concreteIndices) {
+        ClassifyRequest classify = request.classify();
+        Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, classify.routing(), request.indices());
+        return TransportClassifyAction.shards(clusterService, clusterState, concreteIndices, routingMap, classify);
+    }
+
+    @Override
+    protected ClusterBlockException checkGlobalBlock(ClusterState state, ClassifyTextsRequest request) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.READ);
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(ClusterState state, ClassifyTextsRequest request, String[] concreteIndices) {
+        return state.blocks().indicesBlockedException(ClusterBlockLevel.READ, concreteIndices);
+    }
+
+    @Override
+    protected ClassifyTextsResponse newResponse(ClassifyTextsRequest request, AtomicReferenceArray shardsResponses, ClusterState clusterState) {
+        int successfulShards = 0;
+        int rejectedShards = 0;
+        boolean timedOut = false;
+        List<ShardOperationFailedException> shardFailures = new ArrayList<>();
+        List<ShardClassifyTextsResponse> evaluated = new ArrayList<>();
+
+        for (int i = 0; i < shardsResponses.length(); i++) {
+            Object shardResponse = shardsResponses.get(i);
+            if (shardResponse == null) {
+                // simply ignore non active shards
+            } else if (shardResponse instanceof BroadcastShardOperationFailedException) {
+                shardFailures.add(new DefaultShardOperationFailedException((BroadcastShardOperationFailedException) shardResponse));
+                Throwable cause = ExceptionsHelper.unwrapCause((Throwable) shardResponse);
+                if (cause instanceof EsRejectedExecutionException) {
+                    rejectedShards++;
+                } else if (cause instanceof ElasticsearchTimeoutException) {
+                    timedOut = true;
+                }
+            } else {
+                ShardClassifyTextsResponse resp = (ShardClassifyTextsResponse) shardResponse;
+                if (!resp.isSkipped()) {
+                    // shards without any doc to train on would only lower the average scores
+                    evaluated.add(resp);
+                }
+                successfulShards++;
+            }
+        }
+
+        if (rejectedShards > 0) {
+            classificationService.onRejections(request.classify().trainIndex(), rejectedShards);
+        }
+
+        // and take the average of the scores of each text accross shards
+        List<ClassifyResult> classifyResults = new ArrayList<>(request.texts().size());
+        for (int i = 0; i < request.texts().size(); i++) {
+            List<ClassifyResult> textResults = new ArrayList<>(evaluated.size());
+            for (ShardClassifyTextsResponse resp : evaluated) {
+                textResults.add(resp.getClassifyResults().get(i));
+            }
+            classifyResults.add(ClassifyResult.fromAverage(textResults));
+        }
+        return new ClassifyTextsResponse(classifyResults, timedOut, shardsResponses.length(), successfulShards, shardFailures.size(),
+                shardFailures, Math.max(1, System.currentTimeMillis() - request.nowInMillis));
+    }
+
+    @Override
+    protected ShardClassifyTextsResponse shardOperation(ShardClassifyTextsRequest request) {
+        ShardClassificationService shardService = classificationService.shardService(request.shardId());
+        ClassifyTextsRequest textsRequest = request.getRequest();
+        try {
+            List<ClassifyResult> classifyResults = shardService.evaluate(textsRequest.classify(), textsRequest.texts(),
+                    ClassificationTimeout.of(request.timeoutInMillis()));
+            if (classifyResults == null) {
+                return ShardClassifyTextsResponse.skipped(request.shardId());
+            }
+            return new ShardClassifyTextsResponse(request.shardId(), classifyResults);
+        } catch (IOException e) {
+            throw new ElasticsearchException("Unable to evaluate the model at the shard!", e);
+        }
+    }
+}
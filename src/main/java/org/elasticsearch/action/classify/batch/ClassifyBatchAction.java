@@ -0,0 +1,46 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.batch;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Classifies many texts with the same model, the results being written out as newline delimited JSON
+ */
+public class ClassifyBatchAction extends Action<ClassifyBatchRequest, ClassifyBatchResponse, ClassifyBatchRequestBuilder> {
+
+    public static final ClassifyBatchAction INSTANCE = new ClassifyBatchAction();
+    public static final String NAME = "indices:data/read/classify/batch";
+
+    private ClassifyBatchAction() {
+        super(NAME);
+    }
+
+    @Override
+    public ClassifyBatchResponse newResponse() {
+        return new ClassifyBatchResponse();
+    }
+
+    @Override
+    public ClassifyBatchRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new ClassifyBatchRequestBuilder(client, this);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.batch;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.action.classify.ClassifyTextsRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContent;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * A request to classify many texts with the same model. The model is defined as the body of a classify request
+ * without the text to classify.
+ * <p/>
+ *
+ * The body is newline delimited: the first line is the classify request, and each following line is an object
+ * with the <code>text</code> to classify.
+ */
+public class ClassifyBatchRequest extends ActionRequest<ClassifyBatchRequest> {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    public static final int TEXTS_PER_REQUEST = 64;
+
+    private String index;
+
+    private String type;
+
+    private Map<String, Object> classify;
+
+    private List<String> texts = new ArrayList<>();
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    ClassifyBatchRequest() {
+    }
+
+    public ClassifyBatchRequest(String index, String type) {
+        this.index = index;
+        this.type = type;
+    }
+
+    public String index() {
+        return index;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    /**
+     * Returns the body of the classify request each text is classified with
+     */
+    public Map<String, Object> classify() {
+        return classify;
+    }
+
+    public ClassifyBatchRequest classify(Map<String, Object> classify) {
+        this.classify = classify;
+        return this;
+    }
+
+    /**
+     * Returns the texts to classify, in the order of the results
+     */
+    public List<String> texts() {
+        return texts;
+    }
+
+    public ClassifyBatchRequest add(String text) {
+        texts.add(text);
+        return this;
+    }
+
+    /**
+     * Returns the number of requests of {@link #TEXTS_PER_REQUEST} texts classified at once
+     */
+    public int concurrency() {
+        return concurrency;
+    }
+
+    public ClassifyBatchRequest concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Returns the request classifying the texts from <code>from</code> inclusive to <code>to</code> exclusive
+     */
+    public ClassifyTextsRequest textsRequest(int from, int to) throws IOException {
+        ClassifyRequest request = new ClassifyRequest(index, type);
+        request.source(classify);
+        ClassifyTextsRequest textsRequest = new ClassifyTextsRequest(request);
+        for (String text : texts.subList(from, to)) {
+            textsRequest.add(text);
+        }
+        return textsRequest;
+    }
+
+    /**
+     * Parses the request.
+     * Each line is either in JSON, Smile or YAML format
+     *
+     * @param source the newline delimited request body
+     */
+    public ClassifyBatchRequest source(BytesReference source) {
+        int from = 0;
+        int length = source.length();
+        while (from < length) {
+            int end = from;
+            while (end < length && source.get(end) != '\n') {
+                end++;
+            }
+            if (end > from) {
+                parseLine(source.slice(from, end - from));
+            }
+            from = end + 1;
+        }
+        return this;
+    }
+
+    private void parseLine(BytesReference line) {
+        XContent xContent = XContentFactory.xContent(line);
+        Map<String, Object> map;
+        try (XContentParser parser = xContent.createParser(line)) {
+            map = parser.mapOrdered();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("failed to parse classify batch line", e);
+        }
+        if (map.isEmpty()) {
+            return;
+        }
+        if (classify == null) {
+            classify(map);
+        } else if (map.size() == 1 && map.get("text") != null) {
+            add(map.get("text").toString());
+        } else {
+            throw new IllegalArgumentException("malformed classify batch line, should only have a text, got " + map.keySet());
+        }
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (index == null) {
+            validationException = addValidationError("index on which to train the classifier is missing", validationException);
+        }
+        if (type == null) {
+            validationException = addValidationError("type on which to train the classifier is missing", validationException);
+        }
+        if (classify == null) {
+            validationException = addValidationError("classify request is missing", validationException);
+        } else if (classify.containsKey("text") || classify.containsKey("doc")) {
+            validationException = addValidationError("classify request should not have a text or a doc, they are given on the following lines", validationException);
+        }
+        if (texts.isEmpty()) {
+            validationException = addValidationError("no texts to classify", validationException);
+        }
+        if (concurrency <= 0) {
+            validationException = addValidationError("concurrency should be positive", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        index = in.readString();
+        type = in.readString();
+        classify = in.readMap();
+        int size = in.readVInt();
+        texts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            texts.add(in.readString());
+        }
+        concurrency = in.readVInt();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(index);
+        out.writeString(type);
+        out.writeMap(classify == null ? new HashMap<String, Object>() : classify);
+        out.writeVInt(texts.size());
+        for (String text : texts) {
+            out.writeString(text);
+        }
+        out.writeVInt(concurrency);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.batch;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+import java.util.Map;
+
+/**
+ * 
+ */
+public class ClassifyBatchRequestBuilder extends ActionRequestBuilder<ClassifyBatchRequest, ClassifyBatchResponse, ClassifyBatchRequestBuilder> {
+
+    public ClassifyBatchRequestBuilder(ElasticsearchClient client, ClassifyBatchAction action) {
+        super(client, action, new ClassifyBatchRequest());
+    }
+
+    public ClassifyBatchRequestBuilder(ElasticsearchClient client, ClassifyBatchAction action, String index, String type) {
+        super(client, action, new ClassifyBatchRequest(index, type));
+    }
+
+    public ClassifyBatchRequestBuilder setClassify(Map<String, Object> classify) {
+        request.classify(classify);
+        return this;
+    }
+
+    public ClassifyBatchRequestBuilder addText(String text) {
+        request.add(text);
+        return this;
+    }
+
+    public ClassifyBatchRequestBuilder setConcurrency(int concurrency) {
+        request.concurrency(concurrency);
+        return this;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.batch;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * The results of a batch, one line of JSON per text in the order of the texts. They are kept serialized rather
+ * than as classify responses, so that a large batch does not hold a response object per text.
+ */
+public class ClassifyBatchResponse extends ActionResponse {
+
+    private BytesReference results;
+    private int failed;
+    private long tookInMillis;
+
+    ClassifyBatchResponse() {
+    }
+
+    ClassifyBatchResponse(BytesReference results, int failed, long tookInMillis) {
+        this.results = results;
+        this.failed = failed;
+        this.tookInMillis = tookInMillis;
+    }
+
+    /**
+     * Returns the newline delimited results
+     */
+    public BytesReference getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the number of texts which failed to be classified, their lines having an error instead of scores
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        results = in.readBytesReference();
+        failed = in.readVInt();
+        tookInMillis = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeBytesReference(results);
+        out.writeVInt(failed);
+        out.writeVLong(tookInMillis);
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.batch;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.classify.ClassifyResult;
+import org.elasticsearch.action.classify.ClassifyTextsAction;
+import org.elasticsearch.action.classify.ClassifyTextsRequest;
+import org.elasticsearch.action.classify.ClassifyTextsResponse;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Classifies the texts of a batch in requests of {@link ClassifyBatchRequest#TEXTS_PER_REQUEST} texts, a bounded
+ * number of them at once, so that each shard trains and evaluates the model once per request rather than once per
+ * text. The results of each request are serialized as soon as its shard results are merged, in the order of the
+ * texts, rather than kept as a response per text.
+ * <p/>
+ *
+ * The response is not streamed: the texts and the lines of results of the whole batch are held on the coordinating
+ * node until the last text is classified. The memory of a batch is instead bounded by rejecting the batches of more
+ * than {@link #MAX_TEXTS} texts.
+ */
+public class TransportClassifyBatchAction extends HandledTransportAction<ClassifyBatchRequest, ClassifyBatchResponse> {
+
+    static final class Fields {
+        static final XContentBuilderString CLASS = new XContentBuilderString("class");
+        static final XContentBuilderString SCORES = new XContentBuilderString("scores");
+        static final XContentBuilderString TIMED_OUT = new XContentBuilderString("timed_out");
+        static final XContentBuilderString ERROR = new XContentBuilderString("error");
+    }
+
+    public static final String MAX_TEXTS = "classify.batch.max_texts";
+    public static final int DEFAULT_MAX_TEXTS = 10000;
+
+    // how far ahead of the first request not written yet the requests may be sent
+    private static final int WINDOW_PER_CONCURRENCY = 4;
+
+    private final Client client;
+    private final int maxTexts;
+
+    @Inject
+    public TransportClassifyBatchAction(Settings settings, ThreadPool threadPool, TransportService transportService, ActionFilters actionFilters,
+                                        IndexNameExpressionResolver indexNameExpressionResolver, Client client) {
+        super(settings, ClassifyBatchAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver,
+                ClassifyBatchRequest.class);
+        this.client = client;
+        this.maxTexts = settings.getAsInt(MAX_TEXTS, DEFAULT_MAX_TEXTS);
+    }
+
+    @Override
+    protected void doExecute(ClassifyBatchRequest request, ActionListener<ClassifyBatchResponse> listener) {
+        if (request.texts().size() > maxTexts) {
+            listener.onFailure(new IllegalArgumentException("batch of [" + request.texts().size() + "] texts is over the limit of ["
+                    + maxTexts + "] texts set with [" + MAX_TEXTS + "]"));
+            return;
+        }
+        new Batch(request, listener).start();
+    }
+
+    private class Batch {
+
+        private final ClassifyBatchRequest request;
+        private final ActionListener<ClassifyBatchResponse> listener;
+        private final long startMillis = System.currentTimeMillis();
+        private final int window;
+        private final int chunks;
+
+        // the state of the batch, guarded by this batch
+        private final BytesStreamOutput out = new BytesStreamOutput();
+        private final Map<Integer, BytesReference> pending = new HashMap<>();
+        private int next = 0;
+        private int written = 0;
+        private int inFlight = 0;
+        private int failed = 0;
+        // set once the listener was called, after which no request is sent and the responses still in flight are dropped
+        private boolean done = false;
+
+        Batch(ClassifyBatchRequest request, ActionListener<ClassifyBatchResponse> listener) {
+            this.request = request;
+            this.listener = listener;
+            this.window = request.concurrency() * WINDOW_PER_CONCURRENCY;
+            this.chunks = (request.texts().size() + ClassifyBatchRequest.TEXTS_PER_REQUEST - 1) / ClassifyBatchRequest.TEXTS_PER_REQUEST;
+        }
+
+        void start() {
+            List<Integer> toClassify;
+            synchronized (this) {
+                toClassify = nextChunks();
+            }
+            classify(toClassify);
+        }
+
+        /**
+         * Returns the requests which can be sent now, as long as they do not get too far ahead of the results
+         * written, so that the results waiting to be written stay bounded
+         */
+        private List<Integer> nextChunks() {
+            List<Integer> toClassify = new ArrayList<>();
+            while (!done && inFlight < request.concurrency() && next < chunks && next - written < window) {
+                toClassify.add(next++);
+                inFlight++;
+            }
+            return toClassify;
+        }
+
+        private void classify(List<Integer> toClassify) {
+            for (final int chunk : toClassify) {
+                int from = chunk * ClassifyBatchRequest.TEXTS_PER_REQUEST;
+                final int size = Math.min(ClassifyBatchRequest.TEXTS_PER_REQUEST, request.texts().size() - from);
+                try {
+                    final ClassifyTextsRequest textsRequest = request.textsRequest(from, from + size);
+                    client.execute(ClassifyTextsAction.INSTANCE, textsRequest, new ActionListener<ClassifyTextsResponse>() {
+                        @Override
+                        public void onResponse(ClassifyTextsResponse response) {
+                            if (response.getSuccessfulShards() == 0 && response.getFailedShards() > 0) {
+                                onFailedChunk(chunk, size, response.getShardFailures()[0].reason());
+                                return;
+                            }
+                            BytesReference lines;
+                            try {
+                                lines = resultLines(response, textsRequest.classify().classField(), textsRequest.classify().topN());
+                            } catch (Throwable t) {
+                                onFailure(t);
+                                return;
+                            }
+                            onResult(chunk, lines, 0);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            onFailedChunk(chunk, size, ExceptionsHelper.detailedMessage(e));
+                        }
+                    });
+                } catch (Throwable t) {
+                    onFailedChunk(chunk, size, ExceptionsHelper.detailedMessage(t));
+                }
+            }
+        }
+
+        /**
+         * Writes an error line for each text of a request which failed, the other requests go on
+         */
+        private void onFailedChunk(int chunk, int size, String error) {
+            BytesReference lines;
+            try {
+                lines = errorLines(error, size);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            onResult(chunk, lines, size);
+        }
+
+        private void onResult(int chunk, BytesReference lines, int failures) {
+            List<Integer> toClassify;
+            ClassifyBatchResponse response = null;
+            IOException failure = null;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                inFlight--;
+                failed += failures;
+                pending.put(chunk, lines);
+                try {
+                    BytesReference ready;
+                    while ((ready = pending.remove(written)) != null) {
+                        ready.writeTo(out);
+                        written++;
+                    }
+                } catch (IOException e) {
+                    done = true;
+                    pending.clear();
+                    failure = e;
+                }
+                toClassify = nextChunks();
+                if (written == chunks) {
+                    done = true;
+                    response = new ClassifyBatchResponse(out.bytes(), failed, Math.max(1, System.currentTimeMillis() - startMillis));
+                }
+            }
+            if (failure != null) {
+                listener.onFailure(failure);
+            } else if (response != null) {
+                listener.onResponse(response);
+            } else {
+                classify(toClassify);
+            }
+        }
+
+        /**
+         * Fails the whole batch, unless it is already done
+         */
+        private void fail(Throwable e) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                pending.clear();
+            }
+            listener.onFailure(e);
+        }
+    }
+
+    private static BytesReference resultLines(ClassifyTextsResponse response, String classField, int topN) throws IOException {
+        BytesStreamOutput lines = new BytesStreamOutput();
+        for (ClassifyResult classifyResult : response.getClassifyResults()) {
+            XContentBuilder builder = jsonBuilder().startObject();
+            builder.field(Fields.CLASS, classField);
+            if (response.isTimedOut()) {
+                builder.field(Fields.TIMED_OUT, true);
+            }
+            builder.startArray(Fields.SCORES);
+            classifyResult.setTopN(topN);
+            classifyResult.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            builder.endArray();
+            builder.endObject().bytes().writeTo(lines);
+            lines.writeByte((byte) '\n');
+        }
+        return lines.bytes();
+    }
+
+    private static BytesReference errorLines(String error, int size) throws IOException {
+        BytesReference line = jsonBuilder().startObject()
+                .field(Fields.ERROR, error)
+                .endObject().bytes();
+        BytesStreamOutput lines = new BytesStreamOutput();
+        for (int i = 0; i < size; i++) {
+            line.writeTo(lines);
+            lines.writeByte((byte) '\n');
+        }
+        return lines.bytes();
+    }
+}
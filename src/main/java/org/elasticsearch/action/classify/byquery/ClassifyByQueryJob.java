@@ -0,0 +1,371 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.classify.ClassifyTextsAction;
+import org.elasticsearch.action.classify.ClassifyTextsRequest;
+import org.elasticsearch.action.classify.ClassifyTextsResponse;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.classification.SourceText;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.CountDown;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Iterates the docs matching the query of a {@link ClassifyByQueryRequest} with a scroll, and for each batch of
+ * docs classifies their text with the model of the request and bulk updates them with the predicted class. The
+ * docs of a batch are classified with one request per index and type, so that each shard evaluates all of them
+ * against the same model, and the next batch is only fetched once the previous one was updated, after a delay if
+ * the requests per second would otherwise be exceeded.
+ * <p/>
+ *
+ * The job is cancelled between two batches. The model is frozen once trained unless the request said otherwise,
+ * since the updates change the index and would otherwise train the model again on every refresh.
+ */
+public class ClassifyByQueryJob {
+
+    private static final ESLogger logger = Loggers.getLogger(ClassifyByQueryJob.class);
+
+    private final String id;
+    private final ClassifyByQueryRequest request;
+    private final Client client;
+    private final ThreadPool threadPool;
+    private final ActionListener<ClassifyByQueryStatus> listener;
+
+    private final long startTimeInMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final String[] textFields;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    private volatile long total = -1;
+    private volatile boolean cancelled = false;
+    private volatile ClassifyByQueryStatus.State state = ClassifyByQueryStatus.State.RUNNING;
+    private volatile String reason;
+    private volatile long tookInMillis = -1;
+
+    ClassifyByQueryJob(String id, ClassifyByQueryRequest request, Client client, ThreadPool threadPool,
+                       ActionListener<ClassifyByQueryStatus> listener) throws IOException {
+        this.id = id;
+        this.request = request;
+        this.client = client;
+        this.threadPool = threadPool;
+        this.listener = listener;
+        this.textFields = request.classifyRequest(request.index(), request.type()).textFields();
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public boolean isDone() {
+        return state != ClassifyByQueryStatus.State.RUNNING;
+    }
+
+    /**
+     * Cancels the job, which stops before the next batch
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public ClassifyByQueryStatus status() {
+        long took = tookInMillis;
+        if (took == -1) {
+            took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+        return new ClassifyByQueryStatus(id, request.index(), request.type(), state, total, processed.get(), updated.get(),
+                skipped.get(), failures.get(), batches.get(), TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()),
+                startTimeInMillis, took, reason);
+    }
+
+    void start() {
+        SearchRequestBuilder search = client.prepareSearch(request.index())
+                .setScroll(request.scroll())
+                .setSize(request.batchSize())
+                .setVersion(true)
+                .addFields("_routing", "_parent")
+                .setFetchSource(sourceFields(), null);
+        if (request.type() != null) {
+            search.setTypes(request.type());
+        }
+        if (request.query() != null) {
+            search.setQuery(request.query());
+        }
+        search.execute(new BatchListener());
+    }
+
+    private String[] sourceFields() {
+        String[] fields = new String[textFields.length + 1];
+        System.arraycopy(textFields, 0, fields, 0, textFields.length);
+        fields[textFields.length] = request.targetField();
+        return fields;
+    }
+
+    private class BatchListener implements ActionListener<SearchResponse> {
+
+        @Override
+        public void onResponse(SearchResponse response) {
+            total = response.getHits().totalHits();
+            SearchHit[] hits = response.getHits().hits();
+            if (cancelled) {
+                finish(response.getScrollId(), ClassifyByQueryStatus.State.CANCELLED, null);
+            } else if (hits.length == 0) {
+                finish(response.getScrollId(), ClassifyByQueryStatus.State.COMPLETED, null);
+            } else {
+                try {
+                    new Batch(response.getScrollId(), hits).start();
+                } catch (Throwable t) {
+                    onFailure(t);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+            finish(null, ClassifyByQueryStatus.State.FAILED, e);
+        }
+    }
+
+    /**
+     * The docs of a scroll response, classified with a request per index and type and then updated at once
+     */
+    private class Batch {
+
+        private final String scrollId;
+        private final long batchStartNanos = System.nanoTime();
+        private final List<SearchHit> hits = new ArrayList<>();
+        private final List<String> texts = new ArrayList<>();
+        // the positions of the hits of each index and type
+        private final List<List<Integer>> groups;
+        private final ClassificationResult[] results;
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final CountDown pending;
+        private final int size;
+
+        Batch(String scrollId, SearchHit[] hits) {
+            this.scrollId = scrollId;
+            this.size = hits.length;
+            Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (SearchHit hit : hits) {
+                Map<String, Object> source = hit.getSource();
+                String text = source == null ? null : SourceText.extract(source, textFields);
+                if (text == null || (!request.overwrite() && source.containsKey(request.targetField()))) {
+                    skipped.incrementAndGet();
+                } else {
+                    String key = hit.getIndex() + "/" + hit.getType();
+                    List<Integer> group = groups.get(key);
+                    if (group == null) {
+                        group = new ArrayList<>();
+                        groups.put(key, group);
+                    }
+                    group.add(this.hits.size());
+                    this.hits.add(hit);
+                    this.texts.add(text);
+                }
+            }
+            this.groups = new ArrayList<>(groups.values());
+            this.results = new ClassificationResult[this.hits.size()];
+            this.pending = new CountDown(Math.max(1, this.groups.size()));
+        }
+
+        void start() {
+            batches.incrementAndGet();
+            if (hits.isEmpty()) {
+                next();
+                return;
+            }
+            for (int i = 0; i < Math.min(request.concurrency(), groups.size()); i++) {
+                classifyNext();
+            }
+        }
+
+        private void classifyNext() {
+            final int i = cursor.getAndIncrement();
+            if (i >= groups.size()) {
+                return;
+            }
+            final List<Integer> group = groups.get(i);
+            SearchHit first = hits.get(group.get(0));
+            ClassifyTextsRequest classify;
+            try {
+                classify = new ClassifyTextsRequest(request.classifyRequest(first.getIndex(), first.getType()));
+                for (int position : group) {
+                    classify.add(texts.get(position));
+                }
+            } catch (Throwable t) {
+                onClassified(t);
+                return;
+            }
+            client.execute(ClassifyTextsAction.INSTANCE, classify, new ActionListener<ClassifyTextsResponse>() {
+                @Override
+                public void onResponse(ClassifyTextsResponse response) {
+                    for (int j = 0; j < group.size(); j++) {
+                        results[group.get(j)] = response.getClassifyResults().get(j).best();
+                    }
+                    onClassified(null);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    onClassified(e);
+                }
+            });
+        }
+
+        private void onClassified(Throwable failure) {
+            if (failure != null) {
+                logger.debug("[{}] failed to classify docs", failure, id);
+            }
+            if (pending.countDown()) {
+                update();
+            } else {
+                classifyNext();
+            }
+        }
+
+        private void update() {
+            BulkRequestBuilder bulk = client.prepareBulk();
+            for (int i = 0; i < hits.size(); i++) {
+                if (results[i] == null) {
+                    failures.incrementAndGet();
+                    continue;
+                }
+                SearchHit hit = hits.get(i);
+                Map<String, Object> doc = new HashMap<>();
+                doc.put(request.targetField(), results[i].getAssignedClass());
+                doc.put(request.scoreField(), results[i].getScore());
+                // the doc is not updated if it changed since it was fetched
+                UpdateRequest update = new UpdateRequest(hit.getIndex(), hit.getType(), hit.getId()).doc(doc).version(hit.getVersion());
+                SearchHitField routing = hit.field("_routing");
+                if (routing != null) {
+                    update.routing(routing.<String>getValue());
+                }
+                SearchHitField parent = hit.field("_parent");
+                if (parent != null) {
+                    update.parent(parent.<String>getValue());
+                }
+                bulk.add(update);
+            }
+            if (bulk.numberOfActions() == 0) {
+                next();
+                return;
+            }
+            bulk.execute(new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    for (BulkItemResponse item : response) {
+                        if (item.isFailed()) {
+                            failures.incrementAndGet();
+                        } else {
+                            updated.incrementAndGet();
+                        }
+                    }
+                    next();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    finish(scrollId, ClassifyByQueryStatus.State.FAILED, e);
+                }
+            });
+        }
+
+        /**
+         * Fetches the next batch, after a delay if the docs are classified faster than the requests per second
+         */
+        private void next() {
+            processed.addAndGet(size);
+            Runnable next = new Runnable() {
+                @Override
+                public void run() {
+                    if (cancelled) {
+                        finish(scrollId, ClassifyByQueryStatus.State.CANCELLED, null);
+                    } else {
+                        client.prepareSearchScroll(scrollId).setScroll(request.scroll()).execute(new BatchListener());
+                    }
+                }
+            };
+            long delayNanos = 0;
+            if (request.requestsPerSecond() > 0) {
+                long budgetNanos = (long) (TimeUnit.SECONDS.toNanos(1) * (size / request.requestsPerSecond()));
+                delayNanos = budgetNanos - (System.nanoTime() - batchStartNanos);
+            }
+            if (delayNanos > 0) {
+                throttledNanos.addAndGet(delayNanos);
+                threadPool.schedule(TimeValue.timeValueNanos(delayNanos), ThreadPool.Names.GENERIC, next);
+            } else {
+                next.run();
+            }
+        }
+    }
+
+    private void finish(String scrollId, ClassifyByQueryStatus.State state, Throwable failure) {
+        if (scrollId != null) {
+            client.prepareClearScroll().addScrollId(scrollId).execute(new ActionListener<ClearScrollResponse>() {
+                @Override
+                public void onResponse(ClearScrollResponse response) {
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    logger.debug("[{}] failed to clear the scroll", e, id);
+                }
+            });
+        }
+        if (failure != null) {
+            logger.warn("[{}] classify by query failed", failure, id);
+            reason = ExceptionsHelper.detailedMessage(failure);
+        }
+        tookInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        this.state = state;
+        listener.onResponse(status());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * A request to get the status of the classify by query jobs of nodes, and optionally to cancel them
+ */
+public class ClassifyByQueryJobsRequest extends BaseNodesRequest<ClassifyByQueryJobsRequest> {
+
+    private String[] jobIds = Strings.EMPTY_ARRAY;
+
+    private boolean cancel = false;
+
+    public ClassifyByQueryJobsRequest() {
+    }
+
+    /**
+     * Get the jobs of the given nodes, all nodes if none are given
+     */
+    public ClassifyByQueryJobsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+
+    /**
+     * Returns the ids of the jobs, all jobs if empty
+     */
+    public String[] jobIds() {
+        return jobIds;
+    }
+
+    public ClassifyByQueryJobsRequest jobIds(String... jobIds) {
+        this.jobIds = jobIds;
+        return this;
+    }
+
+    /**
+     * Returns true if the jobs which are still running should be cancelled
+     */
+    public boolean cancel() {
+        return cancel;
+    }
+
+    public ClassifyByQueryJobsRequest cancel(boolean cancel) {
+        this.cancel = cancel;
+        return this;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        jobIds = in.readStringArray();
+        cancel = in.readBoolean();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeStringArray(jobIds);
+        out.writeBoolean(cancel);
+    }
+}
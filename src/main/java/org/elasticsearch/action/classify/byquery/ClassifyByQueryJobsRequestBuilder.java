@@ -0,0 +1,51 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * 
+ */
+public class ClassifyByQueryJobsRequestBuilder extends NodesOperationRequestBuilder<ClassifyByQueryJobsRequest, ClassifyByQueryJobsResponse,
+        ClassifyByQueryJobsRequestBuilder> {
+
+    public ClassifyByQueryJobsRequestBuilder(ElasticsearchClient client, ClassifyByQueryJobsAction action) {
+        super(client, action, new ClassifyByQueryJobsRequest());
+    }
+
+    /**
+     * Sets the ids of the jobs, all jobs if none are given
+     */
+    public ClassifyByQueryJobsRequestBuilder setJobIds(String... jobIds) {
+        request.jobIds(jobIds);
+        return this;
+    }
+
+    /**
+     * Sets whether the jobs which are still running should be cancelled
+     */
+    public ClassifyByQueryJobsRequestBuilder setCancel(boolean cancel) {
+        request.cancel(cancel);
+        return this;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The status of the classify by query jobs of each node
+ */
+public class ClassifyByQueryJobsResponse extends BaseNodesResponse<NodeClassifyByQueryJobs> implements ToXContent {
+
+    static final class Fields {
+        static final XContentBuilderString CLUSTER_NAME = new XContentBuilderString("cluster_name");
+        static final XContentBuilderString JOBS = new XContentBuilderString("jobs");
+    }
+
+    ClassifyByQueryJobsResponse() {
+    }
+
+    public ClassifyByQueryJobsResponse(ClusterName clusterName, NodeClassifyByQueryJobs[] nodes) {
+        super(clusterName, nodes);
+    }
+
+    /**
+     * Returns the jobs of all nodes
+     */
+    public List<ClassifyByQueryStatus> getJobs() {
+        List<ClassifyByQueryStatus> jobs = new ArrayList<>();
+        for (NodeClassifyByQueryJobs node : nodes) {
+            jobs.addAll(node.getJobs());
+        }
+        return jobs;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        nodes = new NodeClassifyByQueryJobs[in.readVInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NodeClassifyByQueryJobs.readNodeClassifyByQueryJobs(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(nodes.length);
+        for (NodeClassifyByQueryJobs node : nodes) {
+            node.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.CLUSTER_NAME, getClusterName().value());
+        builder.startArray(Fields.JOBS);
+        for (ClassifyByQueryStatus job : getJobs()) {
+            builder.startObject();
+            job.toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+        return builder;
+    }
+}
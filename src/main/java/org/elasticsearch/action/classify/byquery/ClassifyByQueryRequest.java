@@ -0,0 +1,364 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * A request to classify the docs of an index matching a query, and to update them with the predicted class and
+ * its score. The model is defined as the body of a classify request without the text to classify.
+ */
+public class ClassifyByQueryRequest extends ActionRequest<ClassifyByQueryRequest> {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final TimeValue DEFAULT_SCROLL = TimeValue.timeValueMinutes(5);
+
+    private String index;
+
+    private String type;
+
+    private BytesReference query;
+
+    private Map<String, Object> classify;
+
+    private String targetField;
+
+    private String scoreField;
+
+    private boolean overwrite = false;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private float requestsPerSecond = -1;
+
+    private TimeValue scroll = DEFAULT_SCROLL;
+
+    private boolean waitForCompletion = false;
+
+    ClassifyByQueryRequest() {
+    }
+
+    /**
+     * Classifies the docs of the given index and type, all types if the type is null
+     */
+    public ClassifyByQueryRequest(String index, String type) {
+        this.index = index;
+        this.type = type;
+    }
+
+    public String index() {
+        return index;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    /**
+     * Returns the query the docs to classify should match, all docs if null
+     */
+    public BytesReference query() {
+        return query;
+    }
+
+    public ClassifyByQueryRequest query(BytesReference query) {
+        this.query = query;
+        return this;
+    }
+
+    public ClassifyByQueryRequest query(XContentBuilder query) {
+        return query(query.bytes());
+    }
+
+    /**
+     * Returns the body of the classify request each doc is classified with
+     */
+    public Map<String, Object> classify() {
+        return classify;
+    }
+
+    public ClassifyByQueryRequest classify(Map<String, Object> classify) {
+        this.classify = classify;
+        return this;
+    }
+
+    /**
+     * Returns the classify request defining the model of the docs of the given index and type, without their text
+     */
+    public ClassifyRequest classifyRequest(String index, String type) throws IOException {
+        ClassifyRequest request = new ClassifyRequest(index, type);
+        request.source(classify);
+        // the updates change the index, which would otherwise train the model again on every refresh
+        if (request.modelSettings().get("frozen") == null) {
+            request.modelSettings(Settings.settingsBuilder().put(request.modelSettings()).put("frozen", true));
+        }
+        return request;
+    }
+
+    /**
+     * Returns the field the predicted class is written to, the class field suffixed by <code>_predicted</code> by default
+     */
+    public String targetField() {
+        if (targetField == null && classify != null && classify.get("class") != null) {
+            return classify.get("class") + "_predicted";
+        }
+        return targetField;
+    }
+
+    public ClassifyByQueryRequest targetField(String targetField) {
+        this.targetField = targetField;
+        return this;
+    }
+
+    /**
+     * Returns the field the score of the predicted class is written to, the target field suffixed by
+     * <code>_score</code> by default
+     */
+    public String scoreField() {
+        if (scoreField == null && targetField() != null) {
+            return targetField() + "_score";
+        }
+        return scoreField;
+    }
+
+    public ClassifyByQueryRequest scoreField(String scoreField) {
+        this.scoreField = scoreField;
+        return this;
+    }
+
+    /**
+     * Returns true if docs which already have the target field are classified again
+     */
+    public boolean overwrite() {
+        return overwrite;
+    }
+
+    public ClassifyByQueryRequest overwrite(boolean overwrite) {
+        this.overwrite = overwrite;
+        return this;
+    }
+
+    /**
+     * Returns the number of docs fetched with each scroll request and updated with each bulk request
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public ClassifyByQueryRequest batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Returns the number of requests classifying the docs of a batch of different indices or types at once
+     */
+    public int concurrency() {
+        return concurrency;
+    }
+
+    public ClassifyByQueryRequest concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Returns the number of docs to classify per second, unlimited if not positive
+     */
+    public float requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public ClassifyByQueryRequest requestsPerSecond(float requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    /**
+     * Returns how long the scroll is kept alive between two batches
+     */
+    public TimeValue scroll() {
+        return scroll;
+    }
+
+    public ClassifyByQueryRequest scroll(TimeValue scroll) {
+        this.scroll = scroll;
+        return this;
+    }
+
+    /**
+     * Returns true if the response is only sent once all docs were classified, otherwise it is sent as soon as
+     * the job started and the job is followed with the classify by query jobs API
+     */
+    public boolean waitForCompletion() {
+        return waitForCompletion;
+    }
+
+    public ClassifyByQueryRequest waitForCompletion(boolean waitForCompletion) {
+        this.waitForCompletion = waitForCompletion;
+        return this;
+    }
+
+    /**
+     * Parses the request.
+     *
+     * @param source the request body
+     */
+    public ClassifyByQueryRequest source(Map source) throws IOException {
+        Map<String, Object> sourceMap = source;
+        for (Map.Entry<String, Object> entry : sourceMap.entrySet()) {
+            String name = entry.getKey();
+            if (name.equals("query")) {
+                if (!(entry.getValue() instanceof Map)) {
+                    throw new IllegalArgumentException("malformed query, should include an inner object");
+                }
+                query(XContentFactory.jsonBuilder().map((Map<String, Object>) entry.getValue()));
+            } else if (name.equals("classify")) {
+                if (!(entry.getValue() instanceof Map)) {
+                    throw new IllegalArgumentException("malformed classify section, should include an inner object");
+                }
+                classify((Map<String, Object>) entry.getValue());
+            } else if (name.equals("target_field")) {
+                targetField(entry.getValue().toString());
+            } else if (name.equals("score_field")) {
+                scoreField(entry.getValue().toString());
+            } else if (name.equals("overwrite")) {
+                overwrite(XContentMapValues.nodeBooleanValue(entry.getValue()));
+            } else if (name.equals("batch_size")) {
+                batchSize(XContentMapValues.nodeIntegerValue(entry.getValue()));
+            } else if (name.equals("concurrency")) {
+                concurrency(XContentMapValues.nodeIntegerValue(entry.getValue()));
+            } else if (name.equals("requests_per_second")) {
+                requestsPerSecond(XContentMapValues.nodeFloatValue(entry.getValue()));
+            } else if (name.equals("scroll")) {
+                scroll(TimeValue.parseTimeValue(entry.getValue().toString(), null, getClass().getSimpleName() + ".scroll"));
+            } else {
+                throw new IllegalArgumentException("unknown parameter [" + name + "]");
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Parses the request.
+     * JSON, Smile and YAML formats are supported
+     *
+     * @param source the request body
+     */
+    public ClassifyByQueryRequest source(BytesReference source) {
+        try (XContentParser parser = XContentFactory.xContent(source).createParser(source)) {
+            return source(parser.mapOrdered());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("failed to parse classify by query source", e);
+        }
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = null;
+        if (index == null) {
+            validationException = addValidationError("index of the docs to classify is missing", validationException);
+        }
+        if (classify == null) {
+            validationException = addValidationError("classify section is missing", validationException);
+        } else {
+            if (classify.containsKey("text")) {
+                validationException = addValidationError("classify section should not have a text, it is taken from each doc", validationException);
+            }
+            try {
+                ClassifyRequest request = new ClassifyRequest(index, type).source(classify);
+                if (request.textFields() == null || request.textFields().length == 0 || request.classField() == null) {
+                    validationException = addValidationError("classify section should have the text fields and the class field", validationException);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                validationException = addValidationError("malformed classify section: " + e.getMessage(), validationException);
+            }
+        }
+        if (batchSize <= 0) {
+            validationException = addValidationError("batch size should be positive", validationException);
+        }
+        if (concurrency <= 0) {
+            validationException = addValidationError("concurrency should be positive", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        index = in.readString();
+        type = in.readOptionalString();
+        if (in.readBoolean()) {
+            query = in.readBytesReference();
+        }
+        classify = in.readMap();
+        targetField = in.readOptionalString();
+        scoreField = in.readOptionalString();
+        overwrite = in.readBoolean();
+        batchSize = in.readVInt();
+        concurrency = in.readVInt();
+        requestsPerSecond = in.readFloat();
+        scroll = TimeValue.readTimeValue(in);
+        waitForCompletion = in.readBoolean();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(index);
+        out.writeOptionalString(type);
+        if (query == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeBytesReference(query);
+        }
+        out.writeMap(classify == null ? new HashMap<String, Object>() : classify);
+        out.writeOptionalString(targetField);
+        out.writeOptionalString(scoreField);
+        out.writeBoolean(overwrite);
+        out.writeVInt(batchSize);
+        out.writeVInt(concurrency);
+        out.writeFloat(requestsPerSecond);
+        scroll.writeTo(out);
+        out.writeBoolean(waitForCompletion);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.util.Map;
+
+/**
+ * 
+ */
+public class ClassifyByQueryRequestBuilder extends ActionRequestBuilder<ClassifyByQueryRequest, ClassifyByQueryResponse, ClassifyByQueryRequestBuilder> {
+
+    public ClassifyByQueryRequestBuilder(ElasticsearchClient client, ClassifyByQueryAction action) {
+        super(client, action, new ClassifyByQueryRequest());
+    }
+
+    public ClassifyByQueryRequestBuilder(ElasticsearchClient client, ClassifyByQueryAction action, String index, String type) {
+        super(client, action, new ClassifyByQueryRequest(index, type));
+    }
+
+    public ClassifyByQueryRequestBuilder setQuery(XContentBuilder query) {
+        request.query(query);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setClassify(Map<String, Object> classify) {
+        request.classify(classify);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setTargetField(String targetField) {
+        request.targetField(targetField);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setScoreField(String scoreField) {
+        request.scoreField(scoreField);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setOverwrite(boolean overwrite) {
+        request.overwrite(overwrite);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setBatchSize(int batchSize) {
+        request.batchSize(batchSize);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setConcurrency(int concurrency) {
+        request.concurrency(concurrency);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setRequestsPerSecond(float requestsPerSecond) {
+        request.requestsPerSecond(requestsPerSecond);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setScroll(TimeValue scroll) {
+        request.scroll(scroll);
+        return this;
+    }
+
+    public ClassifyByQueryRequestBuilder setWaitForCompletion(boolean waitForCompletion) {
+        request.waitForCompletion(waitForCompletion);
+        return this;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The progress of a classify by query job
+ */
+public class ClassifyByQueryStatus implements Streamable, ToXContent {
+
+    public enum State {
+        RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    static final class Fields {
+        static final XContentBuilderString ID = new XContentBuilderString("id");
+        static final XContentBuilderString INDEX = new XContentBuilderString("index");
+        static final XContentBuilderString TYPE = new XContentBuilderString("type");
+        static final XContentBuilderString STATE = new XContentBuilderString("state");
+        static final XContentBuilderString TOTAL = new XContentBuilderString("total");
+        static final XContentBuilderString PROCESSED = new XContentBuilderString("processed");
+        static final XContentBuilderString UPDATED = new XContentBuilderString("updated");
+        static final XContentBuilderString SKIPPED = new XContentBuilderString("skipped");
+        static final XContentBuilderString FAILURES = new XContentBuilderString("failures");
+        static final XContentBuilderString BATCHES = new XContentBuilderString("batches");
+        static final XContentBuilderString THROTTLED = new XContentBuilderString("throttled");
+        static final XContentBuilderString THROTTLED_IN_MILLIS = new XContentBuilderString("throttled_in_millis");
+        static final XContentBuilderString START_TIME_IN_MILLIS = new XContentBuilderString("start_time_in_millis");
+        static final XContentBuilderString TOOK = new XContentBuilderString("took");
+        static final XContentBuilderString REASON = new XContentBuilderString("reason");
+    }
+
+    private String id;
+    private String index;
+    private String type;
+    private State state;
+    private long total;
+    private long processed;
+    private long updated;
+    private long skipped;
+    private long failures;
+    private long batches;
+    private long throttledInMillis;
+    private long startTimeInMillis;
+    private long tookInMillis;
+    private String reason;
+
+    ClassifyByQueryStatus() {
+    }
+
+    ClassifyByQueryStatus(String id, String index, String type, State state, long total, long processed, long updated, long skipped,
+                          long failures, long batches, long throttledInMillis, long startTimeInMillis, long tookInMillis, String reason) {
+        this.id = id;
+        this.index = index;
+        this.type = type;
+        this.state = state;
+        this.total = total;
+        this.processed = processed;
+        this.updated = updated;
+        this.skipped = skipped;
+        this.failures = failures;
+        this.batches = batches;
+        this.throttledInMillis = throttledInMillis;
+        this.startTimeInMillis = startTimeInMillis;
+        this.tookInMillis = tookInMillis;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the id of the job, prefixed by the id of the node it runs on
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of docs matching the query, -1 until the first batch was fetched
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of docs fetched so far, whether they were updated, skipped or failed
+     */
+    public long getProcessed() {
+        return processed;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Returns the number of docs which had no text to classify or already had a predicted class
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns the number of docs which failed to be classified or updated
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * Returns the time spent waiting between batches to honor the requests per second
+     */
+    public long getThrottledInMillis() {
+        return throttledInMillis;
+    }
+
+    public long getStartTimeInMillis() {
+        return startTimeInMillis;
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+    /**
+     * Returns why the job failed, null unless it failed
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public static ClassifyByQueryStatus readClassifyByQueryStatus(StreamInput in) throws IOException {
+        ClassifyByQueryStatus status = new ClassifyByQueryStatus();
+        status.readFrom(in);
+        return status;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        id = in.readString();
+        index = in.readString();
+        type = in.readOptionalString();
+        state = State.values()[in.readVInt()];
+        total = in.readLong();
+        processed = in.readVLong();
+        updated = in.readVLong();
+        skipped = in.readVLong();
+        failures = in.readVLong();
+        batches = in.readVLong();
+        throttledInMillis = in.readVLong();
+        startTimeInMillis = in.readVLong();
+        tookInMillis = in.readVLong();
+        reason = in.readOptionalString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(id);
+        out.writeString(index);
+        out.writeOptionalString(type);
+        out.writeVInt(state.ordinal());
+        out.writeLong(total);
+        out.writeVLong(processed);
+        out.writeVLong(updated);
+        out.writeVLong(skipped);
+        out.writeVLong(failures);
+        out.writeVLong(batches);
+        out.writeVLong(throttledInMillis);
+        out.writeVLong(startTimeInMillis);
+        out.writeVLong(tookInMillis);
+        out.writeOptionalString(reason);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.ID, id);
+        builder.field(Fields.INDEX, index);
+        if (type != null) {
+            builder.field(Fields.TYPE, type);
+        }
+        builder.field(Fields.STATE, state.name().toLowerCase(Locale.ROOT));
+        builder.field(Fields.TOTAL, total);
+        builder.field(Fields.PROCESSED, processed);
+        builder.field(Fields.UPDATED, updated);
+        builder.field(Fields.SKIPPED, skipped);
+        builder.field(Fields.FAILURES, failures);
+        builder.field(Fields.BATCHES, batches);
+        builder.timeValueField(Fields.THROTTLED_IN_MILLIS, Fields.THROTTLED, throttledInMillis);
+        builder.field(Fields.START_TIME_IN_MILLIS, startTimeInMillis);
+        builder.field(Fields.TOOK, tookInMillis);
+        if (reason != null) {
+            builder.field(Fields.REASON, reason);
+        }
+        return builder;
+    }
+}
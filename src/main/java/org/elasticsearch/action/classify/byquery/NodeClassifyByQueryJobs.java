@@ -0,0 +1,75 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The status of the classify by query jobs of a node
+ */
+public class NodeClassifyByQueryJobs extends BaseNodeResponse {
+
+    private List<ClassifyByQueryStatus> jobs;
+
+    NodeClassifyByQueryJobs() {
+    }
+
+    public NodeClassifyByQueryJobs(DiscoveryNode node, List<ClassifyByQueryStatus> jobs) {
+        super(node);
+        this.jobs = jobs;
+    }
+
+    public List<ClassifyByQueryStatus> getJobs() {
+        return jobs;
+    }
+
+    public static NodeClassifyByQueryJobs readNodeClassifyByQueryJobs(StreamInput in) throws IOException {
+        NodeClassifyByQueryJobs jobs = new NodeClassifyByQueryJobs();
+        jobs.readFrom(in);
+        return jobs;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        jobs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            jobs.add(ClassifyByQueryStatus.readClassifyByQueryStatus(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(jobs.size());
+        for (ClassifyByQueryStatus job : jobs) {
+            job.writeTo(out);
+        }
+    }
+}
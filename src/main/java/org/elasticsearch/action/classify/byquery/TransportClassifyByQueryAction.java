@@ -0,0 +1,136 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.HandledTransportAction;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts a classify by query job on this node. The jobs are kept on the node which runs them, along with the
+ * last jobs which are done, so that they can be listed and cancelled with the classify by query jobs API.
+ */
+public class TransportClassifyByQueryAction extends HandledTransportAction<ClassifyByQueryRequest, ClassifyByQueryResponse> {
+
+    public static final String MAX_DONE_JOBS = "classify.by_query.max_done_jobs";
+    public static final int DEFAULT_MAX_DONE_JOBS = 100;
+
+    private final ClusterService clusterService;
+    private final Client client;
+    private final int maxDoneJobs;
+
+    private final AtomicLong jobIdGenerator = new AtomicLong();
+
+    // the running and done jobs in the order they started, guarded by itself
+    private final Map<String, ClassifyByQueryJob> jobs = new LinkedHashMap<>();
+
+    @Inject
+    public TransportClassifyByQueryAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                          TransportService transportService, ActionFilters actionFilters,
+                                          IndexNameExpressionResolver indexNameExpressionResolver, Client client) {
+        super(settings, ClassifyByQueryAction.NAME, threadPool, transportService, actionFilters, indexNameExpressionResolver,
+                ClassifyByQueryRequest.class);
+        this.clusterService = clusterService;
+        this.client = client;
+        this.maxDoneJobs = settings.getAsInt(MAX_DONE_JOBS, DEFAULT_MAX_DONE_JOBS);
+    }
+
+    @Override
+    protected void doExecute(final ClassifyByQueryRequest request, final ActionListener<ClassifyByQueryResponse> listener) {
+        String id = clusterService.localNode().id() + ":" + jobIdGenerator.incrementAndGet();
+        ClassifyByQueryJob job;
+        try {
+            job = new ClassifyByQueryJob(id, request, client, threadPool, new ActionListener<ClassifyByQueryStatus>() {
+                @Override
+                public void onResponse(ClassifyByQueryStatus status) {
+                    pruneDoneJobs();
+                    if (request.waitForCompletion()) {
+                        listener.onResponse(new ClassifyByQueryResponse(status));
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    if (request.waitForCompletion()) {
+                        listener.onFailure(e);
+                    }
+                }
+            });
+        } catch (Throwable t) {
+            listener.onFailure(t);
+            return;
+        }
+        synchronized (jobs) {
+            jobs.put(id, job);
+        }
+        job.start();
+        if (!request.waitForCompletion()) {
+            listener.onResponse(new ClassifyByQueryResponse(job.status()));
+        }
+    }
+
+    /**
+     * Returns the jobs of this node whose id match one of the patterns, all jobs if there are none
+     */
+    public List<ClassifyByQueryJob> jobs(String... ids) {
+        List<ClassifyByQueryJob> matching = new ArrayList<>();
+        synchronized (jobs) {
+            for (ClassifyByQueryJob job : jobs.values()) {
+                if (ids == null || ids.length == 0 || Regex.simpleMatch(ids, job.id())) {
+                    matching.add(job);
+                }
+            }
+        }
+        return matching;
+    }
+
+    private void pruneDoneJobs() {
+        synchronized (jobs) {
+            int done = 0;
+            for (ClassifyByQueryJob job : jobs.values()) {
+                if (job.isDone()) {
+                    done++;
+                }
+            }
+            for (Iterator<ClassifyByQueryJob> it = jobs.values().iterator(); it.hasNext() && done > maxDoneJobs; ) {
+                if (it.next().isDone()) {
+                    it.remove();
+                    done--;
+                }
+            }
+        }
+    }
+}
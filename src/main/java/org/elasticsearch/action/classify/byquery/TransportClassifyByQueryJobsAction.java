@@ -0,0 +1,123 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.byquery;
+
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 
+ */
+public class TransportClassifyByQueryJobsAction extends TransportNodesAction<ClassifyByQueryJobsRequest, ClassifyByQueryJobsResponse,
+        TransportClassifyByQueryJobsAction.NodeRequest, NodeClassifyByQueryJobs> {
+
+    private final TransportClassifyByQueryAction classifyByQueryAction;
+
+    @Inject
+    public TransportClassifyByQueryJobsAction(Settings settings, ClusterName clusterName, ThreadPool threadPool, ClusterService clusterService,
+                                              TransportService transportService, ActionFilters actionFilters,
+                                              IndexNameExpressionResolver indexNameExpressionResolver,
+                                              TransportClassifyByQueryAction classifyByQueryAction) {
+        super(settings, ClassifyByQueryJobsAction.NAME, clusterName, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, ClassifyByQueryJobsRequest.class, NodeRequest.class, ThreadPool.Names.MANAGEMENT);
+        this.classifyByQueryAction = classifyByQueryAction;
+    }
+
+    @Override
+    protected ClassifyByQueryJobsResponse newResponse(ClassifyByQueryJobsRequest request, AtomicReferenceArray responses) {
+        List<NodeClassifyByQueryJobs> nodeJobs = new ArrayList<>();
+        for (int i = 0; i < responses.length(); i++) {
+            Object response = responses.get(i);
+            if (response instanceof NodeClassifyByQueryJobs) {
+                nodeJobs.add((NodeClassifyByQueryJobs) response);
+            }
+        }
+        return new ClassifyByQueryJobsResponse(clusterName, nodeJobs.toArray(new NodeClassifyByQueryJobs[nodeJobs.size()]));
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(String nodeId, ClassifyByQueryJobsRequest request) {
+        return new NodeRequest(nodeId, request);
+    }
+
+    @Override
+    protected NodeClassifyByQueryJobs newNodeResponse() {
+        return new NodeClassifyByQueryJobs();
+    }
+
+    @Override
+    protected NodeClassifyByQueryJobs nodeOperation(NodeRequest request) {
+        List<ClassifyByQueryStatus> jobs = new ArrayList<>();
+        for (ClassifyByQueryJob job : classifyByQueryAction.jobs(request.request.jobIds())) {
+            if (request.request.cancel()) {
+                job.cancel();
+            }
+            jobs.add(job.status());
+        }
+        return new NodeClassifyByQueryJobs(clusterService.localNode(), jobs);
+    }
+
+    @Override
+    protected boolean accumulateExceptions() {
+        return false;
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+
+        private ClassifyByQueryJobsRequest request;
+
+        public NodeRequest() {
+        }
+
+        NodeRequest(String nodeId, ClassifyByQueryJobsRequest request) {
+            super(request, nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new ClassifyByQueryJobsRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.action.support.broadcast.BroadcastRequest;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * A request to train a model on the docs matching a train query, and to evaluate it on the docs matching a test
+ * query. The model is defined as the body of a classify request without the text to classify.
+ * <p/>
+ *
+ * With a <code>grid</code> of values for some model settings, a model is evaluated for each combination of these
+ * values instead, on top of the settings of the classify request.
+ */
+public class ClassifyEvaluateRequest extends BroadcastRequest<ClassifyEvaluateRequest> {
+
+    public static final int MAX_CANDIDATES = 256;
+
+    private String type;
+
+    private Map<String, Object> classify;
+
+    private BytesReference trainQuery;
+
+    private BytesReference testQuery;
+
+    private Map<String, Object> grid;
+
+    private String routing;
+
+    long nowInMillis;
+
+    ClassifyEvaluateRequest() {
+    }
+
+    /**
+     * Trains and evaluates the model on the docs of the given index and type
+     */
+    public ClassifyEvaluateRequest(String index, String type) {
+        super(index);
+        this.type = type;
+    }
+
+    public String type() {
+        return type;
+    }
+
+    /**
+     * Returns the body of the classify request which defines the model
+     */
+    public Map<String, Object> classify() {
+        return classify;
+    }
+
+    public ClassifyEvaluateRequest classify(Map<String, Object> classify) {
+        this.classify = classify;
+        return this;
+    }
+
+    /**
+     * Returns the query the docs to train on should match, the query of the classify section if null
+     */
+    public BytesReference trainQuery() {
+        return trainQuery;
+    }
+
+    public ClassifyEvaluateRequest trainQuery(BytesReference trainQuery) {
+        this.trainQuery = trainQuery;
+        return this;
+    }
+
+    public ClassifyEvaluateRequest trainQuery(XContentBuilder trainQuery) {
+        return trainQuery(trainQuery.bytes());
+    }
+
+    /**
+     * Returns the query the docs to evaluate the model on should match
+     */
+    public BytesReference testQuery() {
+        return testQuery;
+    }
+
+    public ClassifyEvaluateRequest testQuery(BytesReference testQuery) {
+        this.testQuery = testQuery;
+        return this;
+    }
+
+    public ClassifyEvaluateRequest testQuery(XContentBuilder testQuery) {
+        return testQuery(testQuery.bytes());
+    }
+
+    /**
+     * Returns the values of each model setting to evaluate the combinations of, or null if a single model is evaluated
+     */
+    public Map<String, Object> grid() {
+        return grid;
+    }
+
+    public ClassifyEvaluateRequest grid(Map<String, Object> grid) {
+        this.grid = grid;
+        return this;
+    }
+
+    /**
+     * Returns the combinations of the values of the grid, in the order of the grid, a single empty combination
+     * if there is no grid
+     */
+    public List<Map<String, Object>> candidates() {
+        List<Map<String, Object>> candidates = new ArrayList<>();
+        candidates.add(Collections.<String, Object>emptyMap());
+        if (grid == null) {
+            return candidates;
+        }
+        for (Map.Entry<String, Object> entry : grid.entrySet()) {
+            List<?> values = entry.getValue() instanceof List ? (List<?>) entry.getValue() : Collections.singletonList(entry.getValue());
+            List<Map<String, Object>> expanded = new ArrayList<>(candidates.size() * values.size());
+            for (Map<String, Object> candidate : candidates) {
+                for (Object value : values) {
+                    Map<String, Object> combination = new LinkedHashMap<>(candidate);
+                    combination.put(entry.getKey(), value);
+                    expanded.add(combination);
+                }
+            }
+            candidates = expanded;
+        }
+        return candidates;
+    }
+
+    public String routing() {
+        return routing;
+    }
+
+    public ClassifyEvaluateRequest routing(String routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    /**
+     * Returns the classify request the model is trained with on each shard
+     */
+    public ClassifyRequest classifyRequest(String index) throws IOException {
+        return classifyRequest(index, Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * Returns the classify request the model of a combination of the grid is trained with on each shard
+     */
+    public ClassifyRequest classifyRequest(String index, Map<String, Object> candidate) throws IOException {
+        ClassifyRequest request = new ClassifyRequest(index, type);
+        request.source(classify);
+        if (trainQuery != null) {
+            request.trainQuery(trainQuery);
+        }
+        if (!candidate.isEmpty()) {
+            Settings.Builder settings = Settings.settingsBuilder().put(request.modelSettings());
+            for (Map.Entry<String, Object> entry : candidate.entrySet()) {
+                settings.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().toString());
+            }
+            request.modelSettings(settings);
+        }
+        return request;
+    }
+
+    /**
+     * Parses the request.
+     *
+     * @param source the request body
+     */
+    public ClassifyEvaluateRequest source(Map source) throws IOException {
+        Map<String, Object> sourceMap = source;
+        for (Map.Entry<String, Object> entry : sourceMap.entrySet()) {
+            String name = entry.getKey();
+            if (name.equals("classify")) {
+                if (!(entry.getValue() instanceof Map)) {
+                    throw new IllegalArgumentException("malformed classify section, should include an inner object");
+                }
+                classify((Map<String, Object>) entry.getValue());
+            } else if (name.equals("train_query")) {
+                if (!(entry.getValue() instanceof Map)) {
+                    throw new IllegalArgumentException("malformed train query, should include an inner object");
+                }
+                trainQuery(XContentFactory.jsonBuilder().map((Map<String, Object>) entry.getValue()));
+            } else if (name.equals("grid")) {
+                if (!(entry.getValue() instanceof Map)) {
+                    throw new IllegalArgumentException("malformed grid, should include an inner object with the values of each setting");
+                }
+                grid((Map<String, Object>) entry.getValue());
+            } else if (name.equals("test_query")) {
+                if (!(entry.getValue() instanceof Map)) {
+                    throw new IllegalArgumentException("malformed test query, should include an inner object");
+                }
+                testQuery(XContentFactory.jsonBuilder().map((Map<String, Object>) entry.getValue()));
+            } else {
+                throw new IllegalArgumentException("unknown parameter [" + name + "]");
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Parses the request.
+     * JSON, Smile and YAML formats are supported
+     *
+     * @param source the request body
+     */
+    public ClassifyEvaluateRequest source(BytesReference source) {
+        try (XContentParser parser = XContentFactory.xContent(source).createParser(source)) {
+            return source(parser.mapOrdered());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("failed to parse classify evaluate source", e);
+        }
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = super.validate();
+        if (indices() == null || indices().length != 1) {
+            validationException = addValidationError("index on which to train the classifier is missing", validationException);
+        }
+        if (type == null) {
+            validationException = addValidationError("type on which to train the classifier is missing", validationException);
+        }
+        if (testQuery == null) {
+            validationException = addValidationError("test query is missing", validationException);
+        }
+        if (classify == null) {
+            validationException = addValidationError("classify section is missing", validationException);
+        } else {
+            if (classify.containsKey("text") || classify.containsKey("doc")) {
+                validationException = addValidationError("classify section should not have a text or a doc, they are taken from the test docs", validationException);
+            }
+            if (trainQuery != null && classify.containsKey("query")) {
+                validationException = addValidationError("either a train query or a query in the classify section can be given, not both", validationException);
+            }
+            try {
+                ClassifyRequest request = new ClassifyRequest(null, type).source(classify);
+                if (request.textFields() == null || request.textFields().length == 0 || request.classField() == null) {
+                    validationException = addValidationError("classify section should have the text fields and the class field", validationException);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                validationException = addValidationError("malformed classify section: " + e.getMessage(), validationException);
+            }
+        }
+        if (grid != null) {
+            long numCandidates = 1;
+            for (Map.Entry<String, Object> entry : grid.entrySet()) {
+                if (entry.getValue() instanceof List) {
+                    if (((List) entry.getValue()).isEmpty()) {
+                        validationException = addValidationError("grid has no values for setting [" + entry.getKey() + "]", validationException);
+                    }
+                    numCandidates *= Math.max(1, ((List) entry.getValue()).size());
+                } else if (entry.getValue() instanceof Map) {
+                    validationException = addValidationError("grid should have a value or an array of values for setting [" + entry.getKey() + "]", validationException);
+                }
+            }
+            if (numCandidates > MAX_CANDIDATES) {
+                validationException = addValidationError("grid has [" + numCandidates + "] combinations, more than the maximum of ["
+                        + MAX_CANDIDATES + "]", validationException);
+            }
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        type = in.readString();
+        classify = in.readMap();
+        if (in.readBoolean()) {
+            trainQuery = in.readBytesReference();
+        }
+        testQuery = in.readBytesReference();
+        if (in.readBoolean()) {
+            grid = in.readMap();
+        }
+        routing = in.readOptionalString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(type);
+        out.writeMap(classify == null ? new HashMap<String, Object>() : classify);
+        if (trainQuery == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeBytesReference(trainQuery);
+        }
+        out.writeBytesReference(testQuery);
+        if (grid == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeMap(grid);
+        }
+        out.writeOptionalString(routing);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.util.Map;
+
+/**
+ * 
+ */
+public class ClassifyEvaluateRequestBuilder extends ActionRequestBuilder<ClassifyEvaluateRequest, ClassifyEvaluateResponse, ClassifyEvaluateRequestBuilder> {
+
+    public ClassifyEvaluateRequestBuilder(ElasticsearchClient client, ClassifyEvaluateAction action) {
+        super(client, action, new ClassifyEvaluateRequest());
+    }
+
+    public ClassifyEvaluateRequestBuilder(ElasticsearchClient client, ClassifyEvaluateAction action, String index, String type) {
+        super(client, action, new ClassifyEvaluateRequest(index, type));
+    }
+
+    public ClassifyEvaluateRequestBuilder setClassify(Map<String, Object> classify) {
+        request.classify(classify);
+        return this;
+    }
+
+    public ClassifyEvaluateRequestBuilder setTrainQuery(XContentBuilder trainQuery) {
+        request.trainQuery(trainQuery);
+        return this;
+    }
+
+    public ClassifyEvaluateRequestBuilder setTestQuery(XContentBuilder testQuery) {
+        request.testQuery(testQuery);
+        return this;
+    }
+
+    public ClassifyEvaluateRequestBuilder setGrid(Map<String, Object> grid) {
+        request.grid(grid);
+        return this;
+    }
+
+    public ClassifyEvaluateRequestBuilder setRouting(String routing) {
+        request.routing(routing);
+        return this;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The evaluation of a model merged over the shards, or of each candidate of a grid ranked by accuracy
+ */
+public class ClassifyEvaluateResponse extends BroadcastResponse implements ToXContent {
+
+    static final class Fields {
+        static final XContentBuilderString TOOK = new XContentBuilderString("took");
+        static final XContentBuilderString CANDIDATES = new XContentBuilderString("candidates");
+        static final XContentBuilderString SETTINGS = new XContentBuilderString("settings");
+        static final XContentBuilderString FAILURES = new XContentBuilderString("failures");
+    }
+
+    private ClassifyEvaluation evaluation;
+    private List<Map<String, Object>> candidates;
+    private List<ClassifyEvaluation> candidateEvaluations;
+    private long tookInMillis;
+
+    ClassifyEvaluateResponse() {
+    }
+
+    ClassifyEvaluateResponse(ClassifyEvaluation evaluation, int totalShards, int successfulShards, int failedShards,
+                             List<ShardOperationFailedException> shardFailures, long tookInMillis) {
+        super(totalShards, successfulShards, failedShards, shardFailures);
+        this.evaluation = evaluation;
+        this.tookInMillis = tookInMillis;
+    }
+
+    ClassifyEvaluateResponse(List<Map<String, Object>> candidates, List<ClassifyEvaluation> candidateEvaluations, int totalShards,
+                             int successfulShards, int failedShards, List<ShardOperationFailedException> shardFailures, long tookInMillis) {
+        super(totalShards, successfulShards, failedShards, shardFailures);
+        this.candidates = candidates;
+        this.candidateEvaluations = candidateEvaluations;
+        this.tookInMillis = tookInMillis;
+    }
+
+    /**
+     * Returns the evaluation of the model, or null if a grid was evaluated
+     */
+    public ClassifyEvaluation getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * Returns the settings of each candidate of the grid, or null if there was no grid
+     */
+    public List<Map<String, Object>> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * Returns the evaluation of each candidate of the grid, in the order of {@link #getCandidates()}
+     */
+    public List<ClassifyEvaluation> getCandidateEvaluations() {
+        return candidateEvaluations;
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        if (in.readBoolean()) {
+            evaluation = ClassifyEvaluation.readClassifyEvaluation(in);
+        } else {
+            int size = in.readVInt();
+            candidates = new ArrayList<>(size);
+            candidateEvaluations = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                candidates.add(in.readMap());
+                candidateEvaluations.add(ClassifyEvaluation.readClassifyEvaluation(in));
+            }
+        }
+        tookInMillis = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        if (evaluation != null) {
+            out.writeBoolean(true);
+            evaluation.writeTo(out);
+        } else {
+            out.writeBoolean(false);
+            out.writeVInt(candidates.size());
+            for (int i = 0; i < candidates.size(); i++) {
+                out.writeMap(candidates.get(i));
+                candidateEvaluations.get(i).writeTo(out);
+            }
+        }
+        out.writeVLong(tookInMillis);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.TOOK, tookInMillis);
+        if (evaluation != null) {
+            evaluation.toXContent(builder, params);
+        } else {
+            buildCandidates(builder, params);
+        }
+        if (getShardFailures() != null && getShardFailures().length != 0) {
+            builder.startArray(Fields.FAILURES);
+            for (ShardOperationFailedException shardFailure : getShardFailures()) {
+                builder.startObject();
+                shardFailure.toXContent(builder, params);
+                builder.endObject();
+            }
+            builder.endArray();
+        }
+        return builder;
+    }
+
+    private void buildCandidates(XContentBuilder builder, Params params) throws IOException {
+        // the best candidates first, in the order of the grid for the same accuracy
+        List<Integer> ranks = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            ranks.add(i);
+        }
+        Collections.sort(ranks, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int cmp = Double.compare(candidateEvaluations.get(o2).accuracy(), candidateEvaluations.get(o1).accuracy());
+                return cmp != 0 ? cmp : Integer.compare(o1, o2);
+            }
+        });
+        builder.startArray(Fields.CANDIDATES);
+        for (int i : ranks) {
+            builder.startObject();
+            builder.field(Fields.SETTINGS, candidates.get(i));
+            candidateEvaluations.get(i).toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endArray();
+    }
+}
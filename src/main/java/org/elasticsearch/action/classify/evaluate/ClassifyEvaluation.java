@@ -0,0 +1,228 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The confusion matrix of a model over test docs, from which its accuracy and the precision and recall of each
+ * class are derived. The matrices of the shards are summed up on the coordinating node.
+ * <p/>
+ *
+ * A doc with several classes is counted as correct if it was assigned any of them, otherwise it is counted
+ * against its first class.
+ */
+public class ClassifyEvaluation implements Streamable, ToXContent {
+
+    static final class Fields {
+        static final XContentBuilderString DOCS = new XContentBuilderString("docs");
+        static final XContentBuilderString SKIPPED = new XContentBuilderString("skipped");
+        static final XContentBuilderString CORRECT = new XContentBuilderString("correct");
+        static final XContentBuilderString ACCURACY = new XContentBuilderString("accuracy");
+        static final XContentBuilderString CLASSES = new XContentBuilderString("classes");
+        static final XContentBuilderString PRECISION = new XContentBuilderString("precision");
+        static final XContentBuilderString RECALL = new XContentBuilderString("recall");
+        static final XContentBuilderString F1 = new XContentBuilderString("f1");
+        static final XContentBuilderString SUPPORT = new XContentBuilderString("support");
+        static final XContentBuilderString CONFUSION_MATRIX = new XContentBuilderString("confusion_matrix");
+    }
+
+    // the number of docs of each actual class assigned each class
+    private final Map<String, Map<String, Long>> matrix = new TreeMap<>();
+    private long docs;
+    private long skipped;
+    private long correct;
+
+    /**
+     * Counts a test doc of the given classes which was assigned the given class
+     */
+    public void add(List<String> actualClasses, String assignedClass) {
+        String actualClass = actualClasses.contains(assignedClass) ? assignedClass : actualClasses.get(0);
+        add(actualClass, assignedClass, 1);
+        docs++;
+        if (actualClass.equals(assignedClass)) {
+            correct++;
+        }
+    }
+
+    /**
+     * Counts a test doc which could not be evaluated, as it had no text, no class or was assigned no class
+     */
+    public void skip() {
+        skipped++;
+    }
+
+    /**
+     * Adds the counts of another evaluation to this one
+     */
+    public void merge(ClassifyEvaluation other) {
+        for (Map.Entry<String, Map<String, Long>> row : other.matrix.entrySet()) {
+            for (Map.Entry<String, Long> cell : row.getValue().entrySet()) {
+                add(row.getKey(), cell.getKey(), cell.getValue());
+            }
+        }
+        docs += other.docs;
+        skipped += other.skipped;
+        correct += other.correct;
+    }
+
+    private void add(String actualClass, String assignedClass, long count) {
+        Map<String, Long> row = matrix.get(actualClass);
+        if (row == null) {
+            row = new TreeMap<>();
+            matrix.put(actualClass, row);
+        }
+        Long current = row.get(assignedClass);
+        row.put(assignedClass, current == null ? count : current + count);
+    }
+
+    public long docs() {
+        return docs;
+    }
+
+    public long skipped() {
+        return skipped;
+    }
+
+    public long correct() {
+        return correct;
+    }
+
+    /**
+     * Returns the fraction of the evaluated docs which were assigned one of their classes
+     */
+    public double accuracy() {
+        return docs == 0 ? 0 : (double) correct / docs;
+    }
+
+    /**
+     * Returns the number of docs of each actual class assigned each class
+     */
+    public Map<String, Map<String, Long>> confusionMatrix() {
+        return matrix;
+    }
+
+    public static ClassifyEvaluation readClassifyEvaluation(StreamInput in) throws IOException {
+        ClassifyEvaluation evaluation = new ClassifyEvaluation();
+        evaluation.readFrom(in);
+        return evaluation;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        docs = in.readVLong();
+        skipped = in.readVLong();
+        correct = in.readVLong();
+        int rows = in.readVInt();
+        for (int i = 0; i < rows; i++) {
+            String actualClass = in.readString();
+            int cells = in.readVInt();
+            for (int j = 0; j < cells; j++) {
+                add(actualClass, in.readString(), in.readVLong());
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(docs);
+        out.writeVLong(skipped);
+        out.writeVLong(correct);
+        out.writeVInt(matrix.size());
+        for (Map.Entry<String, Map<String, Long>> row : matrix.entrySet()) {
+            out.writeString(row.getKey());
+            out.writeVInt(row.getValue().size());
+            for (Map.Entry<String, Long> cell : row.getValue().entrySet()) {
+                out.writeString(cell.getKey());
+                out.writeVLong(cell.getValue());
+            }
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.DOCS, docs);
+        builder.field(Fields.SKIPPED, skipped);
+        builder.field(Fields.CORRECT, correct);
+        builder.field(Fields.ACCURACY, accuracy());
+
+        // the docs of each class, and the docs assigned each class
+        Map<String, Long> actual = new TreeMap<>();
+        Map<String, Long> assigned = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Long>> row : matrix.entrySet()) {
+            for (Map.Entry<String, Long> cell : row.getValue().entrySet()) {
+                increment(actual, row.getKey(), cell.getValue());
+                increment(assigned, cell.getKey(), cell.getValue());
+            }
+        }
+        TreeSet<String> classes = new TreeSet<>(actual.keySet());
+        classes.addAll(assigned.keySet());
+        builder.startObject(Fields.CLASSES);
+        for (String clazz : classes) {
+            long truePositives = count(clazz, clazz);
+            double precision = ratio(truePositives, assigned.get(clazz));
+            double recall = ratio(truePositives, actual.get(clazz));
+            builder.startObject(clazz);
+            builder.field(Fields.PRECISION, precision);
+            builder.field(Fields.RECALL, recall);
+            builder.field(Fields.F1, precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall));
+            builder.field(Fields.SUPPORT, actual.get(clazz) == null ? 0 : actual.get(clazz));
+            builder.endObject();
+        }
+        builder.endObject();
+
+        builder.startObject(Fields.CONFUSION_MATRIX);
+        for (Map.Entry<String, Map<String, Long>> row : matrix.entrySet()) {
+            builder.startObject(row.getKey());
+            for (Map.Entry<String, Long> cell : row.getValue().entrySet()) {
+                builder.field(cell.getKey(), cell.getValue());
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    private long count(String actualClass, String assignedClass) {
+        Map<String, Long> row = matrix.get(actualClass);
+        Long count = row == null ? null : row.get(assignedClass);
+        return count == null ? 0 : count;
+    }
+
+    private static void increment(Map<String, Long> counts, String key, long count) {
+        Long current = counts.get(key);
+        counts.put(key, current == null ? count : current + count);
+    }
+
+    private static double ratio(long count, Long total) {
+        return total == null || total == 0 ? 0 : (double) count / total;
+    }
+}
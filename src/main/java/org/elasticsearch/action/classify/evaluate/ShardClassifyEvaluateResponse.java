@@ -0,0 +1,66 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class ShardClassifyEvaluateResponse extends BroadcastShardResponse {
+
+    // the evaluation of each candidate of the grid
+    private List<ClassifyEvaluation> evaluations;
+
+    ShardClassifyEvaluateResponse() {
+    }
+
+    ShardClassifyEvaluateResponse(ShardId shardId, List<ClassifyEvaluation> evaluations) {
+        super(shardId);
+        this.evaluations = evaluations;
+    }
+
+    public List<ClassifyEvaluation> getEvaluations() {
+        return evaluations;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        evaluations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            evaluations.add(ClassifyEvaluation.readClassifyEvaluation(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(evaluations.size());
+        for (ClassifyEvaluation evaluation : evaluations) {
+            evaluation.writeTo(out);
+        }
+    }
+}
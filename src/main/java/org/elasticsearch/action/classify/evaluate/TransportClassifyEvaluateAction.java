@@ -0,0 +1,415 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.TransportBroadcastAction;
+import org.elasticsearch.classification.AnalyzedText;
+import org.elasticsearch.classification.ClassificationService;
+import org.elasticsearch.classification.ShardClassificationService;
+import org.elasticsearch.classification.SourceText;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
+import org.elasticsearch.index.mapper.internal.TypeFieldMapper;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.search.lookup.SourceLookup;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Trains the model once on each shard, then classifies the test docs of the shard with it. Only the confusion
+ * matrices are sent back to the coordinating node, where they are summed up.
+ * <p/>
+ *
+ * With a grid, the models of the combinations of settings are trained and evaluated by groups of
+ * {@link #CANDIDATES_PER_GROUP}, so that only the models of a group are in memory at once, their weights being
+ * accounted to the request circuit breaker. The models of a group are trained in parallel, then the test docs are
+ * read and analyzed once for the group and classified by all of its models in parallel. The models of a grid are not
+ * kept on the shard once evaluated. The shards run on the bounded search pool, and so do the helpers which train and
+ * evaluate the models of a group in parallel: the shard thread takes tasks as well and cancels the helpers which did
+ * not start once it is done, so a busy pool only makes a group run sequentially on the shard thread.
+ */
+public class TransportClassifyEvaluateAction extends TransportBroadcastAction<ClassifyEvaluateRequest, ClassifyEvaluateResponse,
+        ShardClassifyEvaluateRequest, ShardClassifyEvaluateResponse> {
+
+    private static final Set<String> SOURCE_FIELD = Collections.singleton(SourceFieldMapper.NAME);
+
+    // the number of test docs kept analyzed at once to evaluate the models of a grid on
+    private static final int EVALUATION_CHUNK_SIZE = 1000;
+
+    // the number of models of a grid kept in memory at once, the test docs are read again for each group
+    static final int CANDIDATES_PER_GROUP = 8;
+
+    private final IndicesService indicesService;
+    private final ClassificationService classificationService;
+
+    @Inject
+    public TransportClassifyEvaluateAction(Settings settings, ThreadPool threadPool, ClusterService clusterService, TransportService transportService,
+                                           ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver,
+                                           IndicesService indicesService, ClassificationService classificationService) {
+        super(settings, ClassifyEvaluateAction.NAME, threadPool, clusterService, transportService, actionFilters, indexNameExpressionResolver,
+                ClassifyEvaluateRequest.class, ShardClassifyEvaluateRequest.class, ThreadPool.Names.SEARCH);
+        this.indicesService = indicesService;
+        this.classificationService = classificationService;
+    }
+
+    @Override
+    protected void doExecute(ClassifyEvaluateRequest request, ActionListener<ClassifyEvaluateResponse> listener) {
+        request.nowInMillis = System.currentTimeMillis();
+        super.doExecute(request, listener);
+    }
+
+    @Override
+    protected ShardClassifyEvaluateRequest newShardRequest(int numShards, ShardRouting shard, ClassifyEvaluateRequest request) {
+        return new ShardClassifyEvaluateRequest(shard, request);
+    }
+
+    @Override
+    protected ShardClassifyEvaluateResponse newShardResponse() {
+        return new ShardClassifyEvaluateResponse();
+    }
+
+    @Override
+    protected GroupShardsIterator shards(ClusterState clusterState, ClassifyEvaluateRequest request, String[] concreteIndices) {
+        Map<String, Set<String>> routingMap = indexNameExpressionResolver.resolveSearchRouting(clusterState, request.routing(), request.indices());
+        return clusterService.operationRouting().searchShards(clusterState, concreteIndices, routingMap, null);
+    }
+
+    @Override
+    protected ClusterBlockException checkGlobalBlock(ClusterState state, ClassifyEvaluateRequest request) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.READ);
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(ClusterState state, ClassifyEvaluateRequest request, String[] concreteIndices) {
+        return state.blocks().indicesBlockedException(ClusterBlockLevel.READ, concreteIndices);
+    }
+
+    @Override
+    protected ClassifyEvaluateResponse newResponse(ClassifyEvaluateRequest request, AtomicReferenceArray shardsResponses, ClusterState clusterState) {
+        int successfulShards = 0;
+        List<ShardOperationFailedException> shardFailures = new ArrayList<>();
+        List<Map<String, Object>> candidates = request.candidates();
+        ClassifyEvaluation[] evaluations = new ClassifyEvaluation[candidates.size()];
+        for (int i = 0; i < evaluations.length; i++) {
+            evaluations[i] = new ClassifyEvaluation();
+        }
+        for (int i = 0; i < shardsResponses.length(); i++) {
+            Object shardResponse = shardsResponses.get(i);
+            if (shardResponse == null) {
+                // simply ignore non active shards
+            } else if (shardResponse instanceof BroadcastShardOperationFailedException) {
+                shardFailures.add(new DefaultShardOperationFailedException((BroadcastShardOperationFailedException) shardResponse));
+            } else {
+                List<ClassifyEvaluation> shardEvaluations = ((ShardClassifyEvaluateResponse) shardResponse).getEvaluations();
+                for (int j = 0; j < evaluations.length; j++) {
+                    evaluations[j].merge(shardEvaluations.get(j));
+                }
+                successfulShards++;
+            }
+        }
+        long tookInMillis = Math.max(1, System.currentTimeMillis() - request.nowInMillis);
+        if (request.grid() == null) {
+            return new ClassifyEvaluateResponse(evaluations[0], shardsResponses.length(), successfulShards, shardFailures.size(), shardFailures, tookInMillis);
+        }
+        return new ClassifyEvaluateResponse(candidates, Arrays.asList(evaluations), shardsResponses.length(), successfulShards, shardFailures.size(), shardFailures, tookInMillis);
+    }
+
+    @Override
+    protected ShardClassifyEvaluateResponse shardOperation(ShardClassifyEvaluateRequest shardRequest) {
+        ClassifyEvaluateRequest request = shardRequest.getEvaluateRequest();
+        IndexService indexService = indicesService.indexServiceSafe(shardRequest.shardId().getIndex());
+        IndexShard indexShard = indexService.shardSafe(shardRequest.shardId().id());
+        ShardClassificationService shardService = classificationService.shardService(shardRequest.shardId());
+
+        try (Engine.Searcher searcher = indexShard.acquireSearcher("classify_evaluate")) {
+            String index = shardRequest.shardId().getIndex();
+            ClassifyRequest classifyRequest = request.classifyRequest(index);
+            BooleanQuery testQuery = new BooleanQuery();
+            testQuery.add(indexService.queryParserService().parse(request.testQuery()).query(), BooleanClause.Occur.MUST);
+            testQuery.add(new TermQuery(new Term(TypeFieldMapper.NAME, request.type())), BooleanClause.Occur.FILTER);
+
+            int numCandidates = request.candidates().size();
+            ClassifyEvaluation[] evaluations = new ClassifyEvaluation[numCandidates];
+            CircuitBreaker breaker = classificationService.requestBreaker();
+            for (int from = 0; from < numCandidates; from += CANDIDATES_PER_GROUP) {
+                int to = Math.min(numCandidates, from + CANDIDATES_PER_GROUP);
+                // the models of the group are trained once, and then kept for all the test docs
+                ShardClassificationService.Evaluator[] evaluators = train(shardService, request, index, searcher.reader(), from, to);
+                long bytes = 0;
+                for (ShardClassificationService.Evaluator evaluator : evaluators) {
+                    bytes += evaluator.ramBytesUsed();
+                }
+                breaker.addEstimateBytesAndMaybeBreak(bytes, "<classify_evaluate>");
+                try {
+                    EvaluatingCollector collector = new EvaluatingCollector(evaluators, classifyRequest.textFields(), classifyRequest.classField());
+                    searcher.searcher().search(testQuery, collector);
+                    collector.finish();
+                    System.arraycopy(collector.evaluations, 0, evaluations, from, to - from);
+                } finally {
+                    breaker.addWithoutBreaking(-bytes);
+                }
+            }
+            return new ShardClassifyEvaluateResponse(shardRequest.shardId(), Arrays.asList(evaluations));
+        } catch (IOException e) {
+            throw new ElasticsearchException("Unable to evaluate the model at the shard!", e);
+        }
+    }
+
+    /**
+     * Trains the models of the candidates of the grid from <code>from</code> inclusive to <code>to</code> exclusive,
+     * in parallel if there are several. Without a grid, the model is the one a classify request would use.
+     */
+    private ShardClassificationService.Evaluator[] train(final ShardClassificationService shardService, final ClassifyEvaluateRequest request,
+                                                         final String index, final IndexReader reader, final int from, int to) {
+        final List<Map<String, Object>> candidates = request.candidates();
+        final ShardClassificationService.Evaluator[] evaluators = new ShardClassificationService.Evaluator[to - from];
+        if (request.grid() == null) {
+            try {
+                evaluators[0] = shardService.evaluator(request.classifyRequest(index), reader);
+            } catch (IOException e) {
+                throw new ElasticsearchException("Unable to evaluate the model at the shard!", e);
+            }
+            return evaluators;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(evaluators.length);
+        for (int i = 0; i < evaluators.length; i++) {
+            final int candidate = i;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    evaluators[candidate] = shardService.newEvaluator(request.classifyRequest(index, candidates.get(from + candidate)), reader);
+                    return null;
+                }
+            });
+        }
+        runInParallel(tasks);
+        return evaluators;
+    }
+
+    /**
+     * Runs the tasks on the calling thread along with helpers on the search pool, at most as many at once as there
+     * are processors, and returns once they are all done. A single task is run on the calling thread. The helpers
+     * which could not be queued or did not start by the time the calling thread ran out of tasks are given up, so
+     * that the calling thread never waits for the pool it runs on.
+     */
+    private void runInParallel(final List<Callable<Void>> tasks) {
+        try {
+            if (tasks.size() == 1) {
+                tasks.get(0).call();
+                return;
+            }
+            final AtomicInteger cursor = new AtomicInteger();
+            Callable<Void> worker = new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    int task;
+                    while ((task = cursor.getAndIncrement()) < tasks.size()) {
+                        tasks.get(task).call();
+                    }
+                    return null;
+                }
+            };
+            int helpers = Math.min(tasks.size(), EsExecutors.boundedNumberOfProcessors(settings)) - 1;
+            List<Future<Void>> futures = new ArrayList<>(helpers);
+            try {
+                for (int h = 0; h < helpers; h++) {
+                    futures.add(threadPool.executor(ThreadPool.Names.SEARCH).submit(worker));
+                }
+            } catch (EsRejectedExecutionException e) {
+                // the pool is busy, the calling thread runs the tasks the helpers would have
+            }
+            // the calling thread takes tasks too, so it only waits for the tasks the helpers are running
+            worker.call();
+            for (Future<Void> future : futures) {
+                if (!future.cancel(false)) {
+                    future.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new ElasticsearchException("failed to evaluate the grid at the shard", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("interrupted while evaluating the grid at the shard", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ElasticsearchException("Unable to evaluate the model at the shard!", e);
+        }
+    }
+
+    /**
+     * A test doc with its text analyzed once for all the models
+     */
+    private static class TestDoc {
+
+        private final String text;
+        private final AnalyzedText analyzedText;
+        private final List<String> classes;
+
+        TestDoc(String text, AnalyzedText analyzedText, List<String> classes) {
+            this.text = text;
+            this.analyzedText = analyzedText;
+            this.classes = classes;
+        }
+    }
+
+    /**
+     * Reads the text and classes of each test doc from its source as it is collected. The docs are then classified
+     * by chunks, with each model of the grid evaluated on a chunk in parallel.
+     */
+    private class EvaluatingCollector extends SimpleCollector {
+
+        private final ShardClassificationService.Evaluator[] evaluators;
+        private final String[] textFields;
+        private final String classField;
+        private final ClassifyEvaluation[] evaluations;
+        private final List<TestDoc> chunk = new ArrayList<>();
+
+        private LeafReader reader;
+
+        EvaluatingCollector(ShardClassificationService.Evaluator[] evaluators, String[] textFields, String classField) {
+            this.evaluators = evaluators;
+            this.textFields = textFields;
+            this.classField = classField;
+            this.evaluations = new ClassifyEvaluation[evaluators.length];
+            for (int i = 0; i < evaluations.length; i++) {
+                evaluations[i] = new ClassifyEvaluation();
+            }
+        }
+
+        @Override
+        protected void doSetNextReader(LeafReaderContext context) throws IOException {
+            reader = context.reader();
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            BytesRef source = reader.document(doc, SOURCE_FIELD).getBinaryValue(SourceFieldMapper.NAME);
+            if (source == null) {
+                skip();
+                return;
+            }
+            Map<String, Object> sourceAsMap = SourceLookup.sourceAsMap(new BytesArray(source));
+            String text = SourceText.extract(sourceAsMap, textFields);
+            List<String> actualClasses = new ArrayList<>();
+            for (Object value : XContentMapValues.extractRawValues(classField, sourceAsMap)) {
+                if (value != null) {
+                    actualClasses.add(value.toString());
+                }
+            }
+            if (text == null || actualClasses.isEmpty()) {
+                skip();
+                return;
+            }
+            // the models only differ by their settings, so they all analyze the text the same way
+            chunk.add(new TestDoc(text, evaluators[0].analyze(text), actualClasses));
+            if (chunk.size() == EVALUATION_CHUNK_SIZE) {
+                finish();
+            }
+        }
+
+        private void skip() {
+            for (ClassifyEvaluation evaluation : evaluations) {
+                evaluation.skip();
+            }
+        }
+
+        /**
+         * Evaluates the models on the docs collected since the last chunk
+         */
+        void finish() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<Callable<Void>> tasks = new ArrayList<>(evaluators.length);
+            for (int i = 0; i < evaluators.length; i++) {
+                final ShardClassificationService.Evaluator evaluator = evaluators[i];
+                final ClassifyEvaluation evaluation = evaluations[i];
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (TestDoc testDoc : chunk) {
+                            ClassificationResult best = evaluator.evaluate(testDoc.text, testDoc.analyzedText).best();
+                            if (best == null || best.getAssignedClass() == null) {
+                                evaluation.skip();
+                            } else {
+                                evaluation.add(testDoc.classes, best.getAssignedClass().toString());
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            runInParallel(tasks);
+            chunk.clear();
+        }
+
+        @Override
+        public boolean needsScores() {
+            return false;
+        }
+    }
+}
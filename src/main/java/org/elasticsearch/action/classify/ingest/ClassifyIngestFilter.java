@@ -0,0 +1,404 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.ingest;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.ActionWriteResponse;
+import org.elasticsearch.action.bulk.BulkAction;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.action.classify.ClassifyTextsRequest;
+import org.elasticsearch.action.classify.ClassifyTextsResponse;
+import org.elasticsearch.action.classify.TransportClassifyTextsAction;
+import org.elasticsearch.action.index.IndexAction;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.ActionFilter;
+import org.elasticsearch.action.support.ActionFilterChain;
+import org.elasticsearch.classification.SourceText;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.IndexNotFoundException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classifies the docs sent to an index before they are indexed, and adds the predicted class and its score to
+ * their source. This is enabled per index with the <code>index.classify.ingest.*</code> settings, which define the
+ * classify request to run on the text fields of each doc. The settings are dynamic, and are read from the cluster
+ * state on each request. The model is trained on the index itself, so a model which is kept on the shards, such as
+ * a perceptron, is only trained again once the index changed.
+ * <p/>
+ *
+ * The docs of a bulk request are grouped by index and type, and each group is classified against one model with
+ * requests of {@link #TEXTS_PER_REQUEST} texts, one request at a time. The bulk request proceeds once they all are,
+ * without the docs which failed to be classified, which get a failed item in the bulk response. A doc which already
+ * has the predicted field is not classified again.
+ */
+public class ClassifyIngestFilter extends AbstractComponent implements ActionFilter {
+
+    public static final String INDEX_CLASSIFY_INGEST_PREFIX = "index.classify.ingest.";
+    public static final String INDEX_CLASSIFY_INGEST_ENABLED = INDEX_CLASSIFY_INGEST_PREFIX + "enabled";
+    public static final String INDEX_CLASSIFY_INGEST_FIELDS = INDEX_CLASSIFY_INGEST_PREFIX + "fields";
+    public static final String INDEX_CLASSIFY_INGEST_CLASS = INDEX_CLASSIFY_INGEST_PREFIX + "class";
+    public static final String INDEX_CLASSIFY_INGEST_TYPE = INDEX_CLASSIFY_INGEST_PREFIX + "type";
+    public static final String INDEX_CLASSIFY_INGEST_MODEL = INDEX_CLASSIFY_INGEST_PREFIX + "model";
+    public static final String INDEX_CLASSIFY_INGEST_SETTINGS = INDEX_CLASSIFY_INGEST_PREFIX + "settings.";
+    public static final String INDEX_CLASSIFY_INGEST_QUERY = INDEX_CLASSIFY_INGEST_PREFIX + "query";
+    public static final String INDEX_CLASSIFY_INGEST_ANALYZER = INDEX_CLASSIFY_INGEST_PREFIX + "analyzer";
+    public static final String INDEX_CLASSIFY_INGEST_TARGET_FIELD = INDEX_CLASSIFY_INGEST_PREFIX + "target_field";
+    public static final String INDEX_CLASSIFY_INGEST_SCORE_FIELD = INDEX_CLASSIFY_INGEST_PREFIX + "score_field";
+    public static final String INDEX_CLASSIFY_INGEST_IGNORE_FAILURES = INDEX_CLASSIFY_INGEST_PREFIX + "ignore_failures";
+
+    // the docs of a bulk request are classified this many at a time
+    public static final int TEXTS_PER_REQUEST = 64;
+
+    private final ClusterService clusterService;
+    private final IndexNameExpressionResolver indexNameExpressionResolver;
+
+    // the texts action depends on the action filters, so it can only be looked up once they are built
+    private final Provider<TransportClassifyTextsAction> textsAction;
+
+    @Inject
+    public ClassifyIngestFilter(Settings settings, ClusterService clusterService, IndexNameExpressionResolver indexNameExpressionResolver,
+                                Provider<TransportClassifyTextsAction> textsAction) {
+        super(settings);
+        this.clusterService = clusterService;
+        this.indexNameExpressionResolver = indexNameExpressionResolver;
+        this.textsAction = textsAction;
+    }
+
+    @Override
+    public int order() {
+        return 0;
+    }
+
+    @Override
+    public void apply(String action, ActionRequest request, ActionListener listener, ActionFilterChain chain) {
+        List<IndexRequest> indexRequests = new ArrayList<>();
+        if (action.equals(IndexAction.NAME)) {
+            indexRequests.add((IndexRequest) request);
+        } else if (action.equals(BulkAction.NAME)) {
+            for (ActionRequest bulkItem : ((BulkRequest) request).requests()) {
+                if (bulkItem instanceof IndexRequest) {
+                    indexRequests.add((IndexRequest) bulkItem);
+                }
+            }
+        }
+
+        // the docs to classify, along with their source
+        ClusterState state = clusterService.state();
+        Map<String, IngestSettings> ingestSettings = new HashMap<>();
+        List<Doc> docs = new ArrayList<>();
+        for (IndexRequest indexRequest : indexRequests) {
+            IngestSettings settings = ingestSettings(state, indexRequest, ingestSettings);
+            if (settings == null) {
+                continue;
+            }
+            Tuple<XContentType, Map<String, Object>> source = XContentHelper.convertToMap(indexRequest.source(), true);
+            if (source.v2().containsKey(settings.targetField)) {
+                continue;
+            }
+            String text = SourceText.extract(source.v2(), settings.fields);
+            if (text != null) {
+                docs.add(new Doc(indexRequest, settings, source.v1(), source.v2(), text));
+            }
+        }
+        if (docs.isEmpty()) {
+            chain.proceed(action, request, listener);
+        } else {
+            classify(docs, action, request, listener, chain);
+        }
+    }
+
+    @Override
+    public void apply(String action, ActionResponse response, ActionListener listener, ActionFilterChain chain) {
+        chain.proceed(action, response, listener);
+    }
+
+    private void classify(List<Doc> docs, String action, ActionRequest request, ActionListener listener, ActionFilterChain chain) {
+        // the docs of the same index and type are classified with the same model, a request of texts at a time
+        Map<String, List<Doc>> groups = new LinkedHashMap<>();
+        for (Doc doc : docs) {
+            String key = doc.settings.index + "/" + doc.type();
+            List<Doc> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(doc);
+        }
+        List<List<Doc>> chunks = new ArrayList<>();
+        for (List<Doc> group : groups.values()) {
+            for (int from = 0; from < group.size(); from += TEXTS_PER_REQUEST) {
+                chunks.add(group.subList(from, Math.min(group.size(), from + TEXTS_PER_REQUEST)));
+            }
+        }
+        new Ingest(chunks, action, request, listener, chain).next();
+    }
+
+    /**
+     * Classifies the chunks of docs of a request one after the other, and then proceeds with the request without
+     * the docs which failed to be classified
+     */
+    private class Ingest {
+
+        private final Iterator<List<Doc>> chunks;
+        private final String action;
+        private final ActionRequest request;
+        private final ActionListener listener;
+        private final ActionFilterChain chain;
+        private final long startMillis = System.currentTimeMillis();
+        private final Map<IndexRequest, Throwable> failures = new IdentityHashMap<>();
+
+        Ingest(List<List<Doc>> chunks, String action, ActionRequest request, ActionListener listener, ActionFilterChain chain) {
+            this.chunks = chunks.iterator();
+            this.action = action;
+            this.request = request;
+            this.listener = listener;
+            this.chain = chain;
+        }
+
+        void next() {
+            if (!chunks.hasNext()) {
+                proceed();
+                return;
+            }
+            final List<Doc> chunk = chunks.next();
+            ClassifyTextsRequest textsRequest = new ClassifyTextsRequest(chunk.get(0).classifyRequest());
+            for (Doc doc : chunk) {
+                textsRequest.add(doc.text);
+            }
+            textsAction.get().execute(textsRequest, new ActionListener<ClassifyTextsResponse>() {
+                @Override
+                public void onResponse(ClassifyTextsResponse response) {
+                    if (response.getSuccessfulShards() == 0 && response.getFailedShards() > 0) {
+                        onFailure(new ElasticsearchException("failed to classify on all shards: " + response.getShardFailures()[0].reason()));
+                        return;
+                    }
+                    for (int i = 0; i < chunk.size(); i++) {
+                        Doc doc = chunk.get(i);
+                        ClassificationResult best = response.getClassifyResults().get(i).best();
+                        if (best != null) {
+                            doc.source.put(doc.settings.targetField, best.getAssignedClass());
+                            doc.source.put(doc.settings.scoreField, best.getScore());
+                            doc.indexRequest.source(doc.source, doc.contentType);
+                        }
+                    }
+                    next();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    for (Doc doc : chunk) {
+                        if (doc.settings.ignoreFailures) {
+                            logger.warn("[{}] failed to classify doc [{}], indexing it without a prediction", e,
+                                    doc.settings.index, doc.indexRequest.id());
+                        } else {
+                            failures.put(doc.indexRequest, e);
+                        }
+                    }
+                    next();
+                }
+            });
+        }
+
+        private void proceed() {
+            if (failures.isEmpty()) {
+                chain.proceed(action, request, listener);
+            } else if (request instanceof BulkRequest) {
+                proceedWithoutFailures((BulkRequest) request);
+            } else {
+                listener.onFailure(failures.values().iterator().next());
+            }
+        }
+
+        /**
+         * Removes the docs which failed to be classified from the bulk request, and adds their failures to the
+         * bulk response at their position, so that the other items are still indexed
+         */
+        @SuppressWarnings("unchecked")
+        private void proceedWithoutFailures(BulkRequest bulkRequest) {
+            final BulkItemResponse[] items = new BulkItemResponse[bulkRequest.requests().size()];
+            int position = 0;
+            for (Iterator<ActionRequest> it = bulkRequest.requests().iterator(); it.hasNext(); position++) {
+                ActionRequest item = it.next();
+                Throwable failure = failures.get(item);
+                if (failure != null) {
+                    IndexRequest indexRequest = (IndexRequest) item;
+                    items[position] = new BulkItemResponse(position, indexRequest.opType().lowercase(),
+                            new BulkItemResponse.Failure(indexRequest.index(), indexRequest.type(), indexRequest.id(), failure));
+                    it.remove();
+                }
+            }
+            if (bulkRequest.requests().isEmpty()) {
+                listener.onResponse(new BulkResponse(items, Math.max(1, System.currentTimeMillis() - startMillis)));
+                return;
+            }
+            chain.proceed(action, bulkRequest, new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    // the items of the response are numbered without the failed docs
+                    BulkItemResponse[] indexed = response.getItems();
+                    int next = 0;
+                    for (int i = 0; i < items.length; i++) {
+                        if (items[i] == null) {
+                            BulkItemResponse item = indexed[next++];
+                            if (item.isFailed()) {
+                                items[i] = new BulkItemResponse(i, item.getOpType(), item.getFailure());
+                            } else {
+                                items[i] = new BulkItemResponse(i, item.getOpType(), item.<ActionWriteResponse>getResponse());
+                            }
+                        }
+                    }
+                    listener.onResponse(new BulkResponse(items, response.getTookInMillis()));
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    listener.onFailure(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the ingest settings of the index of the request, or null if its docs are not classified
+     */
+    private IngestSettings ingestSettings(ClusterState state, IndexRequest indexRequest, Map<String, IngestSettings> cache) {
+        String index;
+        try {
+            index = indexNameExpressionResolver.concreteSingleIndex(state, indexRequest);
+        } catch (IndexNotFoundException | IllegalArgumentException e) {
+            // the index is about to be created or the alias points to several indices
+            return null;
+        }
+        if (cache.containsKey(index)) {
+            return cache.get(index);
+        }
+        IngestSettings settings = null;
+        IndexMetaData indexMetaData = state.metaData().index(index);
+        if (indexMetaData != null && indexMetaData.getSettings().getAsBoolean(INDEX_CLASSIFY_INGEST_ENABLED, false)) {
+            settings = new IngestSettings(index, indexMetaData.getSettings());
+        }
+        cache.put(index, settings);
+        return settings;
+    }
+
+    /**
+     * How the docs of an index are classified
+     */
+    private static class IngestSettings {
+
+        private final String index;
+        private final String[] fields;
+        private final String classField;
+        private final String type;
+        private final String model;
+        private final Settings modelSettings;
+        private final String query;
+        private final String analyzer;
+        private final String targetField;
+        private final String scoreField;
+        private final boolean ignoreFailures;
+
+        IngestSettings(String index, Settings indexSettings) {
+            this.index = index;
+            this.fields = indexSettings.getAsArray(INDEX_CLASSIFY_INGEST_FIELDS);
+            this.classField = indexSettings.get(INDEX_CLASSIFY_INGEST_CLASS);
+            if (fields.length == 0 || classField == null) {
+                throw new IllegalArgumentException("[" + index + "] classifying docs on ingest requires [" + INDEX_CLASSIFY_INGEST_FIELDS
+                        + "] and [" + INDEX_CLASSIFY_INGEST_CLASS + "]");
+            }
+            this.type = indexSettings.get(INDEX_CLASSIFY_INGEST_TYPE);
+            this.model = indexSettings.get(INDEX_CLASSIFY_INGEST_MODEL);
+            this.modelSettings = indexSettings.getByPrefix(INDEX_CLASSIFY_INGEST_SETTINGS);
+            this.query = indexSettings.get(INDEX_CLASSIFY_INGEST_QUERY);
+            this.analyzer = indexSettings.get(INDEX_CLASSIFY_INGEST_ANALYZER);
+            this.targetField = indexSettings.get(INDEX_CLASSIFY_INGEST_TARGET_FIELD, classField + "_predicted");
+            this.scoreField = indexSettings.get(INDEX_CLASSIFY_INGEST_SCORE_FIELD, targetField + "_score");
+            this.ignoreFailures = indexSettings.getAsBoolean(INDEX_CLASSIFY_INGEST_IGNORE_FAILURES, false);
+        }
+    }
+
+    private static class Doc {
+
+        private final IndexRequest indexRequest;
+        private final IngestSettings settings;
+        private final XContentType contentType;
+        private final Map<String, Object> source;
+        private final String text;
+
+        Doc(IndexRequest indexRequest, IngestSettings settings, XContentType contentType, Map<String, Object> source, String text) {
+            this.indexRequest = indexRequest;
+            this.settings = settings;
+            this.contentType = contentType;
+            this.source = source;
+            this.text = text;
+        }
+
+        /**
+         * Returns the type the model of the doc is trained on
+         */
+        String type() {
+            return settings.type == null ? indexRequest.type() : settings.type;
+        }
+
+        /**
+         * Returns the classify request defining the model of the doc, without its text
+         */
+        ClassifyRequest classifyRequest() {
+            ClassifyRequest request = new ClassifyRequest(settings.index, type());
+            request.textFields(settings.fields);
+            request.classField(settings.classField);
+            if (settings.model != null) {
+                request.modelType(settings.model);
+            }
+            request.modelSettings(settings.modelSettings);
+            request.analyzer(settings.analyzer);
+            if (settings.query != null) {
+                request.trainQuery(new BytesArray(settings.query));
+            }
+            return request;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.stats;
+
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.classification.ClassificationStats;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The classification stats of each node, as well as of each index over all nodes
+ */
+public class ClassifyStatsResponse extends BaseNodesResponse<NodeClassifyStats> implements ToXContent {
+
+    static final class Fields {
+        static final XContentBuilderString CLUSTER_NAME = new XContentBuilderString("cluster_name");
+        static final XContentBuilderString INDICES = new XContentBuilderString("indices");
+        static final XContentBuilderString NODES = new XContentBuilderString("nodes");
+        static final XContentBuilderString NAME = new XContentBuilderString("name");
+        static final XContentBuilderString TRANSPORT_ADDRESS = new XContentBuilderString("transport_address");
+    }
+
+    ClassifyStatsResponse() {
+    }
+
+    public ClassifyStatsResponse(ClusterName clusterName, NodeClassifyStats[] nodes) {
+        super(clusterName, nodes);
+    }
+
+    /**
+     * Returns the stats of each index, summed over all nodes
+     */
+    public Map<String, ClassificationStats> getIndices() {
+        Map<String, ClassificationStats> indices = new TreeMap<>();
+        for (NodeClassifyStats node : nodes) {
+            for (Map.Entry<String, ClassificationStats> entry : node.getIndices().entrySet()) {
+                ClassificationStats stats = indices.get(entry.getKey());
+                if (stats == null) {
+                    stats = new ClassificationStats();
+                    indices.put(entry.getKey(), stats);
+                }
+                stats.add(entry.getValue());
+            }
+        }
+        return indices;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        nodes = new NodeClassifyStats[in.readVInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NodeClassifyStats.readNodeClassifyStats(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(nodes.length);
+        for (NodeClassifyStats node : nodes) {
+            node.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.CLUSTER_NAME, getClusterName().value());
+        buildIndices(builder, params, getIndices());
+
+        builder.startObject(Fields.NODES);
+        for (NodeClassifyStats node : nodes) {
+            builder.startObject(node.getNode().id());
+            builder.field(Fields.NAME, node.getNode().name());
+            builder.field(Fields.TRANSPORT_ADDRESS, node.getNode().address().toString());
+            buildIndices(builder, params, new TreeMap<>(node.getIndices()));
+            builder.endObject();
+        }
+        builder.endObject();
+        return builder;
+    }
+
+    private static void buildIndices(XContentBuilder builder, Params params, Map<String, ClassificationStats> indices) throws IOException {
+        builder.startObject(Fields.INDICES);
+        for (Map.Entry<String, ClassificationStats> entry : indices.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+    }
+}
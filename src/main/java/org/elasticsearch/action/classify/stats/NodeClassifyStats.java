@@ -0,0 +1,77 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.stats;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.classification.ClassificationStats;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The classification stats of each index on a node
+ */
+public class NodeClassifyStats extends BaseNodeResponse {
+
+    private Map<String, ClassificationStats> indices;
+
+    NodeClassifyStats() {
+    }
+
+    public NodeClassifyStats(DiscoveryNode node, Map<String, ClassificationStats> indices) {
+        super(node);
+        this.indices = indices;
+    }
+
+    public Map<String, ClassificationStats> getIndices() {
+        return indices;
+    }
+
+    public static NodeClassifyStats readNodeClassifyStats(StreamInput in) throws IOException {
+        NodeClassifyStats stats = new NodeClassifyStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int size = in.readVInt();
+        indices = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            indices.put(in.readString(), ClassificationStats.readClassificationStats(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(indices.size());
+        for (Map.Entry<String, ClassificationStats> entry : indices.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+}
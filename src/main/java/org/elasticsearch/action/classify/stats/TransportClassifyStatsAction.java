@@ -0,0 +1,129 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.action.classify.stats;
+
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.classification.ClassificationService;
+import org.elasticsearch.classification.ClassificationStats;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.regex.Regex;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 
+ */
+public class TransportClassifyStatsAction extends TransportNodesAction<ClassifyStatsRequest, ClassifyStatsResponse,
+        TransportClassifyStatsAction.NodeRequest, NodeClassifyStats> {
+
+    private final ClassificationService classificationService;
+
+    @Inject
+    public TransportClassifyStatsAction(Settings settings, ClusterName clusterName, ThreadPool threadPool, ClusterService clusterService,
+                                        TransportService transportService, ActionFilters actionFilters,
+                                        IndexNameExpressionResolver indexNameExpressionResolver, ClassificationService classificationService) {
+        super(settings, ClassifyStatsAction.NAME, clusterName, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, ClassifyStatsRequest.class, NodeRequest.class, ThreadPool.Names.MANAGEMENT);
+        this.classificationService = classificationService;
+    }
+
+    @Override
+    protected ClassifyStatsResponse newResponse(ClassifyStatsRequest request, AtomicReferenceArray responses) {
+        List<NodeClassifyStats> nodeStats = new ArrayList<>();
+        for (int i = 0; i < responses.length(); i++) {
+            Object response = responses.get(i);
+            if (response instanceof NodeClassifyStats) {
+                nodeStats.add((NodeClassifyStats) response);
+            }
+        }
+        return new ClassifyStatsResponse(clusterName, nodeStats.toArray(new NodeClassifyStats[nodeStats.size()]));
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(String nodeId, ClassifyStatsRequest request) {
+        return new NodeRequest(nodeId, request);
+    }
+
+    @Override
+    protected NodeClassifyStats newNodeResponse() {
+        return new NodeClassifyStats();
+    }
+
+    @Override
+    protected NodeClassifyStats nodeOperation(NodeRequest request) {
+        Map<String, ClassificationStats> stats = classificationService.stats();
+        String[] indices = request.request.indices();
+        if (indices != null && indices.length > 0) {
+            for (Iterator<String> it = stats.keySet().iterator(); it.hasNext(); ) {
+                if (!Regex.simpleMatch(indices, it.next())) {
+                    it.remove();
+                }
+            }
+        }
+        return new NodeClassifyStats(clusterService.localNode(), stats);
+    }
+
+    @Override
+    protected boolean accumulateExceptions() {
+        return false;
+    }
+
+    public static class NodeRequest extends BaseNodeRequest {
+
+        private ClassifyStatsRequest request;
+
+        public NodeRequest() {
+        }
+
+        NodeRequest(String nodeId, ClassifyStatsRequest request) {
+            super(request, nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new ClassifyStatsRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+}
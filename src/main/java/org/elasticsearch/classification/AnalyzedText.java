@@ -0,0 +1,278 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.memory.MemoryIndex;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The text to classify analyzed into tokens per text field. It is computed once per request,
+ * shipped to the shards and then reused by every field and model, instead of re-tokenizing the text each time.
+ */
+public class AnalyzedText implements Streamable {
+
+    // several fields may share the same tokens if they were analyzed the same way
+    private Map<String, TokenSequence> tokensPerField;
+
+    AnalyzedText() {
+        this.tokensPerField = new HashMap<>();
+    }
+
+    /**
+     * Analyzes the text for each field with its analyzer. Fields sharing the same analyzer are only analyzed once.
+     */
+    public static AnalyzedText analyze(String text, Map<String, Analyzer> analyzers) throws IOException {
+        AnalyzedText analyzedText = new AnalyzedText();
+        Map<Analyzer, TokenSequence> analyzed = new IdentityHashMap<>();
+        for (Map.Entry<String, Analyzer> entry : analyzers.entrySet()) {
+            TokenSequence tokenSequence = analyzed.get(entry.getValue());
+            if (tokenSequence == null) {
+                tokenSequence = TokenSequence.analyze(text, entry.getKey(), entry.getValue());
+                analyzed.put(entry.getValue(), tokenSequence);
+            }
+            analyzedText.tokensPerField.put(entry.getKey(), tokenSequence);
+        }
+        return analyzedText;
+    }
+
+    /**
+     * Reads the analyzed text of each field from the term vectors of a doc. The tokens are in the order of the
+     * text if the term vectors have positions, grouped by term otherwise, in which case they cannot be made into
+     * n-grams, see {@link #hasPositions(Fields, String[])}.
+     */
+    public static AnalyzedText fromTermVectors(Fields termVectors, String[] fields) throws IOException {
+        AnalyzedText analyzedText = new AnalyzedText();
+        for (String field : fields) {
+            Terms terms = termVectors.terms(field);
+            if (terms != null) {
+                analyzedText.tokensPerField.put(field, TokenSequence.fromTermVector(terms));
+            }
+        }
+        return analyzedText;
+    }
+
+    /**
+     * Returns true if the term vectors of each of the given fields have positions, so that the tokens read from
+     * them are in the order of the text
+     */
+    public static boolean hasPositions(Fields termVectors, String[] fields) throws IOException {
+        for (String field : fields) {
+            Terms terms = termVectors.terms(field);
+            if (terms != null && !terms.hasPositions()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the fields the text was analyzed for
+     */
+    public Set<String> fields() {
+        return tokensPerField.keySet();
+    }
+
+    /**
+     * Returns the tokens of the text at each of the given fields, one token per occurrence in the order of the text
+     */
+    public String[] tokens(String... fields) {
+        List<String> tokens = new ArrayList<>();
+        for (String field : fields) {
+            TokenSequence tokenSequence = tokensPerField.get(field);
+            if (tokenSequence != null) {
+                tokenSequence.expand(tokens);
+            }
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    /**
+     * Returns the analyzed text as term vectors, as if it were a document with a single hit
+     */
+    public Fields asFields() throws IOException {
+        MemoryIndex index = new MemoryIndex();
+        for (Map.Entry<String, TokenSequence> entry : tokensPerField.entrySet()) {
+            List<String> tokens = new ArrayList<>();
+            entry.getValue().expand(tokens);
+            index.addField(entry.getKey(), index.keywordTokenStream(tokens));
+        }
+        return ((LeafReader) index.createSearcher().getIndexReader()).fields();
+    }
+
+    public static AnalyzedText readAnalyzedText(StreamInput in) throws IOException {
+        AnalyzedText analyzedText = new AnalyzedText();
+        analyzedText.readFrom(in);
+        return analyzedText;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        int size = in.readVInt();
+        List<TokenSequence> distinct = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            distinct.add(TokenSequence.readTokenSequence(in));
+        }
+        size = in.readVInt();
+        tokensPerField = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            tokensPerField.put(in.readString(), distinct.get(in.readVInt()));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        // only send the tokens shared by several fields once
+        Map<TokenSequence, Integer> distinct = new IdentityHashMap<>();
+        for (TokenSequence tokenSequence : tokensPerField.values()) {
+            if (!distinct.containsKey(tokenSequence)) {
+                distinct.put(tokenSequence, distinct.size());
+            }
+        }
+        TokenSequence[] ordered = new TokenSequence[distinct.size()];
+        for (Map.Entry<TokenSequence, Integer> entry : distinct.entrySet()) {
+            ordered[entry.getValue()] = entry.getKey();
+        }
+        out.writeVInt(ordered.length);
+        for (TokenSequence tokenSequence : ordered) {
+            tokenSequence.writeTo(out);
+        }
+        out.writeVInt(tokensPerField.size());
+        for (Map.Entry<String, TokenSequence> entry : tokensPerField.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVInt(distinct.get(entry.getValue()));
+        }
+    }
+
+    /**
+     * The tokens of a field in the order they were produced by the analyzer, as the ords of its distinct terms which
+     * are only kept once
+     */
+    static class TokenSequence {
+
+        private String[] terms;
+        private int[] sequence;
+
+        TokenSequence(String[] terms, int[] sequence) {
+            this.terms = terms;
+            this.sequence = sequence;
+        }
+
+        static TokenSequence analyze(String text, String field, Analyzer analyzer) throws IOException {
+            Map<String, Integer> ords = new HashMap<>();
+            List<String> terms = new ArrayList<>();
+            int[] sequence = new int[16];
+            int length = 0;
+            try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+                CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+                tokenStream.reset();
+                while (tokenStream.incrementToken()) {
+                    String term = charTermAttribute.toString();
+                    Integer ord = ords.get(term);
+                    if (ord == null) {
+                        ord = terms.size();
+                        ords.put(term, ord);
+                        terms.add(term);
+                    }
+                    sequence = ArrayUtil.grow(sequence, length + 1);
+                    sequence[length++] = ord;
+                }
+                tokenStream.end();
+            }
+            return new TokenSequence(terms.toArray(new String[terms.size()]), Arrays.copyOf(sequence, length));
+        }
+
+        /**
+         * Reads the tokens of a term vector. All the tokens at a position are kept, such as the synonyms of a
+         * word, in the order of their terms.
+         */
+        static TokenSequence fromTermVector(Terms terms) throws IOException {
+            boolean hasPositions = terms.hasPositions();
+            List<String> distinct = new ArrayList<>();
+            // the position of each token in the high bits and the ord of its term in the low bits, so that sorting
+            // them orders the tokens by position and then by term
+            long[] tokens = new long[16];
+            int length = 0;
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum postings = null;
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                int ord = distinct.size();
+                distinct.add(term.utf8ToString());
+                postings = termsEnum.postings(null, postings, hasPositions ? PostingsEnum.POSITIONS : PostingsEnum.FREQS);
+                if (postings.nextDoc() == DocIdSetIterator.NO_MORE_DOCS) {
+                    continue;
+                }
+                int freq = postings.freq();
+                for (int i = 0; i < freq; i++) {
+                    // without positions, the tokens are grouped by term
+                    long position = hasPositions ? postings.nextPosition() : length;
+                    tokens = ArrayUtil.grow(tokens, length + 1);
+                    tokens[length++] = position << 32 | ord;
+                }
+            }
+            Arrays.sort(tokens, 0, length);
+            // positions left by stop words have no token, so they are simply not in the sequence
+            int[] sequence = new int[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = (int) tokens[i];
+            }
+            return new TokenSequence(distinct.toArray(new String[distinct.size()]), sequence);
+        }
+
+        void expand(List<String> tokens) {
+            for (int ord : sequence) {
+                tokens.add(terms[ord]);
+            }
+        }
+
+        static TokenSequence readTokenSequence(StreamInput in) throws IOException {
+            String[] terms = in.readStringArray();
+            int[] sequence = new int[in.readVInt()];
+            for (int i = 0; i < sequence.length; i++) {
+                sequence[i] = in.readVInt();
+            }
+            return new TokenSequence(terms, sequence);
+        }
+
+        void writeTo(StreamOutput out) throws IOException {
+            out.writeStringArray(terms);
+            out.writeVInt(sequence.length);
+            for (int ord : sequence) {
+                out.writeVInt(ord);
+            }
+        }
+    }
+}
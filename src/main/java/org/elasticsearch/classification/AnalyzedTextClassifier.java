@@ -0,0 +1,23 @@
+package org.elasticsearch.classification;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.classification.Classifier;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link Classifier} which can be evaluated on an already {@link AnalyzedText}
+ */
+public interface AnalyzedTextClassifier<T> extends Classifier<T> {
+
+    /**
+     * Get all the classes (sorted by score, descending) assigned to the given analyzed text.
+     *
+     * @param analyzedText the text analyzed per text field
+     * @return the whole list of {@link ClassificationResult}, the classes and scores
+     * @throws IOException If there is a low-level I/O error.
+     */
+    List<ClassificationResult<T>> getClasses(AnalyzedText analyzedText) throws IOException;
+
+}
@@ -0,0 +1,447 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.index.mapper.ParseContext;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A multi-class averaged perceptron, see <code>http://www.ciml.info/dl/v0_8/ciml-v0_8-ch03.pdf</code>.
+ * <p/>
+ *
+ * The classes are the terms of the class field, and a doc may have several of them. The features of the text fields
+ * are hashed by a {@link FeatureHashingVectorizer}, so that no term dictionary is needed to evaluate the model. The
+ * weights are a dense array of floats laid out feature by feature, so that the scores of all the classes are computed
+ * by adding up contiguous rows of weights, which the JIT can vectorize.
+ */
+public class AveragedPerceptronClassifier implements CachedClassifier<BytesRef> {
+
+    // the maximum number of weights, that is dimension times the number of classes, which is 16mb of floats for the
+    // model and 48mb while training
+    public static final long MAX_WEIGHTS = 1L << 22;
+
+    private final FeatureHashingVectorizer vectorizer;
+    private final int epochs;
+    private final SourceFieldsLoader sourceFieldsLoader;
+    private final ClassMapping classMapping;
+
+    // also read when evaluating, which does not lock the classifier
+    private volatile String[] textFieldNames;
+    private String classFieldName;
+    private volatile Analyzer analyzer;
+
+    // accounts for the arrays allocated while training, if set
+    private CircuitBreaker breaker;
+
+    private volatile Model model;
+
+    // the version of the reader the classifier was trained on
+    private volatile long trainedReaderVersion = -1;
+    private volatile boolean trained = false;
+
+    // held while the classifier is trained, so that concurrent requests train it once
+    private final ReentrantLock trainingLock = new ReentrantLock();
+
+    /**
+     * Creates a {@link AveragedPerceptronClassifier}
+     *
+     * @param vectorizer         to hash the features of the text
+     * @param epochs             the number of passes over the training docs
+     * @param sourceFieldsLoader to load the text and classes of the training docs
+     */
+    public AveragedPerceptronClassifier(FeatureHashingVectorizer vectorizer, int epochs, SourceFieldsLoader sourceFieldsLoader) {
+        this(vectorizer, epochs, sourceFieldsLoader, null);
+    }
+
+    /**
+     * Creates a {@link AveragedPerceptronClassifier} whose classes are derived from the terms of the class field
+     *
+     * @param classMapping maps the values of the class field to the classes, or null if they are the classes
+     */
+    AveragedPerceptronClassifier(FeatureHashingVectorizer vectorizer, int epochs, SourceFieldsLoader sourceFieldsLoader,
+                                 ClassMapping classMapping) {
+        if (epochs <= 0) {
+            throw new IllegalArgumentException("epochs must be positive, got [" + epochs + "]");
+        }
+        this.vectorizer = vectorizer;
+        this.epochs = epochs;
+        this.sourceFieldsLoader = sourceFieldsLoader;
+        this.classMapping = classMapping;
+    }
+
+    /**
+     * Sets the breaker the weights allocated while training are accounted against, such as the request breaker
+     */
+    public void setCircuitBreaker(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String textFieldName, String classFieldName, Analyzer analyzer) throws IOException {
+        train(leafReader, textFieldName, classFieldName, analyzer, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String textFieldName, String classFieldName, Analyzer analyzer, Query query) throws IOException {
+        train(leafReader, new String[]{textFieldName}, classFieldName, analyzer, query);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String[] textFieldNames, String classFieldName, Analyzer analyzer, Query query) throws IOException {
+        train(leafReader, -1, textFieldNames, classFieldName, analyzer, query);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, long readerVersion, String[] textFieldNames, String classFieldName,
+                      Analyzer analyzer, Query query) throws IOException {
+        trainingLock.lock();
+        try {
+            if (isTrained(readerVersion)) {
+                return;
+            }
+            this.textFieldNames = textFieldNames;
+            this.classFieldName = classFieldName;
+            this.analyzer = analyzer;
+
+            // the classes are the terms of the class field, or what they are mapped to
+            Terms classTerms = MultiFields.getTerms(leafReader, classFieldName);
+            if (classTerms == null) {
+                throw new IOException("class field " + classFieldName + " has no terms to train on");
+            }
+            List<BytesRef> classes = new ArrayList<>();
+            Map<String, Integer> classOrds = new HashMap<>();
+            TermsEnum termsEnum = classTerms.iterator();
+            BytesRef prefix = classMapping == null ? new BytesRef() : classMapping.prefix();
+            BytesRef term = termsEnum.seekCeil(prefix) == TermsEnum.SeekStatus.END ? null : termsEnum.term();
+            while (term != null && StringHelper.startsWith(term, prefix)) {
+                String clazz = mapClass(term.utf8ToString());
+                if (clazz != null && !classOrds.containsKey(clazz)) {
+                    classOrds.put(clazz, classes.size());
+                    classes.add(new BytesRef(clazz));
+                }
+                term = termsEnum.next();
+            }
+            if (classes.isEmpty()) {
+                throw new IOException("class field " + classFieldName + " has no terms to train on");
+            }
+            int numClasses = classes.size();
+            int dimension = vectorizer.dimension();
+            if ((long) numClasses * dimension > MAX_WEIGHTS) {
+                throw new IllegalArgumentException("class field " + classFieldName + " has too many classes [" + numClasses
+                        + "] for a dimension of [" + dimension + "], the number of weights cannot exceed [" + MAX_WEIGHTS + "]");
+            }
+
+            BooleanQuery q = new BooleanQuery();
+            Query classQuery = classMapping == null ? new WildcardQuery(new Term(classFieldName, "*")) : new PrefixQuery(new Term(classFieldName, prefix));
+            q.add(new BooleanClause(classQuery, BooleanClause.Occur.MUST));
+            if (query != null) {
+                q.add(new BooleanClause(query, BooleanClause.Occur.MUST));
+            }
+            Weight weight = new IndexSearcher(leafReader).createNormalizedWeight(q, false);
+
+            long bytes = (long) numClasses * dimension * (RamUsageEstimator.NUM_BYTES_FLOAT + RamUsageEstimator.NUM_BYTES_DOUBLE);
+            if (breaker != null) {
+                breaker.addEstimateBytesAndMaybeBreak(bytes, "<averaged_perceptron>");
+            }
+            float[] weights;
+            try {
+                // the weights, and the updates weighted by when they happened so that the weights can be averaged in the end
+                weights = new float[numClasses * dimension];
+                double[] weightedUpdates = new double[numClasses * dimension];
+                float[] scores = new float[numClasses];
+                long step = 1;
+                for (int epoch = 0; epoch < epochs; epoch++) {
+                    Scorer scorer = weight.scorer(leafReader.getContext(), leafReader.getLiveDocs());
+                    if (scorer == null) {
+                        break;
+                    }
+                    int doc;
+                    while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                        trainOn(leafReader, doc, classOrds, scores, weights, weightedUpdates, numClasses, step);
+                        step++;
+                    }
+                }
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] -= weightedUpdates[i] / step;
+                }
+            } finally {
+                if (breaker != null) {
+                    // the averaged weights are accounted by the models cache of the shard once the model is put back in it
+                    breaker.addWithoutBreaking(-bytes);
+                }
+            }
+
+            model = new Model(classes.toArray(new BytesRef[numClasses]), weights);
+            trainedReaderVersion = readerVersion;
+            trained = true;
+        } finally {
+            trainingLock.unlock();
+        }
+    }
+
+    private void trainOn(LeafReader leafReader, int docId, Map<String, Integer> classOrds, float[] scores, float[] weights,
+                         double[] weightedUpdates, int numClasses, long step) throws IOException {
+        List<String> classValues = new ArrayList<>();
+        SparseVector features;
+        SourceFieldsLoader.AnalyzedDoc analyzedDoc = sourceFieldsLoader.loadAnalyzed(leafReader, docId, textFieldNames, classFieldName,
+                vectorizer.ngrams() > 1);
+        if (analyzedDoc != null) {
+            classValues.addAll(analyzedDoc.classes());
+            features = vectorizer.vectorize(analyzedDoc.text(), textFieldNames);
+        } else {
+            ParseContext.Document doc = sourceFieldsLoader.load(leafReader, docId);
+            if (doc == null) {
+                return;
+            }
+            for (IndexableField classField : doc.getFields(classFieldName)) {
+                if (classField.stringValue() != null) {
+                    classValues.add(classField.stringValue());
+                }
+            }
+            features = vectorizer.vectorize(doc, textFieldNames, analyzer);
+        }
+        List<Integer> correctClasses = new ArrayList<>();
+        for (String classValue : classValues) {
+            String clazz = mapClass(classValue);
+            Integer classOrd = clazz == null ? null : classOrds.get(clazz);
+            if (classOrd != null) {
+                correctClasses.add(classOrd);
+            }
+        }
+        if (correctClasses.isEmpty() || features.size() == 0) {
+            return;
+        }
+
+        // assign a class to the doc with the current weights
+        scores(weights, numClasses, features, scores);
+        int assignedClass = argMax(scores);
+
+        // and if it is not one of its classes, move the weights towards its classes and away from the assigned one
+        if (!correctClasses.contains(assignedClass)) {
+            float delta = 1f / correctClasses.size();
+            for (int correctClass : correctClasses) {
+                update(weights, weightedUpdates, numClasses, features, correctClass, delta, step);
+            }
+            update(weights, weightedUpdates, numClasses, features, assignedClass, -1f, step);
+        }
+    }
+
+    private String mapClass(String value) {
+        return classMapping == null ? value : classMapping.map(value);
+    }
+
+    private static void update(float[] weights, double[] weightedUpdates, int numClasses, SparseVector features, int classOrd,
+                               float delta, long step) {
+        for (int i = 0; i < features.size(); i++) {
+            int index = features.index(i) * numClasses + classOrd;
+            float update = delta * features.value(i);
+            weights[index] += update;
+            weightedUpdates[index] += step * update;
+        }
+    }
+
+    /**
+     * Computes the score of each class as the dot product of the features with the weights of that class. The weights
+     * of a feature are contiguous, so this is done by adding up one scaled row of weights per feature.
+     */
+    private static void scores(float[] weights, int numClasses, SparseVector features, float[] scores) {
+        Arrays.fill(scores, 0f);
+        for (int i = 0; i < features.size(); i++) {
+            int offset = features.index(i) * numClasses;
+            float value = features.value(i);
+            for (int c = 0; c < numClasses; c++) {
+                scores[c] += value * weights[offset + c];
+            }
+        }
+    }
+
+    private static int argMax(float[] scores) {
+        int max = 0;
+        for (int c = 1; c < scores.length; c++) {
+            if (scores[c] > scores[max]) {
+                max = c;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Lock trainingLock() {
+        return trainingLock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTrained(long readerVersion) {
+        return readerVersion != -1 && trainedReaderVersion == readerVersion;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTrained() {
+        return trained;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long ramBytesUsed() {
+        Model model = this.model;
+        if (model == null) {
+            return 0;
+        }
+        long bytes = RamUsageEstimator.sizeOf(model.weights);
+        for (BytesRef clazz : model.classes) {
+            bytes += RamUsageEstimator.sizeOf(clazz.bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
+        return getClasses(text).get(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text) throws IOException {
+        Model model = checkModel();
+        return model.getClasses(vectorizer.vectorize(text, textFieldNames, analyzer));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text, int max) throws IOException {
+        List<ClassificationResult<BytesRef>> classes = getClasses(text);
+        return classes.subList(0, Math.min(max, classes.size()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(AnalyzedText analyzedText) throws IOException {
+        Model model = checkModel();
+        return model.getClasses(vectorizer.vectorize(analyzedText, textFieldNames));
+    }
+
+    /**
+     * Returns all the classes for features which were already vectorized, so that several models sharing the same
+     * vectorizer do not vectorize the text each
+     */
+    List<ClassificationResult<BytesRef>> getClasses(SparseVector features) throws IOException {
+        return checkModel().getClasses(features);
+    }
+
+    private Model checkModel() throws IOException {
+        Model model = this.model;
+        if (model == null) {
+            throw new IOException("You must first call Classifier#train");
+        }
+        return model;
+    }
+
+    /**
+     * Maps the values of the class field to the classes of the model
+     */
+    interface ClassMapping {
+
+        /**
+         * Returns the prefix of all the values which may be mapped to a class
+         */
+        BytesRef prefix();
+
+        /**
+         * Returns the class of a value of the class field, or null if it is not mapped to any class
+         */
+        String map(String value);
+    }
+
+    private static class Model {
+
+        private final BytesRef[] classes;
+        private final float[] weights;
+
+        Model(BytesRef[] classes, float[] weights) {
+            this.classes = classes;
+            this.weights = weights;
+        }
+
+        /**
+         * Returns all the classes, with the softmax of their scores so that they can be compared across shards
+         */
+        List<ClassificationResult<BytesRef>> getClasses(SparseVector features) {
+            float[] scores = new float[classes.length];
+            scores(weights, classes.length, features, scores);
+            float max = scores[argMax(scores)];
+            double sum = 0;
+            double[] exps = new double[scores.length];
+            for (int c = 0; c < scores.length; c++) {
+                exps[c] = Math.exp(scores[c] - max);
+                sum += exps[c];
+            }
+            List<ClassificationResult<BytesRef>> results = new ArrayList<>(classes.length);
+            for (int c = 0; c < classes.length; c++) {
+                results.add(new ClassificationResult<>(classes[c], exps[c] / sum));
+            }
+            Collections.sort(results);
+            return results;
+        }
+    }
+}
@@ -2,30 +2,283 @@ package org.elasticsearch.classification;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.classification.ClassificationResult;
-import org.apache.lucene.index.LeafReader;
-import org.apache.lucene.search.Query;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.index.mapper.ParseContext;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class BooleanPerceptronClassifier extends org.apache.lucene.classification.BooleanPerceptronClassifier {
+/**
+ * A perceptron (see <code>http://en.wikipedia.org/wiki/Perceptron</code>) based on a boolean class field,
+ * following {@link org.apache.lucene.classification.BooleanPerceptronClassifier}.
+ * <p/>
+ *
+ * Unlike the Lucene version, training docs are streamed in batches of <code>batchSize</code> docs and the weights
+ * are only updated at the end of each batch. The progress is kept as a checkpoint so that a training which was
+ * interrupted resumes where it stopped, as long as it is resumed on the same reader.
+ * <p/>
+ *
+ * Several text fields can be trained on. Their features are hashed by a {@link FeatureHashingVectorizer} into a
+ * single array of weights, so that no term dictionary is needed to evaluate the model. The weight of each dimension
+ * starts as the total term frequency of the terms hashed into it.
+ */
+public class BooleanPerceptronClassifier implements CachedClassifier<Boolean> {
 
-    public BooleanPerceptronClassifier() {
-        super();
+    private final FeatureHashingVectorizer vectorizer;
+    private final Double threshold;
+    private final int batchSize;
+    private final int checkpointInterval;
+    private final SourceFieldsLoader sourceFieldsLoader;
+
+    // read by the evaluation threads without holding the lock, so set before the model is published
+    private volatile String[] textFieldNames;
+    private String classFieldName;
+    private volatile Analyzer analyzer;
+
+    // the training progress, only accessed while holding the lock on this classifier
+    private Checkpoint checkpoint;
+    private volatile long checkpointBytes;
+
+    // the weights the classifier is evaluated with, published every checkpoint interval
+    private volatile Model model;
+
+    // the version of the reader the classifier was completely trained on
+    private volatile long trainedReaderVersion = -1;
+    private volatile boolean trained = false;
+
+    // held while the classifier is trained, so that concurrent requests train it once
+    private final ReentrantLock trainingLock = new ReentrantLock();
+
+    private final AtomicBoolean trainingInBackground = new AtomicBoolean();
+
+    /**
+     * Creates a {@link BooleanPerceptronClassifier}
+     *
+     * @param vectorizer         to hash the features of the text
+     * @param threshold          the binary threshold for perceptron output evaluation, automatically assigned if null
+     * @param batchSize          the number of docs processed before the weights are updated
+     * @param checkpointInterval the number of docs processed before the weights used for evaluation are published
+     * @param sourceFieldsLoader to load the text and class of the training docs
+     */
+    public BooleanPerceptronClassifier(FeatureHashingVectorizer vectorizer, Double threshold, int batchSize, int checkpointInterval,
+                                       SourceFieldsLoader sourceFieldsLoader) {
+        this.vectorizer = vectorizer;
+        this.threshold = threshold;
+        this.batchSize = batchSize;
+        this.checkpointInterval = checkpointInterval;
+        this.sourceFieldsLoader = sourceFieldsLoader;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String textFieldName, String classFieldName, Analyzer analyzer) throws IOException {
+        train(leafReader, textFieldName, classFieldName, analyzer, null);
     }
 
-    public BooleanPerceptronClassifier(Double threshold, Integer batchSize) {
-        super(threshold, batchSize);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String textFieldName, String classFieldName, Analyzer analyzer, Query query) throws IOException {
+        train(leafReader, new String[]{textFieldName}, classFieldName, analyzer, query);
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public void train(LeafReader leafReader, String[] textFieldNames, String classFieldName, Analyzer analyzer, Query query) throws IOException {
-        if (textFieldNames.length == 1) {
-            super.train(leafReader, textFieldNames[0], classFieldName, analyzer, query);
+        train(leafReader, -1, textFieldNames, classFieldName, analyzer, query);
+    }
+
+    /**
+     * Trains the classifier, resuming from the last checkpoint if it was taken on a reader of the same version.
+     */
+    @Override
+    public void train(LeafReader leafReader, long readerVersion, String[] textFieldNames, String classFieldName,
+                      Analyzer analyzer, Query query) throws IOException {
+        trainingLock.lock();
+        try {
+            this.textFieldNames = textFieldNames;
+            this.classFieldName = classFieldName;
+            this.analyzer = analyzer;
+
+            if (checkpoint == null || readerVersion == -1 || checkpoint.readerVersion != readerVersion) {
+                checkpoint = new Checkpoint(leafReader, readerVersion);
+                checkpointBytes = RamUsageEstimator.sizeOf(checkpoint.weights);
+            }
+            if (checkpoint.done) {
+                return;
+            }
+
+            BooleanQuery q = new BooleanQuery();
+            q.add(new BooleanClause(new WildcardQuery(new Term(classFieldName, "*")), BooleanClause.Occur.MUST));
+            if (query != null) {
+                q.add(new BooleanClause(query, BooleanClause.Occur.MUST));
+            }
+            Weight weight = new IndexSearcher(leafReader).createNormalizedWeight(q, false);
+            Scorer scorer = weight.scorer(leafReader.getContext(), leafReader.getLiveDocs());
+
+            if (scorer != null) {
+                Updates updates = new Updates(checkpoint.weights.length);
+                int batchCount = 0;
+                int doc = scorer.advance(checkpoint.nextDoc);
+                while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+                    trainOn(leafReader, doc, updates);
+                    batchCount++;
+                    doc = scorer.nextDoc();
+                    if (batchCount == batchSize) {
+                        checkpoint.update(updates, doc, batchCount);
+                        if (checkpoint.docsSinceModel >= checkpointInterval) {
+                            publishModel();
+                        }
+                        batchCount = 0;
+                    }
+                }
+                checkpoint.update(updates, doc, batchCount);
+            }
+            checkpoint.done = true;
+            publishModel();
+            trainedReaderVersion = readerVersion;
+            trained = true;
+        } finally {
+            trainingLock.unlock();
+        }
+    }
+
+    private void trainOn(LeafReader leafReader, int docId, Updates updates) throws IOException {
+        String classValue;
+        SparseVector features;
+        SourceFieldsLoader.AnalyzedDoc analyzedDoc = sourceFieldsLoader.loadAnalyzed(leafReader, docId, textFieldNames, classFieldName,
+                vectorizer.ngrams() > 1);
+        if (analyzedDoc != null) {
+            classValue = analyzedDoc.classes().isEmpty() ? null : analyzedDoc.classes().get(0);
+            if (classValue == null) {
+                return;
+            }
+            features = vectorizer.vectorize(analyzedDoc.text(), textFieldNames);
         } else {
-            throw new IOException("training with multiple fields not supported by boolean perceptron classifier");
+            ParseContext.Document doc = sourceFieldsLoader.load(leafReader, docId);
+            if (doc == null) {
+                return;
+            }
+            classValue = doc.get(classFieldName);
+            if (classValue == null) {
+                return;
+            }
+            features = vectorizer.vectorize(doc, textFieldNames, analyzer);
         }
+
+        // assign class to the doc with the weights of the last batch
+        double output = features.dot(checkpoint.weights);
+        boolean assignedClass = output >= checkpoint.threshold;
+        boolean correctClass = "T".equals(classValue) || Boolean.parseBoolean(classValue);
+
+        // and update the weights of its features if it was wrong
+        int modifier = Boolean.compare(correctClass, assignedClass);
+        if (modifier != 0) {
+            for (int i = 0; i < features.size(); i++) {
+                updates.add(features.index(i), modifier * features.value(i));
+            }
+        }
+    }
+
+    private void publishModel() {
+        model = new Model(Arrays.copyOf(checkpoint.weights, checkpoint.weights.length), checkpoint.threshold);
+        checkpoint.docsSinceModel = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Lock trainingLock() {
+        return trainingLock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTrained(long readerVersion) {
+        return readerVersion != -1 && trainedReaderVersion == readerVersion;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTrained() {
+        return trained;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long ramBytesUsed() {
+        long bytes = 0;
+        Model model = this.model;
+        if (model != null) {
+            bytes += RamUsageEstimator.sizeOf(model.weights);
+        }
+        // the checkpoint is locked while training, so only its size is read
+        return bytes + checkpointBytes;
+    }
+
+    /**
+     * Returns true if the classifier has weights to be evaluated with, even if it is not completely trained yet
+     */
+    public boolean hasModel() {
+        return model != null;
+    }
+
+    /**
+     * Marks the classifier as being trained in the background, returns false if it already is
+     */
+    public boolean startTrainingInBackground() {
+        return trainingInBackground.compareAndSet(false, true);
+    }
+
+    public void stopTrainingInBackground() {
+        trainingInBackground.set(false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClassificationResult<Boolean> assignClass(String text) throws IOException {
+        Model model = this.model;
+        if (model == null) {
+            throw new IOException("You must first call Classifier#train");
+        }
+        double output = vectorizer.vectorize(text, textFieldNames, analyzer).dot(model.weights);
+        return new ClassificationResult<>(output >= model.threshold, output);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<Boolean>> getClasses(AnalyzedText analyzedText) throws IOException {
+        Model model = this.model;
+        if (model == null) {
+            throw new IOException("You must first call Classifier#train");
+        }
+        double output = vectorizer.vectorize(analyzedText, textFieldNames).dot(model.weights);
+        List<ClassificationResult<Boolean>> result = new ArrayList<>();
+        result.add(new ClassificationResult<>(output >= model.threshold, output));
+        return result;
     }
 
     @Override
@@ -40,4 +293,98 @@ public class BooleanPerceptronClassifier extends org.apache.lucene.classificatio
         return getClasses(text);
     }
 
+    private class Checkpoint {
+
+        private final long readerVersion;
+        private final double threshold;
+        private final double[] weights;
+
+        // the first doc of the next batch to train on
+        private int nextDoc = 0;
+        private int docsSinceModel = 0;
+        private boolean done = false;
+
+        Checkpoint(LeafReader leafReader, long readerVersion) throws IOException {
+            this.readerVersion = readerVersion;
+
+            // initialize the weights of each dimension to the total term frequency of the terms hashed into it
+            this.weights = new double[vectorizer.dimension()];
+            long numTerms = 0;
+            long sumDocFreq = 0;
+            for (String textFieldName : textFieldNames) {
+                Terms textTerms = MultiFields.getTerms(leafReader, textFieldName);
+                if (textTerms == null) {
+                    continue;
+                }
+                TermsEnum termsEnum = textTerms.iterator();
+                BytesRef term;
+                while ((term = termsEnum.next()) != null) {
+                    weights[vectorizer.dimensionOf(textFieldName, term)] += termsEnum.totalTermFreq();
+                    numTerms++;
+                }
+                long fieldSumDocFreq = leafReader.getSumDocFreq(textFieldName);
+                if (fieldSumDocFreq == -1 && (threshold == null || threshold == 0d)) {
+                    throw new IOException("threshold cannot be assigned since the sum of doc freqs of field " + textFieldName + " is not available");
+                }
+                sumDocFreq += fieldSumDocFreq;
+            }
+            if (numTerms == 0) {
+                throw new IOException("fields " + Arrays.toString(textFieldNames) + " have no terms to train on");
+            }
+
+            if (threshold == null || threshold == 0d) {
+                // automatic assign a threshold
+                this.threshold = (double) sumDocFreq / 2d;
+            } else {
+                this.threshold = BooleanPerceptronClassifier.this.threshold;
+            }
+        }
+
+        void update(Updates updates, int nextDoc, int numDocs) {
+            updates.applyTo(weights);
+            this.nextDoc = nextDoc;
+            this.docsSinceModel += numDocs;
+        }
+    }
+
+    /**
+     * The weight updates of a batch, applied all at once at the end of the batch
+     */
+    private static class Updates {
+
+        private final double[] deltas;
+        private int[] touched = new int[16];
+        private int numTouched = 0;
+
+        Updates(int numFeatures) {
+            this.deltas = new double[numFeatures];
+        }
+
+        void add(int feature, double delta) {
+            if (deltas[feature] == 0) {
+                touched = ArrayUtil.grow(touched, numTouched + 1);
+                touched[numTouched++] = feature;
+            }
+            deltas[feature] += delta;
+        }
+
+        void applyTo(double[] weights) {
+            for (int i = 0; i < numTouched; i++) {
+                weights[touched[i]] += deltas[touched[i]];
+                deltas[touched[i]] = 0;
+            }
+            numTouched = 0;
+        }
+    }
+
+    private static class Model {
+
+        private final double[] weights;
+        private final double threshold;
+
+        Model(double[] weights, double threshold) {
+            this.weights = weights;
+            this.threshold = threshold;
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.Query;
+
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A classifier which is expensive to train. It is kept on the shard and only trained again once the reader changed.
+ */
+public interface CachedClassifier<T> extends AnalyzedTextClassifier<T> {
+
+    /**
+     * Trains the classifier, unless it was already trained on a reader of the same version
+     *
+     * @param leafReader     the reader to use to access the Lucene index
+     * @param readerVersion  the version of the reader, or -1 to always train
+     * @param textFieldNames the names of the fields to be used to compare documents
+     * @param classFieldName the name of the field containing the class assigned to documents
+     * @param analyzer       the analyzer used to tokenize / filter the unseen text
+     * @param query          the query to filter which documents use for training
+     * @throws IOException If there is a low-level I/O error.
+     */
+    void train(LeafReader leafReader, long readerVersion, String[] textFieldNames, String classFieldName,
+               Analyzer analyzer, Query query) throws IOException;
+
+    /**
+     * Returns the lock held while the classifier is trained, so that a request may give up waiting for another
+     * training of the same classifier once its timeout expires
+     */
+    Lock trainingLock();
+
+    /**
+     * Returns true if the classifier was completely trained on a reader of this version
+     */
+    boolean isTrained(long readerVersion);
+
+    /**
+     * Returns true if the classifier was completely trained on any reader
+     */
+    boolean isTrained();
+
+    /**
+     * Returns an estimate of the memory the classifier holds on to
+     */
+    long ramBytesUsed();
+
+}
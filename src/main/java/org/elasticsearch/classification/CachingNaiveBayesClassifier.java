@@ -0,0 +1,35 @@
+package org.elasticsearch.classification;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.List;
+
+public class CachingNaiveBayesClassifier extends org.apache.lucene.classification.CachingNaiveBayesClassifier implements AnalyzedTextClassifier<BytesRef> {
+
+    private AnalyzedText analyzedText;
+
+    public CachingNaiveBayesClassifier() {
+        super();
+    }
+
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(AnalyzedText analyzedText) throws IOException {
+        this.analyzedText = analyzedText;
+        try {
+            return getClasses((String) null);
+        } finally {
+            this.analyzedText = null;
+        }
+    }
+
+    @Override
+    protected String[] tokenizeDoc(String doc) throws IOException {
+        if (analyzedText != null) {
+            return analyzedText.tokens(textFieldNames);
+        }
+        return super.tokenizeDoc(doc);
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Selects the classes worth scoring for a text, so that a classifier which scores every class does not have to.
+ * <p/>
+ *
+ * The rarest terms of the text, which say the most about its class, are searched for. The classes of the matching
+ * docs are then read from the doc values of the class field, each class scoring the sum of the scores of its docs,
+ * so that the classes which none of these docs has are not looked at. Without doc values, the postings of each
+ * class are intersected with the matching docs instead. The classes which co-occur the most with these terms are
+ * the candidates, and if there are not enough of them the most frequent classes are added.
+ */
+public class CandidateClassSelector {
+
+    public static final int DEFAULT_CANDIDATE_TERMS = 10;
+
+    private final int maxCandidates;
+    private final int candidateTerms;
+
+    /**
+     * Creates a {@link CandidateClassSelector}
+     *
+     * @param maxCandidates  the maximum number of classes to select
+     * @param candidateTerms the number of terms of the text to search for
+     */
+    public CandidateClassSelector(int maxCandidates, int candidateTerms) {
+        if (maxCandidates <= 0) {
+            throw new IllegalArgumentException("max_candidates must be positive, got [" + maxCandidates + "]");
+        }
+        if (candidateTerms <= 0) {
+            throw new IllegalArgumentException("candidate_terms must be positive, got [" + candidateTerms + "]");
+        }
+        this.maxCandidates = maxCandidates;
+        this.candidateTerms = candidateTerms;
+    }
+
+    /**
+     * Returns the candidate classes for the tokens of a text, sorted in term order
+     *
+     * @param leafReader     the reader the classifier was trained on
+     * @param textFieldNames the fields the tokens are searched in
+     * @param classFieldName the field holding the classes
+     * @param query          the query filtering the training docs, may be null
+     * @param tokens         the tokens of the text
+     */
+    public BytesRef[] select(LeafReader leafReader, String[] textFieldNames, String classFieldName, Query query,
+                             String[] tokens) throws IOException {
+        Terms classTerms = MultiFields.getTerms(leafReader, classFieldName);
+        if (classTerms == null) {
+            return new BytesRef[0];
+        }
+
+        // the docs matching the rarest terms of the text, in doc id order
+        int[] docs = new int[16];
+        float[] scores = new float[16];
+        int numDocs = 0;
+        Query termsQuery = rarestTermsQuery(leafReader, textFieldNames, tokens);
+        if (termsQuery != null) {
+            BooleanQuery q = new BooleanQuery();
+            q.add(new BooleanClause(termsQuery, BooleanClause.Occur.MUST));
+            if (query != null) {
+                q.add(new BooleanClause(query, BooleanClause.Occur.MUST));
+            }
+            Weight weight = new IndexSearcher(leafReader).createNormalizedWeight(q, true);
+            Scorer scorer = weight.scorer(leafReader.getContext(), leafReader.getLiveDocs());
+            if (scorer != null) {
+                int doc;
+                while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    docs = ArrayUtil.grow(docs, numDocs + 1);
+                    scores = ArrayUtil.grow(scores, numDocs + 1);
+                    docs[numDocs] = doc;
+                    scores[numDocs] = scorer.score();
+                    numDocs++;
+                }
+            }
+        }
+
+        // score each class by its co-occurrence with these docs, the most frequent classes breaking ties
+        Map<BytesRef, Double> classScores = numDocs > 0 ? classScores(leafReader, classFieldName, docs, scores, numDocs) : null;
+        CandidateQueue queue = new CandidateQueue(maxCandidates);
+        TermsEnum termsEnum = classTerms.iterator();
+        PostingsEnum postings = null;
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            double score = 0;
+            if (classScores != null) {
+                Double classScore = classScores.get(term);
+                score = classScore == null ? 0 : classScore;
+            } else if (numDocs > 0) {
+                // without doc values, the postings of each class are intersected with the docs
+                postings = termsEnum.postings(leafReader.getLiveDocs(), postings, PostingsEnum.NONE);
+                score = intersect(postings, docs, scores, numDocs);
+            }
+            Candidate top = queue.top();
+            if (queue.size() < maxCandidates || score > top.score || (score == top.score && termsEnum.docFreq() > top.docFreq)) {
+                queue.insertWithOverflow(new Candidate(BytesRef.deepCopyOf(term), score, termsEnum.docFreq()));
+            }
+        }
+
+        BytesRef[] candidates = new BytesRef[queue.size()];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = queue.pop().term;
+        }
+        Arrays.sort(candidates);
+        return candidates;
+    }
+
+    /**
+     * Returns a query for the {@link #candidateTerms} terms of the text with the lowest doc freq, or null if none of
+     * them is in the index
+     */
+    private Query rarestTermsQuery(LeafReader leafReader, String[] textFieldNames, String[] tokens) throws IOException {
+        final List<Term> terms = new ArrayList<>();
+        final List<Integer> docFreqs = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String token : tokens) {
+            if (!seen.add(token)) {
+                continue;
+            }
+            for (String textFieldName : textFieldNames) {
+                Term term = new Term(textFieldName, token);
+                int docFreq = leafReader.docFreq(term);
+                if (docFreq > 0) {
+                    terms.add(term);
+                    docFreqs.add(docFreq);
+                }
+            }
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        Integer[] order = new Integer[terms.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Integer.compare(docFreqs.get(o1), docFreqs.get(o2));
+            }
+        });
+        BooleanQuery q = new BooleanQuery();
+        for (int i = 0; i < Math.min(candidateTerms, order.length); i++) {
+            q.add(new BooleanClause(new TermQuery(terms.get(order[i])), BooleanClause.Occur.SHOULD));
+        }
+        return q;
+    }
+
+    /**
+     * Returns the sum of the scores of the given docs per class, read from the doc values of the class field so that
+     * only the classes of these docs are looked at, or null if the class field has no such doc values
+     */
+    private static Map<BytesRef, Double> classScores(LeafReader leafReader, String classFieldName, int[] docs, float[] scores,
+                                                     int numDocs) throws IOException {
+        FieldInfo fieldInfo = leafReader.getFieldInfos().fieldInfo(classFieldName);
+        if (fieldInfo == null || (fieldInfo.getDocValuesType() != DocValuesType.SORTED_SET
+                && fieldInfo.getDocValuesType() != DocValuesType.SORTED)) {
+            return null;
+        }
+        SortedSetDocValues classValues = DocValues.getSortedSet(leafReader, classFieldName);
+        Map<Long, Double> ordScores = new HashMap<>();
+        for (int i = 0; i < numDocs; i++) {
+            classValues.setDocument(docs[i]);
+            for (long ord = classValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = classValues.nextOrd()) {
+                Double score = ordScores.get(ord);
+                ordScores.put(ord, score == null ? scores[i] : score + scores[i]);
+            }
+        }
+        Map<BytesRef, Double> classScores = new HashMap<>(ordScores.size());
+        for (Map.Entry<Long, Double> entry : ordScores.entrySet()) {
+            classScores.put(BytesRef.deepCopyOf(classValues.lookupOrd(entry.getKey())), entry.getValue());
+        }
+        return classScores;
+    }
+
+    /**
+     * Returns the sum of the scores of the docs which are also in the postings of the class
+     */
+    private static double intersect(DocIdSetIterator classPostings, int[] docs, float[] scores, int numDocs) throws IOException {
+        if (classPostings == null) {
+            return 0;
+        }
+        double score = 0;
+        int doc = -1;
+        int i = 0;
+        while (i < numDocs) {
+            if (doc < docs[i]) {
+                doc = classPostings.advance(docs[i]);
+                if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+                    break;
+                }
+            }
+            if (doc == docs[i]) {
+                score += scores[i];
+                i++;
+            } else {
+                // skip the docs which are not in the postings of the class
+                i = Arrays.binarySearch(docs, i, numDocs, doc);
+                if (i < 0) {
+                    i = -i - 1;
+                }
+            }
+        }
+        return score;
+    }
+
+    private static class Candidate {
+
+        private final BytesRef term;
+        private final double score;
+        private final int docFreq;
+
+        Candidate(BytesRef term, double score, int docFreq) {
+            this.term = term;
+            this.score = score;
+            this.docFreq = docFreq;
+        }
+    }
+
+    private static class CandidateQueue extends PriorityQueue<Candidate> {
+
+        CandidateQueue(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected boolean lessThan(Candidate a, Candidate b) {
+            if (a.score != b.score) {
+                return a.score < b.score;
+            }
+            return a.docFreq < b.docFreq;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+
+/**
+ * A reader which only enumerates the candidate classes of the class field, so that a classifier which iterates over
+ * the class terms only scores these. Seeking a class term is not restricted, so the frequency of any class can still
+ * be looked up.
+ */
+class CandidateClassesLeafReader extends FilterLeafReader {
+
+    private final String classFieldName;
+
+    // the classes to enumerate in term order, all of them if null
+    private BytesRef[] candidates;
+
+    CandidateClassesLeafReader(LeafReader in, String classFieldName) {
+        super(in);
+        this.classFieldName = classFieldName;
+    }
+
+    void candidates(BytesRef[] candidates) {
+        this.candidates = candidates;
+    }
+
+    @Override
+    public Fields fields() throws IOException {
+        Fields fields = super.fields();
+        return fields == null ? null : new FilterFields(fields) {
+            @Override
+            public Terms terms(String field) throws IOException {
+                Terms terms = super.terms(field);
+                if (terms == null || candidates == null || !field.equals(classFieldName)) {
+                    return terms;
+                }
+                return new CandidateTerms(terms, candidates);
+            }
+        };
+    }
+
+    private static class CandidateTerms extends FilterTerms {
+
+        private final BytesRef[] candidates;
+
+        CandidateTerms(Terms in, BytesRef[] candidates) {
+            super(in);
+            this.candidates = candidates;
+        }
+
+        @Override
+        public TermsEnum iterator() throws IOException {
+            return new FilterTermsEnum(super.iterator()) {
+                private int upto = 0;
+
+                @Override
+                public BytesRef next() throws IOException {
+                    while (upto < candidates.length) {
+                        if (in.seekExact(candidates[upto++])) {
+                            return in.term();
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+    }
+}
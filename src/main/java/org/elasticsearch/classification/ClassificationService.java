@@ -0,0 +1,299 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.lucene.analysis.Analyzer;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.classification.ClassificationStats.StatsHolder;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesLifecycle;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.indices.breaker.CircuitBreakerService;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node level service holding the {@link ShardClassificationService} of each shard allocated on this node,
+ * as well as what can be shared between the shards of an index.
+ */
+public class ClassificationService extends AbstractComponent {
+
+    public static final String ANALYZERS_CACHE_MAX_SIZE = "classify.analyzers_cache.max_size";
+    public static final int DEFAULT_ANALYZERS_CACHE_MAX_SIZE = 1000;
+
+    private final ClusterService clusterService;
+    private final IndicesService indicesService;
+    private final ThreadPool threadPool;
+    private final CircuitBreakerService breakerService;
+
+    private final ConcurrentMap<ShardId, ShardClassificationService> shardServices = ConcurrentCollections.newConcurrentMap();
+    // keyed by the fields of the requests, so bounded as any set of fields may be asked for
+    private final Cache<AnalyzersKey, ResolvedAnalyzers> analyzers;
+    private final ConcurrentMap<String, StatsHolder> stats = ConcurrentCollections.newConcurrentMap();
+
+    @Inject
+    public ClassificationService(Settings settings, ClusterService clusterService, IndicesService indicesService, ThreadPool threadPool,
+                                 CircuitBreakerService breakerService) {
+        super(settings);
+        this.clusterService = clusterService;
+        this.indicesService = indicesService;
+        this.threadPool = threadPool;
+        this.breakerService = breakerService;
+        this.analyzers = CacheBuilder.newBuilder()
+                .maximumSize(settings.getAsInt(ANALYZERS_CACHE_MAX_SIZE, DEFAULT_ANALYZERS_CACHE_MAX_SIZE))
+                .build();
+        indicesService.indicesLifecycle().addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard, Settings indexSettings) {
+                ShardClassificationService shardService = shardServices.remove(shardId);
+                if (shardService != null) {
+                    shardService.close();
+                }
+            }
+
+            @Override
+            public void afterIndexClosed(Index index, Settings indexSettings) {
+                for (Iterator<AnalyzersKey> it = analyzers.asMap().keySet().iterator(); it.hasNext(); ) {
+                    if (it.next().index.equals(index.name())) {
+                        it.remove();
+                    }
+                }
+                stats.remove(index.name());
+            }
+        });
+    }
+
+    public ThreadPool threadPool() {
+        return threadPool;
+    }
+
+    /**
+     * Returns the breaker the memory allocated while training is accounted against
+     */
+    public CircuitBreaker requestBreaker() {
+        return breakerService.getBreaker(CircuitBreaker.REQUEST);
+    }
+
+    /**
+     * Returns the classification service of a shard allocated on this node
+     */
+    public ShardClassificationService shardService(ShardId shardId) {
+        ShardClassificationService shardService = shardServices.get(shardId);
+        if (shardService == null) {
+            IndexShard indexShard = indicesService.indexServiceSafe(shardId.getIndex()).shardSafe(shardId.id());
+            shardService = new ShardClassificationService(indexShard, this);
+            ShardClassificationService existing = shardServices.putIfAbsent(shardId, shardService);
+            if (existing != null) {
+                shardService.close();
+                shardService = existing;
+            }
+        }
+        return shardService;
+    }
+
+    /**
+     * Records a classify request coordinated by this node, along with how long it took
+     */
+    public void onRequest(String index, long tookInNanos) {
+        StatsHolder holder = statsHolder(index);
+        holder.requests.inc();
+        holder.latency.record(TimeUnit.NANOSECONDS.toMicros(tookInNanos));
+    }
+
+    /**
+     * Records a classify request coordinated by this node which failed
+     */
+    public void onFailure(String index) {
+        StatsHolder holder = statsHolder(index);
+        holder.requests.inc();
+        holder.failures.inc();
+    }
+
+    /**
+     * Records shard requests which were rejected because the thread pool was full
+     */
+    public void onRejections(String index, int rejections) {
+        statsHolder(index).rejections.inc(rejections);
+    }
+
+    /**
+     * Records a model trained on a shard of this node
+     */
+    public void onTraining(ShardId shardId, long tookInNanos) {
+        statsHolder(shardId.getIndex()).trainings.inc(tookInNanos);
+    }
+
+    /**
+     * Records a model evaluated on a shard of this node
+     */
+    public void onEvaluation(ShardId shardId, long tookInNanos) {
+        statsHolder(shardId.getIndex()).evaluations.inc(tookInNanos);
+    }
+
+    private StatsHolder statsHolder(String index) {
+        StatsHolder holder = stats.get(index);
+        if (holder == null) {
+            holder = new StatsHolder();
+            StatsHolder existing = stats.putIfAbsent(index, holder);
+            if (existing != null) {
+                holder = existing;
+            }
+        }
+        return holder;
+    }
+
+    /**
+     * Returns the classification stats of each index on this node, including the models cached by its shards
+     */
+    public Map<String, ClassificationStats> stats() {
+        Map<String, ClassificationStats> stats = new HashMap<>();
+        for (Map.Entry<String, StatsHolder> entry : this.stats.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().stats());
+        }
+        for (Map.Entry<ShardId, ShardClassificationService> entry : shardServices.entrySet()) {
+            ClassificationStats indexStats = stats.get(entry.getKey().getIndex());
+            if (indexStats == null) {
+                indexStats = new ClassificationStats();
+                stats.put(entry.getKey().getIndex(), indexStats);
+            }
+            entry.getValue().addModelsCacheStats(indexStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Resolves the analyzers to use for the text fields of the request. This is either the analyzer given by
+     * the request, or the search analyzer each field is mapped with. Resolutions are cached until the index
+     * metadata, and therefore the mappings, change.
+     */
+    public ResolvedAnalyzers resolveAnalyzers(IndexService indexService, ClassifyRequest request) {
+        String index = indexService.index().name();
+        IndexMetaData indexMetaData = clusterService.state().metaData().index(index);
+        long mappingVersion = indexMetaData == null ? -1 : indexMetaData.getVersion();
+
+        AnalyzersKey key = new AnalyzersKey(index, request.analyzer(), request.textFields());
+        ResolvedAnalyzers resolved = analyzers.getIfPresent(key);
+        if (resolved == null || resolved.mappingVersion != mappingVersion) {
+            resolved = resolveAnalyzers(indexService.mapperService(), request.analyzer(), request.textFields(), mappingVersion);
+            analyzers.put(key, resolved);
+        }
+        return resolved;
+    }
+
+    private static ResolvedAnalyzers resolveAnalyzers(MapperService mapperService, String analyzerName, String[] fields, long mappingVersion) {
+        Map<String, Analyzer> perField = new HashMap<>(fields.length);
+        Analyzer analyzer;
+        if (analyzerName != null) {
+            analyzer = mapperService.analysisService().analyzer(analyzerName);
+            if (analyzer == null) {
+                throw new IllegalArgumentException("failed to find analyzer [" + analyzerName + "]");
+            }
+            for (String field : fields) {
+                perField.put(field, analyzer);
+            }
+        } else {
+            // this one delegates to the search analyzer of each field
+            analyzer = mapperService.searchAnalyzer();
+            for (String field : fields) {
+                MappedFieldType fieldType = mapperService.smartNameFieldType(field);
+                if (fieldType != null && fieldType.searchAnalyzer() != null) {
+                    perField.put(field, fieldType.searchAnalyzer());
+                } else {
+                    perField.put(field, mapperService.analysisService().defaultSearchAnalyzer());
+                }
+            }
+        }
+        return new ResolvedAnalyzers(mappingVersion, analyzer, perField);
+    }
+
+    /**
+     * The analyzers resolved for a given set of text fields
+     */
+    public static class ResolvedAnalyzers {
+
+        private final long mappingVersion;
+        private final Analyzer analyzer;
+        private final Map<String, Analyzer> perField;
+
+        ResolvedAnalyzers(long mappingVersion, Analyzer analyzer, Map<String, Analyzer> perField) {
+            this.mappingVersion = mappingVersion;
+            this.analyzer = analyzer;
+            this.perField = Collections.unmodifiableMap(perField);
+        }
+
+        /**
+         * Returns the analyzer to give to the classifiers, it analyzes each field appropriately
+         */
+        public Analyzer analyzer() {
+            return analyzer;
+        }
+
+        /**
+         * Returns the analyzer of each text field
+         */
+        public Map<String, Analyzer> perField() {
+            return perField;
+        }
+    }
+
+    private static class AnalyzersKey {
+
+        private final String index;
+        private final String analyzer;
+        private final String[] fields;
+
+        AnalyzersKey(String index, String analyzer, String[] fields) {
+            this.index = index;
+            this.analyzer = analyzer;
+            this.fields = fields;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            AnalyzersKey that = (AnalyzersKey) o;
+            return index.equals(that.index) && Objects.equals(analyzer, that.analyzer) && Arrays.equals(fields, that.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, analyzer, Arrays.hashCode(fields));
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The classification stats of an index on a node. Requests, failures, rejections and latencies are recorded by
+ * the node coordinating the requests, trainings and evaluations by the nodes holding the shards.
+ */
+public class ClassificationStats implements Streamable, ToXContent {
+
+    static final class Fields {
+        static final XContentBuilderString REQUESTS = new XContentBuilderString("requests");
+        static final XContentBuilderString FAILURES = new XContentBuilderString("failures");
+        static final XContentBuilderString REJECTIONS = new XContentBuilderString("rejections");
+        static final XContentBuilderString LATENCY = new XContentBuilderString("latency");
+        static final XContentBuilderString TRAININGS = new XContentBuilderString("trainings");
+        static final XContentBuilderString EVALUATIONS = new XContentBuilderString("evaluations");
+        static final XContentBuilderString COUNT = new XContentBuilderString("count");
+        static final XContentBuilderString TIME = new XContentBuilderString("time");
+        static final XContentBuilderString TIME_IN_MILLIS = new XContentBuilderString("time_in_millis");
+        static final XContentBuilderString MODELS_CACHE = new XContentBuilderString("models_cache");
+        static final XContentBuilderString SIZE = new XContentBuilderString("size");
+        static final XContentBuilderString MEMORY_SIZE = new XContentBuilderString("memory_size");
+        static final XContentBuilderString MEMORY_SIZE_IN_BYTES = new XContentBuilderString("memory_size_in_bytes");
+        static final XContentBuilderString HITS = new XContentBuilderString("hits");
+        static final XContentBuilderString MISSES = new XContentBuilderString("misses");
+        static final XContentBuilderString EVICTIONS = new XContentBuilderString("evictions");
+        static final XContentBuilderString RESULTS_CACHE = new XContentBuilderString("results_cache");
+    }
+
+    private long requests;
+    private long failures;
+    private long rejections;
+    private LatencyHistogram latency = new LatencyHistogram();
+
+    private long trainings;
+    private long trainingTimeInNanos;
+    private long evaluations;
+    private long evaluationTimeInNanos;
+
+    private long modelsCacheSize;
+    private long modelsCacheMemorySize;
+    private long modelsCacheHits;
+    private long modelsCacheMisses;
+    private long modelsCacheEvictions;
+
+    private long resultsCacheSize;
+    private long resultsCacheHits;
+    private long resultsCacheMisses;
+    private long resultsCacheEvictions;
+
+    public ClassificationStats() {
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getRejections() {
+        return rejections;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getTrainings() {
+        return trainings;
+    }
+
+    public TimeValue getTrainingTime() {
+        return new TimeValue(trainingTimeInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public TimeValue getEvaluationTime() {
+        return new TimeValue(evaluationTimeInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adds the size, memory and hit ratio of the models cache of a shard
+     */
+    void addModelsCache(long size, long memorySize, long hits, long misses, long evictions) {
+        modelsCacheSize += size;
+        modelsCacheMemorySize += memorySize;
+        modelsCacheHits += hits;
+        modelsCacheMisses += misses;
+        modelsCacheEvictions += evictions;
+    }
+
+    /**
+     * Adds the size and hit ratio of the results cache of a shard
+     */
+    void addResultsCache(long size, long hits, long misses, long evictions) {
+        resultsCacheSize += size;
+        resultsCacheHits += hits;
+        resultsCacheMisses += misses;
+        resultsCacheEvictions += evictions;
+    }
+
+    public void add(ClassificationStats other) {
+        requests += other.requests;
+        failures += other.failures;
+        rejections += other.rejections;
+        latency.merge(other.latency);
+        trainings += other.trainings;
+        trainingTimeInNanos += other.trainingTimeInNanos;
+        evaluations += other.evaluations;
+        evaluationTimeInNanos += other.evaluationTimeInNanos;
+        addModelsCache(other.modelsCacheSize, other.modelsCacheMemorySize, other.modelsCacheHits, other.modelsCacheMisses,
+                other.modelsCacheEvictions);
+        addResultsCache(other.resultsCacheSize, other.resultsCacheHits, other.resultsCacheMisses, other.resultsCacheEvictions);
+    }
+
+    public static ClassificationStats readClassificationStats(StreamInput in) throws IOException {
+        ClassificationStats stats = new ClassificationStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        requests = in.readVLong();
+        failures = in.readVLong();
+        rejections = in.readVLong();
+        latency = LatencyHistogram.readLatencyHistogram(in);
+        trainings = in.readVLong();
+        trainingTimeInNanos = in.readVLong();
+        evaluations = in.readVLong();
+        evaluationTimeInNanos = in.readVLong();
+        modelsCacheSize = in.readVLong();
+        modelsCacheMemorySize = in.readVLong();
+        modelsCacheHits = in.readVLong();
+        modelsCacheMisses = in.readVLong();
+        modelsCacheEvictions = in.readVLong();
+        resultsCacheSize = in.readVLong();
+        resultsCacheHits = in.readVLong();
+        resultsCacheMisses = in.readVLong();
+        resultsCacheEvictions = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(requests);
+        out.writeVLong(failures);
+        out.writeVLong(rejections);
+        latency.writeTo(out);
+        out.writeVLong(trainings);
+        out.writeVLong(trainingTimeInNanos);
+        out.writeVLong(evaluations);
+        out.writeVLong(evaluationTimeInNanos);
+        out.writeVLong(modelsCacheSize);
+        out.writeVLong(modelsCacheMemorySize);
+        out.writeVLong(modelsCacheHits);
+        out.writeVLong(modelsCacheMisses);
+        out.writeVLong(modelsCacheEvictions);
+        out.writeVLong(resultsCacheSize);
+        out.writeVLong(resultsCacheHits);
+        out.writeVLong(resultsCacheMisses);
+        out.writeVLong(resultsCacheEvictions);
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.REQUESTS, requests);
+        builder.field(Fields.FAILURES, failures);
+        builder.field(Fields.REJECTIONS, rejections);
+        builder.startObject(Fields.LATENCY);
+        latency.toXContent(builder, params);
+        builder.endObject();
+        builder.startObject(Fields.TRAININGS);
+        builder.field(Fields.COUNT, trainings);
+        builder.timeValueField(Fields.TIME_IN_MILLIS, Fields.TIME, getTrainingTime());
+        builder.endObject();
+        builder.startObject(Fields.EVALUATIONS);
+        builder.field(Fields.COUNT, evaluations);
+        builder.timeValueField(Fields.TIME_IN_MILLIS, Fields.TIME, getEvaluationTime());
+        builder.endObject();
+        builder.startObject(Fields.MODELS_CACHE);
+        builder.field(Fields.SIZE, modelsCacheSize);
+        builder.byteSizeField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, new ByteSizeValue(modelsCacheMemorySize));
+        builder.field(Fields.HITS, modelsCacheHits);
+        builder.field(Fields.MISSES, modelsCacheMisses);
+        builder.field(Fields.EVICTIONS, modelsCacheEvictions);
+        builder.endObject();
+        builder.startObject(Fields.RESULTS_CACHE);
+        builder.field(Fields.SIZE, resultsCacheSize);
+        builder.field(Fields.HITS, resultsCacheHits);
+        builder.field(Fields.MISSES, resultsCacheMisses);
+        builder.field(Fields.EVICTIONS, resultsCacheEvictions);
+        builder.endObject();
+        return builder;
+    }
+
+    /**
+     * Records the stats of an index as they happen
+     */
+    static class StatsHolder {
+
+        final CounterMetric requests = new CounterMetric();
+        final CounterMetric failures = new CounterMetric();
+        final CounterMetric rejections = new CounterMetric();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final MeanMetric trainings = new MeanMetric();
+        final MeanMetric evaluations = new MeanMetric();
+
+        ClassificationStats stats() {
+            ClassificationStats stats = new ClassificationStats();
+            stats.requests = requests.count();
+            stats.failures = failures.count();
+            stats.rejections = rejections.count();
+            stats.latency.merge(latency);
+            stats.trainings = trainings.count();
+            stats.trainingTimeInNanos = trainings.sum();
+            stats.evaluations = evaluations.count();
+            stats.evaluationTimeInNanos = evaluations.sum();
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.FilterLeafCollector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The deadline of a training or an evaluation. It is checked cooperatively: the reader handed to the classifiers
+ * checks it whenever terms are enumerated or a document is loaded, and so do the collectors it wraps, so that a
+ * classifier gives up by throwing an {@link ElasticsearchTimeoutException} without having to know about it.
+ */
+public class ClassificationTimeout {
+
+    public static final ClassificationTimeout NONE = new ClassificationTimeout(-1);
+
+    // how many docs are collected between two checks, as the clock is not free
+    private static final int COLLECT_CHECK_INTERVAL = 1024;
+
+    private final long timeoutInMillis;
+    private final long deadlineNanos;
+
+    private ClassificationTimeout(long timeoutInMillis) {
+        this.timeoutInMillis = timeoutInMillis;
+        this.deadlineNanos = System.nanoTime() + TimeValue.timeValueMillis(timeoutInMillis).nanos();
+    }
+
+    /**
+     * Returns a timeout which expires in the given time from now, or {@link #NONE} if it is negative
+     */
+    public static ClassificationTimeout of(long timeoutInMillis) {
+        return timeoutInMillis < 0 ? NONE : new ClassificationTimeout(timeoutInMillis);
+    }
+
+    public boolean isTimedOut() {
+        return this != NONE && System.nanoTime() - deadlineNanos > 0;
+    }
+
+    /**
+     * Throws an {@link ElasticsearchTimeoutException} if the deadline has passed
+     */
+    public void check() {
+        if (isTimedOut()) {
+            throw new ElasticsearchTimeoutException("classification timed out after [{}]", TimeValue.timeValueMillis(timeoutInMillis));
+        }
+    }
+
+    /**
+     * Acquires the lock, waiting at most until the deadline, or throws an {@link ElasticsearchTimeoutException}
+     */
+    public void lock(Lock lock) {
+        if (this == NONE) {
+            lock.lock();
+            return;
+        }
+        try {
+            if (!lock.tryLock(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new ElasticsearchTimeoutException("classification timed out after [{}] waiting for another training of the model",
+                        TimeValue.timeValueMillis(timeoutInMillis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("interrupted while waiting for another training of the model", e);
+        }
+    }
+
+    /**
+     * Wraps the reader so that the deadline is checked as it is read
+     */
+    public LeafReader wrap(LeafReader reader) {
+        return this == NONE ? reader : new TimeLimitedLeafReader(reader);
+    }
+
+    /**
+     * Wraps the collector so that the deadline is checked as docs are collected
+     */
+    public Collector wrap(Collector collector) {
+        if (this == NONE) {
+            return collector;
+        }
+        return new FilterCollector(collector) {
+            @Override
+            public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+                return new FilterLeafCollector(super.getLeafCollector(context)) {
+                    private int collected = 0;
+
+                    @Override
+                    public void collect(int doc) throws IOException {
+                        if (++collected % COLLECT_CHECK_INTERVAL == 0) {
+                            check();
+                        }
+                        super.collect(doc);
+                    }
+                };
+            }
+        };
+    }
+
+    private class TimeLimitedLeafReader extends FilterLeafReader {
+
+        TimeLimitedLeafReader(LeafReader in) {
+            super(in);
+        }
+
+        @Override
+        public Fields fields() throws IOException {
+            Fields fields = super.fields();
+            return fields == null ? null : new FilterFields(fields) {
+                @Override
+                public Terms terms(String field) throws IOException {
+                    Terms terms = super.terms(field);
+                    return terms == null ? null : new TimeLimitedTerms(terms);
+                }
+            };
+        }
+
+        @Override
+        public void document(int docID, StoredFieldVisitor visitor) throws IOException {
+            check();
+            super.document(docID, visitor);
+        }
+    }
+
+    private class TimeLimitedTerms extends FilterLeafReader.FilterTerms {
+
+        TimeLimitedTerms(Terms in) {
+            super(in);
+        }
+
+        @Override
+        public TermsEnum iterator() throws IOException {
+            return new FilterLeafReader.FilterTermsEnum(super.iterator()) {
+                @Override
+                public BytesRef next() throws IOException {
+                    check();
+                    return super.next();
+                }
+
+                @Override
+                public boolean seekExact(BytesRef text) throws IOException {
+                    check();
+                    return super.seekExact(text);
+                }
+
+                @Override
+                public SeekStatus seekCeil(BytesRef text) throws IOException {
+                    check();
+                    return super.seekCeil(text);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.elasticsearch.action.classify.ClassifyProfile;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the trainings and evaluations of a shard which took longer than their threshold, like the search slow log.
+ * Each threshold is disabled unless set, and a line is logged at the highest level whose threshold was exceeded.
+ * The thresholds are dynamic index settings, which are applied to the shards as they are updated.
+ */
+public final class ClassifySlowLog {
+
+    public static final String INDEX_CLASSIFY_SLOWLOG_PREFIX = "index.classify.slowlog";
+    public static final String INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_WARN = INDEX_CLASSIFY_SLOWLOG_PREFIX + ".threshold.train.warn";
+    public static final String INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_INFO = INDEX_CLASSIFY_SLOWLOG_PREFIX + ".threshold.train.info";
+    public static final String INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_DEBUG = INDEX_CLASSIFY_SLOWLOG_PREFIX + ".threshold.train.debug";
+    public static final String INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_WARN = INDEX_CLASSIFY_SLOWLOG_PREFIX + ".threshold.evaluate.warn";
+    public static final String INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_INFO = INDEX_CLASSIFY_SLOWLOG_PREFIX + ".threshold.evaluate.info";
+    public static final String INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_DEBUG = INDEX_CLASSIFY_SLOWLOG_PREFIX + ".threshold.evaluate.debug";
+
+    private final ShardId shardId;
+    private volatile Thresholds train;
+    private volatile Thresholds evaluate;
+
+    private final ESLogger trainLogger = Loggers.getLogger(INDEX_CLASSIFY_SLOWLOG_PREFIX + ".train");
+    private final ESLogger evaluateLogger = Loggers.getLogger(INDEX_CLASSIFY_SLOWLOG_PREFIX + ".evaluate");
+
+    ClassifySlowLog(ShardId shardId, Settings indexSettings) {
+        this.shardId = shardId;
+        onRefreshSettings(indexSettings);
+    }
+
+    /**
+     * Reads the thresholds from the updated settings of the index
+     */
+    void onRefreshSettings(Settings indexSettings) {
+        this.train = new Thresholds(indexSettings, INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_WARN,
+                INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_INFO, INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_DEBUG);
+        this.evaluate = new Thresholds(indexSettings, INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_WARN,
+                INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_INFO, INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_DEBUG);
+    }
+
+    /**
+     * Returns true if any threshold is set, in which case the phases of each request must be recorded
+     */
+    boolean enabled() {
+        return train.enabled() || evaluate.enabled();
+    }
+
+    /**
+     * Returns true if a training that took that long is logged, so that what is only needed to log it is not
+     * computed otherwise
+     */
+    boolean isSlowTraining(long tookNanos) {
+        return train.exceeds(tookNanos, trainLogger);
+    }
+
+    boolean isSlowEvaluation(long tookNanos) {
+        return evaluate.exceeds(tookNanos, evaluateLogger);
+    }
+
+    void onTraining(ClassifyRequest request, long tookNanos, long trainingDocs, ClassifyProfile profile) {
+        train.log(trainLogger, tookNanos, new SlowLogClassifyRequestPrinter(shardId, request, tookNanos, trainingDocs, profile));
+    }
+
+    void onEvaluation(ClassifyRequest request, long tookNanos, long trainingDocs, ClassifyProfile profile) {
+        evaluate.log(evaluateLogger, tookNanos, new SlowLogClassifyRequestPrinter(shardId, request, tookNanos, trainingDocs, profile));
+    }
+
+    private static class Thresholds {
+
+        private final long warn;
+        private final long info;
+        private final long debug;
+
+        Thresholds(Settings indexSettings, String warn, String info, String debug) {
+            this.warn = indexSettings.getAsTime(warn, TimeValue.timeValueNanos(-1)).nanos();
+            this.info = indexSettings.getAsTime(info, TimeValue.timeValueNanos(-1)).nanos();
+            this.debug = indexSettings.getAsTime(debug, TimeValue.timeValueNanos(-1)).nanos();
+        }
+
+        boolean enabled() {
+            return warn >= 0 || info >= 0 || debug >= 0;
+        }
+
+        boolean exceeds(long tookNanos, ESLogger logger) {
+            return (warn >= 0 && tookNanos > warn && logger.isWarnEnabled())
+                    || (info >= 0 && tookNanos > info && logger.isInfoEnabled())
+                    || (debug >= 0 && tookNanos > debug && logger.isDebugEnabled());
+        }
+
+        void log(ESLogger logger, long tookNanos, SlowLogClassifyRequestPrinter printer) {
+            if (warn >= 0 && tookNanos > warn) {
+                logger.warn("{}", printer);
+            } else if (info >= 0 && tookNanos > info) {
+                logger.info("{}", printer);
+            } else if (debug >= 0 && tookNanos > debug) {
+                logger.debug("{}", printer);
+            }
+        }
+    }
+
+    private static class SlowLogClassifyRequestPrinter {
+
+        private final ShardId shardId;
+        private final ClassifyRequest request;
+        private final long tookNanos;
+        private final long trainingDocs;
+        private final ClassifyProfile profile;
+
+        SlowLogClassifyRequestPrinter(ShardId shardId, ClassifyRequest request, long tookNanos, long trainingDocs, ClassifyProfile profile) {
+            this.shardId = shardId;
+            this.request = request;
+            this.tookNanos = tookNanos;
+            this.trainingDocs = trainingDocs;
+            this.profile = profile;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(shardId).append(" ");
+            sb.append("took[").append(TimeValue.timeValueNanos(tookNanos)).append("], ");
+            sb.append("took_millis[").append(TimeUnit.NANOSECONDS.toMillis(tookNanos)).append("], ");
+            sb.append("model[").append(request.modelType() == null ? ShardClassificationService.DEFAULT_MODEL_TYPE : request.modelType()).append("], ");
+            sb.append("settings[").append(request.modelSettings().getAsMap()).append("], ");
+            sb.append("fields").append(Arrays.toString(request.textFields())).append(", ");
+            sb.append("class[").append(request.classField()).append("], ");
+            sb.append("training_docs[").append(trainingDocs).append("], ");
+            sb.append("phases[");
+            boolean first = true;
+            for (Map.Entry<String, Long> phase : profile.phases().entrySet()) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                sb.append(phase.getKey()).append("[").append(TimeValue.timeValueNanos(phase.getValue())).append("]");
+                first = false;
+            }
+            sb.append("]");
+            return sb.toString();
+        }
+    }
+}
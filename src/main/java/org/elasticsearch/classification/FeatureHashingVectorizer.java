@@ -0,0 +1,176 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.ParseContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns text into a {@link SparseVector} by hashing its features into a fixed number of dimensions, so that
+ * no term dictionary is needed to evaluate a model.
+ * <p/>
+ *
+ * The features are the n-grams of tokens of each text field, from unigrams up to <code>ngrams</code> tokens. With
+ * <code>namespaces</code>, each field has its own features, otherwise the same n-gram in two fields is one feature.
+ */
+public class FeatureHashingVectorizer {
+
+    public static final int DEFAULT_NGRAMS = 1;
+    public static final boolean DEFAULT_NAMESPACES = true;
+
+    private static final byte SEPARATOR = 0;
+
+    private final int dimension;
+    private final int ngrams;
+    private final boolean namespaces;
+
+    public FeatureHashingVectorizer(int dimension, int ngrams, boolean namespaces) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension must be positive, got [" + dimension + "]");
+        }
+        if (ngrams <= 0) {
+            throw new IllegalArgumentException("ngrams must be positive, got [" + ngrams + "]");
+        }
+        this.dimension = dimension;
+        this.ngrams = ngrams;
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Creates a vectorizer from the <code>dimension</code>, <code>ngrams</code> and <code>namespaces</code> model settings
+     */
+    public static FeatureHashingVectorizer fromSettings(Settings settings, int defaultDimension) {
+        return new FeatureHashingVectorizer(
+                settings.getAsInt("dimension", defaultDimension),
+                settings.getAsInt("ngrams", DEFAULT_NGRAMS),
+                settings.getAsBoolean("namespaces", DEFAULT_NAMESPACES));
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the maximum number of tokens of a feature, n-grams needing the tokens in the order of the text
+     */
+    public int ngrams() {
+        return ngrams;
+    }
+
+    /**
+     * Vectorizes the text already analyzed for each field
+     */
+    public SparseVector vectorize(AnalyzedText analyzedText, String[] fields) {
+        SparseVector vector = new SparseVector();
+        BytesRefBuilder feature = new BytesRefBuilder();
+        for (String field : fields) {
+            addFeatures(field, analyzedText.tokens(field), vector, feature);
+        }
+        return vector.compact();
+    }
+
+    /**
+     * Vectorizes the text, analyzing it for each field
+     */
+    public SparseVector vectorize(String text, String[] fields, Analyzer analyzer) throws IOException {
+        SparseVector vector = new SparseVector();
+        BytesRefBuilder feature = new BytesRefBuilder();
+        for (String field : fields) {
+            addFeatures(field, tokenize(field, text, analyzer), vector, feature);
+        }
+        return vector.compact();
+    }
+
+    /**
+     * Vectorizes the values of the fields of a document, n-grams do not span across values
+     */
+    public SparseVector vectorize(ParseContext.Document doc, String[] fields, Analyzer analyzer) throws IOException {
+        SparseVector vector = new SparseVector();
+        BytesRefBuilder feature = new BytesRefBuilder();
+        for (String field : fields) {
+            for (IndexableField value : doc.getFields(field)) {
+                if (value.stringValue() != null) {
+                    addFeatures(field, tokenize(field, value.stringValue(), analyzer), vector, feature);
+                }
+            }
+        }
+        return vector.compact();
+    }
+
+    /**
+     * Returns the dimension of a term of a field, which can be used to initialize weights from the term dictionary
+     */
+    public int dimensionOf(String field, BytesRef term) {
+        BytesRefBuilder feature = new BytesRefBuilder();
+        startFeature(field, feature);
+        feature.append(term);
+        return hash(feature.get());
+    }
+
+    private static String[] tokenize(String field, String text, Analyzer analyzer) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute charTermAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                tokens.add(charTermAttribute.toString());
+            }
+            tokenStream.end();
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private void addFeatures(String field, String[] tokens, SparseVector vector, BytesRefBuilder feature) {
+        for (int i = 0; i < tokens.length; i++) {
+            startFeature(field, feature);
+            for (int n = 0; n < ngrams && i + n < tokens.length; n++) {
+                if (n > 0) {
+                    feature.append(SEPARATOR);
+                }
+                feature.append(new BytesRef(tokens[i + n]));
+                vector.add(hash(feature.get()), 1f);
+            }
+        }
+    }
+
+    private void startFeature(String field, BytesRefBuilder feature) {
+        feature.clear();
+        if (namespaces) {
+            feature.copyChars(field);
+            feature.append(SEPARATOR);
+        }
+    }
+
+    private int hash(BytesRef feature) {
+        return (StringHelper.murmurhash3_x86_32(feature, 0) & 0x7fffffff) % dimension;
+    }
+}
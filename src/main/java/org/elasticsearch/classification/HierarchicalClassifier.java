@@ -0,0 +1,389 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CollectionUtil;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Classifies top-down into a hierarchy of classes, where each class is a path such as <code>a/b/c</code>.
+ * <p/>
+ *
+ * Each node of the hierarchy has its own {@link AveragedPerceptronClassifier} whose classes are the children of the
+ * node, trained on the docs below it. A text is classified by keeping the <code>beamWidth</code> best paths at each
+ * level and only evaluating the models of their nodes, so that the cost of an evaluation depends on the branching
+ * factor and the depth of the hierarchy rather than on its number of leaves. The score of a path is the product of
+ * the scores of its nodes. A doc whose class is an inner node, such as <code>a/b</code>, counts as a child of that
+ * node which stops there.
+ */
+public class HierarchicalClassifier implements CachedClassifier<BytesRef> {
+
+    public static final String DEFAULT_SEPARATOR = "/";
+    public static final int DEFAULT_BEAM_WIDTH = 2;
+
+    private final FeatureHashingVectorizer vectorizer;
+    private final int epochs;
+    private final SourceFieldsLoader sourceFieldsLoader;
+    private final String separator;
+    private final int beamWidth;
+
+    private CircuitBreaker breaker;
+
+    // set on training, read on evaluation
+    private volatile String[] textFieldNames;
+    private volatile Analyzer analyzer;
+
+    // the node of each inner path, the root being the empty path
+    private volatile Map<String, Node> nodes;
+
+    // the version of the reader the classifier was trained on
+    private volatile long trainedReaderVersion = -1;
+    private volatile boolean trained = false;
+
+    // held while the classifier is trained, so that concurrent requests train it once
+    private final ReentrantLock trainingLock = new ReentrantLock();
+
+    /**
+     * Creates a {@link HierarchicalClassifier}
+     *
+     * @param vectorizer         to hash the features of the text, shared by all the nodes
+     * @param epochs             the number of passes over the training docs of each node
+     * @param sourceFieldsLoader to load the text and classes of the training docs
+     * @param separator          the separator of the parts of a path
+     * @param beamWidth          the number of paths explored at each level
+     */
+    public HierarchicalClassifier(FeatureHashingVectorizer vectorizer, int epochs, SourceFieldsLoader sourceFieldsLoader,
+                                  String separator, int beamWidth) {
+        if (separator == null || separator.isEmpty()) {
+            throw new IllegalArgumentException("separator must not be empty");
+        }
+        if (beamWidth <= 0) {
+            throw new IllegalArgumentException("beam_width must be positive, got [" + beamWidth + "]");
+        }
+        this.vectorizer = vectorizer;
+        this.epochs = epochs;
+        this.sourceFieldsLoader = sourceFieldsLoader;
+        this.separator = separator;
+        this.beamWidth = beamWidth;
+    }
+
+    /**
+     * Returns a view of this classifier, sharing its trained models, which explores the given number of paths at each
+     * level. The beam width does not change the models of the nodes, so a cached model can be evaluated with the beam
+     * width of each request.
+     */
+    public HierarchicalClassifier withBeamWidth(int beamWidth) {
+        if (beamWidth == this.beamWidth) {
+            return this;
+        }
+        HierarchicalClassifier view = new HierarchicalClassifier(vectorizer, epochs, sourceFieldsLoader, separator, beamWidth);
+        view.textFieldNames = textFieldNames;
+        view.analyzer = analyzer;
+        view.nodes = nodes;
+        view.trainedReaderVersion = trainedReaderVersion;
+        view.trained = trained;
+        return view;
+    }
+
+    /**
+     * Sets the breaker the model of each node accounts its training against
+     */
+    public void setCircuitBreaker(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String textFieldName, String classFieldName, Analyzer analyzer) throws IOException {
+        train(leafReader, textFieldName, classFieldName, analyzer, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String textFieldName, String classFieldName, Analyzer analyzer, Query query) throws IOException {
+        train(leafReader, new String[]{textFieldName}, classFieldName, analyzer, query);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void train(LeafReader leafReader, String[] textFieldNames, String classFieldName, Analyzer analyzer, Query query) throws IOException {
+        train(leafReader, -1, textFieldNames, classFieldName, analyzer, query);
+    }
+
+    /**
+     * Trains the model of each inner node of the hierarchy, unless it was already trained on a reader of the same version
+     */
+    @Override
+    public void train(LeafReader leafReader, long readerVersion, String[] textFieldNames, String classFieldName,
+                      Analyzer analyzer, Query query) throws IOException {
+        trainingLock.lock();
+        try {
+            if (isTrained(readerVersion)) {
+                return;
+            }
+            this.textFieldNames = textFieldNames;
+            this.analyzer = analyzer;
+
+            // the children of each inner path
+            Terms classTerms = MultiFields.getTerms(leafReader, classFieldName);
+            if (classTerms == null) {
+                throw new IOException("class field " + classFieldName + " has no terms to train on");
+            }
+            Map<String, Set<String>> children = new HashMap<>();
+            Set<String> paths = new HashSet<>();
+            TermsEnum termsEnum = classTerms.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                String path = term.utf8ToString();
+                paths.add(path);
+                String parent = "";
+                int from = 0;
+                while (true) {
+                    int end = path.indexOf(separator, from);
+                    String child = end == -1 ? path : path.substring(0, end);
+                    Set<String> siblings = children.get(parent);
+                    if (siblings == null) {
+                        siblings = new HashSet<>();
+                        children.put(parent, siblings);
+                    }
+                    siblings.add(child);
+                    if (end == -1) {
+                        break;
+                    }
+                    parent = child;
+                    from = end + separator.length();
+                }
+            }
+            // a class which is also an inner node stops at that node
+            for (Map.Entry<String, Set<String>> entry : children.entrySet()) {
+                if (paths.contains(entry.getKey())) {
+                    entry.getValue().add(entry.getKey());
+                }
+            }
+
+            // a node with a single child needs no model
+            Map<String, Node> nodes = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : children.entrySet()) {
+                if (entry.getValue().size() == 1) {
+                    nodes.put(entry.getKey(), new Node(new BytesRef(entry.getValue().iterator().next())));
+                } else {
+                    AveragedPerceptronClassifier model = new AveragedPerceptronClassifier(vectorizer, epochs, sourceFieldsLoader,
+                            new ChildrenMapping(entry.getKey()));
+                    model.setCircuitBreaker(breaker);
+                    model.train(leafReader, readerVersion, textFieldNames, classFieldName, analyzer, query);
+                    nodes.put(entry.getKey(), new Node(model));
+                }
+            }
+            this.nodes = nodes;
+            trainedReaderVersion = readerVersion;
+            trained = true;
+        } finally {
+            trainingLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Lock trainingLock() {
+        return trainingLock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTrained(long readerVersion) {
+        return readerVersion != -1 && trainedReaderVersion == readerVersion;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isTrained() {
+        return trained;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long ramBytesUsed() {
+        Map<String, Node> nodes = this.nodes;
+        if (nodes == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (Node node : nodes.values()) {
+            if (node.model != null) {
+                bytes += node.model.ramBytesUsed();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
+        return getClasses(text).get(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text) throws IOException {
+        return getClasses(vectorizer.vectorize(text, textFieldNames, analyzer));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text, int max) throws IOException {
+        List<ClassificationResult<BytesRef>> classes = getClasses(text);
+        return classes.subList(0, Math.min(max, classes.size()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(AnalyzedText analyzedText) throws IOException {
+        return getClasses(vectorizer.vectorize(analyzedText, textFieldNames));
+    }
+
+    private List<ClassificationResult<BytesRef>> getClasses(SparseVector features) throws IOException {
+        Map<String, Node> nodes = this.nodes;
+        if (nodes == null) {
+            throw new IOException("You must first call Classifier#train");
+        }
+        List<ClassificationResult<BytesRef>> results = new ArrayList<>();
+        List<ClassificationResult<BytesRef>> beam = new ArrayList<>();
+        beam.add(new ClassificationResult<>(new BytesRef(), 1d));
+        while (!beam.isEmpty()) {
+            List<ClassificationResult<BytesRef>> next = new ArrayList<>();
+            for (ClassificationResult<BytesRef> path : beam) {
+                String prefix = path.getAssignedClass().utf8ToString();
+                Node node = nodes.get(prefix);
+                if (node == null) {
+                    // a leaf
+                    results.add(path);
+                    continue;
+                }
+                for (ClassificationResult<BytesRef> child : node.getClasses(features)) {
+                    ClassificationResult<BytesRef> childPath = new ClassificationResult<>(child.getAssignedClass(),
+                            path.getScore() * child.getScore());
+                    if (child.getAssignedClass().utf8ToString().equals(prefix)) {
+                        // the path stops at this inner node
+                        results.add(childPath);
+                    } else {
+                        next.add(childPath);
+                    }
+                }
+            }
+            CollectionUtil.timSort(next);
+            beam = next.subList(0, Math.min(beamWidth, next.size()));
+        }
+        CollectionUtil.timSort(results);
+        return results;
+    }
+
+    private static class Node {
+
+        private final AveragedPerceptronClassifier model;
+        private final BytesRef onlyChild;
+
+        Node(AveragedPerceptronClassifier model) {
+            this.model = model;
+            this.onlyChild = null;
+        }
+
+        Node(BytesRef onlyChild) {
+            this.model = null;
+            this.onlyChild = onlyChild;
+        }
+
+        List<ClassificationResult<BytesRef>> getClasses(SparseVector features) throws IOException {
+            if (model == null) {
+                return Collections.singletonList(new ClassificationResult<>(onlyChild, 1d));
+            }
+            return model.getClasses(features);
+        }
+    }
+
+    /**
+     * Maps a path to the child of a node it is under, or to the node itself if it is the node
+     */
+    private class ChildrenMapping implements AveragedPerceptronClassifier.ClassMapping {
+
+        private final String node;
+
+        ChildrenMapping(String node) {
+            this.node = node;
+        }
+
+        @Override
+        public BytesRef prefix() {
+            return new BytesRef(node);
+        }
+
+        @Override
+        public String map(String value) {
+            if (node.isEmpty()) {
+                int end = value.indexOf(separator);
+                return end == -1 ? value : value.substring(0, end);
+            }
+            if (value.equals(node)) {
+                return node;
+            }
+            if (!value.startsWith(node + separator)) {
+                return null;
+            }
+            int from = node.length() + separator.length();
+            int end = value.indexOf(separator, from);
+            return end == -1 ? value : value.substring(0, end);
+        }
+    }
+}
@@ -3,37 +3,28 @@ package org.elasticsearch.classification;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.classification.ClassificationResult;
 import org.apache.lucene.classification.Classifier;
-import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queries.mlt.MoreLikeThis;
 import org.apache.lucene.search.*;
 import org.apache.lucene.util.BytesRef;
-import org.elasticsearch.common.bytes.BytesArray;
-import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.common.collect.Tuple;
-import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.common.lucene.search.XMoreLikeThis;
 import org.elasticsearch.index.mapper.MapperService;
-import org.elasticsearch.index.mapper.Mapping;
-import org.elasticsearch.index.mapper.ParsedDocument;
 
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
 
-import static org.elasticsearch.index.mapper.SourceToParse.source;
-
 /**
  * A k-Nearest Neighbor classifier (see <code>http://en.wikipedia.org/wiki/K-nearest_neighbors</code>) based
- * on {@link MoreLikeThis}
+ * on {@link XMoreLikeThis}
  * <p/>
  *
  * A minimally modified copy of {@link org.apache.lucene.classification.KNearestNeighborClassifier}
  */
-public class KNearestNeighborClassifier implements Classifier<BytesRef> {
+public class KNearestNeighborClassifier implements AnalyzedTextClassifier<BytesRef> {
 
     private final int k;
-    private MoreLikeThis mlt;
+    private XMoreLikeThis mlt;
     private String[] textFieldNames;
     private String classFieldName;
     private IndexSearcher indexSearcher;
@@ -42,9 +33,9 @@ public class KNearestNeighborClassifier implements Classifier<BytesRef> {
     private int minDocsFreq;
     private int minTermFreq;
 
-    private MapperService mapperService;
-    private String index;
-    private String type;
+    private SourceFieldsLoader sourceFieldsLoader;
+
+    private ClassificationTimeout timeout = ClassificationTimeout.NONE;
 
     /**
      * Create a {@link Classifier} using kNN algorithm
@@ -59,8 +50,8 @@ public class KNearestNeighborClassifier implements Classifier<BytesRef> {
      * Create a {@link Classifier} using kNN algorithm
      *
      * @param k           the number of neighbors to analyze as an <code>int</code>
-     * @param minDocsFreq the minimum number of docs frequency for MLT to be set with {@link MoreLikeThis#setMinDocFreq(int)}
-     * @param minTermFreq the minimum number of term frequency for MLT to be set with {@link MoreLikeThis#setMinTermFreq(int)}
+     * @param minDocsFreq the minimum number of docs frequency for MLT to be set with {@link XMoreLikeThis#setMinDocFreq(int)}
+     * @param minTermFreq the minimum number of term frequency for MLT to be set with {@link XMoreLikeThis#setMinTermFreq(int)}
      */
     public KNearestNeighborClassifier(int k, int minDocsFreq, int minTermFreq) {
         this.k = k;
@@ -108,6 +99,23 @@ public class KNearestNeighborClassifier implements Classifier<BytesRef> {
         return doclist.subList(0, max);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(AnalyzedText analyzedText) throws IOException {
+        if (mlt == null) {
+            throw new IOException("You must first call Classifier#train");
+        }
+        // the text was already analyzed so we can directly use its terms
+        BooleanQuery mltQuery = new BooleanQuery();
+        mltQuery.add(new BooleanClause(mlt.like(analyzedText.asFields()), BooleanClause.Occur.SHOULD));
+        TopDocs topDocs = knnSearcher(mltQuery);
+        List<ClassificationResult<BytesRef>> doclist = buildListFromTopDocs(topDocs);
+        Collections.sort(doclist);
+        return doclist;
+    }
+
     private TopDocs knnSearcher(String text) throws IOException {
         if (mlt == null) {
             throw new IOException("You must first call Classifier#train");
@@ -116,18 +124,24 @@ public class KNearestNeighborClassifier implements Classifier<BytesRef> {
         for (String textFieldName : textFieldNames) {
             mltQuery.add(new BooleanClause(mlt.like(textFieldName, new StringReader(text)), BooleanClause.Occur.SHOULD));
         }
+        return knnSearcher(mltQuery);
+    }
+
+    private TopDocs knnSearcher(BooleanQuery mltQuery) throws IOException {
         Query classFieldQuery = new WildcardQuery(new Term(classFieldName, "*"));
         mltQuery.add(new BooleanClause(classFieldQuery, BooleanClause.Occur.MUST));
         if (query != null) {
             mltQuery.add(query, BooleanClause.Occur.MUST);
         }
-        return indexSearcher.search(mltQuery, k);
+        TopScoreDocCollector collector = TopScoreDocCollector.create(k);
+        indexSearcher.search(mltQuery, timeout.wrap(collector));
+        return collector.topDocs();
     }
 
     private List<ClassificationResult<BytesRef>> buildListFromTopDocs(TopDocs topDocs) throws IOException {
         Map<BytesRef, Integer> classCounts = new HashMap<>();
         for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-            BytesRef cl = getClassNameFromSource(indexSearcher.doc(scoreDoc.doc).getField("_source"));
+            BytesRef cl = getClassNameFromSource(scoreDoc.doc);
             Integer count = classCounts.get(cl);
             if (count != null) {
                 classCounts.put(cl, count + 1);
@@ -176,7 +190,7 @@ public class KNearestNeighborClassifier implements Classifier<BytesRef> {
     public void train(LeafReader leafReader, String[] textFieldNames, String classFieldName, Analyzer analyzer, Query query) throws IOException {
         this.textFieldNames = textFieldNames;
         this.classFieldName = classFieldName;
-        mlt = new MoreLikeThis(leafReader);
+        mlt = new XMoreLikeThis(leafReader);
         mlt.setAnalyzer(analyzer);
         mlt.setFieldNames(textFieldNames);
         indexSearcher = new IndexSearcher(leafReader);
@@ -192,18 +206,21 @@ public class KNearestNeighborClassifier implements Classifier<BytesRef> {
     // the following methods were added to get the class name from source
 
     public void setMapperService(MapperService mapperService, String index, String type) {
-        this.mapperService = mapperService;
-        this.index = index;
-        this.type = type;
+        this.sourceFieldsLoader = new SourceFieldsLoader(mapperService, index, type);
+    }
+
+    public void setSourceFieldsLoader(SourceFieldsLoader sourceFieldsLoader) {
+        this.sourceFieldsLoader = sourceFieldsLoader;
     }
 
-    private BytesRef getClassNameFromSource(IndexableField source) {
-        ParsedDocument parsedDocument = parseDocument(index, type, new BytesArray(source.binaryValue()));
-        return new BytesRef(parsedDocument.rootDoc().getField(classFieldName).stringValue());
+    /**
+     * Sets the timeout checked while collecting the neighbors
+     */
+    public void setTimeout(ClassificationTimeout timeout) {
+        this.timeout = timeout;
     }
 
-    private ParsedDocument parseDocument(String index, String type, BytesReference doc) {
-        Tuple<DocumentMapper, Mapping> docMapper = mapperService.documentMapperWithAutoCreate(type);
-        return docMapper.v1().parse(source(doc).index(index).type(type).flyweight(true));
+    private BytesRef getClassNameFromSource(int docId) throws IOException {
+        return new BytesRef(sourceFieldsLoader.load(indexSearcher.getIndexReader(), docId).getField(classFieldName).stringValue());
     }
 }
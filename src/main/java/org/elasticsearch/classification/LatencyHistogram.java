@@ -0,0 +1,149 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in microseconds with a bounded relative error, in the spirit of HdrHistogram. Each power
+ * of two is split into {@link #SUB_BUCKETS} linear buckets, so a value is known within 1 / {@link #SUB_BUCKETS}
+ * of itself. Recording is lock free and histograms of several shards or nodes can be merged.
+ */
+public class LatencyHistogram implements Streamable, ToXContent {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+    public void record(long micros) {
+        counts.incrementAndGet(bucket(Math.max(0, micros)));
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the highest value of the bucket holding the given percentile, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(NUM_BUCKETS - 1);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowestValue = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowestValue + (1L << shift) - 1;
+    }
+
+    public static LatencyHistogram readLatencyHistogram(StreamInput in) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.readFrom(in);
+        return histogram;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        counts = new AtomicLongArray(NUM_BUCKETS);
+        int size = in.readVInt();
+        for (int i = 0; i < size; i++) {
+            counts.set(in.readVInt(), in.readVLong());
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        // most buckets are empty
+        int size = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            if (counts.get(i) != 0) {
+                size++;
+            }
+        }
+        out.writeVInt(size);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                out.writeVInt(i);
+                out.writeVLong(count);
+            }
+        }
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field("count", count());
+        for (double percentile : PERCENTILES) {
+            builder.field("p" + (percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile))
+                    + "_in_micros", percentile(percentile));
+        }
+        builder.field("max_in_micros", percentile(100));
+        return builder;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.classify.ClassifyRequest;
+
+import java.util.*;
+
+/**
+ * Identifies a model trained on a shard, so that requests asking for the same model can share it.
+ */
+public class ModelKey {
+
+    // settings which do not change the model being trained, the beam width being applied to the model per request
+    private static final Set<String> IGNORED_SETTINGS = new HashSet<>(Arrays.asList("background", "beam_width", "frozen"));
+
+    private final String modelType;
+    private final String[] textFields;
+    private final String classField;
+    private final BytesRef trainQuery;
+    private final String analyzer;
+    private final Map<String, String> settings;
+
+    public ModelKey(String modelType, ClassifyRequest request) {
+        this.modelType = modelType;
+        this.textFields = request.textFields();
+        this.classField = request.classField();
+        this.trainQuery = request.trainQuery() == null ? null : request.trainQuery().toBytesRef();
+        this.analyzer = request.analyzer();
+        this.settings = new HashMap<>(request.modelSettings().getAsMap());
+        this.settings.keySet().removeAll(IGNORED_SETTINGS);
+    }
+
+    /**
+     * Returns a string which is the same for the same model on every node, so that the requests for a model are
+     * routed first to the copies of each shard which already trained and cached it.
+     */
+    public String preference() {
+        StringBuilder preference = new StringBuilder("classify|").append(modelType).append('|');
+        preference.append(Arrays.toString(textFields)).append('|').append(classField).append('|');
+        preference.append(trainQuery == null ? "" : trainQuery.toString()).append('|').append(analyzer).append('|');
+        // sorted so that the same settings always give the same preference
+        preference.append(new TreeMap<>(settings));
+        return preference.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ModelKey that = (ModelKey) o;
+        return modelType.equals(that.modelType) && Arrays.equals(textFields, that.textFields) && classField.equals(that.classField)
+                && Objects.equals(trainQuery, that.trainQuery) && Objects.equals(analyzer, that.analyzer) && settings.equals(that.settings);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(modelType, Arrays.hashCode(textFields), classField, trainQuery, analyzer, settings);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + modelType + "] on " + Arrays.toString(textFields) + " for [" + classField + "]";
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.classify.ClassifyRequest;
+
+import java.util.*;
+
+/**
+ * Identifies the result of a classify request on a shard, so that identical requests on the same reader can share it.
+ */
+public class ResultKey {
+
+    private final String modelType;
+    private final String[] textFields;
+    private final String classField;
+    private final String trainType;
+    private final BytesRef trainQuery;
+    private final String analyzer;
+    private final Map<String, String> settings;
+    private final String text;
+    private final long readerVersion;
+
+    public ResultKey(ClassifyRequest request, long readerVersion) {
+        this.modelType = request.modelType();
+        this.textFields = request.textFields();
+        this.classField = request.classField();
+        this.trainType = request.trainType();
+        this.trainQuery = request.trainQuery() == null ? null : request.trainQuery().toBytesRef();
+        this.analyzer = request.analyzer();
+        this.settings = request.modelSettings().getAsMap();
+        this.text = request.evalOn();
+        this.readerVersion = readerVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ResultKey that = (ResultKey) o;
+        return readerVersion == that.readerVersion && Objects.equals(modelType, that.modelType)
+                && Arrays.equals(textFields, that.textFields) && classField.equals(that.classField)
+                && Objects.equals(trainType, that.trainType) && Objects.equals(trainQuery, that.trainQuery)
+                && Objects.equals(analyzer, that.analyzer) && settings.equals(that.settings) && text.equals(that.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(modelType, Arrays.hashCode(textFields), classField, trainType, trainQuery, analyzer, settings, text, readerVersion);
+    }
+}
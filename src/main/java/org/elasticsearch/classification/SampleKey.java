@@ -0,0 +1,58 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.classify.ClassifyRequest;
+
+import java.util.Objects;
+
+/**
+ * Identifies a training sample drawn on a reader of a shard, so that the models trained on the same sample of the
+ * same reader draw it once.
+ */
+public class SampleKey {
+
+    private final TrainingSampler sampler;
+    private final String classField;
+    private final BytesRef trainQuery;
+    private final long readerVersion;
+
+    public SampleKey(TrainingSampler sampler, ClassifyRequest request, long readerVersion) {
+        this.sampler = sampler;
+        this.classField = request.classField();
+        this.trainQuery = request.trainQuery() == null ? null : request.trainQuery().toBytesRef();
+        this.readerVersion = readerVersion;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SampleKey that = (SampleKey) o;
+        return readerVersion == that.readerVersion && sampler.equals(that.sampler) && classField.equals(that.classField)
+                && Objects.equals(trainQuery, that.trainQuery);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sampler, classField, trainQuery, readerVersion);
+    }
+}
@@ -19,54 +19,243 @@
 
 package org.elasticsearch.classification;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.classification.CachingNaiveBayesClassifier;
 import org.apache.lucene.classification.ClassificationResult;
 import org.apache.lucene.classification.Classifier;
-import org.apache.lucene.classification.SimpleNaiveBayesClassifier;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.WildcardQuery;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.classify.ClassifyProfile;
 import org.elasticsearch.action.classify.ClassifyRequest;
 import org.elasticsearch.action.classify.ClassifyRequest.ModelTypes;
 import org.elasticsearch.action.classify.ClassifyResult;
+import org.elasticsearch.classification.ClassificationService.ResolvedAnalyzers;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.lucene.search.Queries;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.mapper.MappedFieldType;
-import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.core.StringFieldMapper;
 import org.elasticsearch.index.query.IndexQueryParserService;
+import org.elasticsearch.index.settings.IndexSettingsService;
 import org.elasticsearch.index.shard.AbstractIndexShardComponent;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 /**
  */
 public class ShardClassificationService extends AbstractIndexShardComponent {
 
     public static final String DEFAULT_MODEL_TYPE = "simple_naive_bayes";
+    public static final boolean DEFAULT_FROZEN = false;
+    public static final boolean DEFAULT_TERM_VECTORS = true;
     
     public static final Double DEFAULT_BOOLEAN_PERCEPTRON_THRESHOLD = null; // automatic
     public static final int DEFAULT_BOOLEAN_PERCEPTRON_BATCH_SIZE = 1;
+    public static final int DEFAULT_BOOLEAN_PERCEPTRON_CHECKPOINT_INTERVAL = 10000;
+    public static final boolean DEFAULT_BOOLEAN_PERCEPTRON_BACKGROUND = false;
+    public static final int DEFAULT_BOOLEAN_PERCEPTRON_DIMENSION = 1 << 18;
+
+    public static final int DEFAULT_AVERAGED_PERCEPTRON_DIMENSION = 1 << 16;
+    public static final int DEFAULT_AVERAGED_PERCEPTRON_EPOCHS = 3;
+    public static final boolean DEFAULT_AVERAGED_PERCEPTRON_HIERARCHICAL = false;
+    // each node of a hierarchy has its own weights
+    public static final int DEFAULT_HIERARCHICAL_DIMENSION = 1 << 12;
+
+    public static final int DEFAULT_NAIVE_BAYES_MAX_CANDIDATES = 0; // all classes
+    public static final int DEFAULT_NAIVE_BAYES_CANDIDATE_TERMS = CandidateClassSelector.DEFAULT_CANDIDATE_TERMS;
 
     public static final int DEFAULT_KNN_K = 3;
     public static final int DEFAULT_KNN_MIN_DOC_FREQ = 0;
     public static final int DEFAULT_KNN_MIN_TERM_FREQ = 0;
 
+    public static final String MODELS_MAX_MEMORY = "index.classify.models.max_memory";
+    public static final ByteSizeValue DEFAULT_MODELS_MAX_MEMORY = new ByteSizeValue(256, ByteSizeUnit.MB);
+
+    // the weight of a model which holds no weights yet, so that the number of models is bounded as well
+    private static final int MIN_MODEL_WEIGHT = 1024;
+
+    public static final String SAMPLES_MAX_MEMORY = "index.classify.samples.max_memory";
+    public static final ByteSizeValue DEFAULT_SAMPLES_MAX_MEMORY = new ByteSizeValue(64, ByteSizeUnit.MB);
+
+    public static final String RESULTS_CACHE_MAX_SIZE = "index.classify.results_cache.max_size";
+    public static final int DEFAULT_RESULTS_CACHE_MAX_SIZE = 1000;
+    public static final String RESULTS_CACHE_EXPIRE = "index.classify.results_cache.expire";
+
     private IndexShard indexShard;
     private IndexQueryParserService queryParser;
+    private ClassificationService classificationService;
+    private final ClassifySlowLog slowLog;
+    private final IndexSettingsService settingsService;
+    private final ApplySettings applySettings = new ApplySettings();
+
+    // models which are expensive to train are kept, along with their training progress, weighed by their memory
+    private final Cache<ModelKey, CachedModel> models;
+
+    // the training samples drawn on the current reader of the shard, so that the models which are trained for each
+    // request, such as naive Bayes and kNN, do not draw them again
+    private final Cache<SampleKey, TrainingSampler.Sample> samples;
+    private volatile long samplesReaderVersion = -1;
+
+    // the results of the requests evaluated on the current reader of the shard
+    private final Cache<ResultKey, ClassifyResult> results;
+    private final int resultsMaxSize;
+    private volatile long resultsReaderVersion = -1;
 
     // Unfortunately it does not seem possible to bind shard services in a plugin
-    public ShardClassificationService(IndexShard indexShard) {
+    public ShardClassificationService(IndexShard indexShard, ClassificationService classificationService) {
         super(indexShard.shardId(), indexShard.indexSettings());
         this.indexShard = indexShard;
         this.queryParser = indexShard.indexService().queryParserService();
+        this.classificationService = classificationService;
+        this.slowLog = new ClassifySlowLog(shardId, indexSettings);
+        this.settingsService = indexShard.indexService().settingsService();
+        this.settingsService.addListener(applySettings);
+        this.models = CacheBuilder.newBuilder()
+                .maximumWeight(indexSettings.getAsBytesSize(MODELS_MAX_MEMORY, DEFAULT_MODELS_MAX_MEMORY).bytes())
+                .weigher(new Weigher<ModelKey, CachedModel>() {
+                    @Override
+                    public int weigh(ModelKey key, CachedModel model) {
+                        return (int) Math.min(Integer.MAX_VALUE, MIN_MODEL_WEIGHT + model.bytes);
+                    }
+                })
+                .removalListener(new RemovalListener<ModelKey, CachedModel>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<ModelKey, CachedModel> notification) {
+                        classificationService.requestBreaker().addWithoutBreaking(-notification.getValue().bytes);
+                    }
+                })
+                .recordStats().build();
+        this.samples = CacheBuilder.newBuilder()
+                .maximumWeight(indexSettings.getAsBytesSize(SAMPLES_MAX_MEMORY, DEFAULT_SAMPLES_MAX_MEMORY).bytes())
+                .weigher(new Weigher<SampleKey, TrainingSampler.Sample>() {
+                    @Override
+                    public int weigh(SampleKey key, TrainingSampler.Sample sample) {
+                        return (int) Math.min(Integer.MAX_VALUE, sample.ramBytesUsed());
+                    }
+                })
+                .build();
+        this.resultsMaxSize = indexSettings.getAsInt(RESULTS_CACHE_MAX_SIZE, DEFAULT_RESULTS_CACHE_MAX_SIZE);
+        CacheBuilder<Object, Object> resultsBuilder = CacheBuilder.newBuilder().maximumSize(Math.max(0, resultsMaxSize)).recordStats();
+        TimeValue resultsExpire = indexSettings.getAsTime(RESULTS_CACHE_EXPIRE, null);
+        if (resultsExpire != null) {
+            resultsBuilder.expireAfterWrite(resultsExpire.millis(), TimeUnit.MILLISECONDS);
+        }
+        this.results = resultsBuilder.build();
+    }
+
+    /**
+     * Stops applying the updated settings of the index, once the shard is closed
+     */
+    void close() {
+        settingsService.removeListener(applySettings);
+        // releases the memory of the models from the breaker
+        models.invalidateAll();
+        samples.invalidateAll();
+    }
+
+    class ApplySettings implements IndexSettingsService.Listener {
+        @Override
+        public void onRefreshSettings(Settings settings) {
+            slowLog.onRefreshSettings(settings);
+        }
+    }
+
+    /**
+     * Adds the size, memory and hit ratio of the models and results cached on this shard
+     */
+    void addModelsCacheStats(ClassificationStats stats) {
+        long memorySize = 0;
+        for (CachedModel model : models.asMap().values()) {
+            memorySize += model.bytes;
+        }
+        CacheStats cacheStats = models.stats();
+        stats.addModelsCache(models.size(), memorySize, cacheStats.hitCount(), cacheStats.missCount(), cacheStats.evictionCount());
+        CacheStats resultsStats = results.stats();
+        stats.addResultsCache(results.size(), resultsStats.hitCount(), resultsStats.missCount(), resultsStats.evictionCount());
     }
 
     public ClassifyResult evaluate(ClassifyRequest request) throws IOException {
+        return evaluate(request, new ClassifyProfile(false), ClassificationTimeout.NONE);
+    }
+
+    /**
+     * Trains the classifier if needed and evaluates it on the text of the request, recording the time spent
+     * in each phase in the profile. Both give up with an {@link ElasticsearchTimeoutException} once the timeout
+     * expired, in which case a model which is kept on the shard resumes its training on the next request.
+     * Returns null if no doc with a class matches the train query on this shard, so that there is nothing to train on.
+     */
+    public ClassifyResult evaluate(ClassifyRequest request, ClassifyProfile profile, ClassificationTimeout timeout) throws IOException {
+        if (!profile.enabled() && slowLog.enabled()) {
+            // the phases are needed by the slow log even if the request is not profiled
+            profile = new ClassifyProfile(true);
+        }
+        long start = System.nanoTime();
+        final Engine.Searcher searcher = indexShard.acquireSearcher("classify");
+        start = profile.phase("acquire_searcher", start);
+        try {
+            // an identical request on the same reader gets the same result
+            ResultKey resultKey = resultKey(request, searcher.reader());
+            if (resultKey != null) {
+                ClassifyResult cached = results.getIfPresent(resultKey);
+                start = profile.phase("results_cache", start);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            // a model trained on this reader had docs to train on, otherwise check there are any before training
+            if (!isTrained(request, searcher.reader())) {
+                boolean canMatch = canMatch(request, searcher.searcher());
+                start = profile.phase("can_match", start);
+                if (!canMatch) {
+                    return null;
+                }
+            }
+            ClassifyResult classifyResult = evaluate(request, searcher, profile, timeout, start);
+            if (resultKey != null && isCacheable(request, searcher.reader())) {
+                results.put(resultKey, classifyResult);
+            }
+            return classifyResult;
+        } finally {
+            searcher.close();
+        }
+    }
+
+    private ClassifyResult evaluate(ClassifyRequest request, Engine.Searcher searcher, ClassifyProfile profile, ClassificationTimeout timeout,
+                                    long start) throws IOException {
         // get the classifier
         Classifier classifier;
         if (request.modelType() == null) {
@@ -74,54 +263,467 @@ public class ShardClassificationService extends AbstractIndexShardComponent {
         } else {
             classifier = getClassifier(request.modelType(), request);
         }
-        // train the classifier
-        train(classifier, request);  // boolean perceptron is always retrained for now
+        if (classifier instanceof KNearestNeighborClassifier) {
+            ((KNearestNeighborClassifier) classifier).setTimeout(timeout);
+        }
+        start = profile.phase("get_model", start);
+        // either the analyzer of the request or the search analyzer of each field
+        ResolvedAnalyzers analyzers = classificationService.resolveAnalyzers(indexShard.indexService(), request);
+        start = profile.phase("resolve_analyzers", start);
 
-        // evaluate the classifier
-        List<ClassificationResult> results = classifier.getClasses(request.evalOn());
+        List<ClassificationResult> results;
+        // train the classifier, the boolean perceptron may also be trained in the background
+        if (classifier instanceof BooleanPerceptronClassifier && request.modelSettings().getAsBoolean("background", DEFAULT_BOOLEAN_PERCEPTRON_BACKGROUND)) {
+            BooleanPerceptronClassifier perceptron = (BooleanPerceptronClassifier) classifier;
+            if (!perceptron.isTrained(readerVersion(searcher.reader())) && !isFrozen(perceptron, request)) {
+                trainInBackground(perceptron, analyzers.analyzer(), request);
+            }
+            if (!perceptron.hasModel()) {
+                throw new IllegalStateException("model " + new ModelKey(ModelTypes.BOOLEAN_PERCEPTRON, request) + " is being trained in the background");
+            }
+        } else {
+            train(classifier, searcher.reader(), analyzers.analyzer(), request, profile, timeout);
+        }
+        timeout.check();
+        classifier = withRequestSettings(classifier, request);
+        start = System.nanoTime();
+
+        // evaluate the classifier, the text is only analyzed here if the coordinating node could not do it
+        if (classifier instanceof AnalyzedTextClassifier) {
+            AnalyzedText analyzedText = request.analyzedText();
+            if (analyzedText == null) {
+                analyzedText = AnalyzedText.analyze(request.evalOn(), analyzers.perField());
+                start = profile.phase("analyze", start);
+            }
+            results = ((AnalyzedTextClassifier) classifier).getClasses(analyzedText);
+        } else {
+            results = classifier.getClasses(request.evalOn());
+        }
+        long evaluated = profile.phase("evaluate", start);
+        classificationService.onEvaluation(shardId, evaluated - start);
+        if (slowLog.isSlowEvaluation(evaluated - start)) {
+            slowLog.onEvaluation(request, evaluated - start, countTrainingDocs(searcher.searcher(), request, null), profile);
+        }
+        start = evaluated;
 
         // and finally return the results
         MappedFieldType fieldType = indexShard.mapperService().smartNameFieldType(request.classField());
-        return new ClassifyResult(results, fieldType);
+        ClassifyResult classifyResult = new ClassifyResult(results, fieldType);
+        profile.phase("convert_results", start);
+        return classifyResult;
     }
 
-    private void train(Classifier classifier, ClassifyRequest request) {
-        // parse the query and get analyzer at field if possible
-        Query luceneQuery;
-        if (request.trainQuery() == null) {
-            luceneQuery = Queries.newMatchAllQuery();
+    /**
+     * Returns false if no doc with a class matches the train query of the request on this shard, in which case there
+     * is nothing to train on and the shard can be skipped. Unlike counting the training docs, this stops at the first
+     * match and does not expand the terms of the class field.
+     */
+    boolean canMatch(ClassifyRequest request, IndexSearcher searcher) throws IOException {
+        Weight weight = null;
+        for (LeafReaderContext context : searcher.getIndexReader().leaves()) {
+            if (context.reader().terms(request.classField()) == null) {
+                continue;
+            }
+            if (weight == null) {
+                weight = searcher.createNormalizedWeight(parseTrainQuery(request), false);
+            }
+            Scorer scorer = weight.scorer(context, context.reader().getLiveDocs());
+            if (scorer != null && scorer.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the model of the request is cached and was completely trained on the given reader
+     */
+    private boolean isTrained(ClassifyRequest request, IndexReader reader) {
+        String modelType = request.modelType() == null ? DEFAULT_MODEL_TYPE : request.modelType();
+        if (!isCachedModel(modelType)) {
+            return false;
+        }
+        CachedModel model = models.getIfPresent(new ModelKey(modelType, request));
+        Classifier classifier = model == null ? null : model.classifier;
+        return classifier instanceof CachedClassifier && ((CachedClassifier) classifier).isTrained(readerVersion(reader));
+    }
+
+    /**
+     * Returns true if the models of this type are kept on the shards once trained, rather than trained for each request
+     */
+    public static boolean isCachedModel(String modelType) {
+        return modelType.equals(ModelTypes.BOOLEAN_PERCEPTRON) || modelType.equals(ModelTypes.AVERAGED_PERCEPTRON);
+    }
+
+    /**
+     * Returns the model of the request if it is kept on this shard, null otherwise
+     */
+    public CachedClassifier cachedModel(ClassifyRequest request) {
+        CachedModel model = models.getIfPresent(new ModelKey(request.modelType() == null ? DEFAULT_MODEL_TYPE : request.modelType(), request));
+        return model != null && model.classifier instanceof CachedClassifier ? (CachedClassifier) model.classifier : null;
+    }
+
+    /**
+     * Returns the key of the result of the request on the given reader, or null if its result should not be cached.
+     * The results of older readers are dropped as soon as a newer reader is seen, as they cannot be hit anymore.
+     */
+    private ResultKey resultKey(ClassifyRequest request, IndexReader reader) {
+        long readerVersion = readerVersion(reader);
+        if (resultsMaxSize <= 0 || readerVersion == -1 || request.evalOn() == null) {
+            return null;
+        }
+        if (readerVersion != resultsReaderVersion) {
+            resultsReaderVersion = readerVersion;
+            results.invalidateAll();
+        }
+        return new ResultKey(request, readerVersion);
+    }
+
+    /**
+     * Returns false if the model the request was evaluated with is still being trained in the background, as it may
+     * give a different result on the same reader once trained
+     */
+    private boolean isCacheable(ClassifyRequest request, IndexReader reader) {
+        if (request.modelSettings().getAsBoolean("background", DEFAULT_BOOLEAN_PERCEPTRON_BACKGROUND)
+                && ModelTypes.BOOLEAN_PERCEPTRON.equals(request.modelType())) {
+            CachedModel model = models.getIfPresent(new ModelKey(ModelTypes.BOOLEAN_PERCEPTRON, request));
+            Classifier classifier = model == null ? null : model.classifier;
+            return classifier instanceof CachedClassifier && ((CachedClassifier) classifier).isTrained(readerVersion(reader));
+        }
+        return true;
+    }
+
+    /**
+     * Trains the classifier of the request on the given reader if needed, and returns it to evaluate many texts
+     * with the same model, such as the docs matching a search on this shard. The text of the request is ignored.
+     */
+    public Evaluator evaluator(ClassifyRequest request, IndexReader reader) {
+        return evaluator(request, reader, ClassificationTimeout.NONE);
+    }
+
+    /**
+     * Trains the classifier of the request if needed and evaluates it on each of the given texts, so that the model
+     * is only looked up and trained once for all of them. The text of the request is ignored. Returns null if no doc
+     * with a class matches the train query on this shard, so that there is nothing to train on.
+     */
+    public List<ClassifyResult> evaluate(ClassifyRequest request, List<String> texts, ClassificationTimeout timeout) throws IOException {
+        final Engine.Searcher searcher = indexShard.acquireSearcher("classify");
+        try {
+            if (!isTrained(request, searcher.reader()) && !canMatch(request, searcher.searcher())) {
+                return null;
+            }
+            Evaluator evaluator = evaluator(request, searcher.reader(), timeout);
+            List<ClassifyResult> results = new ArrayList<>(texts.size());
+            for (String text : texts) {
+                timeout.check();
+                long start = System.nanoTime();
+                results.add(evaluator.evaluate(text));
+                classificationService.onEvaluation(shardId, System.nanoTime() - start);
+            }
+            return results;
+        } finally {
+            searcher.close();
+        }
+    }
+
+    /**
+     * Trains a new model for the request on the given reader, which is not kept on the shard even if its type
+     * usually is, so that it is released along with the evaluator. This is for the many models of a grid, which would
+     * otherwise evict the models of the classify requests from the cache.
+     */
+    public Evaluator newEvaluator(ClassifyRequest request, IndexReader reader) {
+        String modelType = request.modelType() == null ? DEFAULT_MODEL_TYPE : request.modelType();
+        return evaluator(newClassifier(modelType, request), request, reader, ClassificationTimeout.NONE);
+    }
+
+    private Evaluator evaluator(ClassifyRequest request, IndexReader reader, ClassificationTimeout timeout) {
+        Classifier classifier;
+        if (request.modelType() == null) {
+            classifier = getClassifier(DEFAULT_MODEL_TYPE, request);
         } else {
-            luceneQuery = queryParser.parse(request.trainQuery()).query();
+            classifier = getClassifier(request.modelType(), request);
+        }
+        return evaluator(classifier, request, reader, timeout);
+    }
+
+    private Evaluator evaluator(Classifier classifier, ClassifyRequest request, IndexReader reader, ClassificationTimeout timeout) {
+        if (classifier instanceof KNearestNeighborClassifier) {
+            ((KNearestNeighborClassifier) classifier).setTimeout(timeout);
         }
-        // we default to the analyzer at the first field
-        Analyzer analyzer = getAnalyzerAtField(request.textFields()[0]);
+        ResolvedAnalyzers analyzers = classificationService.resolveAnalyzers(indexShard.indexService(), request);
+        train(classifier, reader, analyzers.analyzer(), request, new ClassifyProfile(slowLog.enabled()), timeout);
+        MappedFieldType fieldType = indexShard.mapperService().smartNameFieldType(request.classField());
+        return new Evaluator(withRequestSettings(classifier, request), analyzers, fieldType);
+    }
+
+    /**
+     * Applies the settings which are not part of the key of a model, as they do not change how it is trained, but
+     * how it is evaluated: the beam width of a hierarchical model
+     */
+    private static Classifier withRequestSettings(Classifier classifier, ClassifyRequest request) {
+        if (classifier instanceof HierarchicalClassifier) {
+            int beamWidth = request.modelSettings().getAsInt("beam_width", HierarchicalClassifier.DEFAULT_BEAM_WIDTH);
+            return ((HierarchicalClassifier) classifier).withBeamWidth(beamWidth);
+        }
+        return classifier;
+    }
+
+    private void train(Classifier classifier, IndexReader reader, Analyzer analyzer, ClassifyRequest request, ClassifyProfile profile,
+                       ClassificationTimeout timeout) {
+        long start = System.nanoTime();
+        // parse the query
+        Query luceneQuery = parseTrainQuery(request);
+        start = profile.phase("parse_query", start);
 
         // call train method
-        final Engine.Searcher searcher = indexShard.acquireSearcher("classify");
+        Lock trainingLock = null;
         try {
-            LeafReader leafReader = SlowCompositeReaderWrapper.wrap(indexShard.acquireSearcher("classify").reader());
-            classifier.train(leafReader, request.textFields(), request.classField(), analyzer, luceneQuery);
+            // the classifiers check the timeout as they read
+            LeafReader leafReader = timeout.wrap(SlowCompositeReaderWrapper.wrap(reader));
+            start = profile.phase("wrap_reader", start);
+            boolean trained = true;
+            if (classifier instanceof CachedClassifier) {
+                CachedClassifier cachedClassifier = (CachedClassifier) classifier;
+                if (isFrozen(cachedClassifier, request)) {
+                    return;
+                }
+                // another request may be training the model, it is only waited for until the timeout
+                Lock lock = cachedClassifier.trainingLock();
+                timeout.lock(lock);
+                trainingLock = lock;
+                start = profile.phase("wait_for_training", start);
+                trained = !cachedClassifier.isTrained(readerVersion(reader));
+            }
+            // the sample is only drawn if the model is actually trained
+            TrainingSampler sampler = TrainingSampler.fromSettings(request.modelSettings());
+            if (trained && sampler != null) {
+                luceneQuery = sample(sampler, leafReader, readerVersion(reader), luceneQuery, request).query();
+                start = profile.phase("sample", start);
+            }
+            if (classifier instanceof CachedClassifier) {
+                // not trained again if the model was already trained on this reader, or resumes from its last checkpoint
+                CachedClassifier cachedClassifier = (CachedClassifier) classifier;
+                try {
+                    cachedClassifier.train(leafReader, readerVersion(reader), request.textFields(), request.classField(), analyzer, luceneQuery);
+                } finally {
+                    if (trained) {
+                        reweigh(cachedClassifier, request);
+                    }
+                }
+            } else {
+                classifier.train(leafReader, request.textFields(), request.classField(), analyzer, luceneQuery);
+            }
+            long end = profile.phase("train", start);
+            if (trained) {
+                classificationService.onTraining(shardId, end - start);
+                if (slowLog.isSlowTraining(end - start)) {
+                    slowLog.onTraining(request, end - start, countTrainingDocs(new IndexSearcher(leafReader), request, luceneQuery), profile);
+                }
+            }
+        } catch (ElasticsearchTimeoutException e) {
+            throw e;
         } catch (Throwable ex) {
             throw new ElasticsearchException("failed to train model", ex);
         } finally {
+            if (trainingLock != null) {
+                trainingLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Puts a model which was trained back in the cache, so that the cache weighs it by the memory of its weights,
+     * which are accounted to the request breaker until it is removed. The model is not kept if the breaker trips.
+     */
+    private void reweigh(CachedClassifier classifier, ClassifyRequest request) {
+        ModelKey key = new ModelKey(request.modelType() == null ? DEFAULT_MODEL_TYPE : request.modelType(), request);
+        CachedModel cached = models.getIfPresent(key);
+        if (cached == null || cached.classifier != classifier) {
+            return; // evicted meanwhile, or not a cached model such as those of a grid
+        }
+        long bytes = classifier.ramBytesUsed();
+        try {
+            classificationService.requestBreaker().addEstimateBytesAndMaybeBreak(bytes, "<classify_models>");
+        } catch (CircuitBreakingException e) {
+            logger.debug("not keeping model {} of [{}] bytes", e, key, bytes);
+            models.asMap().remove(key, cached);
+            return;
+        }
+        if (!models.asMap().replace(key, cached, new CachedModel(classifier, bytes))) {
+            classificationService.requestBreaker().addWithoutBreaking(-bytes);
+        }
+    }
+
+    /**
+     * Returns the sample of the request on the given reader, which is only drawn once per reader. The samples of
+     * older readers are dropped as soon as a newer reader is seen, as their doc ids do not apply anymore.
+     */
+    private TrainingSampler.Sample sample(final TrainingSampler sampler, final LeafReader leafReader, long readerVersion,
+                                          final Query query, final ClassifyRequest request) throws IOException {
+        if (readerVersion == -1) {
+            return sampler.sample(leafReader, query, request.classField(), classificationService.requestBreaker());
+        }
+        if (readerVersion != samplesReaderVersion) {
+            samplesReaderVersion = readerVersion;
+            samples.invalidateAll();
+        }
+        try {
+            return samples.get(new SampleKey(sampler, request, readerVersion), new Callable<TrainingSampler.Sample>() {
+                @Override
+                public TrainingSampler.Sample call() throws Exception {
+                    return sampler.sample(leafReader, query, request.classField(), classificationService.requestBreaker());
+                }
+            });
+        } catch (ExecutionException e) {
+            throw new ElasticsearchException("failed to draw the sample", e.getCause());
+        } catch (UncheckedExecutionException e) {
+            // such as a timeout or a tripped breaker, which are not cached
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void trainInBackground(final BooleanPerceptronClassifier classifier, final Analyzer analyzer, final ClassifyRequest request) {
+        if (!classifier.startTrainingInBackground()) {
+            return; // already being trained
+        }
+        final Engine.Searcher searcher = indexShard.acquireSearcher("classify_background");
+        try {
+            classificationService.threadPool().executor(ThreadPool.Names.GENERIC).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        train(classifier, searcher.reader(), analyzer, request, new ClassifyProfile(slowLog.enabled()), ClassificationTimeout.NONE);
+                    } catch (Throwable t) {
+                        logger.warn("failed to train model {} in the background, it will resume from its last checkpoint",
+                                t, new ModelKey(ModelTypes.BOOLEAN_PERCEPTRON, request));
+                    } finally {
+                        searcher.close();
+                        classifier.stopTrainingInBackground();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
             searcher.close();
+            classifier.stopTrainingInBackground();
+            throw e;
         }
     }
 
-    private Classifier getClassifier(String modelType, ClassifyRequest request) {
+    /**
+     * Returns true if the model is frozen and was already trained, in which case it is not trained again once the
+     * index changed. This is for requests which change the index they classify, such as classify by query.
+     */
+    private static boolean isFrozen(CachedClassifier classifier, ClassifyRequest request) {
+        return request.modelSettings().getAsBoolean("frozen", DEFAULT_FROZEN) && classifier.isTrained();
+    }
+
+    private Query parseTrainQuery(ClassifyRequest request) {
+        if (request.trainQuery() == null) {
+            return Queries.newMatchAllQuery();
+        }
+        return queryParser.parse(request.trainQuery()).query();
+    }
+
+    /**
+     * Returns the number of docs with a class the model is trained on, or -1 if they could not be counted. This
+     * runs a query, so it is only called for the slow log.
+     */
+    private long countTrainingDocs(IndexSearcher searcher, ClassifyRequest request, @Nullable Query query) {
+        try {
+            if (query == null) {
+                query = parseTrainQuery(request);
+            }
+            BooleanQuery q = new BooleanQuery();
+            q.add(new BooleanClause(new WildcardQuery(new Term(request.classField(), "*")), BooleanClause.Occur.MUST));
+            q.add(new BooleanClause(query, BooleanClause.Occur.MUST));
+            TotalHitCountCollector collector = new TotalHitCountCollector();
+            searcher.search(q, collector);
+            return collector.getTotalHits();
+        } catch (Throwable t) {
+            logger.debug("failed to count the training docs of the slow log", t);
+            return -1;
+        }
+    }
+
+    private static long readerVersion(IndexReader reader) {
+        return reader instanceof DirectoryReader ? ((DirectoryReader) reader).getVersion() : -1;
+    }
+
+    private Classifier getClassifier(final String modelType, final ClassifyRequest request) {
+        if (isCachedModel(modelType)) {
+            try {
+                return models.get(new ModelKey(modelType, request), new Callable<CachedModel>() {
+                    @Override
+                    public CachedModel call() throws Exception {
+                        return new CachedModel(newClassifier(modelType, request), 0);
+                    }
+                }).classifier;
+            } catch (ExecutionException e) {
+                throw new ElasticsearchException("failed to create model", e.getCause());
+            }
+        }
+        return newClassifier(modelType, request);
+    }
+
+    /**
+     * Returns a loader of the training docs, which reads them from the term vectors of the text fields if they all
+     * have some analyzed the same way as the text is evaluated
+     */
+    private SourceFieldsLoader sourceFieldsLoader(ClassifyRequest request) {
+        boolean termVectors = request.modelSettings().getAsBoolean("term_vectors", DEFAULT_TERM_VECTORS) && request.analyzer() == null;
+        if (termVectors) {
+            for (String field : request.textFields()) {
+                MappedFieldType fieldType = indexShard.mapperService().smartNameFieldType(field);
+                if (fieldType == null || !fieldType.storeTermVectors() || fieldType.indexAnalyzer() == null
+                        || fieldType.searchAnalyzer() == null || !fieldType.indexAnalyzer().name().equals(fieldType.searchAnalyzer().name())) {
+                    termVectors = false;
+                    break;
+                }
+            }
+        }
+        return new SourceFieldsLoader(indexShard.mapperService(), request.trainIndex(), request.trainType(), termVectors);
+    }
+
+    private Classifier newClassifier(String modelType, ClassifyRequest request) {
         Settings settings = request.modelSettings();
         switch (modelType) {
             case ModelTypes.SIMPLE_NAIVE_BAYES:
-                return new SimpleNaiveBayesClassifier();
+                int maxCandidates = settings.getAsInt("max_candidates", DEFAULT_NAIVE_BAYES_MAX_CANDIDATES);
+                if (maxCandidates <= 0) {
+                    return new SimpleNaiveBayesClassifier();
+                }
+                return new SimpleNaiveBayesClassifier(new CandidateClassSelector(maxCandidates,
+                        settings.getAsInt("candidate_terms", DEFAULT_NAIVE_BAYES_CANDIDATE_TERMS)));
             case ModelTypes.CACHING_NAIVE_BAYES:
                 return new CachingNaiveBayesClassifier();
             case ModelTypes.BOOLEAN_PERCEPTRON:
-                if (settings != null && settings.getAsMap().size() != 0) {
-                    return new BooleanPerceptronClassifier(
-                            settings.getAsDouble("threshold", DEFAULT_BOOLEAN_PERCEPTRON_THRESHOLD),
-                            settings.getAsInt("batch_size", DEFAULT_BOOLEAN_PERCEPTRON_BATCH_SIZE));
+                return new BooleanPerceptronClassifier(
+                        FeatureHashingVectorizer.fromSettings(settings, DEFAULT_BOOLEAN_PERCEPTRON_DIMENSION),
+                        settings.getAsDouble("threshold", DEFAULT_BOOLEAN_PERCEPTRON_THRESHOLD),
+                        settings.getAsInt("batch_size", DEFAULT_BOOLEAN_PERCEPTRON_BATCH_SIZE),
+                        settings.getAsInt("checkpoint_interval", DEFAULT_BOOLEAN_PERCEPTRON_CHECKPOINT_INTERVAL),
+                        sourceFieldsLoader(request));
+            case ModelTypes.AVERAGED_PERCEPTRON:
+                checkKeywordClassField(modelType, request);
+                if (settings.getAsBoolean("hierarchical", DEFAULT_AVERAGED_PERCEPTRON_HIERARCHICAL)) {
+                    HierarchicalClassifier hierarchicalClassifier = new HierarchicalClassifier(
+                            FeatureHashingVectorizer.fromSettings(settings, DEFAULT_HIERARCHICAL_DIMENSION),
+                            settings.getAsInt("epochs", DEFAULT_AVERAGED_PERCEPTRON_EPOCHS),
+                            sourceFieldsLoader(request),
+                            settings.get("separator", HierarchicalClassifier.DEFAULT_SEPARATOR),
+                            settings.getAsInt("beam_width", HierarchicalClassifier.DEFAULT_BEAM_WIDTH));
+                    hierarchicalClassifier.setCircuitBreaker(classificationService.requestBreaker());
+                    return hierarchicalClassifier;
                 }
-                return new BooleanPerceptronClassifier();
+                AveragedPerceptronClassifier perceptronClassifier = new AveragedPerceptronClassifier(
+                        FeatureHashingVectorizer.fromSettings(settings, DEFAULT_AVERAGED_PERCEPTRON_DIMENSION),
+                        settings.getAsInt("epochs", DEFAULT_AVERAGED_PERCEPTRON_EPOCHS),
+                        sourceFieldsLoader(request));
+                perceptronClassifier.setCircuitBreaker(classificationService.requestBreaker());
+                return perceptronClassifier;
             case "knn":
                 KNearestNeighborClassifier knnClassifier;
                 if (settings != null && settings.getAsMap().size() != 0) {
@@ -137,13 +739,83 @@ public class ShardClassificationService extends AbstractIndexShardComponent {
         }
         throw new IllegalArgumentException("unknown model type [" + modelType + "]");
     }
-    
-    private Analyzer getAnalyzerAtField(String field) {
-        MapperService mapperService = this.indexShard.mapperService();
-        Analyzer analyzer = mapperService.analysisService().analyzer(field);
-        if(analyzer == null) {
-            analyzer = mapperService.analysisService().defaultAnalyzer();
+
+    /**
+     * The averaged perceptron takes its classes from the terms of the class field, but the classes of each doc from
+     * its doc values or its source. They are only the same for a <code>not_analyzed</code> string field, otherwise
+     * the docs would never match any class and the model would not be trained on them.
+     */
+    private void checkKeywordClassField(String modelType, ClassifyRequest request) {
+        MappedFieldType fieldType = indexShard.mapperService().smartNameFieldType(request.classField());
+        if (fieldType == null) {
+            return;
+        }
+        if (!StringFieldMapper.CONTENT_TYPE.equals(fieldType.typeName())) {
+            throw new IllegalArgumentException("class field [" + request.classField() + "] of model [" + modelType
+                    + "] must be a not_analyzed string field, got a field of type [" + fieldType.typeName() + "]");
+        }
+        if (fieldType.tokenized()) {
+            throw new IllegalArgumentException("class field [" + request.classField() + "] of model [" + modelType
+                    + "] must be a not_analyzed string field, got an analyzed string field");
+        }
+    }
+
+    /**
+     * A model kept on the shard, along with the memory it is accounted for
+     */
+    private static class CachedModel {
+
+        final Classifier classifier;
+        final long bytes;
+
+        CachedModel(Classifier classifier, long bytes) {
+            this.classifier = classifier;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A trained classifier, evaluated on one text at a time
+     */
+    public static class Evaluator {
+
+        private final Classifier classifier;
+        private final ResolvedAnalyzers analyzers;
+        private final MappedFieldType fieldType;
+
+        Evaluator(Classifier classifier, ResolvedAnalyzers analyzers, MappedFieldType fieldType) {
+            this.classifier = classifier;
+            this.analyzers = analyzers;
+            this.fieldType = fieldType;
+        }
+
+        public ClassifyResult evaluate(String text) throws IOException {
+            return evaluate(text, classifier instanceof AnalyzedTextClassifier ? analyze(text) : null);
+        }
+
+        /**
+         * Evaluates a text already analyzed with {@link #analyze(String)}, so that a text is only analyzed once
+         * for several models sharing the same analyzers
+         */
+        public ClassifyResult evaluate(String text, AnalyzedText analyzedText) throws IOException {
+            List<ClassificationResult> results;
+            if (classifier instanceof AnalyzedTextClassifier && analyzedText != null) {
+                results = ((AnalyzedTextClassifier) classifier).getClasses(analyzedText);
+            } else {
+                results = classifier.getClasses(text);
+            }
+            return new ClassifyResult(results, fieldType);
+        }
+
+        public AnalyzedText analyze(String text) throws IOException {
+            return AnalyzedText.analyze(text, analyzers.perField());
+        }
+
+        /**
+         * Returns the memory used by the weights of the model, 0 if it does not keep any
+         */
+        public long ramBytesUsed() {
+            return classifier instanceof CachedClassifier ? ((CachedClassifier) classifier).ramBytesUsed() : 0;
         }
-        return analyzer;
     }
 }
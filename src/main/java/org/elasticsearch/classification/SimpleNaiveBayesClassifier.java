@@ -0,0 +1,119 @@
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The Lucene naive Bayes classifier, which can evaluate an already analyzed text.
+ * <p/>
+ *
+ * The Lucene version scores every class for each text. Given a {@link CandidateClassSelector}, only the candidate
+ * classes of the text are scored, which bounds the work on a class field with many distinct values. The scores are
+ * then normalized over the candidates only.
+ */
+public class SimpleNaiveBayesClassifier extends org.apache.lucene.classification.SimpleNaiveBayesClassifier implements AnalyzedTextClassifier<BytesRef> {
+
+    private final CandidateClassSelector candidateClassSelector;
+
+    private AnalyzedText analyzedText;
+    // the tokens of the text being classified, so that it is only tokenized once for the candidates and the scores
+    private String[] tokens;
+    private CandidateClassesLeafReader candidatesReader;
+    private Query query;
+
+    public SimpleNaiveBayesClassifier() {
+        this(null);
+    }
+
+    /**
+     * Creates a {@link SimpleNaiveBayesClassifier}
+     *
+     * @param candidateClassSelector to select the classes to score, all classes are scored if null
+     */
+    public SimpleNaiveBayesClassifier(CandidateClassSelector candidateClassSelector) {
+        super();
+        this.candidateClassSelector = candidateClassSelector;
+    }
+
+    @Override
+    public void train(LeafReader leafReader, String[] textFieldNames, String classFieldName, Analyzer analyzer, Query query) throws IOException {
+        if (candidateClassSelector != null) {
+            candidatesReader = new CandidateClassesLeafReader(leafReader, classFieldName);
+            leafReader = candidatesReader;
+        }
+        this.query = query;
+        super.train(leafReader, textFieldNames, classFieldName, analyzer, query);
+    }
+
+    @Override
+    public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
+        selectCandidates(text);
+        try {
+            return super.assignClass(text);
+        } finally {
+            clearCandidates();
+        }
+    }
+
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text) throws IOException {
+        selectCandidates(text);
+        try {
+            return super.getClasses(text);
+        } finally {
+            clearCandidates();
+        }
+    }
+
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text, int max) throws IOException {
+        selectCandidates(text);
+        try {
+            return super.getClasses(text, max);
+        } finally {
+            clearCandidates();
+        }
+    }
+
+    private void selectCandidates(String text) throws IOException {
+        if (candidatesReader != null) {
+            tokens = tokenizeDoc(text);
+            candidatesReader.candidates(candidateClassSelector.select(candidatesReader, textFieldNames, classFieldName, query, tokens));
+        }
+    }
+
+    private void clearCandidates() {
+        tokens = null;
+        if (candidatesReader != null) {
+            candidatesReader.candidates(null);
+        }
+    }
+
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(AnalyzedText analyzedText) throws IOException {
+        this.analyzedText = analyzedText;
+        try {
+            return getClasses((String) null);
+        } finally {
+            this.analyzedText = null;
+        }
+    }
+
+    @Override
+    protected String[] tokenizeDoc(String doc) throws IOException {
+        if (tokens != null) {
+            return tokens;
+        }
+        if (analyzedText != null) {
+            return analyzedText.tokens(textFieldNames);
+        }
+        return super.tokenizeDoc(doc);
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.mapper.Mapping;
+import org.elasticsearch.index.mapper.ParseContext;
+import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.elasticsearch.index.mapper.SourceToParse.source;
+
+/**
+ * Loads the fields of a document by parsing its source with the mappings, as the fields we train on
+ * are usually neither stored nor have term vectors.
+ * <p/>
+ *
+ * When the text fields do have term vectors, a document can instead be loaded already analyzed from them, along
+ * with its classes from the doc values of the class field, so that its source is neither parsed nor analyzed again.
+ */
+public class SourceFieldsLoader {
+
+    private static final Set<String> SOURCE_FIELD = Collections.singleton(SourceFieldMapper.NAME);
+
+    private final MapperService mapperService;
+    private final String index;
+    private final String type;
+    private final boolean termVectors;
+
+    public SourceFieldsLoader(MapperService mapperService, String index, String type) {
+        this(mapperService, index, type, false);
+    }
+
+    /**
+     * @param termVectors whether the text fields have term vectors analyzed as the text is evaluated
+     */
+    public SourceFieldsLoader(MapperService mapperService, String index, String type, boolean termVectors) {
+        this.mapperService = mapperService;
+        this.index = index;
+        this.type = type;
+        this.termVectors = termVectors;
+    }
+
+    /**
+     * Returns the fields of the document as they would be indexed, or null if the document has no source
+     */
+    public ParseContext.Document load(IndexReader reader, int docId) throws IOException {
+        BytesRef source = reader.document(docId, SOURCE_FIELD).getBinaryValue(SourceFieldMapper.NAME);
+        if (source == null) {
+            return null;
+        }
+        return parse(new BytesArray(source));
+    }
+
+    /**
+     * Returns the document with its text fields analyzed from their term vectors and its classes read from the doc
+     * values of the class field, or null if it cannot be loaded this way and should be loaded from its source
+     *
+     * @param positions whether the tokens are needed in the order of the text, in which case term vectors without
+     *                  positions are not used
+     */
+    public AnalyzedDoc loadAnalyzed(LeafReader reader, int docId, String[] textFields, String classField, boolean positions)
+            throws IOException {
+        if (!termVectors) {
+            return null;
+        }
+        FieldInfo classFieldInfo = reader.getFieldInfos().fieldInfo(classField);
+        if (classFieldInfo == null || classFieldInfo.getDocValuesType() != DocValuesType.SORTED_SET) {
+            return null;
+        }
+        Fields fields = reader.getTermVectors(docId);
+        if (fields == null || (positions && !AnalyzedText.hasPositions(fields, textFields))) {
+            return null;
+        }
+        SortedSetDocValues classValues = reader.getSortedSetDocValues(classField);
+        classValues.setDocument(docId);
+        List<String> classes = new ArrayList<>();
+        for (long ord = classValues.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = classValues.nextOrd()) {
+            classes.add(classValues.lookupOrd(ord).utf8ToString());
+        }
+        return new AnalyzedDoc(AnalyzedText.fromTermVectors(fields, textFields), classes);
+    }
+
+    /**
+     * Returns the fields of the given source as they would be indexed
+     */
+    public ParseContext.Document parse(BytesArray source) {
+        Tuple<DocumentMapper, Mapping> docMapper = mapperService.documentMapperWithAutoCreate(type);
+        return docMapper.v1().parse(source(source).index(index).type(type).flyweight(true)).rootDoc();
+    }
+
+    /**
+     * A document loaded already analyzed
+     */
+    public static class AnalyzedDoc {
+
+        private final AnalyzedText text;
+        private final List<String> classes;
+
+        AnalyzedDoc(AnalyzedText text, List<String> classes) {
+            this.text = text;
+            this.classes = classes;
+        }
+
+        public AnalyzedText text() {
+            return text;
+        }
+
+        public List<String> classes() {
+            return classes;
+        }
+    }
+}
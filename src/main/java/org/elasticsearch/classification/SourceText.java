@@ -0,0 +1,56 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the text to classify from the source of a doc, for the requests which classify docs rather than texts
+ */
+public final class SourceText {
+
+    private SourceText() {
+    }
+
+    /**
+     * Returns the text of the fields of a source joined with spaces, or null if it has none
+     */
+    public static String extract(Map<String, Object> source, String[] fields) {
+        List<String> values = new ArrayList<>();
+        for (String field : fields) {
+            Object value = XContentMapValues.extractValue(field, source);
+            if (value instanceof List) {
+                for (Object item : (List) value) {
+                    if (item != null) {
+                        values.add(item.toString());
+                    }
+                }
+            } else if (value != null) {
+                values.add(value.toString());
+            }
+        }
+        return values.isEmpty() ? null : Strings.collectionToDelimitedString(values, " ");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.InPlaceMergeSorter;
+
+/**
+ * A sparse vector of features, as the indices of its non zero dimensions and their values
+ */
+public class SparseVector {
+
+    private int[] indices;
+    private float[] values;
+    private int size;
+
+    SparseVector() {
+        this.indices = new int[16];
+        this.values = new float[16];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of non zero dimensions
+     */
+    public int size() {
+        return size;
+    }
+
+    public int index(int i) {
+        return indices[i];
+    }
+
+    public float value(int i) {
+        return values[i];
+    }
+
+    /**
+     * Returns the dot product of this vector with the given dense vector
+     */
+    public double dot(double[] dense) {
+        double dot = 0;
+        for (int i = 0; i < size; i++) {
+            dot += values[i] * dense[indices[i]];
+        }
+        return dot;
+    }
+
+    void add(int index, float value) {
+        indices = ArrayUtil.grow(indices, size + 1);
+        values = ArrayUtil.grow(values, size + 1);
+        indices[size] = index;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Sorts the dimensions and sums up the values of the ones which were added several times
+     */
+    SparseVector compact() {
+        new InPlaceMergeSorter() {
+            @Override
+            protected void swap(int i, int j) {
+                int index = indices[i];
+                indices[i] = indices[j];
+                indices[j] = index;
+                float value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+
+            @Override
+            protected int compare(int i, int j) {
+                return Integer.compare(indices[i], indices[j]);
+            }
+        }.sort(0, size);
+        int upto = 0;
+        for (int i = 0; i < size; i++) {
+            if (upto > 0 && indices[upto - 1] == indices[i]) {
+                values[upto - 1] += values[i];
+            } else {
+                indices[upto] = indices[i];
+                values[upto] = values[i];
+                upto++;
+            }
+        }
+        size = upto;
+        return this;
+    }
+}
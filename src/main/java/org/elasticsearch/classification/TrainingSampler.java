@@ -0,0 +1,363 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RoaringDocIdSet;
+import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Restricts the training docs to a random sample of the docs matching the train query, either a fraction of them or
+ * about a given number of them. The sample is drawn by hashing the <code>_uid</code> of the docs with a seed, so a
+ * doc is in the sample or not whatever the reader, the segment it was merged into or the copy of the shard, and a
+ * training which resumes on a newer reader sees the same docs. The terms of the <code>_uid</code> field are hashed,
+ * so drawing a sample reads no stored fields.
+ * <p/>
+ *
+ * A stratified sample is drawn class by class, so that each class keeps its share of the docs and no class is left
+ * without any. The docs matching the train query are collected once, and the docs of each class are counted from
+ * the postings of the class rather than with a query per class.
+ */
+public class TrainingSampler {
+
+    public static final boolean DEFAULT_STRATIFIED = false;
+    public static final long DEFAULT_SEED = 0;
+
+    private final double fraction;
+    private final long count;
+    private final boolean stratified;
+    private final long seed;
+
+    private TrainingSampler(double fraction, long count, boolean stratified, long seed) {
+        this.fraction = fraction;
+        this.count = count;
+        this.stratified = stratified;
+        this.seed = seed;
+    }
+
+    /**
+     * Reads the <code>sample</code> setting, either a fraction such as <code>0.01</code> or <code>1%</code>, or a
+     * number of docs such as <code>10000</code>. Returns null if it is not set.
+     */
+    public static TrainingSampler fromSettings(Settings settings) {
+        String sample = settings.get("sample");
+        if (sample == null) {
+            return null;
+        }
+        boolean stratified = settings.getAsBoolean("sample_stratified", DEFAULT_STRATIFIED);
+        long seed = settings.getAsLong("sample_seed", DEFAULT_SEED);
+        try {
+            if (sample.endsWith("%")) {
+                return ofFraction(Double.parseDouble(sample.substring(0, sample.length() - 1)) / 100, stratified, seed);
+            }
+            if (sample.contains(".")) {
+                return ofFraction(Double.parseDouble(sample), stratified, seed);
+            }
+            long count = Long.parseLong(sample);
+            if (count <= 0) {
+                throw new IllegalArgumentException("sample must be positive, got [" + sample + "]");
+            }
+            return new TrainingSampler(-1, count, stratified, seed);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("sample must be a fraction or a number of docs, got [" + sample + "]", e);
+        }
+    }
+
+    private static TrainingSampler ofFraction(double fraction, boolean stratified, long seed) {
+        if (fraction <= 0 || fraction > 1) {
+            throw new IllegalArgumentException("sample must be a fraction between 0 and 1, got [" + fraction + "]");
+        }
+        return new TrainingSampler(fraction, -1, stratified, seed);
+    }
+
+    /**
+     * Draws the sample of the docs with a class which match the given query. It only applies to this reader. The
+     * bit sets of the docs needed to draw it are accounted to the given breaker, if any.
+     */
+    public Sample sample(LeafReader leafReader, Query query, String classFieldName, @Nullable CircuitBreaker breaker) throws IOException {
+        IndexSearcher searcher = new IndexSearcher(leafReader);
+        int maxDoc = leafReader.maxDoc();
+        RoaringDocIdSet.Builder builder = new RoaringDocIdSet.Builder(maxDoc);
+        long bitSetBytes = RamUsageEstimator.sizeOf(new long[FixedBitSet.bits2words(maxDoc)]);
+        long bytes = 0;
+        try {
+            if (stratified) {
+                Terms classTerms = MultiFields.getTerms(leafReader, classFieldName);
+                if (classTerms != null) {
+                    bytes = addBytes(breaker, 2 * bitSetBytes);
+                    FixedBitSet matching = matching(searcher, query);
+                    // count the docs of each class once, along with the docs which have any
+                    FixedBitSet withClass = new FixedBitSet(maxDoc);
+                    int[] classCounts = new int[16];
+                    int numClasses = 0;
+                    TermsEnum termsEnum = classTerms.iterator();
+                    PostingsEnum postings = null;
+                    while (termsEnum.next() != null) {
+                        postings = termsEnum.postings(leafReader.getLiveDocs(), postings, PostingsEnum.NONE);
+                        int classCount = 0;
+                        int doc;
+                        while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                            if (matching.get(doc)) {
+                                withClass.set(doc);
+                                classCount++;
+                            }
+                        }
+                        classCounts = ArrayUtil.grow(classCounts, numClasses + 1);
+                        classCounts[numClasses++] = classCount;
+                    }
+                    double rate = fraction;
+                    if (rate < 0) {
+                        rate = (double) count / Math.max(1, withClass.cardinality());
+                    }
+                    // at least one doc of each class: the docs of the classes too small for the rate are sampled at a
+                    // higher rate, which are few as such classes have less than 1 / rate docs
+                    Map<Integer, Double> docRates = new HashMap<>();
+                    double maxRate = rate;
+                    termsEnum = classTerms.iterator();
+                    for (int i = 0; termsEnum.next() != null; i++) {
+                        if (classCounts[i] == 0 || 1d / classCounts[i] <= rate) {
+                            continue;
+                        }
+                        double classRate = 1d / classCounts[i];
+                        maxRate = Math.max(maxRate, classRate);
+                        postings = termsEnum.postings(leafReader.getLiveDocs(), postings, PostingsEnum.NONE);
+                        int doc;
+                        while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                            Double docRate = docRates.get(doc);
+                            if (matching.get(doc) && (docRate == null || docRate < classRate)) {
+                                docRates.put(doc, classRate);
+                            }
+                        }
+                    }
+                    // the bits of the matching docs are reused for the sampled ones
+                    FixedBitSet sampled = matching;
+                    sampled.clear(0, maxDoc);
+                    sampleUids(leafReader, rate, docRates, maxRate, sampled);
+                    for (int doc = nextSetBit(sampled, 0); doc != DocIdSetIterator.NO_MORE_DOCS; doc = nextSetBit(sampled, doc + 1)) {
+                        if (withClass.get(doc)) {
+                            builder.add(doc);
+                        }
+                    }
+                }
+            } else {
+                Query classQuery = new WildcardQuery(new Term(classFieldName, "*"));
+                double rate = fraction;
+                if (rate < 0) {
+                    rate = (double) count / Math.max(1, count(searcher, classQuery, query));
+                }
+                bytes = addBytes(breaker, bitSetBytes);
+                FixedBitSet sampled = new FixedBitSet(maxDoc);
+                sampleUids(leafReader, rate, Collections.<Integer, Double>emptyMap(), rate, sampled);
+                Scorer scorer = scorer(searcher, classQuery, query);
+                int doc;
+                while (scorer != null && (doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    if (sampled.get(doc)) {
+                        builder.add(doc);
+                    }
+                }
+            }
+        } finally {
+            if (breaker != null) {
+                breaker.addWithoutBreaking(-bytes);
+            }
+        }
+        return new Sample(builder.build());
+    }
+
+    private static long addBytes(@Nullable CircuitBreaker breaker, long bytes) {
+        if (breaker == null) {
+            return 0;
+        }
+        breaker.addEstimateBytesAndMaybeBreak(bytes, "<classify_sample>");
+        return bytes;
+    }
+
+    private static int nextSetBit(FixedBitSet bits, int from) {
+        return from >= bits.length() ? DocIdSetIterator.NO_MORE_DOCS : bits.nextSetBit(from);
+    }
+
+    /**
+     * Sets the bits of the live docs whose <code>_uid</code> hashes below the given rate, or below their own rate if
+     * they have a higher one. The terms of the <code>_uid</code> field are hashed rather than its stored values, so
+     * that no stored fields are read, and only the postings of the sampled terms are.
+     */
+    private void sampleUids(LeafReader leafReader, double rate, Map<Integer, Double> docRates, double maxRate,
+                            FixedBitSet sampled) throws IOException {
+        Terms uids = leafReader.terms(UidFieldMapper.NAME);
+        if (uids == null) {
+            return;
+        }
+        TermsEnum termsEnum = uids.iterator();
+        PostingsEnum postings = null;
+        BytesRef uid;
+        while ((uid = termsEnum.next()) != null) {
+            double random = random(StringHelper.murmurhash3_x86_32(uid, 0));
+            if (random >= maxRate) {
+                continue;
+            }
+            postings = termsEnum.postings(leafReader.getLiveDocs(), postings, PostingsEnum.NONE);
+            int doc;
+            while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                Double docRate;
+                if (random < rate || ((docRate = docRates.get(doc)) != null && random < docRate)) {
+                    sampled.set(doc);
+                }
+            }
+        }
+    }
+
+    private static Query classAndQuery(Query classQuery, Query query) {
+        if (query == null) {
+            return classQuery;
+        }
+        BooleanQuery q = new BooleanQuery();
+        q.add(new BooleanClause(classQuery, BooleanClause.Occur.MUST));
+        q.add(new BooleanClause(query, BooleanClause.Occur.MUST));
+        return q;
+    }
+
+    private static int count(IndexSearcher searcher, Query classQuery, Query query) throws IOException {
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        searcher.search(classAndQuery(classQuery, query), collector);
+        return collector.getTotalHits();
+    }
+
+    /**
+     * Returns the live docs matching the query, all of them if it is null
+     */
+    private static FixedBitSet matching(IndexSearcher searcher, Query query) throws IOException {
+        LeafReader leafReader = (LeafReader) searcher.getIndexReader();
+        FixedBitSet matching = new FixedBitSet(leafReader.maxDoc());
+        Weight weight = searcher.createNormalizedWeight(query == null ? new MatchAllDocsQuery() : query, false);
+        Scorer scorer = weight.scorer(leafReader.getContext(), leafReader.getLiveDocs());
+        if (scorer != null) {
+            matching.or(scorer);
+        }
+        return matching;
+    }
+
+    private static Scorer scorer(IndexSearcher searcher, Query classQuery, Query query) throws IOException {
+        LeafReader leafReader = (LeafReader) searcher.getIndexReader();
+        Weight weight = searcher.createNormalizedWeight(classAndQuery(classQuery, query), false);
+        return weight.scorer(leafReader.getContext(), leafReader.getLiveDocs());
+    }
+
+    /**
+     * Returns a number in [0, 1) which only depends on the hash of the <code>_uid</code> of a doc and the seed
+     */
+    private double random(int key) {
+        long h = seed * 0x9E3779B97F4A7C15L + key;
+        // the finalizer of murmur3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TrainingSampler that = (TrainingSampler) o;
+        return Double.compare(fraction, that.fraction) == 0 && count == that.count && stratified == that.stratified && seed == that.seed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fraction, count, stratified, seed);
+    }
+
+    /**
+     * The docs of a sample, drawn on a reader. It only applies to this reader, or to a reader with the same doc ids.
+     */
+    public static class Sample {
+
+        private final DocIdSet docs;
+        private final Query query;
+
+        Sample(DocIdSet docs) {
+            this.docs = docs;
+            this.query = new ConstantScoreQuery(new SampleFilter(docs));
+        }
+
+        /**
+         * Returns a query matching the docs of the sample
+         */
+        public Query query() {
+            return query;
+        }
+
+        public long ramBytesUsed() {
+            return docs.ramBytesUsed();
+        }
+    }
+
+    /**
+     * Matches the docs of the sample. The doc ids are those of the reader it was drawn from, or of a reader filtering it.
+     */
+    private static class SampleFilter extends Filter {
+
+        private final DocIdSet docs;
+
+        SampleFilter(DocIdSet docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public DocIdSet getDocIdSet(LeafReaderContext context, Bits acceptDocs) throws IOException {
+            return BitsFilteredDocIdSet.wrap(docs, acceptDocs);
+        }
+
+        @Override
+        public String toString(String field) {
+            return "sample";
+        }
+
+        // each sample is only valid on its reader, so it must not be mistaken for another one by a cache
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
@@ -21,10 +21,39 @@ package org.elasticsearch.plugin.classification;
 
 import org.elasticsearch.action.ActionModule;
 import org.elasticsearch.action.classify.ClassifyAction;
+import org.elasticsearch.action.classify.ClassifyTextsAction;
 import org.elasticsearch.action.classify.TransportClassifyAction;
+import org.elasticsearch.action.classify.TransportClassifyTextsAction;
+import org.elasticsearch.action.classify.batch.ClassifyBatchAction;
+import org.elasticsearch.action.classify.batch.TransportClassifyBatchAction;
+import org.elasticsearch.action.classify.byquery.ClassifyByQueryAction;
+import org.elasticsearch.action.classify.byquery.ClassifyByQueryJobsAction;
+import org.elasticsearch.action.classify.byquery.TransportClassifyByQueryAction;
+import org.elasticsearch.action.classify.byquery.TransportClassifyByQueryJobsAction;
+import org.elasticsearch.action.classify.evaluate.ClassifyEvaluateAction;
+import org.elasticsearch.action.classify.evaluate.TransportClassifyEvaluateAction;
+import org.elasticsearch.action.classify.ingest.ClassifyIngestFilter;
+import org.elasticsearch.action.classify.stats.ClassifyStatsAction;
+import org.elasticsearch.action.classify.stats.TransportClassifyStatsAction;
+import org.elasticsearch.classification.ClassificationModule;
+import org.elasticsearch.classification.ClassifySlowLog;
+import org.elasticsearch.cluster.ClusterModule;
+import org.elasticsearch.cluster.settings.Validator;
+import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.rest.RestModule;
 import org.elasticsearch.rest.action.classify.RestClassifyAction;
+import org.elasticsearch.rest.action.classify.RestClassifyBatchAction;
+import org.elasticsearch.rest.action.classify.RestClassifyByQueryAction;
+import org.elasticsearch.rest.action.classify.RestClassifyByQueryJobsAction;
+import org.elasticsearch.rest.action.classify.RestClassifyEvaluateAction;
+import org.elasticsearch.rest.action.classify.RestClassifyStatsAction;
+import org.elasticsearch.search.SearchModule;
+import org.elasticsearch.search.aggregations.bucket.classify.ClassifyParser;
+import org.elasticsearch.search.aggregations.bucket.classify.InternalClassify;
+
+import java.util.Collection;
+import java.util.Collections;
 
 public class ClassificationPlugin extends Plugin {
 
@@ -40,11 +69,54 @@ public class ClassificationPlugin extends Plugin {
         return "Elasticsearch Classification Plugin";
     }
 
+    @Override
+    public Collection<Module> nodeModules() {
+        return Collections.<Module>singletonList(new ClassificationModule());
+    }
+
     public void onModule(ActionModule actionModule) {
         actionModule.registerAction(ClassifyAction.INSTANCE, TransportClassifyAction.class);
+        actionModule.registerAction(ClassifyTextsAction.INSTANCE, TransportClassifyTextsAction.class);
+        actionModule.registerAction(ClassifyStatsAction.INSTANCE, TransportClassifyStatsAction.class);
+        actionModule.registerAction(ClassifyByQueryAction.INSTANCE, TransportClassifyByQueryAction.class);
+        actionModule.registerAction(ClassifyByQueryJobsAction.INSTANCE, TransportClassifyByQueryJobsAction.class);
+        actionModule.registerAction(ClassifyEvaluateAction.INSTANCE, TransportClassifyEvaluateAction.class);
+        actionModule.registerAction(ClassifyBatchAction.INSTANCE, TransportClassifyBatchAction.class);
+        actionModule.registerFilter(ClassifyIngestFilter.class);
+    }
+
+    public void onModule(ClusterModule clusterModule) {
+        clusterModule.registerIndexDynamicSetting(ClassifySlowLog.INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_WARN, Validator.TIME);
+        clusterModule.registerIndexDynamicSetting(ClassifySlowLog.INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_INFO, Validator.TIME);
+        clusterModule.registerIndexDynamicSetting(ClassifySlowLog.INDEX_CLASSIFY_SLOWLOG_THRESHOLD_TRAIN_DEBUG, Validator.TIME);
+        clusterModule.registerIndexDynamicSetting(ClassifySlowLog.INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_WARN, Validator.TIME);
+        clusterModule.registerIndexDynamicSetting(ClassifySlowLog.INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_INFO, Validator.TIME);
+        clusterModule.registerIndexDynamicSetting(ClassifySlowLog.INDEX_CLASSIFY_SLOWLOG_THRESHOLD_EVALUATE_DEBUG, Validator.TIME);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_ENABLED, Validator.BOOLEAN);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_FIELDS, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_FIELDS + ".*", Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_CLASS, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_TYPE, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_MODEL, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_SETTINGS + "*", Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_QUERY, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_ANALYZER, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_TARGET_FIELD, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_SCORE_FIELD, Validator.EMPTY);
+        clusterModule.registerIndexDynamicSetting(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_IGNORE_FAILURES, Validator.BOOLEAN);
     }
 
     public void onModule(RestModule restModule) {
         restModule.addRestAction(RestClassifyAction.class);
+        restModule.addRestAction(RestClassifyStatsAction.class);
+        restModule.addRestAction(RestClassifyByQueryAction.class);
+        restModule.addRestAction(RestClassifyByQueryJobsAction.class);
+        restModule.addRestAction(RestClassifyEvaluateAction.class);
+        restModule.addRestAction(RestClassifyBatchAction.class);
+    }
+
+    public void onModule(SearchModule searchModule) {
+        searchModule.registerAggregatorParser(ClassifyParser.class);
+        InternalClassify.registerStreams();
     }
 }
@@ -50,7 +50,11 @@ public class RestClassifyAction extends BaseRestHandler {
     public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
         ClassifyRequest classify = new ClassifyRequest(request.param("index"), request.param("type"));
         classify.routing(request.param("routing"));
+        classify.preference(request.param("preference"));
         classify.source(request.content());
+        if (request.hasParam("timeout")) {
+            classify.timeout(request.param("timeout"));
+        }
         client.execute(INSTANCE, classify, new RestToXContentListener<ClassifyResponse>(channel));
     }
 }
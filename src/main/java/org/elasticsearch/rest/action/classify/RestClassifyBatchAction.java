@@ -0,0 +1,64 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.classify;
+
+import org.elasticsearch.action.classify.batch.ClassifyBatchRequest;
+import org.elasticsearch.action.classify.batch.ClassifyBatchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.support.RestResponseListener;
+
+import static org.elasticsearch.action.classify.batch.ClassifyBatchAction.INSTANCE;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+/**
+ * Classifies the texts of a newline delimited body, and responds with a line of results per text
+ */
+public class RestClassifyBatchAction extends BaseRestHandler {
+
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    @Inject
+    public RestClassifyBatchAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(POST, "/{index}/{type}/_classify/_batch", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
+        ClassifyBatchRequest batch = new ClassifyBatchRequest(request.param("index"), request.param("type"));
+        batch.source(request.content());
+        batch.concurrency(request.paramAsInt("concurrency", batch.concurrency()));
+        client.execute(INSTANCE, batch, new RestResponseListener<ClassifyBatchResponse>(channel) {
+            @Override
+            public RestResponse buildResponse(ClassifyBatchResponse response) throws Exception {
+                return new BytesRestResponse(RestStatus.OK, NDJSON_CONTENT_TYPE, response.getResults());
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.rest.action.classify;
+
+import org.elasticsearch.action.classify.byquery.ClassifyByQueryRequest;
+import org.elasticsearch.action.classify.byquery.ClassifyByQueryResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import static org.elasticsearch.action.classify.byquery.ClassifyByQueryAction.INSTANCE;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+/**
+ *
+ */
+public class RestClassifyByQueryAction extends BaseRestHandler {
+
+    @Inject
+    public RestClassifyByQueryAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(POST, "/{index}/_classify/_by_query", this);
+        controller.registerHandler(POST, "/{index}/{type}/_classify/_by_query", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
+        ClassifyByQueryRequest classify = new ClassifyByQueryRequest(request.param("index"), request.param("type"));
+        classify.source(request.content());
+        classify.waitForCompletion(request.paramAsBoolean("wait_for_completion", classify.waitForCompletion()));
+        if (request.hasParam("requests_per_second")) {
+            classify.requestsPerSecond(request.paramAsFloat("requests_per_second", classify.requestsPerSecond()));
+        }
+        if (request.hasParam("scroll")) {
+            classify.scroll(request.paramAsTime("scroll", classify.scroll()));
+        }
+        client.execute(INSTANCE, classify, new RestToXContentListener<ClassifyByQueryResponse>(channel));
+    }
+}
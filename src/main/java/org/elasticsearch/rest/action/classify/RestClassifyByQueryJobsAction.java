@@ -0,0 +1,79 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.rest.action.classify;
+
+import org.elasticsearch.action.classify.byquery.ClassifyByQueryJobsRequest;
+import org.elasticsearch.action.classify.byquery.ClassifyByQueryJobsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.elasticsearch.action.classify.byquery.ClassifyByQueryJobsAction.INSTANCE;
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+/**
+ *
+ */
+public class RestClassifyByQueryJobsAction extends BaseRestHandler {
+
+    @Inject
+    public RestClassifyByQueryJobsAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/_classify/_by_query", this);
+        controller.registerHandler(GET, "/_classify/_by_query/{job_id}", this);
+        controller.registerHandler(POST, "/_classify/_by_query/{job_id}/_cancel", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
+        String[] jobIds = Strings.splitStringByCommaToArray(request.param("job_id"));
+        ClassifyByQueryJobsRequest jobs = new ClassifyByQueryJobsRequest(nodeIds(jobIds));
+        jobs.jobIds(jobIds);
+        jobs.cancel(request.path().endsWith("/_cancel"));
+        jobs.timeout(request.param("timeout"));
+        client.execute(INSTANCE, jobs, new RestToXContentListener<ClassifyByQueryJobsResponse>(channel));
+    }
+
+    /**
+     * Returns the nodes the jobs run on, taken from their ids, or all nodes if a job could be on any of them
+     */
+    private static String[] nodeIds(String[] jobIds) {
+        Set<String> nodeIds = new LinkedHashSet<>();
+        for (String jobId : jobIds) {
+            int colon = jobId.indexOf(':');
+            if (colon <= 0 || jobId.substring(0, colon).indexOf('*') >= 0) {
+                return Strings.EMPTY_ARRAY;
+            }
+            nodeIds.add(jobId.substring(0, colon));
+        }
+        return nodeIds.toArray(new String[nodeIds.size()]);
+    }
+}
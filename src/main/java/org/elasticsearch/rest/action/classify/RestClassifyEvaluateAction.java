@@ -0,0 +1,56 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.rest.action.classify;
+
+import org.elasticsearch.action.classify.evaluate.ClassifyEvaluateRequest;
+import org.elasticsearch.action.classify.evaluate.ClassifyEvaluateResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import static org.elasticsearch.action.classify.evaluate.ClassifyEvaluateAction.INSTANCE;
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+
+/**
+ *
+ */
+public class RestClassifyEvaluateAction extends BaseRestHandler {
+
+    @Inject
+    public RestClassifyEvaluateAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/{index}/{type}/_classify/_evaluate", this);
+        controller.registerHandler(POST, "/{index}/{type}/_classify/_evaluate", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
+        ClassifyEvaluateRequest evaluate = new ClassifyEvaluateRequest(request.param("index"), request.param("type"));
+        evaluate.routing(request.param("routing"));
+        evaluate.source(request.content());
+        client.execute(INSTANCE, evaluate, new RestToXContentListener<ClassifyEvaluateResponse>(channel));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.rest.action.classify;
+
+import org.elasticsearch.action.classify.stats.ClassifyStatsRequest;
+import org.elasticsearch.action.classify.stats.ClassifyStatsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.action.support.RestToXContentListener;
+
+import static org.elasticsearch.action.classify.stats.ClassifyStatsAction.INSTANCE;
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+/**
+ *
+ */
+public class RestClassifyStatsAction extends BaseRestHandler {
+
+    @Inject
+    public RestClassifyStatsAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(GET, "/_classify/stats", this);
+        controller.registerHandler(GET, "/_classify/stats/{node_id}", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, final Client client) {
+        ClassifyStatsRequest stats = new ClassifyStatsRequest(Strings.splitStringByCommaToArray(request.param("node_id")));
+        stats.indices(Strings.splitStringByCommaToArray(request.param("index")));
+        stats.timeout(request.param("timeout"));
+        client.execute(INSTANCE, stats, new RestToXContentListener<ClassifyStatsResponse>(channel));
+    }
+}
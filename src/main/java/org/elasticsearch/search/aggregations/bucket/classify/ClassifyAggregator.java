@@ -0,0 +1,158 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.aggregations.bucket.classify;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.classification.ClassificationService;
+import org.elasticsearch.classification.ShardClassificationService;
+import org.elasticsearch.classification.SourceText;
+import org.elasticsearch.common.lease.Releasables;
+import org.elasticsearch.common.util.BytesRefHash;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactories;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.LeafBucketCollector;
+import org.elasticsearch.search.aggregations.LeafBucketCollectorBase;
+import org.elasticsearch.search.aggregations.bucket.BucketsAggregator;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+import org.elasticsearch.search.aggregations.support.AggregationContext;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.search.lookup.SourceLookup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buckets the docs of a search by the class predicted for their text. The model is the one a classify request on
+ * this shard would use, trained on the reader of the search unless it already was. The text of each doc is read
+ * from its <code>_source</code> on the shard, so that it is classified where it is stored rather than fetched by
+ * the client and sent back to be classified.
+ */
+public class ClassifyAggregator extends BucketsAggregator {
+
+    private final ClassifyRequest request;
+    private final int size;
+    private final ShardClassificationService.Evaluator evaluator;
+    private final BytesRefHash bucketOrds;
+
+    public ClassifyAggregator(String name, AggregatorFactories factories, ShardClassificationService.Evaluator evaluator,
+                              ClassifyRequest request, int size, AggregationContext context, Aggregator parent,
+                              List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+        super(name, factories, context, parent, pipelineAggregators, metaData);
+        this.request = request;
+        this.size = size;
+        this.evaluator = evaluator;
+        this.bucketOrds = new BytesRefHash(1, context.bigArrays());
+    }
+
+    @Override
+    public LeafBucketCollector getLeafCollector(final LeafReaderContext ctx, final LeafBucketCollector sub) throws IOException {
+        final SourceLookup source = context.searchContext().lookup().source();
+        return new LeafBucketCollectorBase(sub, null) {
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                assert bucket == 0;
+                source.setSegmentAndDocument(ctx, doc);
+                String text = SourceText.extract(source, request.textFields());
+                if (text == null) {
+                    return;
+                }
+                ClassificationResult best = evaluator.evaluate(text).best();
+                if (best == null) {
+                    return;
+                }
+                long bucketOrd = bucketOrds.add(new BytesRef(best.getAssignedClass().toString()));
+                if (bucketOrd < 0) {
+                    collectExistingBucket(sub, doc, -1 - bucketOrd);
+                } else {
+                    collectBucket(sub, doc, bucketOrd);
+                }
+            }
+        };
+    }
+
+    @Override
+    public InternalAggregation buildAggregation(long owningBucketOrdinal) throws IOException {
+        assert owningBucketOrdinal == 0;
+        // every class is returned so that the reduced doc counts are exact, there are usually few classes
+        List<InternalClassify.Bucket> buckets = new ArrayList<>((int) bucketOrds.size());
+        BytesRef spare = new BytesRef();
+        for (long bucketOrd = 0; bucketOrd < bucketOrds.size(); bucketOrd++) {
+            bucketOrds.get(bucketOrd, spare);
+            buckets.add(new InternalClassify.Bucket(spare.utf8ToString(), bucketDocCount(bucketOrd), bucketAggregations(bucketOrd)));
+        }
+        Collections.sort(buckets, InternalClassify.ORDER);
+        return new InternalClassify(name, size, buckets, pipelineAggregators(), metaData());
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalClassify(name, size, new ArrayList<InternalClassify.Bucket>(), pipelineAggregators(), metaData());
+    }
+
+    @Override
+    protected void doClose() {
+        Releasables.close(bucketOrds);
+    }
+
+    public static class Factory extends AggregatorFactory {
+
+        private final ClassificationService classificationService;
+        private final ClassifyRequest request;
+        private final int size;
+
+        // the model is trained once for all the aggregators of the search, one per bucket of a parent aggregation
+        private ShardClassificationService.Evaluator evaluator;
+
+        public Factory(String name, ClassificationService classificationService, ClassifyRequest request, int size) {
+            super(name, InternalClassify.TYPE.name());
+            this.classificationService = classificationService;
+            this.request = request;
+            this.size = size;
+        }
+
+        @Override
+        public Aggregator createInternal(AggregationContext context, Aggregator parent, boolean collectsFromSingleBucket,
+                                         List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) throws IOException {
+            if (!collectsFromSingleBucket) {
+                return asMultiBucketAggregator(this, context, parent);
+            }
+            return new ClassifyAggregator(name, factories, evaluator(context), request, size, context, parent,
+                    pipelineAggregators, metaData);
+        }
+
+        private synchronized ShardClassificationService.Evaluator evaluator(AggregationContext context) {
+            if (evaluator == null) {
+                SearchContext searchContext = context.searchContext();
+                ShardClassificationService shardService = classificationService.shardService(searchContext.indexShard().shardId());
+                evaluator = shardService.evaluator(request, searchContext.searcher().getIndexReader());
+            }
+            return evaluator;
+        }
+    }
+}
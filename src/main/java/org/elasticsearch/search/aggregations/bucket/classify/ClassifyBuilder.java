@@ -0,0 +1,132 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.aggregations.bucket.classify;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Builds a <code>classify</code> aggregation
+ */
+public class ClassifyBuilder extends AggregationBuilder<ClassifyBuilder> {
+
+    private String[] fields;
+    private String classField;
+    private String type;
+    private String model;
+    private Map<String, Object> settings;
+    private QueryBuilder query;
+    private String analyzer;
+    private Integer size;
+
+    public ClassifyBuilder(String name) {
+        super(name, InternalClassify.TYPE.name());
+    }
+
+    /**
+     * Sets the text fields to classify
+     */
+    public ClassifyBuilder fields(String... fields) {
+        this.fields = fields;
+        return this;
+    }
+
+    /**
+     * Sets the field holding the labels the model is trained on
+     */
+    public ClassifyBuilder classField(String classField) {
+        this.classField = classField;
+        return this;
+    }
+
+    /**
+     * Sets the type to train on, the type searched on by default
+     */
+    public ClassifyBuilder type(String type) {
+        this.type = type;
+        return this;
+    }
+
+    public ClassifyBuilder model(String model) {
+        this.model = model;
+        return this;
+    }
+
+    public ClassifyBuilder settings(Map<String, Object> settings) {
+        this.settings = settings;
+        return this;
+    }
+
+    /**
+     * Sets the query to filter which docs the model is trained on
+     */
+    public ClassifyBuilder query(QueryBuilder query) {
+        this.query = query;
+        return this;
+    }
+
+    public ClassifyBuilder analyzer(String analyzer) {
+        this.analyzer = analyzer;
+        return this;
+    }
+
+    /**
+     * Sets the number of buckets to return
+     */
+    public ClassifyBuilder size(int size) {
+        this.size = size;
+        return this;
+    }
+
+    @Override
+    protected XContentBuilder internalXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        if (fields != null) {
+            builder.field("fields", fields);
+        }
+        if (classField != null) {
+            builder.field("class", classField);
+        }
+        if (type != null) {
+            builder.field("type", type);
+        }
+        if (model != null) {
+            builder.field("model", model);
+        }
+        if (settings != null) {
+            builder.field("settings", settings);
+        }
+        if (query != null) {
+            builder.field("query", query);
+        }
+        if (analyzer != null) {
+            builder.field("analyzer", analyzer);
+        }
+        if (size != null) {
+            builder.field("size", size);
+        }
+        return builder.endObject();
+    }
+}
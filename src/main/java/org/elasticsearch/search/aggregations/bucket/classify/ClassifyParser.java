@@ -0,0 +1,94 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.aggregations.bucket.classify;
+
+import org.elasticsearch.action.classify.ClassifyRequest;
+import org.elasticsearch.classification.ClassificationService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.search.SearchParseException;
+import org.elasticsearch.search.aggregations.Aggregator;
+import org.elasticsearch.search.aggregations.AggregatorFactory;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Parses the <code>classify</code> aggregation. It takes the body of a classify request without the text, as well
+ * as the <code>size</code> of the buckets to return and the <code>type</code> to train on, which defaults to the
+ * type searched on if there is only one.
+ */
+public class ClassifyParser implements Aggregator.Parser {
+
+    public static final int DEFAULT_SIZE = 10;
+
+    private final ClassificationService classificationService;
+
+    @Inject
+    public ClassifyParser(ClassificationService classificationService) {
+        this.classificationService = classificationService;
+    }
+
+    @Override
+    public String type() {
+        return InternalClassify.TYPE.name();
+    }
+
+    @Override
+    public AggregatorFactory parse(String aggregationName, XContentParser parser, SearchContext context) throws IOException {
+        Map<String, Object> source = parser.mapOrdered();
+        int size = DEFAULT_SIZE;
+        Object sizeValue = source.remove("size");
+        if (sizeValue != null) {
+            size = XContentMapValues.nodeIntegerValue(sizeValue);
+        }
+        String type = null;
+        Object typeValue = source.remove("type");
+        if (typeValue != null) {
+            type = typeValue.toString();
+        } else if (context.types().length == 1) {
+            type = context.types()[0];
+        }
+        if (type == null) {
+            throw new SearchParseException(context, "[classify] aggregation [" + aggregationName + "] requires a [type] to train on "
+                    + "when searching more than one type", parser.getTokenLocation());
+        }
+        if (source.containsKey("text")) {
+            throw new SearchParseException(context, "[classify] aggregation [" + aggregationName + "] classifies the text of each doc, "
+                    + "it does not take a [text]", parser.getTokenLocation());
+        }
+
+        ClassifyRequest request = new ClassifyRequest(context.indexShard().shardId().index().name(), type);
+        try {
+            request.source(source);
+        } catch (IllegalArgumentException e) {
+            throw new SearchParseException(context, "[classify] aggregation [" + aggregationName + "]: " + e.getMessage(),
+                    parser.getTokenLocation());
+        }
+        if (request.textFields() == null || request.textFields().length == 0 || request.classField() == null) {
+            throw new SearchParseException(context, "[classify] aggregation [" + aggregationName + "] requires the text [fields] "
+                    + "and the [class] field", parser.getTokenLocation());
+        }
+        return new ClassifyAggregator.Factory(aggregationName, classificationService, request, size);
+    }
+}
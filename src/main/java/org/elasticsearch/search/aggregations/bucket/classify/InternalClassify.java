@@ -0,0 +1,232 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.elasticsearch.search.aggregations.bucket.classify;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.search.aggregations.AggregationStreams;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.InternalAggregation;
+import org.elasticsearch.search.aggregations.InternalAggregations;
+import org.elasticsearch.search.aggregations.InternalMultiBucketAggregation;
+import org.elasticsearch.search.aggregations.pipeline.PipelineAggregator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of the {@link ClassifyAggregator} of a shard, and once reduced of all shards
+ */
+public class InternalClassify extends InternalMultiBucketAggregation<InternalClassify, InternalClassify.Bucket> implements Classify {
+
+    public static final Type TYPE = new Type("classify");
+
+    public static final AggregationStreams.Stream STREAM = new AggregationStreams.Stream() {
+        @Override
+        public InternalClassify readResult(StreamInput in) throws IOException {
+            InternalClassify result = new InternalClassify();
+            result.readFrom(in);
+            return result;
+        }
+    };
+
+    public static void registerStreams() {
+        AggregationStreams.registerStream(STREAM, TYPE.stream());
+    }
+
+    // the most frequent classes first
+    static final Comparator<Bucket> ORDER = new Comparator<Bucket>() {
+        @Override
+        public int compare(Bucket b1, Bucket b2) {
+            int cmp = Long.compare(b2.docCount, b1.docCount);
+            return cmp != 0 ? cmp : b1.key.compareTo(b2.key);
+        }
+    };
+
+    public static class Bucket extends InternalMultiBucketAggregation.InternalBucket implements Classify.Bucket {
+
+        String key;
+        long docCount;
+        InternalAggregations aggregations;
+
+        Bucket() {
+        }
+
+        Bucket(String key, long docCount, InternalAggregations aggregations) {
+            this.key = key;
+            this.docCount = docCount;
+            this.aggregations = aggregations;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public String getKeyAsString() {
+            return key;
+        }
+
+        @Override
+        public long getDocCount() {
+            return docCount;
+        }
+
+        @Override
+        public Aggregations getAggregations() {
+            return aggregations;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            key = in.readString();
+            docCount = in.readVLong();
+            aggregations = InternalAggregations.readAggregations(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(key);
+            out.writeVLong(docCount);
+            aggregations.writeTo(out);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(CommonFields.KEY, key);
+            builder.field(CommonFields.DOC_COUNT, docCount);
+            aggregations.toXContentInternal(builder, params);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    private int size;
+    private List<Bucket> buckets;
+
+    InternalClassify() {
+    }
+
+    InternalClassify(String name, int size, List<Bucket> buckets, List<PipelineAggregator> pipelineAggregators, Map<String, Object> metaData) {
+        super(name, pipelineAggregators, metaData);
+        this.size = size;
+        this.buckets = buckets;
+    }
+
+    @Override
+    public Type type() {
+        return TYPE;
+    }
+
+    @Override
+    public List<Bucket> getBuckets() {
+        return buckets;
+    }
+
+    @Override
+    public Bucket getBucketByKey(String key) {
+        for (Bucket bucket : buckets) {
+            if (bucket.key.equals(key)) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InternalClassify create(List<Bucket> buckets) {
+        return new InternalClassify(name, size, buckets, pipelineAggregators(), getMetaData());
+    }
+
+    @Override
+    public Bucket createBucket(InternalAggregations aggregations, Bucket prototype) {
+        return new Bucket(prototype.key, prototype.docCount, aggregations);
+    }
+
+    @Override
+    public InternalAggregation doReduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
+        Map<String, List<Bucket>> bucketsByKey = new LinkedHashMap<>();
+        for (InternalAggregation aggregation : aggregations) {
+            for (Bucket bucket : ((InternalClassify) aggregation).buckets) {
+                List<Bucket> sameKey = bucketsByKey.get(bucket.key);
+                if (sameKey == null) {
+                    sameKey = new ArrayList<>(aggregations.size());
+                    bucketsByKey.put(bucket.key, sameKey);
+                }
+                sameKey.add(bucket);
+            }
+        }
+        List<Bucket> reduced = new ArrayList<>(bucketsByKey.size());
+        for (Map.Entry<String, List<Bucket>> entry : bucketsByKey.entrySet()) {
+            long docCount = 0;
+            List<InternalAggregations> subAggregations = new ArrayList<>(entry.getValue().size());
+            for (Bucket bucket : entry.getValue()) {
+                docCount += bucket.docCount;
+                subAggregations.add(bucket.aggregations);
+            }
+            reduced.add(new Bucket(entry.getKey(), docCount, InternalAggregations.reduce(subAggregations, reduceContext)));
+        }
+        Collections.sort(reduced, ORDER);
+        if (reduced.size() > size) {
+            reduced = new ArrayList<>(reduced.subList(0, size));
+        }
+        return new InternalClassify(name, size, reduced, pipelineAggregators(), getMetaData());
+    }
+
+    @Override
+    protected void doReadFrom(StreamInput in) throws IOException {
+        size = in.readVInt();
+        int numBuckets = in.readVInt();
+        buckets = new ArrayList<>(numBuckets);
+        for (int i = 0; i < numBuckets; i++) {
+            Bucket bucket = new Bucket();
+            bucket.readFrom(in);
+            buckets.add(bucket);
+        }
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeVInt(size);
+        out.writeVInt(buckets.size());
+        for (Bucket bucket : buckets) {
+            bucket.writeTo(out);
+        }
+    }
+
+    @Override
+    public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        builder.startArray(CommonFields.BUCKETS);
+        for (Bucket bucket : buckets) {
+            bucket.toXContent(builder, params);
+        }
+        builder.endArray();
+        return builder;
+    }
+}
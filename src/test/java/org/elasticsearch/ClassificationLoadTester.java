@@ -0,0 +1,256 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+/**
+ * Generates load against a running node over HTTP, so that the whole path of a classify request is measured.
+ * A synthetic labelled corpus is indexed first, then each model type is fired at with a fixed rate of requests
+ * and the latencies are reported as percentiles.
+ * <p/>
+ *
+ * Latencies are measured from the time a request was scheduled to be sent rather than from when it was sent,
+ * so that a slow node is not hidden by the workers waiting on it.
+ */
+public class ClassificationLoadTester {
+
+    private static final String INDEX = "classify_load";
+    private static final String TYPE = "doc";
+
+    private final String host = System.getProperty("load.host", "http://localhost:9200");
+    private final int numDocs = Integer.getInteger("load.docs", 10000);
+    private final int numClasses = Integer.getInteger("load.classes", 20);
+    private final int vocabulary = Integer.getInteger("load.vocabulary", 10000);
+    private final int docLength = Integer.getInteger("load.doc_length", 50);
+    private final int qps = Integer.getInteger("load.qps", 50);
+    private final int concurrency = Integer.getInteger("load.concurrency", 4);
+    private final TimeValue warmup = TimeValue.parseTimeValue(System.getProperty("load.warmup", "10s"), null, "load.warmup");
+    private final TimeValue duration = TimeValue.parseTimeValue(System.getProperty("load.duration", "60s"), null, "load.duration");
+    private final String[] modelTypes = Strings.splitStringByCommaToArray(
+            System.getProperty("load.models", "simple_naive_bayes,caching_naive_bayes,averaged_perceptron,knn"));
+
+    private final Random random = new Random(Long.getLong("load.seed", 42));
+
+    public static void main(String[] args) throws Exception {
+        new ClassificationLoadTester().run();
+    }
+
+    public void run() throws Exception {
+        waitForNode();
+        indexCorpus();
+        for (String modelType : modelTypes) {
+            // the first requests also train the model, which is not what we want to measure
+            fire(modelType, warmup);
+            Report report = fire(modelType, duration);
+            System.out.println(report.toString(modelType));
+        }
+    }
+
+    private void waitForNode() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (true) {
+            try {
+                request("GET", "/_cluster/health?wait_for_status=yellow", null);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("node at [" + host + "] did not start", e);
+                }
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    private void indexCorpus() throws IOException {
+        try {
+            request("DELETE", "/" + INDEX, null);
+        } catch (IOException e) {
+            // the index did not exist
+        }
+        XContentBuilder mapping = jsonBuilder().startObject()
+                .startObject("mappings").startObject(TYPE).startObject("properties")
+                .startObject("text").field("type", "string").endObject()
+                .startObject("label").field("type", "string").field("index", "not_analyzed").endObject()
+                .endObject().endObject().endObject()
+                .endObject();
+        request("PUT", "/" + INDEX, mapping.string());
+
+        StringBuilder bulk = new StringBuilder();
+        for (int i = 0; i < numDocs; i++) {
+            int label = random.nextInt(numClasses);
+            bulk.append("{\"index\":{}}\n");
+            bulk.append(jsonBuilder().startObject().field("text", text(label)).field("label", "class" + label).endObject().string());
+            bulk.append('\n');
+            if ((i + 1) % 1000 == 0 || i == numDocs - 1) {
+                request("POST", "/" + INDEX + "/" + TYPE + "/_bulk", bulk.toString());
+                bulk.setLength(0);
+            }
+        }
+        request("POST", "/" + INDEX + "/_refresh", null);
+    }
+
+    /**
+     * Returns a random text where the words of its class are more likely
+     */
+    private String text(int label) {
+        int sliceSize = Math.max(1, vocabulary / numClasses);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < docLength; i++) {
+            int word = random.nextDouble() < 0.6 ? (label * sliceSize + random.nextInt(sliceSize)) % vocabulary : random.nextInt(vocabulary);
+            text.append('w').append(word).append(' ');
+        }
+        return text.toString();
+    }
+
+    private Report fire(final String modelType, TimeValue duration) throws Exception {
+        // each worker sends its share of the requests at a fixed interval
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) * concurrency / qps;
+        final long start = System.nanoTime();
+        final long end = start + duration.nanos();
+        final String[] bodies = new String[1024];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = jsonBuilder().startObject()
+                    .field("text", text(random.nextInt(numClasses)))
+                    .field("field", "text")
+                    .field("class", "label")
+                    .field("model", modelType)
+                    .endObject().string();
+        }
+        final AtomicLong errors = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<long[]>> futures = new ArrayList<>(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            final long offset = intervalNanos * w / concurrency;
+            futures.add(executor.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() throws Exception {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    for (long scheduled = start + offset; scheduled < end; scheduled += intervalNanos) {
+                        long wait = scheduled - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        try {
+                            request("POST", "/" + INDEX + "/" + TYPE + "/_classify", bodies[count % bodies.length]);
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - scheduled;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }
+            }));
+        }
+        List<long[]> latencies = new ArrayList<>(concurrency);
+        for (Future<long[]> future : futures) {
+            latencies.add(future.get());
+        }
+        executor.shutdown();
+        return new Report(latencies, System.nanoTime() - start, errors.get());
+    }
+
+    private String request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(host + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    response.write(buffer, 0, read);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        String content = new String(response.toByteArray(), StandardCharsets.UTF_8);
+        if (status >= 400) {
+            throw new IOException("[" + method + " " + path + "] returned [" + status + "]: " + content);
+        }
+        return content;
+    }
+
+    private static class Report {
+
+        private final long[] latencies;
+        private final long tookNanos;
+        private final long errors;
+
+        Report(List<long[]> latenciesPerWorker, long tookNanos, long errors) {
+            int size = 0;
+            for (long[] latencies : latenciesPerWorker) {
+                size += latencies.length;
+            }
+            this.latencies = new long[size];
+            int upto = 0;
+            for (long[] latencies : latenciesPerWorker) {
+                System.arraycopy(latencies, 0, this.latencies, upto, latencies.length);
+                upto += latencies.length;
+            }
+            Arrays.sort(this.latencies);
+            this.tookNanos = tookNanos;
+            this.errors = errors;
+        }
+
+        private double percentileMillis(double percentile) {
+            if (latencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+
+        String toString(String modelType) {
+            double throughput = latencies.length / (tookNanos / 1e9);
+            return String.format(Locale.ROOT, "[%s] requests=%d errors=%d throughput=%.1f/s p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                    modelType, latencies.length, errors, throughput,
+                    percentileMillis(50), percentileMillis(99), percentileMillis(99.9), percentileMillis(100));
+        }
+    }
+}
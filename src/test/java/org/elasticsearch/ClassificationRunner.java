@@ -23,7 +23,8 @@ import org.elasticsearch.bootstrap.Elasticsearch;
 import org.elasticsearch.plugin.classification.ClassificationPlugin;
 
 /**
- * 
+ * Starts a node with the plugin. Run with <code>load</code> to also generate load against it, see
+ * {@link ClassificationLoadTester} for the <code>load.*</code> system properties.
  */
 public class ClassificationRunner {
 
@@ -39,5 +40,10 @@ public class ClassificationRunner {
         System.setProperty("es.cluster.name", ClassificationRunner.class.getSimpleName());
         
         Elasticsearch.main(new String[]{"start"});
+
+        // with "load", a synthetic corpus is indexed and classify requests are fired at the node
+        if (args.length > 0 && args[0].equals("load")) {
+            ClassificationLoadTester.main(new String[0]);
+        }
     }
 }
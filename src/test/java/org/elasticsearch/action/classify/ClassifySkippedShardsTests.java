@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class ClassifySkippedShardsTests extends ClassificationIntegTestCase {
+
+    public void testShardsWithoutDocsToTrainOnAreSkipped() throws Exception {
+        assertAcked(prepareCreate("whole")
+                .setSettings(Settings.builder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .addMapping(TYPE, TEXT_FIELD, "type=string", CLASS_FIELD, "type=string,index=not_analyzed"));
+        assertAcked(prepareCreate("split")
+                .setSettings(Settings.builder().put("index.number_of_shards", 3).put("index.number_of_replicas", 0))
+                .addMapping(TYPE, TEXT_FIELD, "type=string", CLASS_FIELD, "type=string,index=not_analyzed"));
+        // the same docs, all routed to a single shard of the split index so that the other ones have nothing to train on
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            for (String clazz : new String[]{"sport", "cooking"}) {
+                String text = text(clazz.equals("sport") ? SPORT : COOKING);
+                docs.add(client().prepareIndex("whole", TYPE, clazz + "_" + i).setSource(TEXT_FIELD, text, CLASS_FIELD, clazz));
+                docs.add(client().prepareIndex("split", TYPE, clazz + "_" + i).setRouting("r").setSource(TEXT_FIELD, text, CLASS_FIELD, clazz));
+            }
+        }
+        indexRandom(true, false, docs);
+
+        String text = text(SPORT);
+        ClassifyResponse whole = classify("whole", text).get();
+        ClassifyResponse split = classify("split", text).setProfile(true).get();
+        assertThat(split.getTotalShards(), equalTo(3));
+        assertThat(split.getSuccessfulShards(), equalTo(3));
+        assertThat(split.getFailedShards(), equalTo(0));
+
+        // only the shard with the docs trained a model, the other ones stopped at the can match phase
+        int trained = 0;
+        for (ClassifyProfile profile : split.getShardProfiles().values()) {
+            assertTrue(profile.phases().containsKey("can_match"));
+            if (profile.phases().containsKey("get_model")) {
+                trained++;
+            }
+        }
+        assertThat(trained, equalTo(1));
+
+        // the skipped shards are left out of the average, so the scores are those of the shard which trained
+        Map<Object, Double> expected = scores(whole);
+        Map<Object, Double> actual = scores(split);
+        assertThat(actual.keySet(), equalTo(expected.keySet()));
+        for (Map.Entry<Object, Double> entry : expected.entrySet()) {
+            assertThat(actual.get(entry.getKey()), closeTo(entry.getValue(), 1e-9));
+        }
+    }
+
+    private static Map<Object, Double> scores(ClassifyResponse response) {
+        Map<Object, Double> scores = new HashMap<>();
+        for (ClassificationResult result : response.getClassifyResult()) {
+            scores.put(result.getAssignedClass(), result.getScore());
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify;
+
+import org.elasticsearch.action.classify.ClassifyRequest.ModelTypes;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class ClassifyTimeoutTests extends ClassificationIntegTestCase {
+
+    public void testTimedOutShardsAreReported() throws Exception {
+        indexLabelledDocs("movies", 20);
+        String text = text(SPORT);
+        for (String model : new String[]{ModelTypes.SIMPLE_NAIVE_BAYES, ModelTypes.KNN}) {
+            // the deadline has passed by the time the shard trains
+            ClassifyResponse response = classify("movies", text).setModelType(model).setTimeout("0ms").get();
+            assertTrue(response.isTimedOut());
+            assertThat(response.getSuccessfulShards(), equalTo(0));
+            assertThat(response.getFailedShards(), equalTo(1));
+            assertThat(response.getShardFailures()[0].reason(), containsString("timed out"));
+            assertFalse(response.getClassifyResult().iterator().hasNext());
+
+            response = classify("movies", text).setModelType(model).setTimeout("1m").get();
+            assertFalse(response.isTimedOut());
+            assertThat(response.getFailedShards(), equalTo(0));
+            assertThat(response.getClassifyResult().best().getAssignedClass().toString(), equalTo("sport"));
+        }
+    }
+}
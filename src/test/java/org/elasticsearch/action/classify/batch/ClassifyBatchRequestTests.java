@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.batch;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.classify.ClassifyTextsRequest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ClassifyBatchRequestTests extends ESTestCase {
+
+    private static final String CLASSIFY = "{\"model\": \"simple_naive_bayes\", \"field\": \"plot\", \"class\": \"genre\"}";
+
+    public void testParse() throws Exception {
+        ClassifyBatchRequest request = new ClassifyBatchRequest("imdb", "movies").source(new BytesArray(
+                CLASSIFY + "\n"
+                + "{\"text\": \"first text\"}\n"
+                + "\n"
+                + "{}\n"
+                + "{\"text\": \"second\\ntext\"}"));
+        assertThat(request.classify().get("model"), equalTo((Object) "simple_naive_bayes"));
+        assertThat(request.classify().get("class"), equalTo((Object) "genre"));
+        // empty lines and objects are skipped, and the last line needs no newline
+        assertThat(request.texts(), equalTo(Arrays.asList("first text", "second\ntext")));
+        assertThat(request.validate(), nullValue());
+    }
+
+    public void testMalformedLine() {
+        try {
+            new ClassifyBatchRequest("imdb", "movies").source(new BytesArray(CLASSIFY + "\n{\"text\": \"a\", \"id\": 1}\n"));
+            fail("expected a line with more than a text to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("malformed classify batch line"));
+        }
+        try {
+            new ClassifyBatchRequest("imdb", "movies").source(new BytesArray(CLASSIFY + "\n{\"text\": \n"));
+            fail("expected an invalid line to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("failed to parse classify batch line"));
+        }
+    }
+
+    public void testValidate() {
+        ActionRequestValidationException e = new ClassifyBatchRequest("imdb", "movies").source(new BytesArray(CLASSIFY)).validate();
+        assertThat(e.validationErrors(), equalTo(Arrays.asList("no texts to classify")));
+
+        e = new ClassifyBatchRequest("imdb", "movies")
+                .source(new BytesArray("{\"field\": \"plot\", \"class\": \"genre\", \"text\": \"a\"}\n{\"text\": \"b\"}"))
+                .validate();
+        assertThat(e.validationErrors().size(), equalTo(1));
+        assertThat(e.validationErrors().get(0), containsString("should not have a text"));
+
+        e = new ClassifyBatchRequest("imdb", "movies").source(new BytesArray(CLASSIFY + "\n{\"text\": \"a\"}")).concurrency(0).validate();
+        assertThat(e.validationErrors(), equalTo(Arrays.asList("concurrency should be positive")));
+    }
+
+    public void testTextsRequest() throws Exception {
+        ClassifyBatchRequest request = new ClassifyBatchRequest("imdb", "movies").source(new BytesArray(CLASSIFY));
+        for (int i = 0; i < 10; i++) {
+            request.add("text " + i);
+        }
+        ClassifyTextsRequest textsRequest = request.textsRequest(3, 7);
+        assertThat(textsRequest.texts(), equalTo(Arrays.asList("text 3", "text 4", "text 5", "text 6")));
+        assertThat(textsRequest.classify().trainIndex(), equalTo("imdb"));
+        assertThat(textsRequest.classify().trainType(), equalTo("movies"));
+        assertThat(textsRequest.classify().classField(), equalTo("genre"));
+        assertThat(textsRequest.classify().modelType(), equalTo("simple_naive_bayes"));
+    }
+
+    public void testSerialize() throws Exception {
+        ClassifyBatchRequest request = new ClassifyBatchRequest("imdb", "movies").source(new BytesArray(CLASSIFY))
+                .add("first").add("second").concurrency(randomIntBetween(1, 16));
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+        ClassifyBatchRequest read = new ClassifyBatchRequest();
+        read.readFrom(StreamInput.wrap(out.bytes()));
+        assertThat(read.index(), equalTo("imdb"));
+        assertThat(read.type(), equalTo("movies"));
+        assertThat(read.classify(), equalTo(request.classify()));
+        assertThat(read.texts(), equalTo(request.texts()));
+        assertThat(read.concurrency(), equalTo(request.concurrency()));
+    }
+}
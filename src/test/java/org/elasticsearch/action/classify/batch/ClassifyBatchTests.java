@@ -0,0 +1,109 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.batch;
+
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class ClassifyBatchTests extends ClassificationIntegTestCase {
+
+    public void testResultsInTheOrderOfTheTexts() throws Exception {
+        indexLabelledDocs("movies", 20);
+        Map<String, Object> classify = new HashMap<>();
+        classify.put("field", TEXT_FIELD);
+        classify.put("class", CLASS_FIELD);
+        ClassifyBatchRequestBuilder request = new ClassifyBatchRequestBuilder(client(), ClassifyBatchAction.INSTANCE, "movies", TYPE)
+                .setClassify(classify)
+                .setConcurrency(randomIntBetween(1, 4));
+        // enough texts for several requests
+        int numTexts = randomIntBetween(1, 3 * ClassifyBatchRequest.TEXTS_PER_REQUEST);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < numTexts; i++) {
+            boolean sport = randomBoolean();
+            request.addText(text(sport ? SPORT : COOKING));
+            expected.add(sport ? "sport" : "cooking");
+        }
+        ClassifyBatchResponse response = request.get();
+        assertThat(response.getFailed(), equalTo(0));
+
+        List<String> predicted = new ArrayList<>();
+        for (String line : response.getResults().toUtf8().split("\n")) {
+            predicted.add(best(XContentHelper.convertToMap(new BytesArray(line), false).v2()));
+        }
+        assertThat(predicted, equalTo(expected));
+    }
+
+    public void testFailedTexts() throws Exception {
+        indexLabelledDocs("recipes", 5);
+        Map<String, Object> classify = new HashMap<>();
+        classify.put("field", TEXT_FIELD);
+        classify.put("class", CLASS_FIELD);
+        classify.put("model", "unknown_model");
+        ClassifyBatchResponse response = new ClassifyBatchRequestBuilder(client(), ClassifyBatchAction.INSTANCE, "recipes", TYPE)
+                .setClassify(classify)
+                .addText("sugar")
+                .addText("goal")
+                .get();
+        // each text gets an error line instead of its scores
+        assertThat(response.getFailed(), equalTo(2));
+        String[] lines = response.getResults().toUtf8().split("\n");
+        assertThat(lines.length, equalTo(2));
+        for (String line : lines) {
+            assertNotNull(line, XContentHelper.convertToMap(new BytesArray(line), false).v2().get("error"));
+        }
+    }
+
+    public void testTooManyTexts() throws Exception {
+        indexLabelledDocs("books", 5);
+        Map<String, Object> classify = new HashMap<>();
+        classify.put("field", TEXT_FIELD);
+        classify.put("class", CLASS_FIELD);
+        ClassifyBatchRequestBuilder request = new ClassifyBatchRequestBuilder(client(), ClassifyBatchAction.INSTANCE, "books", TYPE)
+                .setClassify(classify);
+        for (int i = 0; i <= TransportClassifyBatchAction.DEFAULT_MAX_TEXTS; i++) {
+            request.addText("goal");
+        }
+        try {
+            request.get();
+            fail("expected the batch to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString(TransportClassifyBatchAction.MAX_TEXTS));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String best(Map<String, Object> result) {
+        List<Map<String, Object>> scores = (List<Map<String, Object>>) result.get("scores");
+        assertFalse("no scores in " + result, scores.isEmpty());
+        return scores.get(0).get("value").toString();
+    }
+}
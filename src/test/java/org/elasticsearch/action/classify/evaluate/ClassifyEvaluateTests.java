@@ -0,0 +1,112 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class ClassifyEvaluateTests extends ClassificationIntegTestCase {
+
+    private static final int TEST_DOCS_PER_CLASS = 5;
+
+    public void testEvaluate() throws Exception {
+        indexLabelledDocs("movies", 20);
+        ClassifyEvaluateResponse response = evaluate("movies")
+                .setClassify(classify("simple_naive_bayes"))
+                .get();
+        assertThat(response.getFailedShards(), equalTo(0));
+        assertThat(response.getCandidates(), nullValue());
+
+        ClassifyEvaluation evaluation = response.getEvaluation();
+        assertThat(evaluation.docs(), equalTo(2L * TEST_DOCS_PER_CLASS));
+        assertThat(evaluation.skipped(), equalTo(0L));
+        // the texts of the classes share no words
+        assertThat(evaluation.correct(), equalTo(2L * TEST_DOCS_PER_CLASS));
+        assertThat(evaluation.confusionMatrix().get("sport").get("sport"), equalTo((long) TEST_DOCS_PER_CLASS));
+        assertThat(evaluation.confusionMatrix().get("cooking").get("cooking"), equalTo((long) TEST_DOCS_PER_CLASS));
+    }
+
+    public void testGrid() throws Exception {
+        indexLabelledDocs("recipes", 20);
+        Map<String, Object> grid = new LinkedHashMap<>();
+        grid.put("epochs", Arrays.asList(1, 5));
+        grid.put("ngrams", Arrays.asList(1, 2));
+        ClassifyEvaluateResponse response = evaluate("recipes")
+                .setClassify(classify("averaged_perceptron"))
+                .setGrid(grid)
+                .get();
+        assertThat(response.getFailedShards(), equalTo(0));
+        assertThat(response.getEvaluation(), nullValue());
+
+        // a candidate per combination, in the order of the grid
+        assertThat(response.getCandidates().size(), equalTo(4));
+        assertThat(response.getCandidates().get(0).get("epochs"), equalTo((Object) 1));
+        assertThat(response.getCandidates().get(0).get("ngrams"), equalTo((Object) 1));
+        assertThat(response.getCandidates().get(3).get("epochs"), equalTo((Object) 5));
+        assertThat(response.getCandidates().get(3).get("ngrams"), equalTo((Object) 2));
+        for (ClassifyEvaluation evaluation : response.getCandidateEvaluations()) {
+            assertThat(evaluation.docs() + evaluation.skipped(), equalTo(2L * TEST_DOCS_PER_CLASS));
+        }
+    }
+
+    /**
+     * Returns a request training on all the docs but the first ones of each class, which it tests on
+     */
+    private ClassifyEvaluateRequestBuilder evaluate(String index) throws IOException {
+        IdsQueryBuilder testDocs = QueryBuilders.idsQuery(TYPE);
+        for (int i = 0; i < TEST_DOCS_PER_CLASS; i++) {
+            testDocs.addIds("sport_" + i, "cooking_" + i);
+        }
+        return new ClassifyEvaluateRequestBuilder(client(), ClassifyEvaluateAction.INSTANCE, index, TYPE)
+                .setTrainQuery(toXContent(QueryBuilders.boolQuery().mustNot(testDocs)))
+                .setTestQuery(toXContent(testDocs));
+    }
+
+    private static Map<String, Object> classify(String model) {
+        Map<String, Object> classify = new HashMap<>();
+        classify.put("field", TEXT_FIELD);
+        classify.put("class", CLASS_FIELD);
+        classify.put("model", model);
+        return classify;
+    }
+
+    private static XContentBuilder toXContent(QueryBuilder query) throws IOException {
+        XContentBuilder builder = jsonBuilder();
+        query.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        return builder;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.evaluate;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ClassifyEvaluationTests extends ESTestCase {
+
+    public void testPrecisionAndRecall() throws IOException {
+        ClassifyEvaluation evaluation = new ClassifyEvaluation();
+        addAll(evaluation);
+        evaluation.skip();
+
+        assertThat(evaluation.docs(), equalTo(10L));
+        assertThat(evaluation.skipped(), equalTo(1L));
+        assertThat(evaluation.correct(), equalTo(6L));
+        assertThat(evaluation.accuracy(), closeTo(0.6, 1e-9));
+
+        Map<String, Object> classes = classes(evaluation);
+        assertClass(classes, "a", 3d / 6, 3d / 4, 4);
+        assertClass(classes, "b", 2d / 3, 2d / 4, 4);
+        assertClass(classes, "c", 1d, 1d / 2, 2);
+    }
+
+    public void testClassNeverAssigned() throws IOException {
+        ClassifyEvaluation evaluation = new ClassifyEvaluation();
+        evaluation.add(Collections.singletonList("a"), "b");
+        Map<String, Object> classes = classes(evaluation);
+        // a is never assigned, and b is never right
+        assertClass(classes, "a", 0, 0, 1);
+        assertClass(classes, "b", 0, 0, 0);
+        assertThat(evaluation.accuracy(), equalTo(0d));
+        assertThat(new ClassifyEvaluation().accuracy(), equalTo(0d));
+    }
+
+    public void testMultipleClasses() {
+        ClassifyEvaluation evaluation = new ClassifyEvaluation();
+        // correct if any class is assigned, otherwise counted against the first one
+        evaluation.add(Arrays.asList("a", "b"), "b");
+        evaluation.add(Arrays.asList("a", "b"), "c");
+        assertThat(evaluation.correct(), equalTo(1L));
+        assertThat(evaluation.confusionMatrix().get("b").get("b"), equalTo(1L));
+        assertThat(evaluation.confusionMatrix().get("a").get("c"), equalTo(1L));
+        assertNull(evaluation.confusionMatrix().get("a").get("b"));
+    }
+
+    public void testMergeAndSerialize() throws IOException {
+        ClassifyEvaluation all = new ClassifyEvaluation();
+        addAll(all);
+
+        ClassifyEvaluation first = new ClassifyEvaluation();
+        ClassifyEvaluation second = new ClassifyEvaluation();
+        addAll(new ClassifyEvaluation[]{first, second});
+        first.merge(serialize(second));
+
+        assertThat(first.docs(), equalTo(all.docs()));
+        assertThat(first.correct(), equalTo(all.correct()));
+        assertThat(first.confusionMatrix(), equalTo(all.confusionMatrix()));
+        assertThat(toMap(first), equalTo(toMap(all)));
+    }
+
+    private void addAll(ClassifyEvaluation evaluation) {
+        addAll(new ClassifyEvaluation[]{evaluation});
+    }
+
+    /**
+     * Adds the test docs, each to one of the evaluations
+     */
+    private void addAll(ClassifyEvaluation[] evaluations) {
+        String[][] docs = {
+                {"a", "a"}, {"a", "a"}, {"a", "a"}, {"a", "b"},
+                {"b", "b"}, {"b", "b"}, {"b", "a"}, {"b", "a"},
+                {"b,c", "c"}, {"c,b", "a"}};
+        for (String[] doc : docs) {
+            List<String> actualClasses = Arrays.asList(doc[0].split(","));
+            randomFrom(evaluations).add(actualClasses, doc[1]);
+        }
+    }
+
+    private static ClassifyEvaluation serialize(ClassifyEvaluation evaluation) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        evaluation.writeTo(out);
+        return ClassifyEvaluation.readClassifyEvaluation(StreamInput.wrap(out.bytes()));
+    }
+
+    private static Map<String, Object> toMap(ClassifyEvaluation evaluation) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        evaluation.toXContent(builder, ToXContent.EMPTY_PARAMS);
+        builder.endObject();
+        return XContentHelper.convertToMap(builder.bytes(), false).v2();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> classes(ClassifyEvaluation evaluation) throws IOException {
+        return (Map<String, Object>) toMap(evaluation).get("classes");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertClass(Map<String, Object> classes, String clazz, double precision, double recall, int support) {
+        Map<String, Object> stats = (Map<String, Object>) classes.get(clazz);
+        assertNotNull("missing class [" + clazz + "] in " + classes, stats);
+        assertThat(((Number) stats.get("precision")).doubleValue(), closeTo(precision, 1e-9));
+        assertThat(((Number) stats.get("recall")).doubleValue(), closeTo(recall, 1e-9));
+        double f1 = precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+        assertThat(((Number) stats.get("f1")).doubleValue(), closeTo(f1, 1e-9));
+        assertThat(((Number) stats.get("support")).intValue(), equalTo(support));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.action.classify.ingest;
+
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import java.util.Map;
+
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class ClassifyIngestTests extends ClassificationIntegTestCase {
+
+    public void testClassifyOnIngest() throws Exception {
+        indexLabelledDocs("movies", 20);
+        // the settings are dynamic, so they can be set once the index has docs to train on
+        assertAcked(client().admin().indices().prepareUpdateSettings("movies").setSettings(Settings.builder()
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_ENABLED, true)
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_FIELDS, TEXT_FIELD)
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_CLASS, CLASS_FIELD)
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_MODEL, "simple_naive_bayes")));
+
+        client().prepareIndex("movies", TYPE, "new_sport").setSource(TEXT_FIELD, "the striker scored a penalty in the match").get();
+        BulkResponse bulk = client().prepareBulk()
+                .add(client().prepareIndex("movies", TYPE, "new_cooking").setSource(TEXT_FIELD, "bake the dough in the oven"))
+                .add(client().prepareIndex("movies", TYPE, "predicted").setSource(TEXT_FIELD, "football match", "genre_predicted", "cooking"))
+                .get();
+        assertFalse(bulk.buildFailureMessage(), bulk.hasFailures());
+
+        Map<String, Object> source = client().prepareGet("movies", TYPE, "new_sport").get().getSource();
+        assertThat(source.get("genre_predicted"), equalTo((Object) "sport"));
+        assertThat(source.get("genre_predicted_score"), instanceOf(Number.class));
+        source = client().prepareGet("movies", TYPE, "new_cooking").get().getSource();
+        assertThat(source.get("genre_predicted"), equalTo((Object) "cooking"));
+        // a doc which already has a prediction is indexed as is
+        source = client().prepareGet("movies", TYPE, "predicted").get().getSource();
+        assertThat(source.get("genre_predicted"), equalTo((Object) "cooking"));
+        assertThat(source, not(hasKey("genre_predicted_score")));
+
+        assertAcked(client().admin().indices().prepareUpdateSettings("movies").setSettings(Settings.builder()
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_ENABLED, false)));
+        client().prepareIndex("movies", TYPE, "not_classified").setSource(TEXT_FIELD, "goal").get();
+        source = client().prepareGet("movies", TYPE, "not_classified").get().getSource();
+        assertThat(source, not(hasKey("genre_predicted")));
+    }
+
+    public void testTargetAndScoreFields() throws Exception {
+        indexLabelledDocs("recipes", 10);
+        assertAcked(client().admin().indices().prepareUpdateSettings("recipes").setSettings(Settings.builder()
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_ENABLED, true)
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_FIELDS, TEXT_FIELD)
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_CLASS, CLASS_FIELD)
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_TARGET_FIELD, "topic")
+                .put(ClassifyIngestFilter.INDEX_CLASSIFY_INGEST_SCORE_FIELD, "confidence")));
+
+        client().prepareIndex("recipes", TYPE, "new").setSource(TEXT_FIELD, "sugar and butter").get();
+        Map<String, Object> source = client().prepareGet("recipes", TYPE, "new").get().getSource();
+        assertThat(source.get("topic"), equalTo((Object) "cooking"));
+        assertThat(source.get("confidence"), instanceOf(Number.class));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CannedTokenStream;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.arrayContaining;
+
+public class AnalyzedTextTests extends ESTestCase {
+
+    private static final String FIELD = "body";
+
+    public void testSameTokensAsTheAnalyzer() throws IOException {
+        WhitespaceAnalyzer analyzer = new WhitespaceAnalyzer();
+        String text = "the quick fox jumps over the lazy fox";
+        AnalyzedText fromTermVectors = fromTermVectors(analyzer.tokenStream(FIELD, text), true);
+        AnalyzedText analyzed = AnalyzedText.analyze(text, Collections.<String, Analyzer>singletonMap(FIELD, analyzer));
+        assertThat(fromTermVectors.tokens(FIELD), arrayContaining(analyzed.tokens(FIELD)));
+    }
+
+    public void testKeepsEveryTokenAtAPosition() throws IOException {
+        // a synonym at the position of quick, and a stop word removed before fox
+        AnalyzedText analyzedText = fromTermVectors(new CannedTokenStream(
+                token("quick", 1), token("fast", 0), token("brown", 1), token("fox", 2)), true);
+        assertThat(analyzedText.tokens(FIELD), arrayContaining("fast", "quick", "brown", "fox"));
+    }
+
+    public void testTokensGroupedByTermWithoutPositions() throws IOException {
+        AnalyzedText analyzedText = fromTermVectors(new CannedTokenStream(
+                token("fox", 1), token("brown", 1), token("fox", 1)), false);
+        assertThat(analyzedText.tokens(FIELD), arrayContaining("brown", "fox", "fox"));
+    }
+
+    private static Token token(String term, int positionIncrement) {
+        Token token = new Token(term, 0, term.length());
+        token.setPositionIncrement(positionIncrement);
+        return token;
+    }
+
+    private AnalyzedText fromTermVectors(TokenStream tokenStream, boolean positions) throws IOException {
+        FieldType fieldType = new FieldType(TextField.TYPE_NOT_STORED);
+        fieldType.setStoreTermVectors(true);
+        fieldType.setStoreTermVectorPositions(positions);
+        fieldType.freeze();
+        try (Directory directory = newDirectory()) {
+            try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+                Document doc = new Document();
+                doc.add(new Field(FIELD, tokenStream, fieldType));
+                writer.addDocument(doc);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                return AnalyzedText.fromTermVectors(reader.getTermVectors(0), new String[]{FIELD});
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.elasticsearch.action.classify.ClassifyRequest.ModelTypes;
+import org.elasticsearch.action.classify.ClassifyRequestBuilder;
+import org.elasticsearch.action.classify.ClassifyResponse;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class BooleanPerceptronCheckpointTests extends ClassificationIntegTestCase {
+
+    public void testResumesFromTheLastCheckpoint() throws Exception {
+        assertAcked(prepareCreate("large")
+                .setSettings(Settings.builder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .addMapping(TYPE, TEXT_FIELD, "type=string", CLASS_FIELD, "type=string,index=not_analyzed"));
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            boolean sport = i % 2 == 0;
+            docs.add(client().prepareIndex("large", TYPE, Integer.toString(i))
+                    .setSource(TEXT_FIELD, text(sport ? SPORT : COOKING), CLASS_FIELD, Boolean.toString(sport)));
+        }
+        indexRandom(true, false, docs);
+
+        // each request trains for a short while, so the model is only trained if each one resumes where the last
+        // one timed out rather than starting over
+        String text = text(SPORT);
+        int timedOut = 0;
+        ClassifyResponse response;
+        while ((response = perceptron(text).setTimeout("30ms").get()).isTimedOut()) {
+            assertThat("the training never completed", ++timedOut, lessThan(2000));
+            CachedClassifier model = shardService("large").cachedModel(perceptron(text).request());
+            assertThat(model, instanceOf(BooleanPerceptronClassifier.class));
+            assertFalse(model.isTrained());
+        }
+        assertThat(response.getFailedShards(), equalTo(0));
+        assertTrue(shardService("large").cachedModel(perceptron(text).request()).isTrained());
+        logger.info("trained after [{}] timed out requests", timedOut);
+    }
+
+    private static ClassifyRequestBuilder perceptron(String text) {
+        return classify("large", text)
+                .setModelType(ModelTypes.BOOLEAN_PERCEPTRON)
+                .setModelSettings(Settings.builder().put("batch_size", 10).put("checkpoint_interval", 100));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.elasticsearch.action.classify.ClassifyProfile;
+import org.elasticsearch.action.classify.ClassifyRequest.ModelTypes;
+import org.elasticsearch.action.classify.ClassifyRequestBuilder;
+import org.elasticsearch.action.classify.ClassifyResponse;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import java.util.concurrent.locks.Lock;
+
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.hamcrest.Matchers.equalTo;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class ClassifyResultsCacheTests extends ClassificationIntegTestCase {
+
+    public void testHitOnTheSameReader() throws Exception {
+        indexLabelledDocs("movies", 10);
+        String text = text(SPORT);
+        assertFalse(isCached(classify("movies", text)));
+        assertTrue(isCached(classify("movies", text)));
+        // another model is another result
+        assertFalse(isCached(classify("movies", text).setModelType(ModelTypes.KNN)));
+    }
+
+    public void testMissAfterRefresh() throws Exception {
+        indexLabelledDocs("books", 10);
+        String text = text(COOKING);
+        assertFalse(isCached(classify("books", text)));
+        assertTrue(isCached(classify("books", text)));
+
+        index("books", TYPE, "cooking_new", TEXT_FIELD, text(COOKING), CLASS_FIELD, "cooking");
+        refresh("books");
+        assertFalse(isCached(classify("books", text)));
+        assertTrue(isCached(classify("books", text)));
+    }
+
+    public void testNotCachedWhileTrainedInTheBackground() throws Exception {
+        indexLabelledDocs("news", 10);
+        final String text = text(SPORT);
+        // the same model, the background setting only changes how it is trained
+        assertFalse(isCached(perceptron(text, false)));
+        index("news", TYPE, "sport_new", TEXT_FIELD, text(SPORT), CLASS_FIELD, "sport");
+        refresh("news");
+
+        // holding the lock keeps the model from being trained on the new reader, so it is evaluated as trained on the last one
+        Lock trainingLock = shardService("news").cachedModel(perceptron(text, true).request()).trainingLock();
+        trainingLock.lock();
+        try {
+            assertFalse(isCached(perceptron(text, true)));
+            assertFalse(isCached(perceptron(text, true)));
+        } finally {
+            trainingLock.unlock();
+        }
+
+        // cached once trained on the new reader
+        assertBusy(new Runnable() {
+            @Override
+            public void run() {
+                isCached(perceptron(text, true));
+                assertTrue(isCached(perceptron(text, true)));
+            }
+        });
+    }
+
+    private static ClassifyRequestBuilder perceptron(String text, boolean background) {
+        return classify("news", text)
+                .setModelType(ModelTypes.BOOLEAN_PERCEPTRON)
+                .setModelSettings(Settings.builder().put("background", background));
+    }
+
+    /**
+     * Returns true if the result came from the results cache of the only shard, in which case no model was looked up
+     */
+    private static boolean isCached(ClassifyRequestBuilder request) {
+        ClassifyResponse response = request.setProfile(true).get();
+        assertThat(response.getFailedShards(), equalTo(0));
+        assertThat(response.getShardProfiles().size(), equalTo(1));
+        ClassifyProfile profile = response.getShardProfiles().values().iterator().next();
+        return !profile.phases().containsKey("get_model");
+    }
+}
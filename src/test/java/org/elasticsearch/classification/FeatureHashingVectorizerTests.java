@@ -0,0 +1,128 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.ParseContext;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+public class FeatureHashingVectorizerTests extends ESTestCase {
+
+    private static final int DIMENSION = 1 << 24;
+
+    private final Analyzer analyzer = new WhitespaceAnalyzer();
+
+    public void testUnigrams() throws IOException {
+        FeatureHashingVectorizer vectorizer = new FeatureHashingVectorizer(DIMENSION, 1, true);
+        Map<Integer, Float> vector = toMap(vectorizer.vectorize("a b a", new String[]{"body"}, analyzer));
+        Map<Integer, Float> expected = new HashMap<>();
+        expected.put(vectorizer.dimensionOf("body", new BytesRef("a")), 2f);
+        expected.put(vectorizer.dimensionOf("body", new BytesRef("b")), 1f);
+        assertThat(vector, equalTo(expected));
+    }
+
+    public void testNgrams() throws IOException {
+        FeatureHashingVectorizer vectorizer = new FeatureHashingVectorizer(DIMENSION, 3, true);
+        Map<Integer, Float> vector = toMap(vectorizer.vectorize("a b c d", new String[]{"body"}, analyzer));
+        Map<Integer, Float> expected = new HashMap<>();
+        // the tokens of an n-gram are separated by a zero byte
+        for (String feature : new String[]{"a", "a\u0000b", "a\u0000b\u0000c", "b", "b\u0000c", "b\u0000c\u0000d",
+                "c", "c\u0000d", "d"}) {
+            expected.put(vectorizer.dimensionOf("body", new BytesRef(feature)), 1f);
+        }
+        assertThat(vector, equalTo(expected));
+    }
+
+    public void testNgramsLongerThanTheText() throws IOException {
+        FeatureHashingVectorizer vectorizer = new FeatureHashingVectorizer(DIMENSION, 5, true);
+        Map<Integer, Float> vector = toMap(vectorizer.vectorize("a b", new String[]{"body"}, analyzer));
+        assertThat(vector.size(), equalTo(3));
+        assertTrue(vector.containsKey(vectorizer.dimensionOf("body", new BytesRef("a\u0000b"))));
+        assertThat(toMap(vectorizer.vectorize("", new String[]{"body"}, analyzer)).size(), equalTo(0));
+    }
+
+    public void testNamespaces() throws IOException {
+        String[] fields = new String[]{"title", "body"};
+        FeatureHashingVectorizer withNamespaces = new FeatureHashingVectorizer(DIMENSION, 1, true);
+        Map<Integer, Float> vector = toMap(withNamespaces.vectorize("a", fields, analyzer));
+        assertThat(vector.size(), equalTo(2));
+        assertThat(withNamespaces.dimensionOf("title", new BytesRef("a")), not(equalTo(withNamespaces.dimensionOf("body", new BytesRef("a")))));
+
+        FeatureHashingVectorizer withoutNamespaces = new FeatureHashingVectorizer(DIMENSION, 1, false);
+        vector = toMap(withoutNamespaces.vectorize("a", fields, analyzer));
+        assertThat(vector, equalTo(Collections.singletonMap(withoutNamespaces.dimensionOf("title", new BytesRef("a")), 2f)));
+    }
+
+    public void testNgramsDoNotSpanValues() throws IOException {
+        FeatureHashingVectorizer vectorizer = new FeatureHashingVectorizer(DIMENSION, 2, true);
+        ParseContext.Document doc = new ParseContext.Document();
+        doc.add(new TextField("body", "a b", Field.Store.NO));
+        doc.add(new TextField("body", "c", Field.Store.NO));
+        Map<Integer, Float> vector = toMap(vectorizer.vectorize(doc, new String[]{"body"}, analyzer));
+        Map<Integer, Float> expected = new HashMap<>();
+        for (String feature : new String[]{"a", "a\u0000b", "b", "c"}) {
+            expected.put(vectorizer.dimensionOf("body", new BytesRef(feature)), 1f);
+        }
+        assertThat(vector, equalTo(expected));
+    }
+
+    public void testAnalyzedTextMatchesText() throws IOException {
+        String[] fields = new String[]{"body"};
+        FeatureHashingVectorizer vectorizer = new FeatureHashingVectorizer(randomIntBetween(1, DIMENSION), randomIntBetween(1, 4),
+                randomBoolean());
+        String text = "the quick brown fox jumps over the lazy dog";
+        AnalyzedText analyzedText = AnalyzedText.analyze(text, Collections.singletonMap("body", analyzer));
+        assertThat(toMap(vectorizer.vectorize(analyzedText, fields)), equalTo(toMap(vectorizer.vectorize(text, fields, analyzer))));
+    }
+
+    public void testSettings() {
+        FeatureHashingVectorizer vectorizer = FeatureHashingVectorizer.fromSettings(Settings.builder().put("ngrams", 2).build(), 1024);
+        assertThat(vectorizer.dimension(), equalTo(1024));
+        assertThat(vectorizer.ngrams(), equalTo(2));
+        try {
+            new FeatureHashingVectorizer(1024, 0, true);
+            fail("expected ngrams to be positive");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static Map<Integer, Float> toMap(SparseVector vector) {
+        Map<Integer, Float> map = new HashMap<>();
+        for (int i = 0; i < vector.size(); i++) {
+            // the vector is compacted, so each dimension appears once
+            assertNull(map.put(vector.index(i), vector.value(i)));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.test.ESTestCase;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class LatencyHistogramTests extends ESTestCase {
+
+    public void testSmallValuesHaveTheirOwnBucket() {
+        for (long value = 0; value < 8; value++) {
+            assertThat(LatencyHistogram.highestValue(LatencyHistogram.bucket(value)), equalTo(value));
+        }
+    }
+
+    public void testBucketBoundaries() {
+        assertThat(LatencyHistogram.bucket(8), equalTo(8));
+        assertThat(LatencyHistogram.bucket(15), equalTo(15));
+        // from 16 on each bucket holds two values, then four from 32 on
+        assertThat(LatencyHistogram.bucket(16), equalTo(16));
+        assertThat(LatencyHistogram.bucket(17), equalTo(16));
+        assertThat(LatencyHistogram.bucket(18), equalTo(17));
+        assertThat(LatencyHistogram.highestValue(16), equalTo(17L));
+        assertThat(LatencyHistogram.bucket(32), equalTo(24));
+        assertThat(LatencyHistogram.bucket(35), equalTo(24));
+        assertThat(LatencyHistogram.highestValue(24), equalTo(35L));
+        assertThat(LatencyHistogram.highestValue(LatencyHistogram.bucket(Long.MAX_VALUE)), equalTo(Long.MAX_VALUE));
+    }
+
+    public void testRelativeError() {
+        for (int i = 0; i < 10000; i++) {
+            long value = randomLong() >>> randomIntBetween(1, 63);
+            int bucket = LatencyHistogram.bucket(value);
+            long highestValue = LatencyHistogram.highestValue(bucket);
+            assertThat(highestValue, greaterThanOrEqualTo(value));
+            assertThat(highestValue - value, lessThanOrEqualTo(value / 8));
+            // the buckets are contiguous
+            assertThat(LatencyHistogram.bucket(highestValue), equalTo(bucket));
+            if (highestValue < Long.MAX_VALUE) {
+                assertThat(LatencyHistogram.bucket(highestValue + 1), equalTo(bucket + 1));
+            }
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.percentile(50), equalTo(0L));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertThat(histogram.count(), equalTo(1000L));
+        assertPercentile(histogram, 50, 500);
+        assertPercentile(histogram, 99, 990);
+        assertPercentile(histogram, 100, 1000);
+        // negative latencies are recorded as 0
+        histogram.record(-1);
+        assertThat(histogram.percentile(0), equalTo(0L));
+    }
+
+    public void testMergeAndSerialize() throws Exception {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        LatencyHistogram all = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            long value = randomIntBetween(0, 1000000);
+            (randomBoolean() ? first : second).record(value);
+            all.record(value);
+        }
+        first.merge(second);
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        first.writeTo(out);
+        LatencyHistogram read = LatencyHistogram.readLatencyHistogram(StreamInput.wrap(out.bytes()));
+
+        assertThat(read.count(), equalTo(all.count()));
+        for (double percentile : new double[]{0, 50, 90, 99, 99.9, 100}) {
+            assertThat(read.percentile(percentile), equalTo(all.percentile(percentile)));
+        }
+    }
+
+    private static void assertPercentile(LatencyHistogram histogram, double percentile, long expected) {
+        long value = histogram.percentile(percentile);
+        assertThat(value, greaterThanOrEqualTo(expected));
+        assertThat(value - expected, lessThanOrEqualTo(expected / 8));
+    }
+}
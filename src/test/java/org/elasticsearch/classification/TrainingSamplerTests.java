@@ -0,0 +1,222 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.classification;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.mapper.internal.UidFieldMapper;
+import org.elasticsearch.test.ESTestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class TrainingSamplerTests extends ESTestCase {
+
+    private static final String CLASS_FIELD = "class";
+
+    public void testFromSettings() {
+        assertThat(TrainingSampler.fromSettings(Settings.EMPTY), nullValue());
+        assertThat(TrainingSampler.fromSettings(Settings.builder().put("sample", "10%").build()), not(nullValue()));
+        assertThat(TrainingSampler.fromSettings(Settings.builder().put("sample", "0.1").build()), not(nullValue()));
+        assertThat(TrainingSampler.fromSettings(Settings.builder().put("sample", "1000").build()), not(nullValue()));
+        for (String sample : new String[]{"0", "-5", "0.0", "1.5", "150%", "many"}) {
+            try {
+                TrainingSampler.fromSettings(Settings.builder().put("sample", sample).build());
+                fail("expected the sample [" + sample + "] to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testSameSampleWhateverTheOrderOfTheDocs() throws IOException {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            docs.add(doc("doc#" + i, "class_" + (i % 5), i % 2 == 0 ? "even" : "odd"));
+        }
+        Settings.Builder settings = Settings.builder()
+                .put("sample", randomFrom("0.3", "30%", "150"))
+                .put("sample_stratified", randomBoolean())
+                .put("sample_seed", randomLong());
+        TrainingSampler sampler = TrainingSampler.fromSettings(settings.build());
+        Query query = randomBoolean() ? null : new TermQuery(new Term("group", "even"));
+
+        // one segment, in order
+        Set<String> sample = sample(docs, 0, sampler, query);
+        assertThat(sample.size(), greaterThan(0));
+        assertThat(sample.size(), lessThan(query == null ? 500 : 250));
+
+        // several segments, shuffled
+        Collections.shuffle(docs, random());
+        assertThat(sample(docs, randomIntBetween(10, 100), sampler, query), equalTo(sample));
+    }
+
+    public void testSeedChangesTheSample() throws IOException {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            docs.add(doc("doc#" + i, "class_" + (i % 5), "all"));
+        }
+        long seed = randomLong();
+        Set<String> sample = sample(docs, 0, sampler("0.5", false, seed), null);
+        assertThat(sample(docs, 0, sampler("0.5", false, seed), null), equalTo(sample));
+        assertThat(sample(docs, 0, sampler("0.5", false, seed + 1), null), not(equalTo(sample)));
+    }
+
+    public void testOnlyDocsWithAClassMatchingTheQuery() throws IOException {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            docs.add(doc("doc#" + i, i % 4 == 0 ? null : "class_" + (i % 3), i % 2 == 0 ? "even" : "odd"));
+        }
+        TrainingSampler sampler = sampler("1.0", randomBoolean(), randomLong());
+        Set<String> sample = sample(docs, 0, sampler, new TermQuery(new Term("group", "odd")));
+        // the odd docs, which all have a class
+        assertThat(sample.size(), equalTo(100));
+        for (String uid : sample) {
+            assertThat(Integer.parseInt(uid.substring("doc#".length())) % 2, equalTo(1));
+        }
+        // the docs without a class are never sampled
+        assertThat(sample(docs, 0, sampler, null).size(), equalTo(150));
+    }
+
+    public void testSampleOfAboutTheGivenNumberOfDocs() throws IOException {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            docs.add(doc("doc#" + i, "class_" + (i % 2), "all"));
+        }
+        int size = sample(docs, 0, sampler("100", false, randomLong()), null).size();
+        assertThat(size, greaterThan(50));
+        assertThat(size, lessThan(150));
+    }
+
+    public void testStratifiedSampleKeepsEveryClass() throws IOException {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            docs.add(doc("doc#" + i, "common", "all"));
+        }
+        docs.add(doc("rare#0", "rare", "all"));
+        Collections.shuffle(docs, random());
+        Set<String> sample = sample(docs, 0, sampler("10", true, randomLong()), null);
+        assertTrue("the rare class should be sampled in " + sample, sample.contains("rare#0"));
+        // the common class is sampled at the rate of the whole sample
+        assertThat(sample.size(), lessThan(50));
+    }
+
+    public void testBitSetsAccountedToTheBreaker() throws IOException {
+        List<Document> docs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            docs.add(doc("doc#" + i, "class_" + (i % 2), "all"));
+        }
+        TrainingSampler sampler = sampler("0.5", randomBoolean(), randomLong());
+        MemoryCircuitBreaker breaker = new MemoryCircuitBreaker(new ByteSizeValue(1, ByteSizeUnit.MB), 1.0, logger);
+        assertThat(sample(docs, 0, sampler, null, breaker).size(), greaterThan(0));
+        assertThat(breaker.getUsed(), equalTo(0L));
+
+        breaker = new MemoryCircuitBreaker(new ByteSizeValue(8), 1.0, logger);
+        try {
+            sample(docs, 0, sampler, null, breaker);
+            fail("expected the breaker to trip");
+        } catch (CircuitBreakingException e) {
+            // expected
+        }
+        assertThat(breaker.getUsed(), equalTo(0L));
+    }
+
+    private static TrainingSampler sampler(String sample, boolean stratified, long seed) {
+        return TrainingSampler.fromSettings(Settings.builder()
+                .put("sample", sample)
+                .put("sample_stratified", stratified)
+                .put("sample_seed", seed)
+                .build());
+    }
+
+    private static Document doc(String uid, String clazz, String group) {
+        Document doc = new Document();
+        doc.add(new StringField(UidFieldMapper.NAME, uid, Field.Store.YES));
+        if (clazz != null) {
+            doc.add(new StringField(CLASS_FIELD, clazz, Field.Store.NO));
+        }
+        doc.add(new StringField("group", group, Field.Store.NO));
+        return doc;
+    }
+
+    /**
+     * Indexes the docs, committing every <code>commitEvery</code> docs unless it is 0, and returns the
+     * <code>_uid</code> of the sampled ones
+     */
+    private Set<String> sample(List<Document> docs, int commitEvery, TrainingSampler sampler, Query query) throws IOException {
+        return sample(docs, commitEvery, sampler, query, new NoopCircuitBreaker(CircuitBreaker.REQUEST));
+    }
+
+    private Set<String> sample(List<Document> docs, int commitEvery, TrainingSampler sampler, Query query,
+                               CircuitBreaker breaker) throws IOException {
+        try (Directory directory = newDirectory()) {
+            try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer()))) {
+                for (int i = 0; i < docs.size(); i++) {
+                    writer.addDocument(docs.get(i));
+                    if (commitEvery > 0 && i % commitEvery == 0) {
+                        writer.commit();
+                    }
+                }
+                if (commitEvery == 0) {
+                    writer.forceMerge(1);
+                }
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                LeafReader leafReader = SlowCompositeReaderWrapper.wrap(reader);
+                IndexSearcher searcher = new IndexSearcher(leafReader);
+                Set<String> uids = new HashSet<>();
+                for (ScoreDoc scoreDoc : searcher.search(sampler.sample(leafReader, query, CLASS_FIELD, breaker).query(), docs.size()).scoreDocs) {
+                    uids.add(leafReader.document(scoreDoc.doc).get(UidFieldMapper.NAME));
+                }
+                return uids;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.plugin.classification;
+
+import org.elasticsearch.action.classify.ClassifyAction;
+import org.elasticsearch.action.classify.ClassifyRequestBuilder;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.classification.ClassificationService;
+import org.elasticsearch.classification.ShardClassificationService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ESIntegTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+
+/**
+ * Starts the nodes with the plugin, and indexes docs of two classes whose texts share no words, so that any model
+ * trained on them predicts the class of a text made of the words of one class.
+ */
+public abstract class ClassificationIntegTestCase extends ESIntegTestCase {
+
+    protected static final String TYPE = "docs";
+    protected static final String TEXT_FIELD = "plot";
+    protected static final String CLASS_FIELD = "genre";
+
+    protected static final String[] SPORT = {"football", "goal", "match", "team", "referee", "striker", "penalty", "league"};
+    protected static final String[] COOKING = {"recipe", "oven", "bake", "flour", "sugar", "butter", "dough", "simmer"};
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        Settings.Builder settings = Settings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put("plugin.types", ClassificationPlugin.class.getName());
+        return settings.build();
+    }
+
+    /**
+     * Creates the index with one shard, and indexes the given number of docs of each class, with the ids
+     * <code>sport_0</code>, <code>cooking_0</code> and so on
+     */
+    protected void indexLabelledDocs(String index, int docsPerClass) throws Exception {
+        assertAcked(prepareCreate(index)
+                .setSettings(Settings.builder().put("index.number_of_shards", 1).put("index.number_of_replicas", 0))
+                .addMapping(TYPE, TEXT_FIELD, "type=string", CLASS_FIELD, "type=string,index=not_analyzed"));
+        List<IndexRequestBuilder> docs = new ArrayList<>();
+        for (int i = 0; i < docsPerClass; i++) {
+            docs.add(client().prepareIndex(index, TYPE, "sport_" + i).setSource(TEXT_FIELD, text(SPORT), CLASS_FIELD, "sport"));
+            docs.add(client().prepareIndex(index, TYPE, "cooking_" + i).setSource(TEXT_FIELD, text(COOKING), CLASS_FIELD, "cooking"));
+        }
+        indexRandom(true, false, docs);
+    }
+
+    /**
+     * Returns a classify request of the text field for the class field of the given index
+     */
+    protected static ClassifyRequestBuilder classify(String index, String text) {
+        return new ClassifyRequestBuilder(client(), ClassifyAction.INSTANCE, index, TYPE)
+                .setTextFields(TEXT_FIELD)
+                .setClassField(CLASS_FIELD)
+                .setEvalOn(text);
+    }
+
+    /**
+     * Returns the classification service of the only shard of the given index, on the node it is allocated to
+     */
+    protected static ShardClassificationService shardService(String index) {
+        ClusterState state = client().admin().cluster().prepareState().get().getState();
+        ShardRouting shard = state.routingTable().index(index).shard(0).primaryShard();
+        String node = state.nodes().get(shard.currentNodeId()).name();
+        return internalCluster().getInstance(ClassificationService.class, node).shardService(shard.shardId());
+    }
+
+    /**
+     * Returns a text of a few random words of a class
+     */
+    protected static String text(String[] words) {
+        StringBuilder text = new StringBuilder();
+        int length = randomIntBetween(3, 8);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(randomFrom(words));
+        }
+        return text.toString();
+    }
+}
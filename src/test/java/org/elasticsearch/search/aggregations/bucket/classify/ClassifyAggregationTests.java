@@ -0,0 +1,71 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.elasticsearch.search.aggregations.bucket.classify;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.plugin.classification.ClassificationIntegTestCase;
+import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
+
+import static org.elasticsearch.test.ESIntegTestCase.Scope.SUITE;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+@ClusterScope(scope = SUITE, transportClientRatio = 0)
+public class ClassifyAggregationTests extends ClassificationIntegTestCase {
+
+    public void testBucketsByPredictedClass() throws Exception {
+        indexLabelledDocs("movies", 20);
+        SearchResponse response = client().prepareSearch("movies").setTypes(TYPE)
+                .setSize(0)
+                .addAggregation(new ClassifyBuilder("predicted").fields(TEXT_FIELD).classField(CLASS_FIELD))
+                .get();
+        assertSearchResponse(response);
+
+        Classify classify = response.getAggregations().get("predicted");
+        assertThat(classify, notNullValue());
+        assertThat(classify.getBuckets().size(), equalTo(2));
+        assertThat(classify.getBucketByKey("sport").getDocCount(), equalTo(20L));
+        assertThat(classify.getBucketByKey("cooking").getDocCount(), equalTo(20L));
+    }
+
+    public void testOnlyTheMatchingDocs() throws Exception {
+        indexLabelledDocs("recipes", 10);
+        SearchResponse response = client().prepareSearch("recipes")
+                .setQuery(QueryBuilders.termQuery(CLASS_FIELD, "cooking"))
+                .setSize(0)
+                .addAggregation(new ClassifyBuilder("predicted")
+                        .type(TYPE)
+                        .fields(TEXT_FIELD)
+                        .classField(CLASS_FIELD)
+                        .model("simple_naive_bayes")
+                        .size(1))
+                .get();
+        assertSearchResponse(response);
+
+        Classify classify = response.getAggregations().get("predicted");
+        assertThat(classify.getBuckets().size(), equalTo(1));
+        assertThat(classify.getBuckets().get(0).getKeyAsString(), equalTo("cooking"));
+        assertThat(classify.getBuckets().get(0).getDocCount(), equalTo(10L));
+        assertThat(classify.getBucketByKey("sport"), nullValue());
+    }
+}